@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.benchmarks;
+
+import com.google.common.collect.Lists;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.Stamping.WayType;
+import it.cnr.iit.epas.models.WorkingTimeTypeDay;
+import it.cnr.iit.epas.models.absences.Absence;
+import it.cnr.iit.epas.models.absences.AbsenceType;
+import it.cnr.iit.epas.models.absences.JustifiedType;
+import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
+import it.cnr.iit.epas.models.enumerate.MealTicketBehaviour;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dati sintetici per i benchmark del calcolo del tempo a lavoro.
+ * Le giornate sono generate in modo deterministico (a parità di seme) così che
+ * esecuzioni successive misurino sempre lo stesso carico.
+ */
+public final class BenchmarkFixtures {
+
+  public static final LocalTime START_LUNCH = LocalTime.of(12, 0);
+  public static final LocalTime END_LUNCH = LocalTime.of(15, 0);
+  public static final LocalTime START_WORK = LocalTime.of(7, 0);
+  public static final LocalTime END_WORK = LocalTime.of(21, 0);
+
+  private static final int WORKING_MINUTES = 450;
+  private static final int LUNCH_GAP = 40;
+  private static final int SHORT_GAP = 10;
+
+  /**
+   * Le tipologie di giornata generate.
+   */
+  public enum Scenario {
+    /** Coppie di timbrature nell'orario di apertura con una pausa pranzo. */
+    ORDINARY,
+    /** Uscita al mattino dal turno notturno precedente ed ingresso serale nel successivo. */
+    NIGHT_SHIFT,
+    /** Giornata ordinaria con assenze orarie (con e senza maturazione del buono pasto). */
+    HOURLY_ABSENCE,
+    /** Giornata ordinaria con un orario di lavoro personalizzato e soglia pomeridiana. */
+    PERSONAL_WORKING_TIME
+  }
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * L'orario di lavoro da utilizzare per lo scenario.
+   */
+  public static WorkingTimeTypeDay workingTimeTypeDay(Scenario scenario) {
+    WorkingTimeTypeDay wttd = new WorkingTimeTypeDay();
+    wttd.holiday = false;
+    if (scenario == Scenario.PERSONAL_WORKING_TIME) {
+      wttd.workingTime = 360;
+      wttd.mealTicketTime = 300;
+      wttd.breakTicketTime = 20;
+      wttd.ticketAfternoonThreshold = 14 * 60;
+      wttd.ticketAfternoonWorkingTime = 60;
+    } else {
+      wttd.workingTime = 432;
+      wttd.mealTicketTime = 360;
+      wttd.breakTicketTime = 30;
+      wttd.ticketAfternoonThreshold = null;
+    }
+    return wttd;
+  }
+
+  /**
+   * I giorni lavorativi del mese con il numero di timbrature richiesto.
+   *
+   * @param person la persona
+   * @param month il mese
+   * @param stampingsPerDay numero di timbrature per giorno (pari, da 2 a 12)
+   * @param scenario la tipologia di giornata
+   * @param seed il seme per le variazioni degli orari
+   * @return i giorni generati, uno per ogni giorno lavorativo del mese
+   */
+  public static List<PersonDay> personDays(Person person, YearMonth month, int stampingsPerDay,
+      Scenario scenario, long seed) {
+    final Random random = new Random(seed);
+    final List<PersonDay> personDays = Lists.newArrayList();
+    for (LocalDate date = month.atDay(1); !date.isAfter(month.atEndOfMonth());
+        date = date.plusDays(1)) {
+      if (date.getDayOfWeek().getValue() > 5) {
+        continue;
+      }
+      personDays.add(personDay(person, date, stampingsPerDay, scenario, random));
+    }
+    return personDays;
+  }
+
+  /**
+   * Un giorno con le timbrature (ed eventuali assenze) dello scenario.
+   */
+  public static PersonDay personDay(Person person, LocalDate date, int stampingsPerDay,
+      Scenario scenario, Random random) {
+    final PersonDay personDay = new PersonDay(person, date);
+    final List<Stamping> stampings = Lists.newArrayList();
+    if (scenario == Scenario.NIGHT_SHIFT) {
+      stampings.add(stamping(personDay, LocalTime.of(6, random.nextInt(15)), WayType.out));
+      addPairs(personDay, stampings, LocalTime.of(14, random.nextInt(30)),
+          (stampingsPerDay - 2) / 2, 60, random);
+      stampings.add(stamping(personDay, LocalTime.of(22, random.nextInt(15)), WayType.in));
+    } else {
+      int pairs = stampingsPerDay / 2;
+      addPairs(personDay, stampings, LocalTime.of(8, random.nextInt(30)), pairs,
+          WORKING_MINUTES / pairs, random);
+    }
+    personDay.setStampings(stampings);
+
+    if (scenario == Scenario.HOURLY_ABSENCE) {
+      personDay.getAbsences().add(absence(personDay, JustifiedTypeName.specified_minutes, 60,
+          MealTicketBehaviour.allowMealTicket));
+      personDay.getAbsences().add(absence(personDay, JustifiedTypeName.absence_type_minutes,
+          null, MealTicketBehaviour.notAllowMealTicket));
+    }
+    return personDay;
+  }
+
+  /**
+   * Aggiunge le coppie ingresso/uscita, con una pausa pranzo a metà giornata e
+   * brevi pause fra le altre coppie.
+   */
+  private static void addPairs(PersonDay personDay, List<Stamping> stampings, LocalTime start,
+      int pairs, int minutesPerPair, Random random) {
+    LocalTime time = start;
+    for (int pair = 0; pair < pairs; pair++) {
+      stampings.add(stamping(personDay, time, WayType.in));
+      time = time.plusMinutes(minutesPerPair + random.nextInt(5));
+      stampings.add(stamping(personDay, time, WayType.out));
+      time = time.plusMinutes(pair == pairs / 2 - 1 ? LUNCH_GAP : SHORT_GAP);
+    }
+  }
+
+  private static Stamping stamping(PersonDay personDay, LocalTime time, WayType way) {
+    Stamping stamping = new Stamping(personDay, LocalDateTime.of(personDay.getDate(), time));
+    stamping.setWay(way);
+    return stamping;
+  }
+
+  private static Absence absence(PersonDay personDay, JustifiedTypeName justifiedTypeName,
+      Integer justifiedMinutes, MealTicketBehaviour mealTicketBehaviour) {
+    JustifiedType justifiedType = new JustifiedType();
+    justifiedType.setName(justifiedTypeName);
+    AbsenceType absenceType = new AbsenceType();
+    absenceType.setCode(justifiedTypeName == JustifiedTypeName.specified_minutes ? "18H" : "631");
+    absenceType.setJustifiedTime(120);
+    absenceType.setMealTicketBehaviour(mealTicketBehaviour);
+    Absence absence = new Absence();
+    absence.setPersonDay(personDay);
+    absence.setJustifiedType(justifiedType);
+    absence.setJustifiedMinutes(justifiedMinutes);
+    absence.setAbsenceType(absenceType);
+    return absence;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Controllo di regressione dei benchmark: confronta i risultati JMH (formato json)
+ * con quelli di riferimento e termina con errore se qualche benchmark peggiora oltre
+ * la tolleranza.
+ * Se il file di riferimento non esiste il controllo fallisce: il riferimento viene
+ * (ri)registrato con i risultati correnti solo se richiesto esplicitamente.
+ *
+ * <p>Argomenti: file dei risultati, file di riferimento, tolleranza percentuale,
+ * true per registrare i risultati correnti come nuovo riferimento.</p>
+ */
+public final class BenchmarkGate {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private BenchmarkGate() {
+  }
+
+  /**
+   * Esegue il confronto.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Uso: BenchmarkGate <risultati.json> <riferimento.json> [tolleranza %]"
+          + " [registra]");
+      System.exit(2);
+    }
+    final Path results = Paths.get(args[0]);
+    final Path baseline = Paths.get(args[1]);
+    final double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+    final boolean record = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+    if (record) {
+      if (baseline.getParent() != null) {
+        Files.createDirectories(baseline.getParent());
+      }
+      Files.copy(results, baseline, StandardCopyOption.REPLACE_EXISTING);
+      System.out.printf("Registrato il riferimento %s dai risultati correnti%n", baseline);
+      return;
+    }
+    if (!Files.exists(baseline)) {
+      System.err.printf("Riferimento %s assente: registrarlo con -Djmh.record=true%n", baseline);
+      System.exit(2);
+    }
+
+    final Map<String, JsonNode> current = read(results);
+    final Map<String, JsonNode> reference = read(baseline);
+    int regressions = 0;
+    for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+      final JsonNode base = reference.get(entry.getKey());
+      if (base == null) {
+        System.out.printf("NUOVO       %s%n", entry.getKey());
+        continue;
+      }
+      final double change = change(entry.getValue(), base);
+      final boolean regression = change > tolerance;
+      if (regression) {
+        regressions++;
+      }
+      System.out.printf("%-11s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+          regression ? "REGRESSIONE" : "OK", entry.getKey(),
+          score(base), score(entry.getValue()), unit(entry.getValue()), change);
+    }
+    if (regressions > 0) {
+      System.out.printf("%d benchmark peggiorati oltre la tolleranza del %.1f%%%n",
+          regressions, tolerance);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Peggioramento percentuale rispetto al riferimento, positivo se peggiore: per il
+   * throughput è migliore un valore più alto, per le altre modalità uno più basso.
+   */
+  static double change(JsonNode current, JsonNode base) {
+    final double delta = (score(current) - score(base)) / score(base) * 100;
+    return "thrpt".equals(current.path("mode").asText()) ? -delta : delta;
+  }
+
+  private static double score(JsonNode result) {
+    return result.path("primaryMetric").path("score").asDouble();
+  }
+
+  private static String unit(JsonNode result) {
+    return result.path("primaryMetric").path("scoreUnit").asText();
+  }
+
+  /**
+   * I risultati indicizzati per benchmark, modalità e parametri.
+   */
+  private static Map<String, JsonNode> read(Path file) throws IOException {
+    final Map<String, JsonNode> results = Maps.newTreeMap();
+    for (JsonNode result : MAPPER.readTree(file.toFile())) {
+      final Map<String, String> params = new TreeMap<>();
+      final Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+      while (fields.hasNext()) {
+        final Map.Entry<String, JsonNode> param = fields.next();
+        params.put(param.getKey(), param.getValue().asText());
+      }
+      results.put(result.path("benchmark").asText() + " [" + result.path("mode").asText()
+          + "] " + params, result);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import it.cnr.iit.epas.benchmarks.BenchmarkFixtures.Scenario;
+import it.cnr.iit.epas.dao.AbsenceDao;
+import it.cnr.iit.epas.dao.CompetenceDao;
+import it.cnr.iit.epas.dao.MealTicketDao;
+import it.cnr.iit.epas.dao.PersonDayDao;
+import it.cnr.iit.epas.dao.ZoneDao;
+import it.cnr.iit.epas.dao.wrapper.IWrapperContract;
+import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
+import it.cnr.iit.epas.manager.ContractMonthRecapManager;
+import it.cnr.iit.epas.manager.PersonDayManager;
+import it.cnr.iit.epas.manager.cache.CompetenceCodeManager;
+import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
+import it.cnr.iit.epas.manager.configurations.EpasParam;
+import it.cnr.iit.epas.models.CompetenceCode;
+import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.ContractMonthRecap;
+import it.cnr.iit.epas.models.MealTicket;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.Qualification;
+import it.cnr.iit.epas.models.WorkingTimeTypeDay;
+import it.cnr.iit.epas.models.absences.Absence;
+import it.cnr.iit.epas.utils.DateInterval;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Provider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Benchmark del calcolo della parte residuale del riepilogo mensile
+ * ({@link ContractMonthRecapManager#computeResidualModule}).
+ * I DAO ed i wrapper sono simulati e restituiscono giornate già calcolate con
+ * {@link PersonDayManager} a partire dai dati sintetici.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractMonthRecapManagerBenchmark {
+
+  private static final int YEAR = 2023;
+  private static final int DELIVERED_MEAL_TICKETS = 22;
+
+  /**
+   * Gennaio non utilizza la configurazione della scadenza dei residui dell'anno precedente.
+   */
+  @Param({"1", "7"})
+  int month;
+
+  @Param({"4", "12"})
+  int stampingsPerDay;
+
+  private ContractMonthRecapManager contractMonthRecapManager;
+  private Contract contract;
+  private YearMonth yearMonth;
+  private Optional<ContractMonthRecap> previousRecap;
+
+  /**
+   * Prepara il contratto, le giornate del mese ed i collaboratori simulati.
+   */
+  @Setup
+  public void setup() {
+    yearMonth = YearMonth.of(YEAR, month);
+
+    final Office office = new Office();
+    final Qualification qualification = new Qualification();
+    qualification.setQualification(4);
+    final Person person = new Person();
+    person.setOffice(office);
+    person.setQualification(qualification);
+    contract = new Contract();
+    contract.person = person;
+    contract.setBeginDate(LocalDate.of(YEAR - 3, 1, 1));
+
+    final ContractMonthRecap previous = new ContractMonthRecap();
+    previous.contract = contract;
+    previous.year = month == 1 ? YEAR - 1 : YEAR;
+    previous.month = month == 1 ? 12 : month - 1;
+    previous.remainingMinutesCurrentYear = 1200;
+    previous.remainingMinutesLastYear = 600;
+    previous.remainingMealTickets = 10;
+    previousRecap = Optional.of(previous);
+
+    final List<PersonDay> personDays = computedPersonDays(person);
+    final List<PersonDay> personDaysDesc = Lists.reverse(personDays);
+    final List<MealTicket> mealTickets = Lists.newArrayList();
+    for (int i = 0; i < DELIVERED_MEAL_TICKETS; i++) {
+      mealTickets.add(new MealTicket());
+    }
+
+    final PersonDayDao personDayDao = mock(PersonDayDao.class);
+    when(personDayDao.getPersonDayInPeriod(any(Person.class), any(LocalDate.class), any()))
+        .thenReturn(personDays);
+    when(personDayDao.getPersonDayInPeriodDesc(any(Person.class), any(LocalDate.class), any()))
+        .thenReturn(personDaysDesc);
+    final MealTicketDao mealTicketDao = mock(MealTicketDao.class);
+    when(mealTicketDao.contractMealTickets(any(), any(), any(), anyBoolean()))
+        .thenReturn(mealTickets);
+    final AbsenceDao absenceDao = mock(AbsenceDao.class);
+    when(absenceDao.absenceInPeriod(any(Person.class), any(LocalDate.class), any(LocalDate.class),
+        anyString())).thenReturn(Collections.emptyList());
+    final CompetenceCodeManager competenceCodeManager = mock(CompetenceCodeManager.class);
+    when(competenceCodeManager.getCompetenceCode(anyString())).thenReturn(new CompetenceCode());
+
+    final DateInterval contractInterval =
+        DateInterval.withBegin(contract.getBeginDate(), Optional.empty());
+    final IWrapperContract wrContract = mock(IWrapperContract.class);
+    when(wrContract.getValue()).thenReturn(contract);
+    when(wrContract.getContractDatabaseInterval()).thenReturn(contractInterval);
+    when(wrContract.getContractDatabaseIntervalForMealTicket()).thenReturn(contractInterval);
+    when(wrContract.isLastInMonth(anyInt(), anyInt())).thenReturn(true);
+    final IWrapperFactory wrapperFactory = mock(IWrapperFactory.class);
+    when(wrapperFactory.create(any(Contract.class))).thenReturn(wrContract);
+
+    final ConfigurationManager configurationManager = mock(ConfigurationManager.class);
+    when(configurationManager.configValue(any(), any(EpasParam.class), anyInt())).thenReturn(0);
+    when(configurationManager.configValue(any(), eq(EpasParam.DATE_START_MEAL_TICKET)))
+        .thenReturn(LocalDate.of(YEAR - 10, 1, 1));
+
+    contractMonthRecapManager = new ContractMonthRecapManager();
+    ReflectionTestUtils.setField(contractMonthRecapManager, "personDayDao", personDayDao);
+    ReflectionTestUtils.setField(contractMonthRecapManager, "mealTicketDao", mealTicketDao);
+    ReflectionTestUtils.setField(contractMonthRecapManager, "competenceDao",
+        mock(CompetenceDao.class));
+    ReflectionTestUtils.setField(contractMonthRecapManager, "competenceCodeManager",
+        competenceCodeManager);
+    ReflectionTestUtils.setField(contractMonthRecapManager, "absenceDao", absenceDao);
+    ReflectionTestUtils.setField(contractMonthRecapManager, "wrapperFactory",
+        (Provider<IWrapperFactory>) () -> wrapperFactory);
+    ReflectionTestUtils.setField(contractMonthRecapManager, "configurationManager",
+        configurationManager);
+  }
+
+  /**
+   * Giornate del mese con tempo a lavoro, differenza e progressivo calcolati.
+   */
+  private List<PersonDay> computedPersonDays(Person person) {
+    final PersonDayManager personDayManager = new PersonDayManager(null, null, null, null, null,
+        null, null, mock(ZoneDao.class), null, () -> null);
+    final WorkingTimeTypeDay wttd = BenchmarkFixtures.workingTimeTypeDay(Scenario.ORDINARY);
+    final List<PersonDay> personDays = BenchmarkFixtures.personDays(person, yearMonth,
+        stampingsPerDay, Scenario.ORDINARY, month);
+    PersonDay previous = null;
+    for (PersonDay personDay : personDays) {
+      personDayManager.updateTimeAtWork(personDay, wttd, false,
+          BenchmarkFixtures.START_LUNCH, BenchmarkFixtures.END_LUNCH,
+          BenchmarkFixtures.START_WORK, BenchmarkFixtures.END_WORK, Optional.empty());
+      personDayManager.updateDifference(personDay, wttd, false,
+          BenchmarkFixtures.START_LUNCH, BenchmarkFixtures.END_LUNCH,
+          BenchmarkFixtures.START_WORK, BenchmarkFixtures.END_WORK, Optional.empty());
+      personDayManager.updateProgressive(personDay, Optional.ofNullable(previous));
+      previous = personDay;
+    }
+    return personDays;
+  }
+
+  /**
+   * Calcolo dei residui del mese su un nuovo riepilogo (il calcolo accumula nei campi
+   * del riepilogo quindi non può essere riutilizzato fra invocazioni).
+   */
+  @Benchmark
+  public Optional<ContractMonthRecap> computeResidualModule() {
+    final ContractMonthRecap cmr = new ContractMonthRecap();
+    cmr.contract = contract;
+    cmr.year = yearMonth.getYear();
+    cmr.month = yearMonth.getMonthValue();
+    return contractMonthRecapManager.computeResidualModule(cmr, previousRecap, yearMonth,
+        yearMonth.atEndOfMonth(), Collections.<Absence>emptyList(), Optional.empty());
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.benchmarks;
+
+import static org.mockito.Mockito.mock;
+
+import it.cnr.iit.epas.benchmarks.BenchmarkFixtures.Scenario;
+import it.cnr.iit.epas.dao.ZoneDao;
+import it.cnr.iit.epas.manager.PersonDayManager;
+import it.cnr.iit.epas.manager.services.PairStamping;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.WorkingTimeTypeDay;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark dei metodi di calcolo del tempo a lavoro di {@link PersonDayManager}.
+ * Ogni invocazione elabora tutti i giorni lavorativi di un mese, senza accessi al
+ * database: le timbrature non hanno zone quindi lo ZoneDao (simulato) non viene interrogato
+ * sui collegamenti fra zone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonDayManagerBenchmark {
+
+  private static final YearMonth MONTH = YearMonth.of(2023, 3);
+
+  @Param({"2", "4", "8", "12"})
+  int stampingsPerDay;
+
+  @Param({"ORDINARY", "NIGHT_SHIFT", "HOURLY_ABSENCE", "PERSONAL_WORKING_TIME"})
+  Scenario scenario;
+
+  private PersonDayManager personDayManager;
+  private WorkingTimeTypeDay wttd;
+  private List<PersonDay> personDays;
+  private List<List<PairStamping>> validPairs;
+
+  /**
+   * Costruisce il manager (senza dipendenze verso il database) e le giornate del mese.
+   */
+  @Setup
+  public void setup() {
+    personDayManager = new PersonDayManager(null, null, null, null, null, null, null,
+        mock(ZoneDao.class), null, () -> null);
+    wttd = BenchmarkFixtures.workingTimeTypeDay(scenario);
+    personDays = BenchmarkFixtures.personDays(new Person(), MONTH, stampingsPerDay, scenario,
+        stampingsPerDay * 31L + scenario.ordinal());
+    validPairs = personDays.stream()
+        .map(pd -> personDayManager.getValidPairStampings(pd.getStampings()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Tempo a lavoro e differenza di ogni giorno del mese.
+   */
+  @Benchmark
+  public void updateTimeAtWorkAndDifference(Blackhole blackhole) {
+    for (PersonDay personDay : personDays) {
+      personDayManager.updateTimeAtWork(personDay, wttd, false,
+          BenchmarkFixtures.START_LUNCH, BenchmarkFixtures.END_LUNCH,
+          BenchmarkFixtures.START_WORK, BenchmarkFixtures.END_WORK, Optional.empty());
+      personDayManager.updateDifference(personDay, wttd, false,
+          BenchmarkFixtures.START_LUNCH, BenchmarkFixtures.END_LUNCH,
+          BenchmarkFixtures.START_WORK, BenchmarkFixtures.END_WORK, Optional.empty());
+      blackhole.consume(personDay.getDifference());
+    }
+  }
+
+  /**
+   * Costruzione delle coppie valide di timbrature.
+   */
+  @Benchmark
+  public void getValidPairStampings(Blackhole blackhole) {
+    for (PersonDay personDay : personDays) {
+      blackhole.consume(personDayManager.getValidPairStampings(personDay.getStampings()));
+    }
+  }
+
+  /**
+   * Individuazione delle pause pranzo.
+   */
+  @Benchmark
+  public void getGapLunchPairs(Blackhole blackhole) {
+    for (PersonDay personDay : personDays) {
+      blackhole.consume(personDayManager.getGapLunchPairs(personDay,
+          BenchmarkFixtures.START_LUNCH, BenchmarkFixtures.END_LUNCH, Optional.empty()));
+    }
+  }
+
+  /**
+   * Minuti lavorati nella fascia di apertura a partire dalle coppie valide già calcolate.
+   */
+  @Benchmark
+  public int workingMinutes() {
+    int minutes = 0;
+    for (List<PairStamping> pairs : validPairs) {
+      minutes += personDayManager.workingMinutes(pairs,
+          BenchmarkFixtures.START_WORK, BenchmarkFixtures.END_WORK);
+    }
+    return minutes;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.config;
+
+import it.cnr.iit.epas.models.base.RecomputationAudit;
+import java.util.Collections;
+import java.util.Map;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.envers.boot.internal.EnversIntegrator;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.envers.event.spi.EnversListenerDuplicationStrategy;
+import org.hibernate.envers.event.spi.EnversPostCollectionRecreateEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPostDeleteEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPostInsertEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPostUpdateEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPreCollectionRemoveEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPreCollectionUpdateEventListenerImpl;
+import org.hibernate.envers.event.spi.EnversPreUpdateEventListenerImpl;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configurazione della storicizzazione Envers: i listener standard sono sostituiti
+ * da listener che non storicizzano le modifiche effettuate dai ricalcoli sui campi
+ * ricalcolati (vedi {@link RecomputationAudit}).
+ */
+@Configuration
+public class AuditConfig implements HibernatePropertiesCustomizer {
+
+  @Override
+  public void customize(Map<String, Object> hibernateProperties) {
+    hibernateProperties.put(EnversIntegrator.AUTO_REGISTER, false);
+    hibernateProperties.put("hibernate.integrator_provider",
+        (IntegratorProvider) () -> Collections.singletonList(new AuditIntegrator()));
+  }
+
+  /**
+   * Registrazione dei listener Envers, come in {@link EnversIntegrator}.
+   */
+  static class AuditIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+      final EnversService enversService = serviceRegistry.getService(EnversService.class);
+      if (!enversService.isEnabled()
+          || !enversService.getEntitiesConfigurations().hasAuditedEntities()) {
+        return;
+      }
+      final EventListenerRegistry registry =
+          serviceRegistry.getService(EventListenerRegistry.class);
+      registry.addDuplicationStrategy(EnversListenerDuplicationStrategy.INSTANCE);
+
+      registry.appendListeners(EventType.POST_DELETE,
+          new RecomputationPostDeleteEventListener(enversService));
+      registry.appendListeners(EventType.POST_INSERT,
+          new RecomputationPostInsertEventListener(enversService));
+      registry.appendListeners(EventType.PRE_UPDATE,
+          new EnversPreUpdateEventListenerImpl(enversService));
+      registry.appendListeners(EventType.POST_UPDATE,
+          new RecomputationPostUpdateEventListener(enversService));
+      registry.appendListeners(EventType.POST_COLLECTION_RECREATE,
+          new EnversPostCollectionRecreateEventListenerImpl(enversService));
+      registry.appendListeners(EventType.PRE_COLLECTION_REMOVE,
+          new EnversPreCollectionRemoveEventListenerImpl(enversService));
+      registry.appendListeners(EventType.PRE_COLLECTION_UPDATE,
+          new EnversPreCollectionUpdateEventListenerImpl(enversService));
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+    }
+  }
+
+  static class RecomputationPostInsertEventListener extends EnversPostInsertEventListenerImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    RecomputationPostInsertEventListener(EnversService enversService) {
+      super(enversService);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+      if (!RecomputationAudit.isSkipped(event.getEntity())) {
+        super.onPostInsert(event);
+      }
+    }
+  }
+
+  static class RecomputationPostUpdateEventListener extends EnversPostUpdateEventListenerImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    RecomputationPostUpdateEventListener(EnversService enversService) {
+      super(enversService);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+      if (!RecomputationAudit.isSkipped(event.getEntity(),
+          event.getPersister().getPropertyNames(), event.getDirtyProperties())) {
+        super.onPostUpdate(event);
+      }
+    }
+  }
+
+  static class RecomputationPostDeleteEventListener extends EnversPostDeleteEventListenerImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    RecomputationPostDeleteEventListener(EnversService enversService) {
+      super(enversService);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+      if (!RecomputationAudit.isSkipped(event.getEntity())) {
+        super.onPostDelete(event);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import it.cnr.iit.epas.utils.RequestScopeData;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Contesto di esecuzione dei calcoli indipendente dalla richiesta HTTP.<br>
+ * Ogni esecuzione ha i propri RequestAttributes (quindi le proprie istanze dei componenti
+ * con scope richiesta, come i wrapper) ed il proprio SecurityContext, per cui i calcoli
+ * possono essere eseguiti da task @Async, dai worker dei ricalcoli o da qualsiasi altro
+ * thread, anche dopo la conclusione della richiesta che li ha avviati.
+ */
+@Slf4j
+@Component
+public class ComputationScope {
+
+  private final RequestScopeData requestScopeData;
+
+  @Inject
+  ComputationScope(RequestScopeData requestScopeData) {
+    this.requestScopeData = requestScopeData;
+  }
+
+  /**
+   * Le informazioni del chiamante da riportare nel contesto di esecuzione: l'autenticazione,
+   * i dati della richiesta utilizzati dai controlli dei permessi e l'indirizzo del client.
+   */
+  @Value
+  public static class ComputationContext {
+    Authentication authentication;
+    Map<String, Object> requestData;
+    String remoteAddress;
+  }
+
+  /**
+   * Il contesto del thread corrente, da utilizzare per eseguire i calcoli in un altro
+   * thread con lo stesso utente.
+   */
+  public ComputationContext capture() {
+    final Authentication authentication =
+        SecurityContextHolder.getContext().getAuthentication();
+    final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes == null) {
+      return new ComputationContext(authentication, ImmutableMap.of(), null);
+    }
+    final String remoteAddress = attributes instanceof ServletRequestAttributes
+        ? ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr()
+        : attributes instanceof DetachedRequestAttributes
+            ? ((DetachedRequestAttributes) attributes).getRemoteAddress() : null;
+    return new ComputationContext(authentication,
+        ImmutableMap.copyOf(Maps.filterValues(requestScopeData.getData(), v -> v != null)),
+        remoteAddress);
+  }
+
+  /**
+   * Esegue il task nel contesto passato. Al termine i componenti con scope richiesta
+   * creati durante l'esecuzione vengono distrutti ed il thread torna al contesto precedente.
+   *
+   * @param context il contesto di esecuzione
+   * @param task il calcolo da eseguire
+   */
+  public void run(ComputationContext context, Runnable task) {
+    call(context, () -> {
+      task.run();
+      return null;
+    });
+  }
+
+  /**
+   * Esegue il task nel contesto passato restituendone il risultato.
+   *
+   * @see #run(ComputationContext, Runnable)
+   */
+  public <T> T call(ComputationContext context, Supplier<T> task) {
+    final RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+    final SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+    final DetachedRequestAttributes attributes =
+        new DetachedRequestAttributes(context.getRemoteAddress());
+    final SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+    securityContext.setAuthentication(context.getAuthentication());
+    try {
+      RequestContextHolder.setRequestAttributes(attributes);
+      SecurityContextHolder.setContext(securityContext);
+      if (!context.getRequestData().isEmpty()) {
+        requestScopeData.getData().putAll(context.getRequestData());
+      }
+      return task.get();
+    } finally {
+      attributes.requestCompleted();
+      RequestContextHolder.setRequestAttributes(previousAttributes);
+      if (previousSecurityContext.getAuthentication() == null) {
+        SecurityContextHolder.clearContext();
+      } else {
+        SecurityContextHolder.setContext(previousSecurityContext);
+      }
+      log.trace("Concluso calcolo nel contesto {}", attributes.getSessionId());
+    }
+  }
+}
@@ -17,42 +17,32 @@
 
 package it.cnr.iit.epas.config;
 
-import it.cnr.iit.epas.utils.RequestScopeData;
 import javax.annotation.Nonnull;
-import org.springframework.beans.factory.annotation.Autowired;
+import javax.inject.Inject;
 import org.springframework.core.task.TaskDecorator;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
 
 /**
- * Decoratore dei Task @Async che grazie a questo supporto
- * hanno a disposizione il RequestContext ed il SecurityContext
- * anche nel thread (separato) in cui vengono eseguiti.
+ * Decoratore dei Task @Async che vengono eseguiti nel {@link ComputationScope}: ogni task
+ * ha a disposizione l'utente ed i dati della richiesta del chiamante, ma con RequestContext
+ * e SecurityContext propri, così che i componenti con scope richiesta (es. i wrapper) non
+ * siano condivisi con la richiesta HTTP né con gli altri task e che il task possa essere
+ * avviato anche fuori da una richiesta (es. job schedulati).
  */
 @Component
 class ContextCopyingDecorator implements TaskDecorator {
 
-  @Autowired
-  RequestScopeData requestScopeData;
+  private final ComputationScope computationScope;
+
+  @Inject
+  ContextCopyingDecorator(ComputationScope computationScope) {
+    this.computationScope = computationScope;
+  }
 
   @Nonnull
   @Override
   public Runnable decorate(@Nonnull Runnable runnable) {
-    RequestAttributes context =
-        RequestContextHolder.currentRequestAttributes();
-    SecurityContext securityContext = SecurityContextHolder.getContext();
-    return () -> {
-      try {
-        RequestContextHolder.setRequestAttributes(context);
-        SecurityContextHolder.setContext(securityContext);
-        runnable.run();
-      } finally {
-        RequestContextHolder.resetRequestAttributes();
-        SecurityContextHolder.clearContext();
-      }
-    };
+    final ComputationScope.ComputationContext context = computationScope.capture();
+    return () -> computationScope.run(context, runnable);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.config;
+
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.RequestAttributes;
+
+/**
+ * RequestAttributes non legati ad una richiesta HTTP.
+ * Permettono di utilizzare i componenti @RequestScope (per esempio i wrapper)
+ * nei thread che non servono una richiesta HTTP, con un'istanza dedicata di
+ * ogni componente per tutta la durata dell'elaborazione.
+ */
+@Slf4j
+public class DetachedRequestAttributes implements RequestAttributes {
+
+  private final String id = UUID.randomUUID().toString();
+  private final Map<String, Object> requestAttributes = Maps.newConcurrentMap();
+  private final Map<String, Object> sessionAttributes = Maps.newConcurrentMap();
+  private final Map<String, Runnable> destructionCallbacks = Maps.newLinkedHashMap();
+  @Getter
+  private final String remoteAddress;
+
+  public DetachedRequestAttributes() {
+    this(null);
+  }
+
+  /**
+   * Attributi con l'indirizzo del client che ha avviato l'elaborazione.
+   *
+   * @param remoteAddress l'indirizzo del client, se noto
+   */
+  public DetachedRequestAttributes(String remoteAddress) {
+    this.remoteAddress = remoteAddress;
+  }
+
+  private Map<String, Object> attributes(int scope) {
+    return scope == SCOPE_REQUEST ? requestAttributes : sessionAttributes;
+  }
+
+  @Override
+  public Object getAttribute(String name, int scope) {
+    return attributes(scope).get(name);
+  }
+
+  @Override
+  public void setAttribute(String name, Object value, int scope) {
+    attributes(scope).put(name, value);
+  }
+
+  @Override
+  public void removeAttribute(String name, int scope) {
+    attributes(scope).remove(name);
+    synchronized (destructionCallbacks) {
+      destructionCallbacks.remove(name);
+    }
+  }
+
+  @Override
+  public String[] getAttributeNames(int scope) {
+    return attributes(scope).keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public void registerDestructionCallback(String name, Runnable callback, int scope) {
+    synchronized (destructionCallbacks) {
+      destructionCallbacks.put(name, callback);
+    }
+  }
+
+  @Override
+  public Object resolveReference(String key) {
+    return null;
+  }
+
+  @Override
+  public String getSessionId() {
+    return id;
+  }
+
+  @Override
+  public Object getSessionMutex() {
+    return this;
+  }
+
+  /**
+   * Esegue le callback di distruzione dei componenti creati e svuota gli attributi.
+   */
+  public void requestCompleted() {
+    synchronized (destructionCallbacks) {
+      for (Runnable callback : destructionCallbacks.values()) {
+        try {
+          callback.run();
+        } catch (RuntimeException ex) {
+          log.warn("Errore nella distruzione di un componente con scope richiesta", ex);
+        }
+      }
+      destructionCallbacks.clear();
+    }
+    requestAttributes.clear();
+    sessionAttributes.clear();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.config;
+
+import java.io.Serializable;
+import java.time.Duration;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Parametri di configurazione della coda delle email in uscita e del relativo invio.
+ *
+ * @see it.cnr.iit.epas.manager.MailOutboxManager
+ * @see it.cnr.iit.epas.manager.MailOutboxDispatcher
+ */
+@Data
+@EqualsAndHashCode
+@Configuration
+@ConfigurationProperties(prefix = "epas.mail")
+public class MailOutboxProperties implements Serializable {
+
+  private static final long serialVersionUID = -6460196813226094575L;
+
+  /**
+   * Se false le email vengono accodate ma non inviate.
+   */
+  private boolean enabled = false;
+
+  /**
+   * Mittente delle email.
+   */
+  private String from = "epas@localhost";
+
+  /**
+   * Server SMTP.
+   */
+  private String host = "localhost";
+
+  private int port = 25;
+
+  private String username;
+
+  private String password;
+
+  private boolean startTls = false;
+
+  /**
+   * Timeout di connessione e di lettura verso il server SMTP.
+   */
+  private Duration timeout = Duration.ofSeconds(30);
+
+  /**
+   * Intervallo tra due controlli della coda.
+   */
+  private Duration pollInterval = Duration.ofSeconds(10);
+
+  /**
+   * Numero massimo di email inviate con la stessa connessione SMTP.
+   */
+  private int batchSize = 50;
+
+  /**
+   * Numero massimo di email inviate al secondo.
+   */
+  private double maxPerSecond = 5;
+
+  /**
+   * Numero massimo di tentativi di invio di una email.
+   */
+  private int maxAttempts = 6;
+
+  /**
+   * Attesa prima del secondo tentativo di invio, raddoppiata ad ogni tentativo successivo.
+   */
+  private Duration retryBackoff = Duration.ofMinutes(1);
+
+  /**
+   * Attesa massima tra due tentativi di invio.
+   */
+  private Duration maxRetryBackoff = Duration.ofHours(2);
+
+  /**
+   * Una email identica (stessi destinatari, oggetto e testo) ad una già accodata in
+   * questo intervallo non viene accodata di nuovo.
+   */
+  private Duration deduplicationWindow = Duration.ofHours(1);
+
+  /**
+   * Le email inviate o scartate sono eliminate dalla coda trascorso questo periodo dal loro
+   * accodamento. Deve essere maggiore dell'intervallo di deduplicazione.
+   */
+  private Duration retention = Duration.ofDays(30);
+
+}
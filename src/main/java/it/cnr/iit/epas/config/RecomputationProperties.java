@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.config;
+
+import java.io.Serializable;
+import java.time.Duration;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Parametri di configurazione dei ricalcoli differiti della situazione delle persone.
+ *
+ * @see it.cnr.iit.epas.manager.RecomputationScheduler
+ */
+@Data
+@EqualsAndHashCode
+@Configuration
+@ConfigurationProperties(prefix = "epas.recomputation")
+public class RecomputationProperties implements Serializable {
+
+  private static final long serialVersionUID = 4410571542358235049L;
+
+  /**
+   * Se false i ricalcoli vengono eseguiti subito nel thread del chiamante.
+   */
+  private boolean enabled = true;
+
+  /**
+   * Finestra di silenzio dopo l'ultima richiesta prima di avviare il ricalcolo di una persona.
+   */
+  private Duration debounceWindow = Duration.ofSeconds(5);
+
+  /**
+   * Attesa massima dalla prima richiesta, anche in presenza di richieste continue.
+   */
+  private Duration maxDelay = Duration.ofSeconds(60);
+
+  /**
+   * Numero di thread dedicati all'esecuzione dei ricalcoli.
+   */
+  private int workers = 2;
+
+  /**
+   * Numero di persone ricalcolate insieme (con un'unica transazione e prelievo dei dati)
+   * nei ricalcoli di intere sedi.
+   */
+  private int batchSize = 50;
+
+  /**
+   * Attesa massima, in fase di arresto dell'applicazione, per il completamento dei ricalcoli
+   * in esecuzione prima di eseguire quelli ancora in attesa.
+   */
+  private Duration shutdownTimeout = Duration.ofMinutes(2);
+
+}
@@ -19,6 +19,8 @@ package it.cnr.iit.epas.config;
 
 import it.cnr.iit.epas.security.MyBasicAuthenticationEntryPoint;
 import javax.inject.Inject;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -62,6 +64,11 @@ public class SecurityConfig {
     http.cors();
 
     http.authorizeRequests(authz -> authz.antMatchers("/rest/**").authenticated());
+    //Gli endpoint di actuator (es. le metriche prometheus) sono riservati agli utenti
+    //autenticati, tranne lo stato di salute del servizio.
+    http.authorizeRequests(authz -> authz
+        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+        .requestMatchers(EndpointRequest.toAnyEndpoint()).authenticated());
     if (securityConfig.getOauth2().isResourceserverEnabled()) {
       http.oauth2ResourceServer(oauth2 -> oauth2.jwt());
     }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.config;
+
+import java.io.Serializable;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Parametri di configurazione del calcolo delle situazioni ferie delle sedi.
+ *
+ * @see it.cnr.iit.epas.manager.recaps.personvacation.OfficeVacationSituationManager
+ */
+@Data
+@EqualsAndHashCode
+@Configuration
+@ConfigurationProperties(prefix = "epas.vacations")
+public class VacationsProperties implements Serializable {
+
+  private static final long serialVersionUID = -3145217783412860921L;
+
+  /**
+   * Numero di thread dedicati al calcolo in parallelo delle situazioni ferie dei contratti
+   * di una sede (condivisi tra tutte le richieste).
+   */
+  private int parallelism = 4;
+
+}
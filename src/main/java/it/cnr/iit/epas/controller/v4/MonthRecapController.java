@@ -19,6 +19,7 @@ package it.cnr.iit.epas.controller.v4;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -26,16 +27,23 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirements;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.cnr.iit.epas.config.OpenApiConfiguration;
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
+import it.cnr.iit.epas.controller.v4.utils.ETags;
+import it.cnr.iit.epas.controller.v4.utils.MonthRecapPayloads;
 import it.cnr.iit.epas.controller.v4.utils.PersonFinder;
 import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
+import it.cnr.iit.epas.dto.v4.AbsenceToRecoverDto;
 import it.cnr.iit.epas.dto.v4.PersonStampingRecapDto;
 import it.cnr.iit.epas.dto.v4.mapper.PersonStampingRecapMapper;
+import it.cnr.iit.epas.manager.PersonManager;
+import it.cnr.iit.epas.manager.recaps.personstamping.MonthRecapSnapshotManager;
 import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingRecap;
 import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingRecapFactory;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.security.SecurityRules;
 import java.time.YearMonth;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.persistence.EntityNotFoundException;
 import javax.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
@@ -46,6 +54,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller con i metodi REST relativi ai riepiloghi mensili.
@@ -71,16 +80,27 @@ public class MonthRecapController {
   private final PersonStampingRecapMapper personStampingRecapMapper;
   private final SecurityRules rules;
   private final PersonFinder personFinder;
+  private final PersonManager personManager;
+  private final MonthRecapSnapshotManager snapshotManager;
+  private final ETags eTags;
+  private final MonthRecapPayloads monthRecapPayloads;
 
   @Operation(
       summary = "Visualizzazione dei riepiloghi mensili dei dipendenti.",
       description = "Questo endpoint è utilizzabile dalle persone autenticate per visualizzare "
           + "la propria situazione mensile, oppure dagli utenti con il ruolo "
           + "'Amministratore del personale' della sede a cui appartiene la persona, oppure dagli "
-          + "utenti con il ruolo di sistema 'Developer' e/o 'Admin'.")
+          + "utenti con il ruolo di sistema 'Developer' e/o 'Admin'. "
+          + "I riepiloghi dei mesi conclusi sono salvati ed aggiornati dai ricalcoli e dalle "
+          + "modifiche della persona, le risposte riportano l'ETag da utilizzare con "
+          + "If-None-Match.")
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200",
-          description = "Restituiti i dati dei riepiloghi mensili"),
+          description = "Restituiti i dati dei riepiloghi mensili",
+          content = @Content(schema = @Schema(implementation = PersonStampingRecapDto.class))),
+      @ApiResponse(responseCode = "304",
+          description = "Riepilogo mensile non modificato rispetto all'ETag indicato in "
+              + "If-None-Match", content = @Content),
       @ApiResponse(responseCode = "401",
           description = "Autenticazione non presente", content = @Content),
       @ApiResponse(responseCode = "403",
@@ -96,7 +116,8 @@ public class MonthRecapController {
       @RequestParam("personId") Optional<Long> personId,
       @RequestParam("fiscalCode") Optional<String> fiscalCode,
       @NotNull @RequestParam("year") Integer year,
-      @NotNull @RequestParam("month") Integer month) {
+      @NotNull @RequestParam("month") Integer month,
+      WebRequest webRequest) {
     log.debug("REST method {} invoked with parameters personId={}, year={}, month={}",
         "/rest/v4/monthrecaps" + ApiRoutes.LIST, personId, year, month);
 
@@ -106,13 +127,61 @@ public class MonthRecapController {
 
     rules.checkifPermitted(person);
 
+    val yearMonth = YearMonth.of(year, month);
     val wrPerson = wrapperFactory.create(person);
-    if (!wrPerson.isActiveInMonth(YearMonth.of(year, month))) {
+    if (!wrPerson.isActiveInMonth(yearMonth)) {
       return ResponseEntity.notFound().build();
     }
 
-    PersonStampingRecap psrDto = stampingRecapFactory.create(person, year, month, true);
-    return ResponseEntity.ok().body(personStampingRecapMapper.convert(psrDto));
+    if (!snapshotManager.isStorable(yearMonth)) {
+      val recap = recap(person, year, month);
+      val eTag = eTags.of(recap);
+      if (webRequest.checkNotModified(eTag)) {
+        return null;
+      }
+      return ResponseEntity.ok().eTag(eTag).body(recap);
+    }
+
+    // Per i mesi conclusi le sole assenze da recuperare sono calcolate ad ogni richiesta,
+    // il resto del riepilogo è versionato dai ricalcoli e dalle modifiche della persona.
+    val absencesToRecover = personManager.absencesToRecoverUntilToday(person).stream()
+        .map(personStampingRecapMapper::convert).collect(Collectors.toList());
+    val snapshot = snapshotManager.snapshot(person, yearMonth);
+    val stored = snapshot.flatMap(s -> monthRecapPayloads.read(s.getPayload()));
+
+    final PersonStampingRecapDto recap;
+    final String eTag;
+    if (stored.isPresent()) {
+      eTag = eTags.of(snapshot.get().getId() + "-" + snapshot.get().getRecapVersion() + "-"
+          + snapshot.get().getPersonVersion(), absencesToRecover);
+      if (webRequest.checkNotModified(eTag)) {
+        return null;
+      }
+      recap = stored.get();
+      setAbsencesToRecover(recap, absencesToRecover);
+    } else {
+      // Il riepilogo viene salvato al di fuori della richiesta
+      snapshotManager.materialize(person.getId(), yearMonth,
+          p -> monthRecapPayloads.write(recap(p, year, month)));
+      recap = recap(person, year, month);
+      setAbsencesToRecover(recap, absencesToRecover);
+      eTag = eTags.of(recap);
+      if (webRequest.checkNotModified(eTag)) {
+        return null;
+      }
+    }
+    return ResponseEntity.ok().eTag(eTag).body(recap);
+  }
+
+  private void setAbsencesToRecover(PersonStampingRecapDto recap,
+      List<AbsenceToRecoverDto> absencesToRecover) {
+    recap.setAbsenceToRecoverYet(!absencesToRecover.isEmpty());
+    recap.setAbsencesToRecoverList(absencesToRecover);
+  }
+
+  private PersonStampingRecapDto recap(Person person, int year, int month) {
+    PersonStampingRecap psrDto = stampingRecapFactory.createForView(person, year, month, true);
+    return personStampingRecapMapper.convert(psrDto);
   }
 
-}
\ No newline at end of file
+}
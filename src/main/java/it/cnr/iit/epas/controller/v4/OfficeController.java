@@ -17,6 +17,7 @@
 
 package it.cnr.iit.epas.controller.v4;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -24,6 +25,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityRequirements;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import it.cnr.iit.epas.config.ComputationScope;
 import it.cnr.iit.epas.config.OpenApiConfiguration;
 import it.cnr.iit.epas.controller.exceptions.InvalidOperationOnCurrentStateException;
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
@@ -37,8 +39,11 @@ import it.cnr.iit.epas.dto.v4.mapper.EntityToDtoConverter;
 import it.cnr.iit.epas.dto.v4.mapper.OfficeShowMapper;
 import it.cnr.iit.epas.dto.v4.mapper.UserShowMapper;
 import it.cnr.iit.epas.manager.OfficeManager;
+import it.cnr.iit.epas.manager.recaps.personvacation.OfficeVacationSituationManager;
 import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.security.SecurityRules;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -50,6 +55,7 @@ import javax.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -60,6 +66,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Controller con i metodi REST relativi alla visualizzazione e gestione degli uffici.
@@ -84,18 +91,25 @@ public class OfficeController {
   private final UserShowMapper userShowMapper;
   private final EntityToDtoConverter entityToDtoConverter;
   private final SecurityRules rules;
+  private final OfficeVacationSituationManager officeVacationSituationManager;
+  private final ComputationScope computationScope;
+  private final ObjectMapper objectMapper;
 
   @Inject
   OfficeController(OfficeDao officeDao, OfficeShowMapper officeMapper,
       OfficeManager officeManager,
       UserShowMapper userShowMapper, EntityToDtoConverter entityToDtoConverter,
-      SecurityRules rules) {
+      SecurityRules rules, OfficeVacationSituationManager officeVacationSituationManager,
+      ComputationScope computationScope, ObjectMapper objectMapper) {
     this.officeDao = officeDao;
     this.officeManager = officeManager;
     this.officeMapper = officeMapper;
     this.userShowMapper = userShowMapper;
     this.entityToDtoConverter = entityToDtoConverter;
     this.rules = rules;
+    this.officeVacationSituationManager = officeVacationSituationManager;
+    this.computationScope = computationScope;
+    this.objectMapper = objectMapper;
   }
 
   @Operation(
@@ -299,6 +313,48 @@ public class OfficeController {
           .collect(Collectors.toList()));
   }
 
+  @Operation(
+      summary = "Situazione delle ferie e dei permessi di tutti i dipendenti di un ufficio.",
+      description = "Restituisce in formato NDJSON (un oggetto JSON per riga) la situazione "
+          + "ferie e permessi nell'anno di ogni contratto attivo dell'ufficio. Le situazioni "
+          + "sono calcolate in parallelo ed inviate man mano che sono disponibili, quindi "
+          + "senza un ordine predefinito. Questo endpoint è utilizzabile dagli utenti con "
+          + "ruolo 'Amministratore del personale' della sede e dagli utenti con il ruolo "
+          + "di sistema 'Developer' e/o 'Admin'.")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200",
+          description = "Restituite le situazioni ferie dei dipendenti dell'ufficio"),
+      @ApiResponse(responseCode = "403",
+        description = "Autenticazione non presente o utente che ha effettuato la richiesta "
+            + "non autorizzato a visualizzare le ferie dei dipendenti dell'ufficio",
+         content = @Content),
+      @ApiResponse(responseCode = "404", description = "Ufficio non trovato con l'id fornito",
+          content = @Content)
+  })
+  @GetMapping(value = ApiRoutes.SHOW + "/vacations", produces = StampingsFromClient.NDJSON)
+  ResponseEntity<StreamingResponseBody> vacations(
+      @NotNull @PathVariable("id") Long id, @NotNull @RequestParam("year") Integer year) {
+    log.debug("OfficeController::vacations id = {}, year = {}", id, year);
+    val office = officeDao.byId(id)
+        .orElseThrow(() -> new EntityNotFoundException("Office not found with id = " + id));
+    rules.checkifPermitted(office);
+
+    val contractIds = officeVacationSituationManager.activeContractIds(office, year);
+    val context = computationScope.capture();
+    StreamingResponseBody body = out ->
+        officeVacationSituationManager.situations(contractIds, year, context, situation -> {
+          try {
+            out.write(objectMapper.writeValueAsBytes(situation));
+            out.write('\n');
+            out.flush();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(StampingsFromClient.NDJSON)).body(body);
+  }
+
   /**
    * Verifica le condizioni per cui non è possibile cancellare un ufficio.
    * Solleva un eccezzione InvalidOperationOnCurrentStateException se non è 
@@ -17,24 +17,36 @@
 
 package it.cnr.iit.epas.controller.v4;
 
+import com.google.common.base.Enums;
+import it.cnr.iit.epas.controller.exceptions.ValidationException;
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
 import it.cnr.iit.epas.controller.v4.utils.PersonFinder;
+import it.cnr.iit.epas.dao.OfficeDao;
 import it.cnr.iit.epas.dao.PersonDayDao;
 import it.cnr.iit.epas.dto.v4.PersonDayDto;
 import it.cnr.iit.epas.dto.v4.mapper.PersonDayMapper;
+import it.cnr.iit.epas.manager.PersonDayExportManager;
+import it.cnr.iit.epas.manager.PersonDayExportManager.ExportFormat;
+import it.cnr.iit.epas.security.SecurityRules;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 /**
  * Controller con i metodi REST relativi alla visualizzazione e gestione dei riepilogi
@@ -52,6 +64,9 @@ public class PersonDaysController {
   private final PersonDayDao personDayDao;
   private final PersonDayMapper personDayMapper;
   private final PersonFinder personFinder;
+  private final OfficeDao officeDao;
+  private final PersonDayExportManager personDayExportManager;
+  private final SecurityRules rules;
 
   @GetMapping(ApiRoutes.LIST)
   ResponseEntity<List<PersonDayDto>> list(
@@ -69,4 +84,46 @@ public class PersonDaysController {
         personDays.stream().map(personDayMapper::convert).collect(Collectors.toList());
     return ResponseEntity.ok().body(personDaysDto);
   }
-}
\ No newline at end of file
+
+  /**
+   * Tempo massimo per l'esportazione in streaming dei giorni di lavoro di una sede.
+   */
+  static final Duration EXPORT_TIMEOUT = Duration.ofMinutes(30);
+
+  /**
+   * Esportazione in streaming dei giorni di lavoro, con timbrature ed assenze, dei
+   * dipendenti di una sede nel periodo indicato, in formato NDJSON (default) o CSV.
+   * Il tempo massimo della risposta (vedi {@link #EXPORT_TIMEOUT}) vale solo per questa
+   * esportazione e non per le altre richieste asincrone.
+   */
+  @GetMapping("/export")
+  WebAsyncTask<Void> export(
+      @RequestParam("officeId") Long officeId,
+      @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(name = "format", defaultValue = "ndjson") String format,
+      HttpServletResponse response) {
+    log.debug("REST method {} invoked with parameters officeId={}, from={}, to={}, "
+        + "format={}", "/export", officeId, from, to, format);
+    val office = officeDao.byId(officeId)
+        .orElseThrow(() -> new EntityNotFoundException("Office not found with id = "
+            + officeId));
+    rules.checkifPermitted(office);
+
+    val exportFormat = Enums.getIfPresent(ExportFormat.class, format.toUpperCase());
+    if (to.isBefore(from) || !exportFormat.isPresent()) {
+      throw new ValidationException(String.format(
+          "Parametri di esportazione non validi: from=%s, to=%s, format=%s", from, to, format));
+    }
+    response.setContentType(exportFormat.get().contentType);
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, String.format(
+        "attachment; filename=\"persondays-%d-%s-%s.%s\"", officeId, from, to,
+        exportFormat.get().extension));
+    return new WebAsyncTask<>(EXPORT_TIMEOUT.toMillis(), () -> {
+      val out = response.getOutputStream();
+      personDayExportManager.export(officeId, from, to, exportFormat.get(), out);
+      out.flush();
+      return null;
+    });
+  }
+}
@@ -17,6 +17,10 @@
 
 package it.cnr.iit.epas.controller.v4;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -27,15 +31,30 @@ import it.cnr.iit.epas.config.OpenApiConfiguration;
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
 import it.cnr.iit.epas.dto.v4.StampingDto;
 import it.cnr.iit.epas.dto.v4.StampingFromClientDto;
+import it.cnr.iit.epas.dto.v4.StampingFromClientResultDto;
+import it.cnr.iit.epas.dto.v4.StampingFromClientResultDto.Outcome;
 import it.cnr.iit.epas.dto.v4.mapper.StampingDtoMapper;
 import it.cnr.iit.epas.manager.StampingManager;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.exports.StampingFromClient;
 import it.cnr.iit.epas.security.SecurityRules;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.Validator;
 import javax.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -55,16 +74,23 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 class StampingsFromClient {
 
+  public static final String NDJSON = "application/x-ndjson";
+  private static final int BULK_MAX_SIZE = 10_000;
+
   private final StampingManager stampingManager;
   private final StampingDtoMapper stampingDtoMapper;
   private final SecurityRules rules;
+  private final Validator validator;
+  private final ObjectMapper objectMapper;
 
   @Inject
   StampingsFromClient(StampingManager stampingManager, StampingDtoMapper stampingDtoMapper,
-      SecurityRules rules) {
+      SecurityRules rules, Validator validator, ObjectMapper objectMapper) {
     this.stampingManager = stampingManager;
     this.stampingDtoMapper = stampingDtoMapper;
     this.rules = rules;
+    this.validator = validator;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -122,6 +148,142 @@ class StampingsFromClient {
     return genericCreate(stampingFromClientDto, true);
   }
 
+  /**
+   * Inserimento di un insieme di timbrature con ricalcolo dei dati di ogni dipendente
+   * interessato dal giorno della sua timbratura meno recente.
+   */
+  @Operation(
+      summary = "Inserisce un insieme di timbrature ricevute nel formato utilizzato dai client "
+          + "di ePAS.",
+      description = "Inserisce un insieme di timbrature (array json oppure NDJSON, una "
+          + "timbratura per riga) ricevute nel formato utilizzato dai client di ePAS, per "
+          + "esempio al ricollegamento di un lettore dopo un'interruzione. "
+          + "Per ogni timbratura viene restituito l'esito dell'inserimento. L'inserimento "
+          + "scatena il calcolo degli orari di ogni dipendente interessato dal giorno della sua "
+          + "timbratura meno recente fino al giorno corrente.")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "timbrature elaborate, l'esito di ogni "
+          + "timbratura è indicato nella risposta"),
+      @ApiResponse(responseCode = "400", description = "body non corretto oppure con più di "
+          + BULK_MAX_SIZE + " timbrature"),
+      @ApiResponse(responseCode = "403", 
+        description = "autenticazione non presente o utente che ha effettuato la richiesta "
+            + "non associato ad un lettore badge")
+  })
+  @PutMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<List<StampingFromClientResultDto>> bulk(
+      @NotNull @RequestBody List<StampingFromClientDto> stampingFromClientDtos) {
+    return genericBulkCreate(stampingFromClientDtos);
+  }
+
+  /**
+   * Inserimento di un insieme di timbrature in formato NDJSON, lette una riga alla volta
+   * direttamente dal body della richiesta.
+   */
+  @Operation(hidden = true)
+  @PutMapping(value = "/bulk", consumes = NDJSON)
+  public ResponseEntity<List<StampingFromClientResultDto>> bulkNdjson(InputStream body) {
+    final List<StampingFromClientDto> stampingFromClientDtos = Lists.newArrayList();
+    try (MappingIterator<StampingFromClientDto> iterator =
+        objectMapper.readerFor(StampingFromClientDto.class).readValues(body)) {
+      // Oltre il massimo consentito è inutile proseguire la lettura del body.
+      while (iterator.hasNext() && stampingFromClientDtos.size() <= BULK_MAX_SIZE) {
+        stampingFromClientDtos.add(iterator.next());
+      }
+    } catch (IOException | RuntimeException e) {
+      log.info("Ricevuto invio multiplo di timbrature in formato NDJSON non corretto: {}",
+          e.getMessage());
+      return ResponseEntity.badRequest().build();
+    }
+    return genericBulkCreate(stampingFromClientDtos);
+  }
+
+  /**
+   * Effettua l'inserimento di un insieme di timbrature applicando ad ognuna i controlli
+   * sui parametri ed i permessi.
+   */
+  private ResponseEntity<List<StampingFromClientResultDto>> genericBulkCreate(
+      List<StampingFromClientDto> stampingFromClientDtos) {
+    log.debug("Ricevuta richiesta creazione di {} timbrature", stampingFromClientDtos.size());
+
+    if (stampingFromClientDtos.size() > BULK_MAX_SIZE) {
+      log.info("Ricevuta richiesta di creazione di {} timbrature, massimo consentito {}",
+          stampingFromClientDtos.size(), BULK_MAX_SIZE);
+      return ResponseEntity.badRequest().build();
+    }
+
+    final List<StampingFromClientResultDto> results = Lists.newArrayList();
+    final List<StampingFromClient> converted = Lists.newArrayList();
+    for (int index = 0; index < stampingFromClientDtos.size(); index++) {
+      final StampingFromClientDto dto = stampingFromClientDtos.get(index);
+      final StampingFromClientResultDto result = new StampingFromClientResultDto();
+      result.setIndex(index);
+      results.add(result);
+      converted.add(null);
+      if (dto == null || !validator.validate(dto).isEmpty()) {
+        result.setOutcome(Outcome.INVALID);
+        continue;
+      }
+      result.setMatricolaFirma(dto.getMatricolaFirma());
+      Optional<StampingFromClient> stampingFromClient = Optional.empty();
+      try {
+        stampingFromClient = dto.convert();
+      } catch (DateTimeException e) {
+        log.info("Ricevuta timbratura con data non valida: {}", dto);
+      }
+      if (stampingFromClient.isPresent()) {
+        converted.set(index, stampingFromClient.get());
+        result.setDate(stampingFromClient.get().getDateTime());
+      } else {
+        result.setOutcome(Outcome.INVALID);
+      }
+    }
+
+    if (!stampingManager.linkToPeople(converted.stream().filter(Objects::nonNull)
+        .collect(Collectors.toList()))) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+    final Map<Long, Boolean> permittedOffices = Maps.newHashMap();
+    final List<Integer> accepted = Lists.newArrayList();
+    for (int index = 0; index < converted.size(); index++) {
+      final StampingFromClient stampingFromClient = converted.get(index);
+      final StampingFromClientResultDto result = results.get(index);
+      if (stampingFromClient == null) {
+        continue;
+      }
+      if (stampingFromClient.getPerson() == null) {
+        result.setOutcome(Outcome.UNKNOWN_BADGE);
+        continue;
+      }
+      final Office office = stampingFromClient.getPerson().getOffice();
+      if (!permittedOffices.computeIfAbsent(office.getId(), id -> rules.check(office))) {
+        result.setOutcome(Outcome.FORBIDDEN);
+        continue;
+      }
+      if (stampingManager.isTooFarInPast(stampingFromClient.getDateTime())) {
+        log.info("Ignorata timbratura con data troppo nel passato: {}", stampingFromClient);
+        result.setOutcome(Outcome.TOO_OLD);
+        continue;
+      }
+      accepted.add(index);
+    }
+
+    final List<Optional<Stamping>> stampings = stampingManager.createStampingsFromClient(
+        accepted.stream().map(converted::get).collect(Collectors.toList()), true);
+    for (int i = 0; i < accepted.size(); i++) {
+      final StampingFromClientResultDto result = results.get(accepted.get(i));
+      if (stampings.get(i).isPresent()) {
+        result.setOutcome(Outcome.CREATED);
+        result.setStamping(stampingDtoMapper.convert(stampings.get(i).get()));
+      } else {
+        result.setOutcome(Outcome.DUPLICATE);
+      }
+    }
+
+    return ResponseEntity.ok().body(results);
+  }
+
   /**
    * Effettua l'inserimento di una timbratura applicando i controlli
    * sui parametri ed i permessi.
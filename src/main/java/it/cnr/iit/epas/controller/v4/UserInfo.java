@@ -18,8 +18,10 @@
 package it.cnr.iit.epas.controller.v4;
 
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
+import it.cnr.iit.epas.dto.v4.ApprovalCountersDto;
 import it.cnr.iit.epas.dto.v4.UserShowDto;
 import it.cnr.iit.epas.dto.v4.mapper.UserShowMapper;
+import it.cnr.iit.epas.manager.flows.ApprovalInboxManager;
 import it.cnr.iit.epas.models.User;
 import it.cnr.iit.epas.repo.UserRepository;
 import it.cnr.iit.epas.security.SecureUtils;
@@ -48,16 +50,18 @@ public class UserInfo {
   private UserRepository repo;
   private UserShowMapper mapper;
   private SecureUtils securityUtils;
+  private ApprovalInboxManager approvalInboxManager;
   
   /**
    * Costruttore di default per l'injection.
    */
   @Inject
   UserInfo(UserRepository repo, UserShowMapper personMapper,
-      SecureUtils securityUtils) {
+      SecureUtils securityUtils, ApprovalInboxManager approvalInboxManager) {
     this.repo = repo;
     this.mapper = personMapper;
     this.securityUtils = securityUtils;
+    this.approvalInboxManager = approvalInboxManager;
   }
 
   @GetMapping
@@ -72,4 +76,20 @@ public class UserInfo {
         .orElseThrow(() -> new EntityNotFoundException("Person not found"));
     return ResponseEntity.ok().body(mapper.convert(entity));
   }
-}
\ No newline at end of file
+
+  /**
+   * Il numero di richieste di assenza e di informazione che l'utente corrente deve approvare,
+   * per tutti i tipi di richiesta.
+   */
+  @GetMapping("/approvals")
+  ResponseEntity<ApprovalCountersDto> approvals() {
+    Optional<User> user = securityUtils.getCurrentUser();
+    if (!user.isPresent()) {
+      return ResponseEntity.badRequest().build();
+    }
+    val dto = new ApprovalCountersDto();
+    dto.setCounters(approvalInboxManager.pendingCounters(user.get()));
+    dto.setTotal(dto.getCounters().values().stream().mapToLong(Long::longValue).sum());
+    return ResponseEntity.ok().body(dto);
+  }
+}
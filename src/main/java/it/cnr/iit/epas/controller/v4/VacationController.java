@@ -27,6 +27,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirements;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.cnr.iit.epas.config.OpenApiConfiguration;
 import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
+import it.cnr.iit.epas.controller.v4.utils.ETags;
 import it.cnr.iit.epas.controller.v4.utils.PersonFinder;
 import it.cnr.iit.epas.dao.ContractDao;
 import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
@@ -60,6 +61,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @SecurityRequirements(
     value = { 
@@ -83,6 +85,7 @@ class VacationController {
   private final AbsenceService absenceService;
   private final SecurityRules rules;
   private final PersonFinder personFinder;
+  private final ETags eTags;
   
   @Operation(
       summary = "Visualizzazione delle informazioni delle ferie e permessi.",
@@ -93,6 +96,9 @@ class VacationController {
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200",
           description = "Restituiti i dati delle ferie e dei permessi"),
+      @ApiResponse(responseCode = "304",
+          description = "Dati non modificati rispetto all'ETag indicato in If-None-Match",
+          content = @Content),
       @ApiResponse(responseCode = "401",
           description = "Autenticazione non presente", content = @Content),
       @ApiResponse(responseCode = "403",
@@ -108,7 +114,8 @@ class VacationController {
       @RequestParam("personId") Optional<Long> personId,
       @RequestParam("fiscalCode") Optional<String> fiscalCode,
       @NotNull @RequestParam("year") Integer year,
-      @NotNull @RequestParam("month") Integer month) {
+      @NotNull @RequestParam("month") Integer month,
+      WebRequest webRequest) {
     log.debug("REST method {} invoked with parameters year={}, month={}, personId ={}",
         "/rest/v4/vacations" + ApiRoutes.LIST, year, month, personId);
 
@@ -118,7 +125,11 @@ class VacationController {
     rules.checkifPermitted(person);
 
     PersonVacationRecap psrDto = personvacationFactory.create(person, year);
-    return ResponseEntity.ok().body(personVacationMapper.convert(psrDto));
+    val personVacationDto = personVacationMapper.convert(psrDto);
+    if (webRequest.checkNotModified(eTags.of(personVacationDto))) {
+      return null;
+    }
+    return ResponseEntity.ok().body(personVacationDto);
   }
 
   @Operation(
@@ -130,6 +141,9 @@ class VacationController {
   @ApiResponses(value = {
       @ApiResponse(responseCode = "200",
           description = "Restituiti i dati delle ferie e dei permessi"),
+      @ApiResponse(responseCode = "304",
+          description = "Dati non modificati rispetto all'ETag indicato in If-None-Match",
+          content = @Content),
       @ApiResponse(responseCode = "401",
           description = "Autenticazione non presente", content = @Content),
       @ApiResponse(responseCode = "403",
@@ -144,7 +158,8 @@ class VacationController {
   ResponseEntity<PersonVacationSummaryDto> summary(
       @NotNull @RequestParam("contractId") Long contractId,
       @NotNull @RequestParam("year") Integer year,
-      @NotNull @RequestParam("type") TypeSummary typeSummary) {
+      @NotNull @RequestParam("type") TypeSummary typeSummary,
+      WebRequest webRequest) {
     log.debug("REST method {} invoked with parameters contractId={}, year={}, type={}",
         "/rest/v4/vacations/summary", contractId, year, typeSummary);
 
@@ -178,6 +193,9 @@ class VacationController {
     val summaryDto = personVacationDto.getVacationSummary();
     summaryDto.setAbsenceSubPeriods(absenceSubPeriods);
 
+    if (webRequest.checkNotModified(eTags.of(personVacationDto))) {
+      return null;
+    }
     return ResponseEntity.ok().body(personVacationDto);
 
   }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.controller.v4.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import javax.inject.Inject;
+import org.springframework.stereotype.Component;
+
+/**
+ * Calcolo degli ETag delle risposte REST, da utilizzare con
+ * {@link org.springframework.web.context.request.WebRequest#checkNotModified(String)}
+ * per rispondere 304 alle richieste con If-None-Match ancora valido.
+ */
+@Component
+public class ETags {
+
+  private final ObjectMapper objectMapper;
+
+  @Inject
+  ETags(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * L'ETag del contenuto, calcolato sulla sua rappresentazione JSON.
+   *
+   * @param body il contenuto della risposta
+   * @return l'ETag del contenuto.
+   */
+  public String of(Object body) {
+    return of("", body);
+  }
+
+  /**
+   * L'ETag di una risposta composta da una parte già versionata e da una parte calcolata
+   * ad ogni richiesta.
+   *
+   * @param version la versione della parte già versionata
+   * @param body la parte calcolata ad ogni richiesta
+   * @return l'ETag della risposta.
+   */
+  public String of(String version, Object body) {
+    try {
+      return Hashing.murmur3_128().newHasher()
+          .putString(version, StandardCharsets.UTF_8)
+          .putBytes(objectMapper.writeValueAsBytes(body))
+          .hash().toString();
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
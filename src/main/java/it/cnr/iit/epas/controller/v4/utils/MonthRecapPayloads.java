@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.controller.v4.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.util.StdConverter;
+import it.cnr.iit.epas.dto.v4.AbsenceTypeShowTerseDto;
+import it.cnr.iit.epas.dto.v4.PersonStampingRecapDto;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Conversione dei riepiloghi mensili nel formato JSON con cui sono salvati.<br>
+ * Rispetto alla rappresentazione REST i codici di assenza del mese sono salvati come elenco
+ * di coppie codice/numero, così che il riepilogo possa essere riletto nel suo DTO.
+ */
+@Slf4j
+@Component
+public class MonthRecapPayloads {
+
+  private final ObjectMapper payloadMapper;
+
+  @Inject
+  MonthRecapPayloads(ObjectMapper objectMapper) {
+    this.payloadMapper = objectMapper.copy()
+        .addMixIn(PersonStampingRecapDto.class, PersonStampingRecapPayload.class)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  }
+
+  /**
+   * Il riepilogo in formato JSON da salvare.
+   */
+  public String write(PersonStampingRecapDto recap) {
+    try {
+      return payloadMapper.writeValueAsString(recap);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Il riepilogo salvato, vuoto se non leggibile (ad esempio perché salvato con una versione
+   * precedente del DTO).
+   */
+  public Optional<PersonStampingRecapDto> read(String payload) {
+    try {
+      return Optional.of(payloadMapper.readValue(payload, PersonStampingRecapDto.class));
+    } catch (JsonProcessingException e) {
+      log.warn("Riepilogo salvato non leggibile, viene ricalcolato: {}", e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  abstract static class PersonStampingRecapPayload {
+    @JsonSerialize(converter = AbsenceCodesToList.class)
+    @JsonDeserialize(converter = AbsenceCodesFromList.class)
+    Map<AbsenceTypeShowTerseDto, Integer> absenceCodeMap;
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  static class AbsenceCodeCount {
+    private AbsenceTypeShowTerseDto absenceType;
+    private Integer count;
+  }
+
+  static class AbsenceCodesToList
+      extends StdConverter<Map<AbsenceTypeShowTerseDto, Integer>, List<AbsenceCodeCount>> {
+    @Override
+    public List<AbsenceCodeCount> convert(Map<AbsenceTypeShowTerseDto, Integer> value) {
+      return value.entrySet().stream()
+          .map(entry -> new AbsenceCodeCount(entry.getKey(), entry.getValue()))
+          .collect(Collectors.toList());
+    }
+  }
+
+  static class AbsenceCodesFromList
+      extends StdConverter<List<AbsenceCodeCount>, Map<AbsenceTypeShowTerseDto, Integer>> {
+    @Override
+    public Map<AbsenceTypeShowTerseDto, Integer> convert(List<AbsenceCodeCount> value) {
+      return value.stream().collect(
+          Collectors.toMap(AbsenceCodeCount::getAbsenceType, AbsenceCodeCount::getCount));
+    }
+  }
+}
@@ -20,11 +20,13 @@ package it.cnr.iit.epas.dao;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.JPQLQuery;
 import it.cnr.iit.epas.dao.common.DaoBase;
 import it.cnr.iit.epas.helpers.jpa.ModelQuery;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.models.QPersonDay;
+import it.cnr.iit.epas.models.QTimeVariation;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceType;
 import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
@@ -182,6 +184,64 @@ public class AbsenceDao extends DaoBase<Absence> {
 
   }
   
+  /**
+   * Le assenze con codice code di un insieme di persone nel periodo, con le variazioni
+   * orarie associate già caricate.
+   *
+   * @param people le persone
+   * @param begin la data di inizio
+   * @param end la data di fine
+   * @param code il codice di assenza
+   * @return la lista delle assenze.
+   */
+  public List<Absence> absenceInPeriod(
+      Collection<Person> people, LocalDate begin, LocalDate end, String code) {
+    if (people.isEmpty()) {
+      return new ArrayList<>();
+    }
+    final QAbsence absence = QAbsence.absence;
+
+    return getQueryFactory().selectFrom(absence)
+        .leftJoin(absence.personDay).fetchJoin()
+        .leftJoin(absence.timeVariations).fetchJoin()
+        .where(absence.absenceType.code.eq(code)
+            .and(absence.personDay.date.between(begin, end))
+            .and(absence.personDay.person.in(people))).distinct().fetch();
+  }
+
+  /**
+   * Le assenze della persona nel periodo con il tipo di giustificazione indicato ed il cui
+   * tempo da recuperare non è ancora stato completamente recuperato con le variazioni orarie.
+   * Il confronto è effettuato nella query, le assenze restituite hanno il personDay e le
+   * variazioni orarie già caricate.
+   *
+   * @param person la persona
+   * @param from la data da cui cercare
+   * @param to la data fino a cui cercare
+   * @param justifiedTypeName il tipo di giustificazione (es. recover_time)
+   * @return la lista delle assenze ancora da recuperare ordinate per data.
+   */
+  public List<Absence> absencesToRecover(Person person, LocalDate from, LocalDate to,
+      JustifiedTypeName justifiedTypeName) {
+    final QAbsence absence = QAbsence.absence;
+    final QPersonDay personDay = QPersonDay.personDay;
+    final QTimeVariation timeVariation = QTimeVariation.timeVariation1;
+    final QTimeVariation recovered = new QTimeVariation("recovered");
+
+    return getQueryFactory().selectFrom(absence)
+        .leftJoin(absence.personDay, personDay).fetchJoin()
+        .leftJoin(absence.timeVariations, timeVariation).fetchJoin()
+        .where(personDay.person.eq(person)
+            .and(personDay.date.between(from, to))
+            .and(absence.justifiedType.name.eq(justifiedTypeName))
+            .and(absence.timeToRecover.gt(JPAExpressions
+                .select(recovered.timeVariation.sum().coalesce(0))
+                .from(recovered)
+                .where(recovered.absence.eq(absence)))))
+        .orderBy(personDay.date.asc())
+        .distinct().fetch();
+  }
+
   /**
    * ritorna la lista di assenze effettuata nel periodo da from a to da person.
    *
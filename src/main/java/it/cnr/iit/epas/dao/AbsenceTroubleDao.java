@@ -17,8 +17,13 @@
 
 package it.cnr.iit.epas.dao;
 
+import com.google.common.collect.Lists;
 import it.cnr.iit.epas.dao.common.DaoBase;
+import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceTrouble;
+import it.cnr.iit.epas.models.absences.QAbsenceTrouble;
+import java.util.Collection;
+import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
@@ -30,9 +35,29 @@ import org.springframework.stereotype.Component;
 @Component
 public class AbsenceTroubleDao extends DaoBase<AbsenceTrouble> {
 
+  private static final int IN_CLAUSE_SIZE = 1000;
+
   @Inject
   AbsenceTroubleDao(Provider<EntityManager> emp) {
     super(emp);
   }
 
+  /**
+   * I problemi registrati sulle assenze passate, prelevati con poche query invece del
+   * caricamento della collezione troubles di ogni assenza.
+   *
+   * @param absences le assenze persistite
+   * @return la lista dei problemi delle assenze.
+   */
+  public List<AbsenceTrouble> byAbsences(Collection<Absence> absences) {
+    final QAbsenceTrouble absenceTrouble = QAbsenceTrouble.absenceTrouble;
+    List<AbsenceTrouble> troubles = Lists.newArrayList();
+    for (List<Absence> partition
+        : Lists.partition(Lists.newArrayList(absences), IN_CLAUSE_SIZE)) {
+      troubles.addAll(getQueryFactory().selectFrom(absenceTrouble)
+          .where(absenceTrouble.absence.in(partition)).fetch());
+    }
+    return troubles;
+  }
+
 }
\ No newline at end of file
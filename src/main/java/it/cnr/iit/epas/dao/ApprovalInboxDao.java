@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.dao;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.JPAExpressions;
+import it.cnr.iit.epas.dao.common.DaoBase;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.QPerson;
+import it.cnr.iit.epas.models.Role;
+import it.cnr.iit.epas.models.UsersRolesOffices;
+import it.cnr.iit.epas.models.flows.ApprovalInboxItem;
+import it.cnr.iit.epas.models.flows.QAffiliation;
+import it.cnr.iit.epas.models.flows.QApprovalInboxItem;
+import it.cnr.iit.epas.models.flows.enumerate.ApprovalRequestKind;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dao per le approvazioni in attesa delle richieste di assenza e di informazione.
+ */
+@Component
+public class ApprovalInboxDao extends DaoBase<ApprovalInboxItem> {
+
+  /**
+   * I ruoli che approvano le richieste di tutti i dipendenti della propria sede.
+   */
+  public static final Set<String> ROLE_APPROVERS =
+      ImmutableSet.of(Role.SEAT_SUPERVISOR, Role.PERSONNEL_ADMIN);
+
+  @Inject
+  ApprovalInboxDao(Provider<EntityManager> emp) {
+    super(emp);
+  }
+
+  /**
+   * Elimina le approvazioni in attesa della richiesta.
+   *
+   * @param requestKind la tipologia di richiesta
+   * @param requestId l'identificativo della richiesta
+   * @return il numero di approvazioni eliminate.
+   */
+  @Transactional
+  public long deleteByRequest(ApprovalRequestKind requestKind, Long requestId) {
+    final QApprovalInboxItem item = QApprovalInboxItem.approvalInboxItem;
+    return getQueryFactory().delete(item)
+        .where(item.requestKind.eq(requestKind), item.requestId.eq(requestId))
+        .execute();
+  }
+
+  /**
+   * Il numero di richieste in attesa di approvazione da parte di chi ha i ruoli indicati,
+   * raggruppate per tipo di richiesta. La sede del dipendente ed i responsabili dei suoi gruppi
+   * sono quelli attuali, con le stesse condizioni delle liste delle richieste da approvare.
+   *
+   * @param uros i ruoli nelle sedi di chi deve approvare
+   * @param signer la persona che deve approvare
+   * @return la mappa tipo di richiesta -> numero di richieste da approvare (sono presenti solo
+   *     i tipi con almeno una richiesta).
+   */
+  public Map<String, Long> countPendingByType(List<UsersRolesOffices> uros, Person signer) {
+    final QApprovalInboxItem item = QApprovalInboxItem.approvalInboxItem;
+    final QPerson person = QPerson.person;
+    final BooleanBuilder condition = new BooleanBuilder();
+
+    uros.stream().filter(uro -> ROLE_APPROVERS.contains(uro.getRole().getName()))
+        .collect(Collectors.groupingBy(uro -> uro.getRole().getName(),
+            Collectors.mapping(UsersRolesOffices::getOffice, Collectors.toSet())))
+        .forEach((role, offices) -> condition.or(item.approverRole.eq(role)
+            .and(person.office.in(offices))));
+
+    if (signer != null && uros.stream()
+        .anyMatch(uro -> uro.getRole().getName().equals(Role.GROUP_MANAGER))) {
+      final Set<Office> offices = uros.stream().map(UsersRolesOffices::getOffice)
+          .collect(Collectors.toSet());
+      // Come nelle liste delle richieste da approvare: le richieste di assenza solo per i
+      // responsabili dei gruppi del dipendente, quelle di informazione per tutti i
+      // responsabili di gruppo della sede.
+      condition.or(item.approverRole.eq(Role.GROUP_MANAGER)
+          .and(person.office.in(offices))
+          .and(item.requestKind.eq(ApprovalRequestKind.INFORMATION_REQUEST)
+              .or(managedBy(person, signer))));
+    }
+
+    final Map<String, Long> counters = Maps.newHashMap();
+    if (!condition.hasValue()) {
+      return counters;
+    }
+    final NumberExpression<Long> count = item.requestId.countDistinct();
+    for (Tuple row : getQueryFactory().select(item.requestType, count).from(item)
+        .join(item.person, person)
+        .where(condition).groupBy(item.requestType).fetch()) {
+      counters.put(row.get(item.requestType), row.get(count));
+    }
+    return counters;
+  }
+
+  /**
+   * Il dipendente appartiene oggi ad almeno un gruppo di cui signer è responsabile.
+   *
+   * @param person il dipendente che ha effettuato la richiesta
+   * @param signer il responsabile di gruppo
+   * @return la condizione di appartenenza ad un gruppo del responsabile.
+   */
+  public static BooleanExpression managedBy(QPerson person, Person signer) {
+    final QAffiliation affiliation = new QAffiliation("managerAffiliation");
+    final LocalDate today = LocalDate.now();
+    return JPAExpressions.selectOne().from(affiliation)
+        .where(affiliation.person.eq(person), affiliation.group.manager.eq(signer),
+            affiliation.beginDate.before(today),
+            affiliation.endDate.isNull().or(affiliation.endDate.after(today)))
+        .exists();
+  }
+}
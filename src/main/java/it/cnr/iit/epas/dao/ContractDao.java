@@ -208,6 +208,19 @@ public class ContractDao extends DaoBase<Contract> {
         .where(contract.person.eq(person)).orderBy(contract.beginDate.asc()).fetch();
   }
 
+  /**
+   * La lista dei contratti della persona con i relativi piani ferie già prelevati.
+   *
+   * @return la lista dei contratti della persona ordinati per data inizio contratto.
+   */
+  public List<Contract> getPersonContractsWithVacationPeriods(Person person) {
+    QContract contract = QContract.contract;
+    return getQueryFactory().selectFrom(contract)
+        .leftJoin(contract.vacationPeriods).fetchJoin()
+        .where(contract.person.eq(person)).orderBy(contract.beginDate.asc())
+        .distinct().fetch();
+  }
+
   /**
    * Il contratto di una persona ad una certa data.
    *
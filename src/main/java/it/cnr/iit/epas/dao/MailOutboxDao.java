@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.dao;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import it.cnr.iit.epas.dao.common.DaoBase;
+import it.cnr.iit.epas.models.MailOutboxMessage;
+import it.cnr.iit.epas.models.QMailOutboxMessage;
+import it.cnr.iit.epas.models.enumerate.MailOutboxStatus;
+import java.time.LocalDateTime;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import org.hibernate.LockOptions;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dao per la coda delle email in uscita.
+ */
+@Component
+public class MailOutboxDao extends DaoBase<MailOutboxMessage> {
+
+  @Inject
+  MailOutboxDao(Provider<EntityManager> emp) {
+    super(emp);
+  }
+
+  /**
+   * Verifica se una email con la stessa impronta è stata accodata dopo la data indicata
+   * (e non è stata scartata).
+   *
+   * @param deduplicationKey l'impronta dell'email
+   * @param since la data e ora da cui cercare
+   * @return true se l'email è già presente nella coda.
+   */
+  public boolean existsSince(String deduplicationKey, LocalDateTime since) {
+    final QMailOutboxMessage mail = QMailOutboxMessage.mailOutboxMessage;
+    return getQueryFactory().selectOne().from(mail)
+        .where(mail.deduplicationKey.eq(deduplicationKey), mail.createdAt.after(since),
+            mail.status.ne(MailOutboxStatus.FAILED))
+        .fetchFirst() != null;
+  }
+
+  /**
+   * Blocca fino al termine della transazione corrente l'accodamento delle email con la
+   * stessa impronta, attendendo le altre transazioni che accodano la stessa email.
+   * Il blocco (advisory lock di PostgreSQL) non richiede righe né connessioni aggiuntive.
+   *
+   * @param deduplicationKey l'impronta dell'email
+   */
+  public void lock(String deduplicationKey) {
+    emp.get().createNativeQuery(
+        "SELECT COUNT(*) FROM (SELECT pg_advisory_xact_lock(hashtext(:key))) AS l")
+        .setParameter("key", deduplicationKey)
+        .getSingleResult();
+  }
+
+  /**
+   * Elimina le email inviate o scartate accodate prima della data indicata.
+   *
+   * @param before la data e ora limite
+   * @return il numero di email eliminate.
+   */
+  public long deleteCompletedBefore(LocalDateTime before) {
+    final QMailOutboxMessage mail = QMailOutboxMessage.mailOutboxMessage;
+    return getQueryFactory().delete(mail)
+        .where(mail.status.in(MailOutboxStatus.SENT, MailOutboxStatus.FAILED),
+            mail.createdAt.before(before))
+        .execute();
+  }
+
+  /**
+   * Le email da inviare alla data indicata, bloccate in scrittura fino al termine della
+   * transazione. Le email già bloccate da altri invii in corso vengono saltate.
+   *
+   * @param now la data e ora attuale
+   * @param limit il numero massimo di email
+   * @return le email da inviare in ordine di tentativo.
+   */
+  public List<MailOutboxMessage> lockDue(LocalDateTime now, int limit) {
+    final QMailOutboxMessage mail = QMailOutboxMessage.mailOutboxMessage;
+    return new JPAQuery<MailOutboxMessage>(emp.get()).select(mail).from(mail)
+        .where(mail.status.eq(MailOutboxStatus.PENDING), mail.nextAttemptAt.loe(now))
+        .orderBy(mail.nextAttemptAt.asc(), mail.id.asc())
+        .limit(limit)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .setHint("javax.persistence.lock.timeout", LockOptions.SKIP_LOCKED)
+        .fetch();
+  }
+
+  /**
+   * Il numero di email nello stato indicato.
+   */
+  public long countByStatus(MailOutboxStatus status) {
+    final QMailOutboxMessage mail = QMailOutboxMessage.mailOutboxMessage;
+    return getQueryFactory().select(mail.id.count()).from(mail)
+        .where(mail.status.eq(status)).fetchOne();
+  }
+}
@@ -97,6 +97,23 @@ public class MealTicketDao extends DaoBase<MealTicket> {
     return query.fetch();
   }
 
+  /**
+   * Il numero di MealTickets consegnati al contratto nella finestra temporale specificata.
+   *
+   * @param contract contratto
+   * @param interval intervallo
+   * @return il numero dei buoni pasto consegnati e non riconsegnati.
+   */
+  public long countContractMealTickets(Contract contract, DateInterval interval) {
+
+    final QMealTicket mealTicket = QMealTicket.mealTicket;
+
+    return getQueryFactory().selectFrom(mealTicket)
+        .where(mealTicket.contract.eq(contract), mealTicket.returned.eq(false),
+            mealTicket.date.between(interval.getBegin(), interval.getEnd()))
+        .fetchCount();
+  }
+
   /**
    * La scadenza massima precedentemente assegnata ai buoni pasto inseriti per le persone
    * appartenenti all'office passato come argomento.
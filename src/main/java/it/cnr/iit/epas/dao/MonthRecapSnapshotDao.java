@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.dao;
+
+import it.cnr.iit.epas.dao.common.DaoBase;
+import it.cnr.iit.epas.models.MonthRecapSnapshot;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.QMonthRecapSnapshot;
+import java.time.YearMonth;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dao per i riepiloghi mensili già calcolati per la visualizzazione.
+ */
+@Component
+public class MonthRecapSnapshotDao extends DaoBase<MonthRecapSnapshot> {
+
+  @Inject
+  MonthRecapSnapshotDao(Provider<EntityManager> emp) {
+    super(emp);
+  }
+
+  /**
+   * Il riepilogo della persona nel mese, se presente.
+   *
+   * @param person la persona
+   * @param yearMonth il mese
+   * @return il riepilogo se presente.
+   */
+  public Optional<MonthRecapSnapshot> byPersonAndMonth(Person person, YearMonth yearMonth) {
+    final QMonthRecapSnapshot snapshot = QMonthRecapSnapshot.monthRecapSnapshot;
+    return Optional.ofNullable(getQueryFactory().selectFrom(snapshot)
+        .where(snapshot.person.eq(person), snapshot.year.eq(yearMonth.getYear()),
+            snapshot.month.eq(yearMonth.getMonthValue()))
+        .fetchOne());
+  }
+
+  /**
+   * Salva il riepilogo calcolato solo se nel frattempo la versione del mese non è cambiata.
+   *
+   * @param id l'identificativo del riepilogo
+   * @param recapVersion la versione del mese al momento del calcolo
+   * @param personVersion la versione della persona al momento del calcolo
+   * @param payload il riepilogo in formato JSON
+   * @return true se il riepilogo è stato salvato.
+   */
+  @Transactional
+  public boolean storePayload(Long id, long recapVersion, Integer personVersion,
+      String payload) {
+    final QMonthRecapSnapshot snapshot = QMonthRecapSnapshot.monthRecapSnapshot;
+    return getQueryFactory().update(snapshot)
+        .set(snapshot.personVersion, personVersion)
+        .set(snapshot.payload, payload)
+        .where(snapshot.id.eq(id), snapshot.recapVersion.eq(recapVersion))
+        .execute() > 0;
+  }
+
+  /**
+   * Incrementa la versione ed elimina i riepiloghi della persona dal mese indicato in poi.
+   *
+   * @param person la persona
+   * @param from il primo mese interessato
+   * @return il numero di riepiloghi aggiornati.
+   */
+  @Transactional
+  public long touch(Person person, YearMonth from) {
+    final QMonthRecapSnapshot snapshot = QMonthRecapSnapshot.monthRecapSnapshot;
+    return getQueryFactory().update(snapshot)
+        .set(snapshot.recapVersion, snapshot.recapVersion.add(1L))
+        .setNull(snapshot.payload)
+        .where(snapshot.person.eq(person),
+            snapshot.year.gt(from.getYear()).or(snapshot.year.eq(from.getYear())
+                .and(snapshot.month.goe(from.getMonthValue()))))
+        .execute();
+  }
+}
@@ -22,6 +22,8 @@ import static com.querydsl.core.group.GroupBy.groupBy;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Projections;
@@ -63,10 +65,12 @@ import it.cnr.iit.epas.utils.DateInterval;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
@@ -642,6 +646,45 @@ public class PersonDao extends DaoBase<Person> {
         .fetchOne();
   }
 
+  /**
+   * Le persone associate ai numeri di badge passati per il lettore indicato, con un'unica
+   * query (per gruppi di numeri di badge).
+   * Come in {@link #getPersonByBadgeNumber(String, BadgeReader)} vengono considerati anche
+   * i numeri di badge senza gli 0 iniziali.
+   *
+   * @param badgeNumbers i numeri di badge
+   * @param badgeReader il lettore badge
+   * @return la mappa numero di badge (come passato) -> persona, per i badge trovati.
+   */
+  public Map<String, Person> getPeopleByBadgeNumbers(Collection<String> badgeNumbers,
+      BadgeReader badgeReader) {
+
+    final QBadge badge = QBadge.badge;
+
+    final Map<String, String> cleanedBadgeNumbers = badgeNumbers.stream().distinct()
+        .collect(Collectors.toMap(bn -> bn, bn -> bn.replaceFirst("^0+(?!$)", "")));
+    final Set<String> codes = Sets.newHashSet(cleanedBadgeNumbers.keySet());
+    codes.addAll(cleanedBadgeNumbers.values());
+
+    final Map<String, Person> peopleByCode = Maps.newHashMap();
+    for (List<String> slice : Lists.partition(Lists.newArrayList(codes), 1000)) {
+      getQueryFactory().select(badge.code, badge.person).from(badge)
+          .where(badge.badgeReader.eq(badgeReader), badge.code.in(slice))
+          .fetch()
+          .forEach(t -> peopleByCode.put(t.get(badge.code), t.get(badge.person)));
+    }
+
+    final Map<String, Person> people = Maps.newHashMap();
+    cleanedBadgeNumbers.forEach((badgeNumber, cleaned) -> {
+      Person person = peopleByCode.containsKey(badgeNumber)
+          ? peopleByCode.get(badgeNumber) : peopleByCode.get(cleaned);
+      if (person != null) {
+        people.put(badgeNumber, person);
+      }
+    });
+    return people;
+  }
+
   /**
    * Lista di persone per tipo di reperibilità associata.
    *
@@ -959,6 +1002,50 @@ public class PersonDao extends DaoBase<Person> {
 
   }
 
+  /**
+   * Fetch di un gruppo di persone con tutti i dati necessari ai ricalcoli: contratti (con tipi
+   * orario, profili timbratura e riepiloghi), configurazioni della persona, sede e relative
+   * configurazioni. Le query sono le stesse di una singola persona.
+   *
+   * @param ids gli id delle persone
+   * @param begin la data di inizio della finestra dei contratti
+   * @param end la data di fine della finestra dei contratti
+   * @return le persone
+   */
+  public List<Person> fetchPeopleForComputation(Collection<Long> ids, Optional<LocalDate> begin,
+      Optional<LocalDate> end) {
+
+    if (ids.isEmpty()) {
+      return Lists.newArrayList();
+    }
+    final QPerson qperson = QPerson.person;
+    final QOffice qoffice = QOffice.office;
+
+    final List<Person> people = getQueryFactory()
+        .selectFrom(qperson).leftJoin(qperson.contracts).fetchJoin()
+        .leftJoin(qperson.office, qoffice).fetchJoin()
+        .where(qperson.id.in(ids)).distinct()
+        .fetch();
+
+    if (people.isEmpty()) {
+      return people;
+    }
+
+    fetchContracts(Sets.newHashSet(people), begin, end);
+
+    getQueryFactory().selectFrom(qperson)
+        .leftJoin(qperson.personConfigurations).fetchJoin()
+        .where(qperson.in(people)).distinct().fetch();
+
+    final Set<Office> offices = people.stream().map(Person::getOffice)
+        .collect(Collectors.toSet());
+    getQueryFactory().selectFrom(qoffice)
+        .leftJoin(qoffice.configurations).fetchJoin()
+        .where(qoffice.in(offices)).distinct().fetch();
+
+    return people;
+  }
+
   /**
    * Fetch di tutti dati dei contratti attivi nella finestra temporale specificata. Si può filtrare
    * su una specifica persona.
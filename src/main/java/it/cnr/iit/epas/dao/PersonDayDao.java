@@ -17,8 +17,11 @@
 
 package it.cnr.iit.epas.dao;
 
+import com.google.common.collect.Lists;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQuery;
 import it.cnr.iit.epas.dao.common.DaoBase;
 import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
@@ -27,6 +30,7 @@ import it.cnr.iit.epas.models.QPerson;
 import it.cnr.iit.epas.models.QPersonDay;
 import it.cnr.iit.epas.models.QPersonDayInTrouble;
 import it.cnr.iit.epas.models.QStamping;
+import it.cnr.iit.epas.models.Stamping;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.QAbsence;
 import it.cnr.iit.epas.models.absences.QAbsenceType;
@@ -34,11 +38,15 @@ import it.cnr.iit.epas.models.enumerate.StampTypes;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Component;
 
 /**
@@ -131,24 +139,32 @@ public class PersonDayDao extends DaoBase<PersonDay> {
   private List<PersonDay> getPersonDaysFetched(Person person,
       LocalDate begin, Optional<LocalDate> end, boolean fetchAbsences,
       boolean orderedDesc, boolean onlyIsTicketAvailable) {
+    return getPersonDaysFetched(QPersonDay.personDay.person.eq(person), begin, end,
+        fetchAbsences, orderedDesc, onlyIsTicketAvailable);
+  }
+
+  private List<PersonDay> getPersonDaysFetched(Predicate personCondition,
+      LocalDate begin, Optional<LocalDate> end, boolean fetchAbsences,
+      boolean orderedDesc, boolean onlyIsTicketAvailable) {
 
     final QPersonDay personDay = QPersonDay.personDay;
     final QStamping stamping = QStamping.stamping;
 
-    JPQLQuery<PersonDay> query = build(person, begin, end, orderedDesc, onlyIsTicketAvailable);
+    JPQLQuery<PersonDay> query =
+        build(personCondition, begin, end, orderedDesc, onlyIsTicketAvailable);
     query = query.leftJoin(personDay.stampings, stamping).fetchJoin();
     query.fetch();
 
     final QPersonDayInTrouble troubles = QPersonDayInTrouble.personDayInTrouble;
 
-    build(person, begin, end, orderedDesc, onlyIsTicketAvailable)
+    build(personCondition, begin, end, orderedDesc, onlyIsTicketAvailable)
         .leftJoin(personDay.troubles, troubles).fetchJoin()
         .fetch();
 
     final QAbsence absence = QAbsence.absence;
     final QAbsenceType absenceType = QAbsenceType.absenceType;
 
-    return build(person, begin, end, orderedDesc, onlyIsTicketAvailable)
+    return build(personCondition, begin, end, orderedDesc, onlyIsTicketAvailable)
         .leftJoin(personDay.absences, absence).fetchJoin()
         .leftJoin(absence.absenceType, absenceType).fetchJoin()
         .orderBy(personDay.date.asc())
@@ -156,7 +172,7 @@ public class PersonDayDao extends DaoBase<PersonDay> {
 
   }
 
-  private JPQLQuery<PersonDay> build(Person person,
+  private JPQLQuery<PersonDay> build(Predicate personCondition,
       LocalDate begin, Optional<LocalDate> end,
       boolean orderedDesc, boolean onlyIsTicketAvailable) {
 
@@ -168,7 +184,7 @@ public class PersonDayDao extends DaoBase<PersonDay> {
     if (end.isPresent()) {
       condition.and(personDay.date.loe(end.get()));
     }
-    condition.and(personDay.person.eq(person));
+    condition.and(personCondition);
     if (onlyIsTicketAvailable) {
       condition.and(personDay.isTicketAvailable.eq(true));
     }
@@ -201,6 +217,60 @@ public class PersonDayDao extends DaoBase<PersonDay> {
     return getPersonDaysFetched(person, begin, end, false, false, false);
   }
 
+  /**
+   * La lista dei personday di una persona tra begin e end destinata alla sola visualizzazione
+   * (es. tabellone timbrature), con timbrature ed assenze già caricate in due query.
+   * I personday sono caricati in sola lettura: Hibernate non ne conserva lo stato per il
+   * dirty checking e le modifiche apportate per la visualizzazione non vengono salvate.
+   *
+   * @param person la persona
+   * @param begin la data inizio da cui cercare
+   * @param end la data fino a cui cercare
+   * @return la lista dei personday presenti nell'intervallo, ordinati per data.
+   */
+  public List<PersonDay> getPersonDaysForView(Person person, LocalDate begin, LocalDate end) {
+
+    final QPersonDay personDay = QPersonDay.personDay;
+    final QStamping stamping = QStamping.stamping;
+    final QAbsence absence = QAbsence.absence;
+    final QAbsenceType absenceType = QAbsenceType.absenceType;
+    final Predicate condition = personDay.person.eq(person)
+        .and(personDay.date.between(begin, end));
+
+    new JPAQuery<PersonDay>(emp.get()).select(personDay).from(personDay)
+        .leftJoin(personDay.stampings, stamping).fetchJoin()
+        .where(condition).distinct()
+        .setHint(QueryHints.HINT_READONLY, true)
+        .fetch();
+
+    return new JPAQuery<PersonDay>(emp.get()).select(personDay).from(personDay)
+        .leftJoin(personDay.absences, absence).fetchJoin()
+        .leftJoin(absence.absenceType, absenceType).fetchJoin()
+        .where(condition).distinct()
+        .orderBy(personDay.date.asc())
+        .setHint(QueryHints.HINT_READONLY, true)
+        .fetch();
+  }
+
+  /**
+   * La lista dei personday di un insieme di persone tra begin e end, con timbrature,
+   * problemi ed assenze già caricate. Utile nei ricalcoli di più persone per effettuare
+   * le stesse query di una sola persona.
+   *
+   * @param people le persone
+   * @param begin la data inizio da cui cercare
+   * @param end la data fino a cui cercare
+   * @return la lista dei personday presenti in un intervallo temporale, ordinati per data.
+   */
+  public List<PersonDay> getPersonDayInPeriod(Collection<Person> people, LocalDate begin,
+      Optional<LocalDate> end) {
+    if (people.isEmpty()) {
+      return Lists.newArrayList();
+    }
+    return getPersonDaysFetched(QPersonDay.personDay.person.in(people), begin, end,
+        false, false, false);
+  }
+
   /**
    * La lista dei personday di una persona tra begin e end (opzionale).
    *
@@ -396,4 +466,60 @@ public class PersonDayDao extends DaoBase<PersonDay> {
     return getStampTypePersonDaysByOfficeInPeriod(
         StampTypes.MOTIVI_DI_SERVIZIO, office, begin, end);
   }
-}
\ No newline at end of file
+
+  /**
+   * Scorrimento in sola lettura (forward-only) dei giorni di lavoro dei dipendenti della
+   * sede office tra begin e end, ordinati per persona e data e con la persona già caricata.
+   * Le righe vengono prelevate dal db a gruppi di fetchSize, per esportazioni a memoria
+   * costante.
+   *
+   * @param office la sede
+   * @param begin la data di inizio
+   * @param end la data di fine
+   * @param fetchSize il numero di righe prelevate per volta
+   * @return il cursore sui giorni di lavoro, da chiudere al termine dell'utilizzo.
+   */
+  public ScrollableResults scrollPersonDaysByOfficeInPeriod(Office office,
+      LocalDate begin, LocalDate end, int fetchSize) {
+    final QPersonDay personDay = QPersonDay.personDay;
+    final QPerson person = QPerson.person;
+    return new JPAQuery<PersonDay>(emp.get()).select(personDay).from(personDay)
+        .join(personDay.person, person).fetchJoin()
+        .where(person.office.eq(office).and(personDay.date.between(begin, end)))
+        .orderBy(person.id.asc(), personDay.date.asc())
+        .createQuery()
+        .unwrap(org.hibernate.query.Query.class)
+        .setFetchSize(fetchSize)
+        .setReadOnly(true)
+        .scroll(ScrollMode.FORWARD_ONLY);
+  }
+
+  /**
+   * Le timbrature dei giorni di lavoro passati, ordinate per data.
+   *
+   * @param personDays i giorni di lavoro
+   * @return la lista delle timbrature.
+   */
+  public List<Stamping> getStampingsByPersonDays(Collection<PersonDay> personDays) {
+    final QStamping stamping = QStamping.stamping;
+    return getQueryFactory().selectFrom(stamping)
+        .where(stamping.personDay.in(personDays))
+        .orderBy(stamping.date.asc()).fetch();
+  }
+
+  /**
+   * Le assenze dei giorni di lavoro passati, con tipo assenza e tipo di giustificazione
+   * già caricati.
+   *
+   * @param personDays i giorni di lavoro
+   * @return la lista delle assenze.
+   */
+  public List<Absence> getAbsencesByPersonDays(Collection<PersonDay> personDays) {
+    final QAbsence absence = QAbsence.absence;
+    return getQueryFactory().selectFrom(absence)
+        .join(absence.absenceType).fetchJoin()
+        .join(absence.justifiedType).fetchJoin()
+        .where(absence.personDay.in(personDays))
+        .orderBy(absence.id.asc()).fetch();
+  }
+}
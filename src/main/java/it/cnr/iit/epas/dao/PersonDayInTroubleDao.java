@@ -17,19 +17,32 @@
 
 package it.cnr.iit.epas.dao;
 
+import com.google.common.collect.Lists;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.DateExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAExpressions;
 import it.cnr.iit.epas.dao.common.DaoBase;
+import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.PersonDayInTrouble;
+import it.cnr.iit.epas.models.QContract;
+import it.cnr.iit.epas.models.QPerson;
+import it.cnr.iit.epas.models.QPersonDay;
 import it.cnr.iit.epas.models.QPersonDayInTrouble;
 import it.cnr.iit.epas.models.enumerate.Troubles;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.hibernate.Hibernate;
 import org.springframework.stereotype.Component;
 
 /**
@@ -89,4 +102,139 @@ public class PersonDayInTroubleDao extends DaoBase<PersonDayInTrouble> {
         .where(pdit.personDay.eq(pd).and(pdit.cause.eq(trouble))).fetchOne();
     return Optional.ofNullable(result);
   }
-}
\ No newline at end of file
+
+  /**
+   * I personDayInTrouble della persona relativi a giorni che non appartengono all'intervallo
+   * ePAS di alcun contratto della persona.
+   *
+   * @param person la persona
+   * @return la lista dei personDayInTrouble fuori dai contratti.
+   */
+  public List<PersonDayInTrouble> outsideContracts(Person person) {
+    return outsideContracts(QPersonDay.personDay.person.eq(person));
+  }
+
+  /**
+   * I personDayInTrouble delle persone della sede relativi a giorni che non appartengono
+   * all'intervallo ePAS di alcun contratto della persona, prelevati con un'unica query.
+   *
+   * @param office la sede
+   * @return la lista dei personDayInTrouble fuori dai contratti.
+   */
+  public List<PersonDayInTrouble> outsideContracts(Office office) {
+    return outsideContracts(QPersonDay.personDay.person.office.eq(office));
+  }
+
+  /**
+   * I personDayInTrouble delle persone indicate relativi a giorni che non appartengono
+   * all'intervallo ePAS di alcun contratto della persona, prelevati con un'unica query.
+   *
+   * @param personIds gli id delle persone
+   * @return la lista dei personDayInTrouble fuori dai contratti.
+   */
+  public List<PersonDayInTrouble> outsideContracts(Collection<Long> personIds) {
+    if (personIds.isEmpty()) {
+      return Lists.newArrayList();
+    }
+    return outsideContracts(QPersonDay.personDay.person.id.in(personIds));
+  }
+
+  private List<PersonDayInTrouble> outsideContracts(Predicate personCondition) {
+    final QPersonDayInTrouble pdit = QPersonDayInTrouble.personDayInTrouble;
+    final QPersonDay personDay = QPersonDay.personDay;
+    return getQueryFactory().selectFrom(pdit)
+        .join(pdit.personDay, personDay).fetchJoin()
+        .where(personCondition, noContractCovers(personDay))
+        .fetch();
+  }
+
+  /**
+   * Elimina i personDayInTrouble indicati. La rimozione passa dall'entity manager (e quindi
+   * da Envers) e le delete sono inviate a gruppi tramite il batching JDBC. I personDayInTrouble
+   * eliminati sono tolti anche dalle collezioni troubles dei personDay già caricate, in modo
+   * che il contesto di persistenza resti coerente.
+   *
+   * @param troubles i personDayInTrouble da eliminare
+   */
+  @Transactional
+  public void delete(Collection<PersonDayInTrouble> troubles) {
+    for (PersonDayInTrouble trouble : troubles) {
+      if (Hibernate.isInitialized(trouble.getPersonDay().getTroubles())) {
+        trouble.getPersonDay().getTroubles().remove(trouble);
+      }
+      delete(trouble);
+    }
+  }
+
+  /**
+   * I personDayInTrouble da segnalare via email ai dipendenti della sede, con un'unica query
+   * ordinata per persona e data. Sono considerati solo i giorni che appartengono all'intervallo
+   * ePAS del contratto attivo alla data indicata.
+   *
+   * @param office la sede
+   * @param personIds (opzionale) gli id delle persone da considerare
+   * @param from da
+   * @param to fino a
+   * @param troubles i tipi di trouble da segnalare
+   * @param date la data alla quale il contratto deve essere attivo
+   * @return la lista dei personDayInTrouble, con giorno e persona già caricati.
+   */
+  public List<PersonDayInTrouble> toNotify(Office office, Optional<Collection<Long>> personIds,
+      LocalDate from, LocalDate to, Collection<Troubles> troubles, LocalDate date) {
+    final QPersonDayInTrouble pdit = QPersonDayInTrouble.personDayInTrouble;
+    final QPersonDay personDay = QPersonDay.personDay;
+    final QPerson person = QPerson.person;
+    final QContract contract = QContract.contract;
+
+    final BooleanBuilder conditions = new BooleanBuilder(person.office.eq(office)
+        .and(personDay.date.between(from, to))
+        .and(pdit.cause.in(troubles)));
+    if (personIds.isPresent()) {
+      conditions.and(person.id.in(personIds.get()));
+    }
+    conditions.and(JPAExpressions.selectOne().from(contract)
+        .where(contract.person.eq(person),
+            contract.beginDate.loe(date), contractEndsNotBefore(contract, date),
+            contractCovers(contract, personDay.date))
+        .exists());
+
+    return getQueryFactory().selectFrom(pdit)
+        .join(pdit.personDay, personDay).fetchJoin()
+        .join(personDay.person, person).fetchJoin()
+        .where(conditions)
+        .orderBy(person.surname.asc(), person.name.asc(), person.id.asc(), personDay.date.asc())
+        .fetch();
+  }
+
+  /**
+   * Nessun contratto della persona comprende il giorno nel suo intervallo ePAS.
+   */
+  private BooleanExpression noContractCovers(QPersonDay personDay) {
+    final QContract contract = new QContract("coveringContract");
+    return JPAExpressions.selectOne().from(contract)
+        .where(contract.person.eq(personDay.person), contractCovers(contract, personDay.date))
+        .notExists();
+  }
+
+  /**
+   * La data appartiene all'intervallo ePAS del contratto: dall'eventuale data di
+   * inizializzazione (o dall'inizio) alla data di fine esperienza (o di fine contratto).
+   */
+  private static BooleanExpression contractCovers(QContract contract,
+      DateExpression<LocalDate> date) {
+    return contract.sourceDateResidual.isNotNull().and(date.goe(contract.sourceDateResidual))
+        .or(contract.sourceDateResidual.isNull().and(date.goe(contract.beginDate)))
+        .and(contractEndsNotBefore(contract, date));
+  }
+
+  private static BooleanExpression contractEndsNotBefore(QContract contract,
+      DateExpression<LocalDate> date) {
+    return contract.endContract.isNotNull().and(contract.endContract.goe(date))
+        .or(contract.endContract.isNull()
+            .and(contract.endDate.isNull().or(contract.endDate.goe(date))));
+  }
+
+  private static BooleanExpression contractEndsNotBefore(QContract contract, LocalDate date) {
+    return contractEndsNotBefore(contract, Expressions.asDate(date));
+  }
+}
@@ -70,6 +70,22 @@ public class PersonReperibilityDayDao extends DaoBase<PersonReperibilityDay> {
 
   }
 
+  /**
+   * I giorni di reperibilità della persona nell'intervallo from-to.
+   *
+   * @param person la persona
+   * @param from   la data di inizio
+   * @param to     la data di fine
+   * @return le date in cui la persona è reperibile nell'intervallo.
+   */
+  public List<LocalDate> getPersonReperibilityDates(Person person, LocalDate from,
+      LocalDate to) {
+    QPersonReperibilityDay prd = QPersonReperibilityDay.personReperibilityDay;
+    return getQueryFactory().select(prd.date).from(prd)
+        .where(prd.personReperibility.person.eq(person).and(prd.date.between(from, to)))
+        .fetch();
+  }
+
   /**
    * Metodo che ritorna, una lista di personreperibilityday che rispondono ai parametri passati.
    *
@@ -237,4 +237,20 @@ public class PersonShiftDayDao extends DaoBase<PersonShiftDay> {
         .orderBy(shiftDay.date.asc()).fetch();
   }
 
+  /**
+   * I giorni di turno di una persona in un periodo.
+   *
+   * @param person la persona
+   * @param from la data di inizio
+   * @param to la data di fine
+   * @return le date in cui la persona è in turno nel periodo.
+   */
+  public List<LocalDate> listDatesByPeriod(Person person, LocalDate from, LocalDate to) {
+    final QPersonShiftDay shiftDay = QPersonShiftDay.personShiftDay;
+    return getQueryFactory().select(shiftDay.date).from(shiftDay)
+        .where(shiftDay.personShift.person.eq(person)
+            .and(shiftDay.date.goe(from).and(shiftDay.date.loe(to))))
+        .fetch();
+  }
+
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Predicate;
 import it.cnr.iit.epas.dao.common.DaoBase;
 import it.cnr.iit.epas.helpers.jpa.ModelQuery;
 import it.cnr.iit.epas.helpers.jpa.ModelQuery.SimpleResults;
@@ -30,6 +31,7 @@ import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.QBadgeReader;
 import it.cnr.iit.epas.models.QPerson;
 import it.cnr.iit.epas.models.QUser;
+import it.cnr.iit.epas.models.QUsersRolesOffices;
 import it.cnr.iit.epas.models.Role;
 import it.cnr.iit.epas.models.User;
 import it.cnr.iit.epas.models.enumerate.AccountRole;
@@ -136,6 +138,46 @@ public class UserDao extends DaoBase<User> {
           .fetchOne());
   }
 
+  /**
+   * L'user attivo con l'username passato, prelevato insieme ai dati utilizzati per il
+   * controllo dei permessi: ruoli di sistema, ruoli nelle sedi, persona associata e
+   * lettori badge.
+   */
+  public Optional<User> fetchForAuthenticationByUsername(String username) {
+    final QUser user = QUser.user;
+    return fetchForAuthentication(
+        user.disabled.isFalse().and(user.username.equalsIgnoreCase(username)));
+  }
+
+  /**
+   * L'user la cui persona associata ha l'eppn passato, prelevato insieme ai dati utilizzati
+   * per il controllo dei permessi (vedi {@link #fetchForAuthenticationByUsername(String)}).
+   */
+  public Optional<User> fetchForAuthenticationByEppn(String eppn) {
+    return fetchForAuthentication(QPerson.person.eppn.equalsIgnoreCase(eppn));
+  }
+
+  private Optional<User> fetchForAuthentication(Predicate condition) {
+    final QUser user = QUser.user;
+    final QUsersRolesOffices uro = QUsersRolesOffices.usersRolesOffices;
+    final User fetched = getQueryFactory().selectFrom(user).distinct()
+        .leftJoin(user.usersRolesOffices, uro).fetchJoin()
+        .leftJoin(uro.role).fetchJoin()
+        .leftJoin(uro.office).fetchJoin()
+        .leftJoin(user.roles).fetchJoin()
+        .leftJoin(user.person, QPerson.person).fetchJoin()
+        .where(condition).fetchOne();
+    if (fetched == null) {
+      return Optional.empty();
+    }
+    // I lettori badge sono una seconda collezione di tipo lista, non prelevabile con la
+    // stessa query, vengono inizializzati sulla stessa istanza.
+    getQueryFactory().selectFrom(user)
+        .leftJoin(user.badgeReaders).fetchJoin()
+        .where(user.id.eq(fetched.getId())).fetch();
+    return Optional.of(fetched);
+  }
+
   /**
    * Tutti gli username già presenti che contengono il pattern all'interno del proprio username.
    *
@@ -17,10 +17,8 @@
 
 package it.cnr.iit.epas.dao;
 
-import com.google.common.base.Verify;
 import com.querydsl.core.BooleanBuilder;
 import it.cnr.iit.epas.dao.common.DaoBase;
-import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.ContractWorkingTimeType;
 import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
@@ -29,8 +27,6 @@ import it.cnr.iit.epas.models.QWorkingTimeType;
 import it.cnr.iit.epas.models.WorkingTimeType;
 import it.cnr.iit.epas.models.WorkingTimeTypeDay;
 import it.cnr.iit.epas.models.dto.HorizontalWorkingTime;
-import it.cnr.iit.epas.utils.DateInterval;
-import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -49,12 +45,9 @@ import org.springframework.stereotype.Component;
 @Component
 public class WorkingTimeTypeDao extends DaoBase<WorkingTimeType> {
 
-  private final ContractDao contractDao;
-
   @Inject
-  WorkingTimeTypeDao(Provider<EntityManager> emp, ContractDao contractDao) {
+  WorkingTimeTypeDao(Provider<EntityManager> emp) {
     super(emp);
-    this.contractDao = contractDao;
   }
 
   public WorkingTimeTypeDay merge(WorkingTimeTypeDay wttd) {
@@ -138,19 +131,7 @@ public class WorkingTimeTypeDao extends DaoBase<WorkingTimeType> {
    * @return il tipo orario se presente
    */
   public Optional<WorkingTimeType> getWorkingTimeType(LocalDate date, Person person) {
-
-    Contract contract = contractDao.getContract(date, person);
-
-    if (contract != null) {
-      for (ContractWorkingTimeType cwtt : contract.getContractWorkingTimeType()) {
-
-        if (DateUtility.isDateIntoInterval(
-            date, new DateInterval(cwtt.getBeginDate(), cwtt.getEndDate()))) {
-          return Optional.of(cwtt.getWorkingTimeType());
-        }
-      }
-    }
-    return Optional.empty();
+    return person.timeline().getWorkingTimeType(date);
   }
 
   /**
@@ -161,23 +142,7 @@ public class WorkingTimeTypeDao extends DaoBase<WorkingTimeType> {
    * @return il tipo orario del giorno se presente
    */
   public Optional<WorkingTimeTypeDay> getWorkingTimeTypeDay(LocalDate date, Person person) {
-    Optional<WorkingTimeType> wtt = getWorkingTimeType(date, person);
-    if (!wtt.isPresent()) {
-      return Optional.empty();
-    }
-    int index = date.getDayOfWeek().getValue() - 1;
-    Verify.verify(index < wtt.get().getWorkingTimeTypeDays().size(),
-        String.format("Definiti %d giorni nel WorkingTimeType %s, "
-                + "richiesto giorno non presente con indice %d",
-            wtt.get().getWorkingTimeTypeDays().size(), wtt.get(), index));
-
-    Optional<WorkingTimeTypeDay> wttd =
-        Optional.ofNullable(wtt.get().getWorkingTimeTypeDays().get(index));
-
-    Verify.verify(wttd.isPresent());
-    Verify.verify(wttd.get().getDayOfWeek() == date.getDayOfWeek().getValue());
-
-    return wttd;
+    return person.timeline().getWorkingTimeTypeDay(date);
   }
 
   /**
@@ -68,8 +68,13 @@ public abstract class DaoBase<T extends BaseEntity> {
     emp.get().remove(object);
   }
 
+  /**
+   * Ricarica l'oggetto dal db. Le modifiche in sospeso sono prima inviate al db: con gli
+   * id assegnati tramite sequenze le insert non sono eseguite al momento del persist.
+   */
   @Transactional
   public void refresh(T object) {
+    emp.get().flush();
     emp.get().refresh(object);
   }
 
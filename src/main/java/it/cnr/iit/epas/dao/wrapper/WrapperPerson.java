@@ -110,19 +110,28 @@ public class WrapperPerson implements IWrapperPerson {
     return value;
   }
 
+  /**
+   * Imposta la persona. Se la persona cambia vengono azzerate le variabili lazy
+   * calcolate per la persona precedente.
+   */
   public IWrapperPerson setValue(Person person) {
+    if (this.value != person) {
+      this.sortedContracts = null;
+      this.currentContract = null;
+      this.previousContract = null;
+      this.currentWorkingTimeType = null;
+      this.currentVacationPeriod = null;
+      this.currentContractStampProfile = null;
+      this.currentContractWorkingTimeType = null;
+      this.properSynchronized = Optional.empty();
+    }
     this.value = person;
     return this;
   }
   
   @Override
   public boolean isActiveInDay(LocalDate date) {
-    for (Contract contract : orderedMonthContracts(date.getYear(), date.getMonthValue())) {
-      if (DateUtility.isDateIntoInterval(date, contract.periodInterval())) {
-        return true;
-      }
-    }
-    return false;
+    return value.timeline().isActive(date);
   }
 
   @Override
@@ -142,8 +151,7 @@ public class WrapperPerson implements IWrapperPerson {
       return currentContract;
     }
     if (currentContract == null) {
-      currentContract = Optional.ofNullable(
-          contractDao.getContract(LocalDate.now(), value));
+      currentContract = value.timeline().getContract(LocalDate.now());
     }
 
     return currentContract;
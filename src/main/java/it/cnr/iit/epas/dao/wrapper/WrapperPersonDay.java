@@ -17,12 +17,9 @@
 
 package it.cnr.iit.epas.dao.wrapper;
 
-import com.google.common.base.Preconditions;
-import it.cnr.iit.epas.dao.ContractDao;
 import it.cnr.iit.epas.dao.PersonDayDao;
 import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.ContractStampProfile;
-import it.cnr.iit.epas.models.ContractWorkingTimeType;
 import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.PersonalWorkingTime;
 import it.cnr.iit.epas.models.Stamping;
@@ -52,7 +49,6 @@ import org.springframework.web.context.annotation.RequestScope;
 public class WrapperPersonDay implements IWrapperPersonDay {
 
   private PersonDay value;
-  private final ContractDao contractDao;
   private final PersonDayDao personDayDao;
   private final Provider<IWrapperFactory> factory;
   private Optional<PersonDay> previousForProgressive = null;
@@ -63,14 +59,24 @@ public class WrapperPersonDay implements IWrapperPersonDay {
   private Optional<PersonalWorkingTime> personalWorkingTime = null;
 
   @Inject
-  WrapperPersonDay(ContractDao contractDao,
-                   PersonDayDao personDayDao, Provider<IWrapperFactory> factory) {
-    this.contractDao = contractDao;
+  WrapperPersonDay(PersonDayDao personDayDao, Provider<IWrapperFactory> factory) {
     this.personDayDao = personDayDao;
     this.factory = factory;
   }
 
+  /**
+   * Imposta il personDay. Se il personDay cambia vengono azzerate le variabili lazy
+   * calcolate per il personDay precedente.
+   */
   public IWrapperPersonDay setValue(PersonDay pd) {
+    if (this.value != pd) {
+      this.previousForProgressive = null;
+      this.previousForNightStamp = null;
+      this.personDayContract = null;
+      this.isFixedTimeAtWorkk = null;
+      this.workingTimeTypeDay = null;
+      this.personalWorkingTime = null;
+    }
     this.value = pd;
     return this;
   }
@@ -218,14 +224,8 @@ public class WrapperPersonDay implements IWrapperPersonDay {
       return this.personDayContract;
     }
 
-    Contract contract = contractDao.getContract(this.value.getDate(), this.value.getPerson());
-
-    if (contract == null) {
-      this.personDayContract = Optional.empty();
-      return this.personDayContract;
-    }
-
-    this.personDayContract = Optional.ofNullable(contract);
+    this.personDayContract =
+        this.value.getPerson().timeline().getContract(this.value.getDate());
 
     return this.personDayContract;
   }
@@ -270,31 +270,17 @@ public class WrapperPersonDay implements IWrapperPersonDay {
       return this.workingTimeTypeDay;
     }
 
-    if (getPersonDayContract().isPresent()) {
-      log.trace("WrapperPersonDay::getWorkingTimeTypeDay() -> trovato contratto nel giorno {}",
-          getValue().getDate());
-      for (ContractWorkingTimeType cwtt :
-              this.getPersonDayContract().get().getContractWorkingTimeType()) {
-
-        if (DateUtility.isDateIntoInterval(this.value.getDate(),
-                factory.get().create(cwtt).getDateInverval())) {
-
-          WorkingTimeTypeDay wttd = cwtt.getWorkingTimeType().getWorkingTimeTypeDays()
-                  .get(this.value.getDate().getDayOfWeek().getValue() - 1);
-
-          Preconditions.checkState(wttd.dayOfWeek == value.getDate().getDayOfWeek().getValue());
-          return Optional.ofNullable(wttd);
-        }
-
-      }
-    } else {
+    if (!getPersonDayContract().isPresent()) {
       log.info("WrapperPersonDay::getWorkingTimeTypeDay() -> contratto non presente "
           + "per {} nel giorno {}", 
           getValue().getPerson().getFullname(), getValue().getDate());
     }
-    return Optional.empty();
+    this.workingTimeTypeDay =
+        this.value.getPerson().timeline().getWorkingTimeTypeDay(this.value.getDate());
+    return this.workingTimeTypeDay;
   }
 
+
   /**
    * L'ultima timbratura in ordine di tempo nel giorno.
    */
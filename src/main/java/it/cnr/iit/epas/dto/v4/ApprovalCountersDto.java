@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.dto.v4;
+
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * DTO con il numero di richieste di assenza e di informazione da approvare da parte
+ * dell'utente corrente.
+ */
+@Data
+public class ApprovalCountersDto {
+
+  /**
+   * Numero di richieste da approvare per tipo di richiesta.
+   */
+  private Map<String, Long> counters;
+
+  /**
+   * Numero totale di richieste da approvare.
+   */
+  private long total;
+}
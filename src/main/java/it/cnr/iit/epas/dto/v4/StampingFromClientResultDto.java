@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.dto.v4;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * DTO con l'esito dell'inserimento di una timbratura ricevuta in un invio multiplo.
+ */
+@Data
+@EqualsAndHashCode
+@Schema(description = "Esito dell'inserimento di una timbratura di un invio multiplo.")
+public class StampingFromClientResultDto {
+
+  /**
+   * Esiti possibili dell'inserimento di una timbratura.
+   */
+  public enum Outcome {
+    CREATED, DUPLICATE, UNKNOWN_BADGE, TOO_OLD, FORBIDDEN, INVALID
+  }
+
+  @Schema(description = "Posizione della timbratura nell'invio (a partire da 0)")
+  private int index;
+
+  @Schema(description = "Numero di badge indicato nella timbratura")
+  private String matricolaFirma;
+
+  @Schema(description = "Data e ora della timbratura")
+  private LocalDateTime date;
+
+  @Schema(description = "Esito dell'inserimento")
+  private Outcome outcome;
+
+  @Schema(description = "La timbratura inserita, presente solo se l'esito è CREATED")
+  private StampingDto stamping;
+}
@@ -19,6 +19,7 @@ package it.cnr.iit.epas.dto.v4.mapper;
 
 import it.cnr.iit.epas.dto.v4.AbsencePeriodDto;
 import it.cnr.iit.epas.dto.v4.ContractShowDto;
+import it.cnr.iit.epas.dto.v4.OfficeVacationSituationDto;
 import it.cnr.iit.epas.dto.v4.PeriodChainDto;
 import it.cnr.iit.epas.dto.v4.PersonVacationDto;
 import it.cnr.iit.epas.dto.v4.VacationCodeDto;
@@ -30,6 +31,7 @@ import it.cnr.iit.epas.manager.services.absences.model.AbsencePeriod;
 import it.cnr.iit.epas.manager.services.absences.model.PeriodChain;
 import it.cnr.iit.epas.manager.services.absences.model.VacationSituation;
 import it.cnr.iit.epas.manager.services.absences.model.VacationSituation.VacationSummary;
+import it.cnr.iit.epas.manager.services.absences.model.VacationSummaryCached;
 import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.VacationPeriod;
 import it.cnr.iit.epas.models.enumerate.VacationCode;
@@ -75,4 +77,34 @@ public interface PersonVacationMapper {
   @Mapping(target = "title", expression = "java(vacationSummary.title())")
   VacationSummaryTerseDto convert(VacationSummary vacationSummary);
 
-}
\ No newline at end of file
+  @Mapping(target = "personId", source = "person.id")
+  @Mapping(target = "fullname", source = "person.fullname")
+  @Mapping(target = "number", source = "person.number")
+  @Mapping(target = "contractId", source = "contract.id")
+  @Mapping(target = "contractBegin", source = "contract.beginDate")
+  @Mapping(target = "contractEnd", expression = "java(situation.contract.calculatedEnd())")
+  @Mapping(target = "lastYear", source = "lastYearCached")
+  @Mapping(target = "currentYear", source = "currentYearCached")
+  @Mapping(target = "permissions", source = "permissionsCached")
+  OfficeVacationSituationDto convertToOffice(VacationSituation situation);
+
+  /**
+   * Il riepilogo in cache, null se il riepilogo non esiste.
+   */
+  default VacationSummaryTerseDto convert(VacationSummaryCached cached) {
+    if (cached == null || !cached.exists) {
+      return null;
+    }
+    VacationSummaryTerseDto dto = new VacationSummaryTerseDto();
+    dto.setType(cached.type);
+    dto.setYear(cached.year);
+    dto.setDate(cached.date);
+    dto.setTotal(cached.total);
+    dto.setAccrued(cached.accrued);
+    dto.setUsed(cached.used);
+    dto.setUsableTotal(cached.usableTotal);
+    dto.setUsable(cached.usable);
+    return dto;
+  }
+
+}
@@ -51,6 +51,7 @@ import it.cnr.iit.epas.helpers.jpa.ModelQuery;
 import it.cnr.iit.epas.manager.SecureManager;
 import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
+import it.cnr.iit.epas.manager.flows.ApprovalInboxManager;
 import it.cnr.iit.epas.models.BadgeReader;
 import it.cnr.iit.epas.models.BadgeSystem;
 import it.cnr.iit.epas.models.CompetenceCode;
@@ -69,15 +70,12 @@ import it.cnr.iit.epas.models.absences.AbsenceType;
 import it.cnr.iit.epas.models.absences.AmountType;
 import it.cnr.iit.epas.models.absences.CategoryGroupAbsenceType;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType;
-import it.cnr.iit.epas.models.base.InformationRequest;
 import it.cnr.iit.epas.models.contractuals.ContractualReference;
 import it.cnr.iit.epas.models.enumerate.InformationType;
 import it.cnr.iit.epas.models.enumerate.LimitType;
 import it.cnr.iit.epas.models.enumerate.StampTypes;
 import it.cnr.iit.epas.models.enumerate.TeleworkStampTypes;
-import it.cnr.iit.epas.models.flows.AbsenceRequest;
 import it.cnr.iit.epas.models.flows.CompetenceRequest;
-import it.cnr.iit.epas.models.flows.Group;
 import it.cnr.iit.epas.models.flows.enumerate.AbsenceRequestType;
 import it.cnr.iit.epas.models.flows.enumerate.CompetenceRequestType;
 import it.cnr.iit.epas.security.SecureUtils;
@@ -88,11 +86,14 @@ import java.time.LocalDateTime;
 //import play.Play;
 //import synch.diagnostic.SynchDiagnostic;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 /**
  * Metodi usabili nel template.
@@ -102,6 +103,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class TemplateUtility {
   
+  private static final String APPROVAL_COUNTERS_ATTRIBUTE =
+      TemplateUtility.class.getName() + ".approvalCounters";
   private static final String WORKDAYS_REP = "207";
   private static final String HOLIDAYS_REP = "208";
   //private static final String FLOWS_ACTIVE = "flows.active";
@@ -132,6 +135,7 @@ public class TemplateUtility {
   private final InformationRequestDao informationRequestDao;
   private final GeneralSettingDao generalSettingDao;
   private final SecureUtils secureUtils;
+  private final ApprovalInboxManager approvalInboxManager;
   
   /**
    * Costruttotore di default per l'injection dei vari componenti.
@@ -151,7 +155,8 @@ public class TemplateUtility {
       ContractualReferenceDao contractualReferenceDao, AbsenceRequestDao absenceRequestDao,
       UsersRolesOfficesDao uroDao, GroupDao groupDao, TimeSlotDao timeSlotDao,
       CompetenceRequestDao competenceRequestDao, InformationRequestDao informationRequestDao,
-      GeneralSettingDao generalSettingDao, SecureUtils secureUtils) {
+      GeneralSettingDao generalSettingDao, SecureUtils secureUtils,
+      ApprovalInboxManager approvalInboxManager) {
 
     this.secureManager = secureManager;
     this.officeDao = officeDao;
@@ -177,6 +182,7 @@ public class TemplateUtility {
     this.informationRequestDao = informationRequestDao;
     this.generalSettingDao = generalSettingDao;
     this.secureUtils = secureUtils;
+    this.approvalInboxManager = approvalInboxManager;
 
     //FIXME da correggere prima del pasasggio a spring boot
     notifications = MemoizedResults
@@ -241,17 +247,7 @@ public class TemplateUtility {
    * @return la quantità di riposi compensativi da approvare.
    */
   public final int compensatoryRestRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<Group> groups = 
-        groupDao.groupsByOffice(user.getPerson().getOffice(), Optional.empty(), Optional.of(false));
-    Set<AbsenceRequest> results = absenceRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            AbsenceRequestType.COMPENSATORY_REST, groups, user.getPerson());
-    return results.size();
+    return pendingApprovals(AbsenceRequestType.COMPENSATORY_REST.name());
   }
   
   /**
@@ -261,18 +257,7 @@ public class TemplateUtility {
    * @return la quantità di richieste ferie da approvare.
    */
   public final int vacationRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<Group> groups = 
-        groupDao.groupsByOffice(user.getPerson().getOffice(), Optional.empty(), Optional.of(false));
-    Set<AbsenceRequest> results = absenceRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            AbsenceRequestType.VACATION_REQUEST, groups, user.getPerson());
-
-    return results.size();
+    return pendingApprovals(AbsenceRequestType.VACATION_REQUEST.name());
   }
   
   /**
@@ -282,18 +267,7 @@ public class TemplateUtility {
    * @return la quantità di richieste di permesso personale da approvare.
    */
   public final int personalPermissionRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<Group> groups = 
-        groupDao.groupsByOffice(user.getPerson().getOffice(), Optional.empty(), Optional.of(false));
-    Set<AbsenceRequest> results = absenceRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            AbsenceRequestType.PERSONAL_PERMISSION, groups, user.getPerson());
-
-    return results.size();
+    return pendingApprovals(AbsenceRequestType.PERSONAL_PERMISSION.name());
   }
   
   /**
@@ -303,18 +277,7 @@ public class TemplateUtility {
    * @return la quantità di richieste ferie anno passato post deadline da approvare.
    */
   public final int vacationPastYearAfterDeadlineRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<Group> groups = 
-        groupDao.groupsByOffice(user.getPerson().getOffice(), Optional.empty(), Optional.of(false));
-    Set<AbsenceRequest> results = absenceRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            AbsenceRequestType.VACATION_PAST_YEAR_AFTER_DEADLINE_REQUEST, groups, user.getPerson());
-
-    return results.size();
+    return pendingApprovals(AbsenceRequestType.VACATION_PAST_YEAR_AFTER_DEADLINE_REQUEST.name());
   }
 
   /**
@@ -344,16 +307,7 @@ public class TemplateUtility {
    * @return la quantità di richieste di telelavoro pendenti.
    */
   public final int teleworkRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<InformationRequest> results = informationRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            InformationType.TELEWORK_INFORMATION, user.getPerson());
-
-    return results.size();
+    return pendingApprovals(InformationType.TELEWORK_INFORMATION.name());
   }
   
   /**
@@ -362,16 +316,7 @@ public class TemplateUtility {
    * @return la quantità di richieste di uscite di servizio pendenti.
    */
   public final int serviceRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<InformationRequest> results = informationRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            InformationType.SERVICE_INFORMATION, user.getPerson());
-
-    return results.size();
+    return pendingApprovals(InformationType.SERVICE_INFORMATION.name());
   }
   
   /**
@@ -380,18 +325,39 @@ public class TemplateUtility {
    * @return la quantità di richieste di informazione di malattia pendenti.
    */
   public final int illnessRequests() {
-    User user = secureUtils.getCurrentUser().get();
-    if (user.isSystemUser()) {
-      return 0;
-    }
-    List<UsersRolesOffices> roleList = uroDao.getUsersRolesOfficesByUser(user);
-    List<InformationRequest> results = informationRequestDao
-        .toApproveResults(roleList, Optional.empty(), Optional.empty(), 
-            InformationType.ILLNESS_INFORMATION, user.getPerson());
+    return pendingApprovals(InformationType.ILLNESS_INFORMATION.name());
+  }
 
-    return results.size();
+
+  /**
+   * Il numero di richieste da approvare per ogni tipo di richiesta di assenza e di
+   * informazione, letti dalla lista delle approvazioni in attesa con un'unica query.
+   * All'interno della stessa richiesta i contatori sono calcolati una sola volta.
+   *
+   * @return la mappa tipo di richiesta -> numero di richieste da approvare.
+   */
+  @SuppressWarnings("unchecked")
+  public final Map<String, Long> approvalCounters() {
+    final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes != null) {
+      final Map<String, Long> counters = (Map<String, Long>) attributes
+          .getAttribute(APPROVAL_COUNTERS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+      if (counters != null) {
+        return counters;
+      }
+    }
+    final Map<String, Long> counters =
+        approvalInboxManager.pendingCounters(secureUtils.getCurrentUser().get());
+    if (attributes != null) {
+      attributes.setAttribute(APPROVAL_COUNTERS_ATTRIBUTE, counters,
+          RequestAttributes.SCOPE_REQUEST);
+    }
+    return counters;
   }
 
+  private int pendingApprovals(String requestType) {
+    return approvalCounters().getOrDefault(requestType, 0L).intValue();
+  }
 
   /**
    * Metodo di utilità per il nome del mese.
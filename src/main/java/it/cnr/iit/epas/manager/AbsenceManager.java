@@ -34,6 +34,7 @@ import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.dao.wrapper.IWrapperPerson;
 import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
+import it.cnr.iit.epas.manager.recaps.personstamping.MonthRecapSnapshotManager;
 import it.cnr.iit.epas.manager.response.AbsenceInsertReport;
 import it.cnr.iit.epas.manager.response.AbsencesResponse;
 import it.cnr.iit.epas.manager.services.absences.AbsenceService.InsertReport;
@@ -95,6 +96,8 @@ public class AbsenceManager {
   private final NotificationManager notificationManager;
   private final SecurityRules rules;
   private final SecureUtils secureUtils;
+  private final MailOutboxManager mailOutboxManager;
+  private final MonthRecapSnapshotManager monthRecapSnapshotManager;
 
   /**
    * Costruttore.
@@ -129,7 +132,9 @@ public class AbsenceManager {
       IWrapperFactory wrapperFactory,
       NotificationManager notificationManager,
       SecurityRules rules,
-      SecureUtils secureUtils) {
+      SecureUtils secureUtils,
+      MailOutboxManager mailOutboxManager,
+      MonthRecapSnapshotManager monthRecapSnapshotManager) {
     this.personDao = personDao;
     this.absenceComponentDao = absenceComponentDao;
     this.contractMonthRecapManager = contractMonthRecapManager;
@@ -147,6 +152,8 @@ public class AbsenceManager {
     this.notificationManager = notificationManager;
     this.rules = rules;
     this.secureUtils = secureUtils;
+    this.mailOutboxManager = mailOutboxManager;
+    this.monthRecapSnapshotManager = monthRecapSnapshotManager;
   }
 
   /**
@@ -408,6 +415,9 @@ public class AbsenceManager {
       if (air.getAbsenceInReperibilityOrShift() > 0) {
         sendReperibilityShiftEmail(person, air.datesInReperibilityOrShift());
       }
+    } else if (!onlySimulation) {
+      // Senza ricalcolo sono comunque invalidati i riepiloghi mensili salvati
+      monthRecapSnapshotManager.touch(person, dateFrom);
     }
     return air;
   }
@@ -550,8 +560,7 @@ public class AbsenceManager {
       // TODO GESTIRE L'Eccezione nella generazione dell'email
       ex.printStackTrace();
     }
-    //FIXME: correggere prima del passaggio a spring boot
-    //Mail.send(email);
+    mailOutboxManager.enqueue(email);
   }
 
   /**
@@ -19,6 +19,7 @@ package it.cnr.iit.epas.manager;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import it.cnr.iit.epas.config.RecomputationProperties;
 import it.cnr.iit.epas.dao.AbsenceDao;
 import it.cnr.iit.epas.dao.OfficeDao;
 import it.cnr.iit.epas.dao.PersonDao;
@@ -35,6 +36,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
@@ -61,6 +63,8 @@ public class ConsistencyManager {
   private final SecureManager secureManager;
   private final ConsistencyManagerUtils consistencyManagerUtils;
   private final ConsistencyManagerAsync consistencyManagerAsync;
+  private final RecomputationScheduler recomputationScheduler;
+  private final RecomputationProperties recomputationProperties;
   private final Provider<IWrapperFactory> wrapperFactory;
   private final Provider<EntityManager> emp;
 
@@ -74,6 +78,8 @@ public class ConsistencyManager {
       SecureManager secureManager,
       ConsistencyManagerUtils consistencyManagerUtils,
       ConsistencyManagerAsync consistencyManagerAsync,
+      RecomputationScheduler recomputationScheduler,
+      RecomputationProperties recomputationProperties,
       Provider<IWrapperFactory> wrapperFactory, AbsenceDao absenceDao,
       Provider<EntityManager> emp) {
 
@@ -83,6 +89,8 @@ public class ConsistencyManager {
     this.secureManager = secureManager;
     this.consistencyManagerUtils = consistencyManagerUtils;
     this.consistencyManagerAsync = consistencyManagerAsync;
+    this.recomputationScheduler = recomputationScheduler;
+    this.recomputationProperties = recomputationProperties;
     this.wrapperFactory = wrapperFactory;
     this.emp = emp;
   }
@@ -115,8 +123,17 @@ public class ConsistencyManager {
     }
 
     final List<CompletableFuture<Void>> results = Lists.newArrayList();
-    for (Person p : personList) {
-      results.add(consistencyManagerAsync.fixPersonSituation(p.getId(), fromDate, onlyRecap));
+    if (personList.size() == 1) {
+      results.add(consistencyManagerAsync.fixPersonSituation(
+          personList.get(0).getId(), fromDate, onlyRecap));
+    } else {
+      // Ricalcolo a gruppi di persone, ognuno con un unico prelievo dei dati.
+      final List<Long> personIds = personList.stream().map(Person::getId)
+          .collect(Collectors.toList());
+      for (List<Long> slice : Lists.partition(personIds, recomputationProperties.getBatchSize())) {
+        results.add(consistencyManagerAsync.fixPeopleSituation(
+            Lists.newArrayList(slice), fromDate, onlyRecap));
+      }
     }
     CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).get();
     log.info("Conclusa procedura FixPersonsSituation con parametri!");
@@ -168,6 +185,18 @@ public class ConsistencyManager {
         personId, from, Optional.<LocalDate>empty(), false);
   }
 
+  /**
+   * Aggiorna la situazione della persona a seguito di una modifica limitata al giorno date
+   * (per esempio l'inserimento di una timbratura). I giorni successivi vengono ricalcolati
+   * solo finché risentono della modifica.
+   *
+   * @param personId id della persona
+   * @param date il giorno modificato
+   */
+  public Optional<Contract> updatePersonDaySituation(Long personId, LocalDate date) {
+    return consistencyManagerUtils.updatePersonSituationIncremental(personId, date);
+  }
+
   /**
    * Aggiorna la situazione del contratto a partire dalla data from.
    *
@@ -195,7 +224,8 @@ public class ConsistencyManager {
   }
 
   /**
-   * Effettua la ricomputazione.
+   * Effettua la ricomputazione. I ricalcoli delle singole persone sono accodati
+   * nel {@link RecomputationScheduler}.
    */
   public void performRecomputation(IPropertiesInPeriodOwner target,
       List<RecomputationType> recomputationTypes, LocalDate recomputeFrom) {
@@ -217,16 +247,18 @@ public class ConsistencyManager {
 
     for (Person person : personToRecompute) {
       if (recomputationTypes.contains(RecomputationType.DAYS)) {
-        updatePersonSituation(person.getId(), recomputeFrom);
+        recomputationScheduler.schedulePersonSituation(person.getId(), recomputeFrom);
       } else if (recomputationTypes.contains(RecomputationType.RESIDUAL_HOURS)
           || recomputationTypes.contains(RecomputationType.RESIDUAL_MEALTICKETS)) {
-        updatePersonRecaps(person.getId(), recomputeFrom);
+        recomputationScheduler.schedulePersonRecaps(person.getId(), recomputeFrom);
+      }
+      if (!recomputationScheduler.isEnabled()) {
+        //FIXME: ma servono davvero??
+        emp.get().flush();
+        emp.get().clear();
+        //JPA.em().flush();
+        //JPA.em().clear();
       }
-      //FIXME: ma servono davvero??
-      emp.get().flush();
-      emp.get().clear();
-      //JPA.em().flush();
-      //JPA.em().clear();
     }
   }
 
@@ -20,9 +20,13 @@ package it.cnr.iit.epas.manager;
 import it.cnr.iit.epas.dao.PersonDao;
 import it.cnr.iit.epas.models.Person;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
@@ -40,14 +44,16 @@ public class ConsistencyManagerAsync {
   private final PersonDao personDao;
   private final ConsistencyManagerUtils consistencyManagerUtils;
   private final PersonDayInTroubleManager personDayInTroubleManager;
+  private final Provider<EntityManager> emp;
 
   @Inject
   ConsistencyManagerAsync(
       PersonDao personDao, ConsistencyManagerUtils consistencyManagerUtils,
-      PersonDayInTroubleManager personDayInTroubleManager) {
+      PersonDayInTroubleManager personDayInTroubleManager, Provider<EntityManager> emp) {
     this.personDao = personDao;
     this.consistencyManagerUtils = consistencyManagerUtils;
     this.personDayInTroubleManager = personDayInTroubleManager;
+    this.emp = emp;
   }
 
   /**
@@ -101,4 +107,29 @@ public class ConsistencyManagerAsync {
     log.debug("Elaborata la persona ... {}", person);
     return CompletableFuture.allOf();
   }
+
+  /**
+   * Ricalcolo della situazione di un gruppo di persone dal mese e anno specificati ad oggi.
+   * I dati delle persone sono prelevati insieme e le modifiche sono salvate in un'unica
+   * transazione.
+   * Metodo Asincrono!
+   *
+   * @param personIds gli id delle persone di cui effettuare il ricalcolo
+   * @param fromDate dalla data
+   * @param onlyRecap se si vuole aggiornare solo i riepiloghi
+   */
+  @Async
+  @Transactional
+  public CompletableFuture<Void> fixPeopleSituation(
+      List<Long> personIds, LocalDate fromDate, boolean onlyRecap) {
+
+    consistencyManagerUtils.updatePeopleSituationEngine(personIds, fromDate, onlyRecap);
+
+    personDayInTroubleManager.cleanPeopleDayInTrouble(personIds);
+    // Le modifiche vengono inviate al db e l'entity manager svuotato prima del prossimo gruppo.
+    emp.get().flush();
+    emp.get().clear();
+    log.debug("Elaborato il gruppo di {} persone", personIds.size());
+    return CompletableFuture.allOf();
+  }
 }
\ No newline at end of file
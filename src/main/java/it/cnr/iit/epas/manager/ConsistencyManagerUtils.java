@@ -34,6 +34,7 @@ import it.cnr.iit.epas.manager.cache.StampTypeManager;
 import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.LocalTimeInterval;
+import it.cnr.iit.epas.manager.recaps.personstamping.MonthRecapSnapshotManager;
 import it.cnr.iit.epas.manager.services.absences.AbsenceService;
 import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.ContractMonthRecap;
@@ -47,6 +48,7 @@ import it.cnr.iit.epas.models.Stamping;
 import it.cnr.iit.epas.models.Stamping.WayType;
 import it.cnr.iit.epas.models.TimeVariation;
 import it.cnr.iit.epas.models.absences.Absence;
+import it.cnr.iit.epas.models.base.RecomputationAudit;
 import it.cnr.iit.epas.models.enumerate.MealTicketBehaviour;
 import it.cnr.iit.epas.utils.DateInterval;
 import it.cnr.iit.epas.utils.DateUtility;
@@ -57,18 +59,24 @@ import java.time.YearMonth;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Slf4j
 @Component
 class ConsistencyManagerUtils {
 
+  private static final String COMPENSATORY_REST_CODE = "91CE";
+
   private final PersonDao personDao;
   private final PersonDayDao personDayDao;
   private final PersonShiftDayDao personShiftDayDao;
@@ -81,6 +89,7 @@ class ConsistencyManagerUtils {
   private final ConfigurationManager configurationManager;
   private final StampTypeManager stampTypeManager;
   private final ContractMonthRecapManager contractMonthRecapManager;
+  private final MonthRecapSnapshotManager monthRecapSnapshotManager;
   private final TimeSlotManager timeSlotManager;
   private final Provider<IWrapperFactory> wrapperFactory;
   private final Provider<EntityManager> emp;
@@ -96,6 +105,7 @@ class ConsistencyManagerUtils {
       ConfigurationManager configurationManager,
       StampTypeManager stampTypeManager,
       ContractMonthRecapManager contractMonthRecapManager,
+      MonthRecapSnapshotManager monthRecapSnapshotManager,
       TimeSlotManager timeSlotManager,
       Provider<IWrapperFactory> wrapperFactory,
       Provider<EntityManager> emp) {
@@ -113,9 +123,25 @@ class ConsistencyManagerUtils {
     this.timeSlotManager = timeSlotManager;
     this.wrapperFactory = wrapperFactory;
     this.contractMonthRecapManager = contractMonthRecapManager;
+    this.monthRecapSnapshotManager = monthRecapSnapshotManager;
     this.emp = emp;
   }
 
+  /**
+   * Esegue il ricalcolo senza storicizzare le modifiche ai soli campi ricalcolati.
+   * Se presente una transazione le modifiche sono inviate al db prima del termine del
+   * ricalcolo, altrimenti sono già state salvate dalle singole operazioni dei dao.
+   */
+  private <T> T recomputation(Supplier<T> work) {
+    return RecomputationAudit.run(() -> {
+      final T result = work.get();
+      if (TransactionSynchronizationManager.isActualTransactionActive()) {
+        emp.get().flush();
+      }
+      return result;
+    });
+  }
+
   /**
    * Effettua l'aggiornamento della situazione dei riepiloghi
    * giornalieri e mensili della persona indicata.
@@ -128,6 +154,12 @@ class ConsistencyManagerUtils {
   public Optional<Contract> updatePersonSituationEngine(
       Long personId, LocalDate from, Optional<LocalDate> to,
       boolean updateOnlyRecaps) {
+    return recomputation(() -> personSituationEngine(personId, from, to, updateOnlyRecaps));
+  }
+
+  private Optional<Contract> personSituationEngine(
+      Long personId, LocalDate from, Optional<LocalDate> to,
+      boolean updateOnlyRecaps) {
     log.debug("updatePersonSituationEngine started. personId={}, from={}, to={}.",
         personId, from, to.orElse(null));
 
@@ -141,8 +173,6 @@ class ConsistencyManagerUtils {
       return Optional.empty();
     }
 
-    IWrapperPerson wrPerson = wrapperFactory.get().create(person);
-
     // Gli intervalli di ricalcolo dei person day.
     LocalDate lastPersonDayToCompute = LocalDate.now();
     if (to.isPresent() && to.get().isBefore(lastPersonDayToCompute)) {
@@ -153,6 +183,94 @@ class ConsistencyManagerUtils {
     List<PersonDay> personDays = personDayDao.getPersonDayInPeriod(person, date,
         Optional.ofNullable(lastPersonDayToCompute));
 
+    final Optional<Contract> contract = computePersonSituation(person, from,
+        lastPersonDayToCompute, personDays, updateOnlyRecaps, Optional.empty());
+
+    log.debug("updatePersonSituationEngine ended. personId={}, from={}, to={}.",
+        personId, from, to.orElse(null));
+    return contract;
+  }
+
+  /**
+   * Aggiornamento della situazione di un gruppo di persone dalla data from ad oggi.<br>
+   * I dati necessari ai ricalcoli (contratti, tipi orario, configurazioni, giorni con
+   * timbrature ed assenze, riposi compensativi con le variazioni orarie) vengono prelevati con
+   * poche query per tutto il gruppo invece che persona per persona, quindi i ricalcoli sono
+   * effettuati in memoria. Il chiamante dovrebbe eseguire il metodo in un'unica transazione in
+   * modo che le modifiche siano inviate al database tutte insieme al flush.
+   *
+   * @param personIds gli id delle persone da ricalcolare
+   * @param from data dalla quale effettuare i ricalcoli
+   * @param updateOnlyRecaps se si vogliono aggiornare solo i riepiloghi mensili
+   */
+  public void updatePeopleSituationEngine(List<Long> personIds, LocalDate from,
+      boolean updateOnlyRecaps) {
+    recomputation(() -> {
+      peopleSituationEngine(personIds, from, updateOnlyRecaps);
+      return null;
+    });
+  }
+
+  private void peopleSituationEngine(List<Long> personIds, LocalDate from,
+      boolean updateOnlyRecaps) {
+    Preconditions.checkNotNull(from);
+    log.debug("updatePeopleSituationEngine started. people={}, from={}.", personIds.size(), from);
+
+    final List<Person> people = personDao.fetchPeopleForComputation(personIds,
+        Optional.of(from), Optional.<LocalDate>empty());
+    if (people.isEmpty()) {
+      return;
+    }
+    final LocalDate lastPersonDayToCompute = LocalDate.now();
+
+    final Map<Long, List<PersonDay>> personDaysByPerson = personDayDao
+        .getPersonDayInPeriod(people, from, Optional.of(lastPersonDayToCompute)).stream()
+        .collect(Collectors.groupingBy(pd -> pd.getPerson().getId()));
+
+    final LocalDate compensatoryRestBegin = people.stream()
+        .map(p -> p.getOffice().getBeginDate()).min(LocalDate::compareTo).get();
+    final LocalDate compensatoryRestEnd = DateUtility.endOfMonth(from);
+    final Map<Long, List<Absence>> compensatoryRestsByPerson = compensatoryRestBegin
+        .isAfter(compensatoryRestEnd) ? Maps.newHashMap()
+        : absenceDao.absenceInPeriod(people, compensatoryRestBegin, compensatoryRestEnd,
+            COMPENSATORY_REST_CODE).stream()
+            .collect(Collectors.groupingBy(abs -> abs.getPersonDay().getPerson().getId()));
+
+    log.trace("... fetch dei dati del gruppo conclusa, inizio dei ricalcoli.");
+
+    for (Person person : people) {
+      if (person.getQualification() == null) {
+        log.warn("... annullato ricalcolo per {} in quanto priva di qualifica",
+            person.getFullname());
+        continue;
+      }
+      computePersonSituation(person, from, lastPersonDayToCompute,
+          personDaysByPerson.getOrDefault(person.getId(), Lists.newArrayList()),
+          updateOnlyRecaps,
+          Optional.of(compensatoryRestsByPerson.getOrDefault(person.getId(),
+              Lists.newArrayList())));
+      log.debug("Elaborata la persona ... {}", person);
+    }
+
+    log.debug("updatePeopleSituationEngine ended. people={}, from={}.", personIds.size(), from);
+  }
+
+  /**
+   * Ricalcolo dei giorni della persona dalla data from (o dalla prima data utile) fino a
+   * lastPersonDayToCompute e successivo aggiornamento dei riepiloghi.
+   *
+   * @param personDays i giorni della persona già prelevati nel periodo da ricalcolare
+   * @param compensatoryRests i riposi compensativi della persona se già prelevati
+   * @return il contratto attuale della persona se presente.
+   */
+  private Optional<Contract> computePersonSituation(Person person, LocalDate from,
+      LocalDate lastPersonDayToCompute, List<PersonDay> personDays, boolean updateOnlyRecaps,
+      Optional<List<Absence>> compensatoryRests) {
+
+    IWrapperPerson wrPerson = wrapperFactory.get().create(person);
+
+    LocalDate date = personFirstDateForEpasComputation(person, Optional.ofNullable(from));
+
     // Costruire la tabella hash
     HashMap<LocalDate, PersonDay> personDaysMap = Maps.newHashMap();
     for (PersonDay personDay : personDays) {
@@ -199,8 +317,115 @@ class ConsistencyManagerUtils {
       log.trace("... ricalcolo dei giorni lavorativi conclusa.");
     }
 
+    return updatePersonRecapsAndChecks(person, wrPerson, from, compensatoryRests);
+  }
+
+  /**
+   * Aggiornamento incrementale della situazione della persona a seguito di una modifica
+   * che riguarda il solo giorno indicato (per esempio l'inserimento di una timbratura).
+   * Viene ricalcolato il giorno modificato e successivamente i giorni seguenti fino ad oggi,
+   * interrompendo il ricalcolo dei giorni non appena un giorno ricalcolato mantiene invariati
+   * la differenza ed il progressivo già memorizzati: da quel punto in avanti i giorni successivi
+   * non possono essere influenzati dalla modifica.<br>
+   * Nel caso in cui la persona non sia attiva nel giorno indicato viene effettuato il
+   * ricalcolo completo tramite {@link #updatePersonSituationEngine}.<br>
+   * Attenzione il metodo deve essere pubblico perché c'è un listener @AfterRequest per
+   * questo metodo che effettua delle operazioni aggiuntive.
+   *
+   * @see it.cnr.iit.epas.manager.listeners.ConsistencyManagerListener
+   */
+  public Optional<Contract> updatePersonSituationIncremental(Long personId, LocalDate date) {
+    return recomputation(() -> personSituationIncremental(personId, date));
+  }
+
+  private Optional<Contract> personSituationIncremental(Long personId, LocalDate date) {
+    log.debug("updatePersonSituationIncremental started. personId={}, date={}.", personId, date);
+
+    final Person person = personDao.fetchPersonForComputation(personId, Optional.ofNullable(date),
+        Optional.<LocalDate>empty());
+
+    if (person.getQualification() == null) {
+      log.warn("... annullato ricalcolo per {} in quanto priva di qualifica", person.getFullname());
+      return Optional.empty();
+    }
+
+    IWrapperPerson wrPerson = wrapperFactory.get().create(person);
+
+    final LocalDate lastPersonDayToCompute = LocalDate.now();
+    LocalDate firstDate = personFirstDateForEpasComputation(person, Optional.ofNullable(date));
+    if (!firstDate.isEqual(date) || date.isAfter(lastPersonDayToCompute)
+        || !wrPerson.isActiveInDay(date)) {
+      // Caso non gestibile in modo incrementale, si effettua il ricalcolo completo.
+      return updatePersonSituationEngine(personId, date, Optional.<LocalDate>empty(), false);
+    }
+
+    // Il giorno precedente serve come base per il progressivo e per le timbrature notturne.
+    List<PersonDay> personDays = personDayDao.getPersonDayInPeriod(person, date.minusDays(1),
+        Optional.ofNullable(lastPersonDayToCompute));
+    HashMap<LocalDate, PersonDay> personDaysMap = Maps.newHashMap();
+    for (PersonDay personDay : personDays) {
+      personDaysMap.put(personDay.getDate(), personDay);
+    }
+
+    PersonDay previous = personDaysMap.get(date.minusDays(1));
+    LocalDate current = date;
+    int computedDays = 0;
+
+    while (!current.isAfter(lastPersonDayToCompute)) {
+
+      if (!wrPerson.isActiveInDay(current)) {
+        // Fuori contratto la modifica non si propaga ai giorni successivi.
+        break;
+      }
+
+      PersonDay personDay = personDaysMap.get(current);
+      boolean created = false;
+      if (personDay == null) {
+        personDay = new PersonDay(person, current);
+        personDayDao.persist(personDay);
+        created = true;
+      }
+      final Integer storedDifference = personDay.getDifference();
+      final Integer storedProgressive = personDay.getProgressive();
+
+      IWrapperPersonDay wrPersonDay = wrapperFactory.get().create(personDay);
+      wrPersonDay.setPreviousForProgressive(Optional.ofNullable(previous));
+      wrPersonDay.setPreviousForNightStamp(Optional.ofNullable(previous));
+
+      previous = populatePersonDay(wrPersonDay);
+      computedDays++;
+
+      if (!current.isEqual(date) && !created
+          && Objects.equals(storedDifference, previous.getDifference())
+          && Objects.equals(storedProgressive, previous.getProgressive())) {
+        log.trace("... giorno {} invariato, ricalcolo dei giorni interrotto.", current);
+        break;
+      }
+      current = current.plusDays(1);
+    }
+    log.trace("... ricalcolo incrementale concluso, ricalcolati {} giorni.", computedDays);
+
+    final Optional<Contract> contract =
+        updatePersonRecapsAndChecks(person, wrPerson, date, Optional.empty());
+
+    log.debug("updatePersonSituationIncremental ended. personId={}, date={}, computedDays={}.",
+        personId, date, computedDays);
+    return contract;
+  }
+
+  /**
+   * Operazioni successive al ricalcolo dei giorni: riepiloghi mensili dei contratti, scan degli
+   * errori sulle assenze, svuotamento della cache delle ferie, invalidazione dei riepiloghi
+   * mensili salvati e controllo dei turni.
+   *
+   * @param compensatoryRests i riposi compensativi della persona se già prelevati
+   * @return il contratto attuale della persona se presente.
+   */
+  private Optional<Contract> updatePersonRecapsAndChecks(Person person, IWrapperPerson wrPerson,
+      LocalDate from, Optional<List<Absence>> compensatoryRests) {
+
     // (3) Ricalcolo dei residui per mese        
-    populateContractMonthRecapByPerson(person, YearMonth.from(from));
+    populateContractMonthRecapByPerson(person, YearMonth.from(from), compensatoryRests);
 
     // (4) Scan degli errori sulle assenze
     absenceService.scanner(person, from);
@@ -208,9 +433,12 @@ class ConsistencyManagerUtils {
     // (5) Empty vacation cache and async recomputation
 
     absenceService.emptyVacationCache(person, from);
+
+    // (6) Invalidazione dei riepiloghi mensili salvati per la visualizzazione
+    monthRecapSnapshotManager.touch(person, from);
     final Optional<Contract> contract = wrPerson.getCurrentContract();
 
-    // (6) Controllo se per quel giorno person ha anche un turno associato ed effettuo, i ricalcoli
+    // (7) Controllo se per quel giorno person ha anche un turno associato ed effettuo, i ricalcoli
 
     Optional<PersonShiftDay> psd = personShiftDayDao.byPersonAndDate(person, from);
     if (psd.isPresent()) {
@@ -218,8 +446,6 @@ class ConsistencyManagerUtils {
     }
 
     log.trace("... ricalcolo dei riepiloghi conclusa.");
-    log.debug("updatePersonSituationEngine ended. personId={}, from={}, to={}.",
-        personId, from, to.orElse(null));
     return contract;
   }
 
@@ -353,7 +579,15 @@ class ConsistencyManagerUtils {
 
     PersonDay previous = pd.getPreviousForNightStamp().get();
 
-    Stamping lastStampingPreviousDay = wrapperFactory.get().create(previous).getLastStamping();
+    // Il wrapper dei personDay è condiviso nella richiesta, quindi non va riutilizzato per il
+    // giorno precedente: pd farebbe riferimento al giorno precedente.
+    Stamping lastStampingPreviousDay = null;
+    for (Stamping stamping : previous.getStampings()) {
+      if (lastStampingPreviousDay == null
+          || lastStampingPreviousDay.getDate().isBefore(stamping.getDate())) {
+        lastStampingPreviousDay = stamping;
+      }
+    }
 
     if (lastStampingPreviousDay != null && lastStampingPreviousDay.isIn()) {
 
@@ -386,7 +620,13 @@ class ConsistencyManagerUtils {
         previous.getStampings().add(exitStamp);
         personDayDao.save(previous);
 
+        final PersonDay current = pd.getValue();
+        final Optional<PersonDay> previousForProgressive = pd.getPreviousForProgressive();
         populatePersonDay(wrapperFactory.get().create(previous));
+        // Si ripristina nel wrapper condiviso il giorno in elaborazione.
+        wrapperFactory.get().create(current);
+        pd.setPreviousForProgressive(previousForProgressive);
+        pd.setPreviousForNightStamp(Optional.of(previous));
 
         // timbratura apertura giorno attuale
         Stamping enterStamp =
@@ -572,9 +812,17 @@ class ConsistencyManagerUtils {
   
   /**
    * Costruisce i riepiloghi mensili dei contratti della persona a partire da yearMonthFrom.
+   * Se compensatoryRests è presente contiene i riposi compensativi della persona già prelevati
+   * (eventualmente in un periodo più ampio di quello necessario).
    */
-  private void populateContractMonthRecapByPerson(Person person, YearMonth yearMonthFrom) {
-    
+  private void populateContractMonthRecapByPerson(Person person, YearMonth yearMonthFrom,
+      Optional<List<Absence>> compensatoryRests) {
+
+    final LocalDate begin = person.getOffice().getBeginDate();
+    final LocalDate end = DateUtility.endOfMonth(LocalDate.of(yearMonthFrom.getYear(), 
+        yearMonthFrom.getMonthValue(), 1));
+    List<TimeVariation> timeVariations = null;
+
     for (Contract contract : person.getContracts()) {
 
       IWrapperContract wrContract = wrapperFactory.get().create(contract);
@@ -589,18 +837,23 @@ class ConsistencyManagerUtils {
           continue;
         }
         
-        LocalDate begin = person.getOffice().getBeginDate();
-        LocalDate end = DateUtility.endOfMonth(LocalDate.of(yearMonthFrom.getYear(), 
-            yearMonthFrom.getMonthValue(), 1));
-        
-        List<Absence> absences = absenceDao.absenceInPeriod(person, begin, end, "91CE");
-        List<TimeVariation> list = absences.stream()
-            .flatMap(abs -> abs.getTimeVariations().stream()
-                .filter(tv -> !tv.getDateVariation().isBefore(begin) 
-                    && !tv.getDateVariation().isAfter(end)))
-            .collect(Collectors.toList());
-
-        populateContractMonthRecap(wrContract, Optional.ofNullable(yearMonthFrom), list);
+        if (timeVariations == null) {
+          // Le variazioni sono le stesse per tutti i contratti, si calcolano una volta sola.
+          List<Absence> absences = compensatoryRests.isPresent()
+              ? compensatoryRests.get().stream()
+                  .filter(abs -> !abs.getPersonDay().getDate().isBefore(begin)
+                      && !abs.getPersonDay().getDate().isAfter(end))
+                  .collect(Collectors.toList())
+              : absenceDao.absenceInPeriod(person, begin, end, COMPENSATORY_REST_CODE);
+          timeVariations = absences.stream()
+              .flatMap(abs -> abs.getTimeVariations().stream()
+                  .filter(tv -> !tv.getDateVariation().isBefore(begin) 
+                      && !tv.getDateVariation().isAfter(end)))
+              .collect(Collectors.toList());
+        }
+
+        populateContractMonthRecap(wrContract, Optional.ofNullable(yearMonthFrom),
+            timeVariations);
       }
     }
   }
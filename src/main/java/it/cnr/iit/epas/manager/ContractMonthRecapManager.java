@@ -29,7 +29,6 @@ import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.manager.cache.CompetenceCodeManager;
 import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
-import it.cnr.iit.epas.manager.services.mealtickets.MealTicketsServiceImpl.MealTicketOrder;
 import it.cnr.iit.epas.models.Competence;
 import it.cnr.iit.epas.models.CompetenceCode;
 import it.cnr.iit.epas.models.Contract;
@@ -465,9 +464,8 @@ public class ContractMonthRecapManager {
       }
 
       //Numero ticket consegnati nel mese
-      cmr.buoniPastoConsegnatiNelMese = mealTicketDao
-          .contractMealTickets(cmr.contract, Optional.of(validDataForMealTickets),
-              MealTicketOrder.ORDER_BY_EXPIRE_DATE_ASC, false).size();
+      cmr.buoniPastoConsegnatiNelMese = (int) mealTicketDao
+          .countContractMealTickets(cmr.contract, validDataForMealTickets);
     }
 
     //residuo
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.manager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
+import it.cnr.iit.epas.manager.configurations.EpasParam;
+import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.utils.DateUtility;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.Year;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Calendario delle festività generali delle sedi: festività nazionali più il giorno del
+ * patrono (parametro {@link EpasParam#DAY_OF_PATRON}) in vigore alla data.
+ * Il calendario di un anno è un insieme di bit indicizzato per giorno dell'anno, costruito
+ * alla prima richiesta e mantenuto in cache fino alla modifica delle configurazioni della sede.
+ */
+@Slf4j
+@Component
+public class HolidayCalendar {
+
+  private static final long MAXIMUM_SIZE = 10_000;
+  private static final long EXPIRE_MINUTES = 60;
+
+  private final Cache<OfficeYear, BitSet> cache = CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_SIZE)
+      .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+      .build();
+
+  private final Provider<ConfigurationManager> configurationManager;
+
+  @Inject
+  HolidayCalendar(Provider<ConfigurationManager> configurationManager) {
+    this.configurationManager = configurationManager;
+  }
+
+  /**
+   * Chiave del calendario di una sede in un anno.
+   */
+  @Value
+  static class OfficeYear {
+    Long officeId;
+    int year;
+  }
+
+  /**
+   * Se la data è una festività generale per la sede.
+   *
+   * @param office la sede
+   * @param date la data da verificare
+   * @return true se la data è festività nazionale o il giorno del patrono della sede.
+   */
+  public boolean isGeneralHoliday(Office office, LocalDate date) {
+    return holidays(office, date.getYear()).get(date.getDayOfYear());
+  }
+
+  /**
+   * Il numero di festività generali della sede nell'intervallo.
+   *
+   * @param office la sede
+   * @param begin data iniziale
+   * @param end data finale
+   * @return il numero di festività generali nell'intervallo estremi compresi.
+   */
+  public int generalHolidays(Office office, LocalDate begin, LocalDate end) {
+    if (end.isBefore(begin)) {
+      return 0;
+    }
+    return DateUtility.countHolidays(begin, end, year -> holidays(office, year));
+  }
+
+  /**
+   * Il numero di giorni dell'intervallo che non sono festività generali per la sede.
+   *
+   * @param office la sede
+   * @param begin data iniziale
+   * @param end data finale
+   * @return il numero dei giorni lavorativi (esclusi soltanto le festività generali)
+   *     nell'intervallo estremi compresi.
+   */
+  public int generalWorkingDays(Office office, LocalDate begin, LocalDate end) {
+    if (end.isBefore(begin)) {
+      return 0;
+    }
+    return (int) ChronoUnit.DAYS.between(begin, end) + 1 - generalHolidays(office, begin, end);
+  }
+
+  /**
+   * Il numero di giorni dell'intervallo che cadono nel giorno della settimana indicato e che
+   * non sono festività generali per la sede.
+   *
+   * @param office la sede
+   * @param begin data iniziale
+   * @param end data finale
+   * @param dayOfWeek il giorno della settimana
+   * @return il numero dei giorni non festivi nel giorno della settimana nell'intervallo
+   *     estremi compresi.
+   */
+  public int generalWorkingDays(Office office, LocalDate begin, LocalDate end,
+      DayOfWeek dayOfWeek) {
+    final LocalDate first = begin.with(TemporalAdjusters.nextOrSame(dayOfWeek));
+    if (end.isBefore(first)) {
+      return 0;
+    }
+    int days = (int) ChronoUnit.WEEKS.between(first, end) + 1;
+    for (int year = first.getYear(); year <= end.getYear(); year++) {
+      final BitSet holidays = holidays(office, year);
+      final int from = year == first.getYear() ? first.getDayOfYear() : 1;
+      final int to = year == end.getYear() ? end.getDayOfYear() : Year.of(year).length();
+      for (int day = holidays.nextSetBit(from); day >= 0 && day <= to;
+          day = holidays.nextSetBit(day + 1)) {
+        if (LocalDate.ofYearDay(year, day).getDayOfWeek() == dayOfWeek) {
+          days--;
+        }
+      }
+    }
+    return days;
+  }
+
+  /**
+   * Invalida i calendari della sede, sia subito che al termine della transazione corrente
+   * (se presente), analogamente all'indice delle configurazioni.
+   */
+  public void invalidate(Office office) {
+    final Long officeId = office.getId();
+    if (officeId == null) {
+      return;
+    }
+    cache.asMap().keySet().removeIf(key -> officeId.equals(key.getOfficeId()));
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          cache.asMap().keySet().removeIf(key -> officeId.equals(key.getOfficeId()));
+        }
+      });
+    }
+    log.trace("Invalidato il calendario delle festività della sede id={}", officeId);
+  }
+
+  /**
+   * Il calendario (da non modificare) della sede nell'anno.
+   * Per le sedi non ancora persistite il calendario non viene mantenuto in cache.
+   */
+  private BitSet holidays(Office office, int year) {
+    if (office.getId() == null) {
+      return build(office, year);
+    }
+    final OfficeYear key = new OfficeYear(office.getId(), year);
+    BitSet holidays = cache.getIfPresent(key);
+    if (holidays == null) {
+      holidays = build(office, year);
+      cache.put(key, holidays);
+    }
+    return holidays;
+  }
+
+  /**
+   * Festività nazionali dell'anno più i giorni del patrono definiti per la sede. Il giorno
+   * di un patrono è festivo solo se alla sua data è in vigore proprio quel patrono.
+   */
+  private BitSet build(Office office, int year) {
+    final BitSet holidays = DateUtility.nationalHolidaysOfYear(year);
+    office.getConfigurations().stream()
+        .filter(configuration -> configuration.epasParam == EpasParam.DAY_OF_PATRON)
+        .map(configuration -> (MonthDay) EpasParamValueType
+            .parseValue(EpasParam.DAY_OF_PATRON.epasParamValueType, configuration.fieldValue))
+        .distinct()
+        .filter(patron -> patron.isValidYear(year))
+        .map(patron -> patron.atYear(year))
+        .filter(date -> MonthDay.from(date).equals(configurationManager.get()
+            .configValue(office, EpasParam.DAY_OF_PATRON, date)))
+        .forEach(date -> holidays.set(date.getDayOfYear()));
+    return holidays;
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.cnr.iit.epas.config.MailOutboxProperties;
+import it.cnr.iit.epas.dao.MailOutboxDao;
+import it.cnr.iit.epas.models.MailOutboxMessage;
+import it.cnr.iit.epas.models.enumerate.MailOutboxStatus;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Invio in background delle email presenti nella coda delle email in uscita.<br>
+ * Le email da inviare sono prelevate a gruppi ed ogni gruppo viene inviato con un'unica
+ * connessione SMTP, rispettando il numero massimo di email al secondo configurato.
+ * In caso di errore l'invio viene ritentato con attese crescenti fino al numero massimo
+ * di tentativi, dopo il quale l'email viene scartata.<br>
+ * Le email inviate o scartate sono eliminate periodicamente trascorso il periodo di
+ * conservazione configurato, anche quando l'invio non è abilitato.
+ */
+@Slf4j
+@Component
+public class MailOutboxDispatcher {
+
+  private static final String METRIC_PREFIX = "epas.mail.outbox";
+  private static final int MAX_ERROR_LENGTH = 4000;
+  private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+
+  private final MailOutboxDao mailOutboxDao;
+  private final MailOutboxProperties properties;
+  private final TransactionTemplate transactionTemplate;
+  private final RateLimiter rateLimiter;
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+  private final Counter sentCounter;
+  private final Counter failuresCounter;
+  private final Counter discardedCounter;
+  private final Timer batchTimer;
+
+  /**
+   * Costruttore per l'injection.
+   */
+  @Inject
+  MailOutboxDispatcher(MailOutboxDao mailOutboxDao, MailOutboxProperties properties,
+      PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+    Preconditions.checkArgument(properties.getBatchSize() > 0,
+        "epas.mail.batch-size deve essere maggiore di zero");
+    Preconditions.checkArgument(properties.getMaxPerSecond() > 0,
+        "epas.mail.max-per-second deve essere maggiore di zero");
+    Preconditions.checkArgument(
+        properties.getRetention().compareTo(properties.getDeduplicationWindow()) > 0,
+        "epas.mail.retention deve essere maggiore di epas.mail.deduplication-window");
+    this.mailOutboxDao = mailOutboxDao;
+    this.properties = properties;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rateLimiter = RateLimiter.create(properties.getMaxPerSecond());
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("mail-outbox-dispatcher").setDaemon(true)
+            .build());
+
+    this.sentCounter = Counter.builder(METRIC_PREFIX + ".sent")
+        .description("Email inviate").register(meterRegistry);
+    this.failuresCounter = Counter.builder(METRIC_PREFIX + ".failures")
+        .description("Tentativi di invio falliti").register(meterRegistry);
+    this.discardedCounter = Counter.builder(METRIC_PREFIX + ".discarded")
+        .description("Email scartate dopo il numero massimo di tentativi")
+        .register(meterRegistry);
+    this.batchTimer = Timer.builder(METRIC_PREFIX + ".batch.duration")
+        .description("Durata dell'invio di un gruppo di email").register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + ".queue.depth", this, MailOutboxDispatcher::queueDepth)
+        .description("Email in attesa di invio").register(meterRegistry);
+
+    if (properties.isEnabled()) {
+      final long interval = properties.getPollInterval().toMillis();
+      executor.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    executor.scheduleWithFixedDelay(this::purgeQuietly, PURGE_INTERVAL.toMillis(),
+        PURGE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Esito dell'invio di un gruppo di email.
+   */
+  @Value
+  static class BatchResult {
+    int processed;
+    int sent;
+  }
+
+  /**
+   * Richiede un controllo immediato della coda (ad esempio dopo che sono state accodate
+   * nuove email). Le richieste ravvicinate sono accorpate in un unico controllo.
+   */
+  public void wakeUp() {
+    if (properties.isEnabled() && wakeUpPending.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        wakeUpPending.set(false);
+        poll();
+      });
+    }
+  }
+
+  private void poll() {
+    try {
+      dispatch();
+    } catch (RuntimeException ex) {
+      log.error("Errore durante l'invio delle email in coda", ex);
+    }
+  }
+
+  /**
+   * Invia tutte le email in coda il cui invio è previsto entro l'istante attuale.
+   *
+   * @return il numero di email inviate.
+   */
+  public synchronized int dispatch() {
+    int sent = 0;
+    BatchResult result;
+    do {
+      result = batchTimer.record(() -> transactionTemplate.execute(status -> sendBatch()));
+      sent += result.getSent();
+    } while (result.getProcessed() == properties.getBatchSize());
+    if (sent > 0) {
+      log.info("Inviate {} email, {} ancora in coda", sent, (long) queueDepth());
+    }
+    return sent;
+  }
+
+  /**
+   * Il numero di email in attesa di invio, letto dalla coda ad ogni rilevazione.
+   */
+  private double queueDepth() {
+    return transactionTemplate.execute(status ->
+        mailOutboxDao.countByStatus(MailOutboxStatus.PENDING));
+  }
+
+  /**
+   * Elimina le email inviate o scartate accodate prima del periodo di conservazione.
+   *
+   * @return il numero di email eliminate.
+   */
+  public long purge() {
+    final LocalDateTime before = LocalDateTime.now().minus(properties.getRetention());
+    final long deleted = transactionTemplate.execute(status ->
+        mailOutboxDao.deleteCompletedBefore(before));
+    if (deleted > 0) {
+      log.info("Eliminate {} email inviate o scartate accodate prima del {}", deleted, before);
+    }
+    return deleted;
+  }
+
+  private void purgeQuietly() {
+    try {
+      purge();
+    } catch (RuntimeException ex) {
+      log.error("Errore durante l'eliminazione delle email inviate", ex);
+    }
+  }
+
+  private BatchResult sendBatch() {
+    final LocalDateTime now = LocalDateTime.now();
+    final List<MailOutboxMessage> messages =
+        mailOutboxDao.lockDue(now, properties.getBatchSize());
+    if (messages.isEmpty()) {
+      return new BatchResult(0, 0);
+    }
+    final Session session = session();
+    int sent = 0;
+    Transport transport = null;
+    try {
+      transport = session.getTransport("smtp");
+      for (MailOutboxMessage message : messages) {
+        rateLimiter.acquire();
+        try {
+          if (!transport.isConnected()) {
+            transport.connect(properties.getHost(), properties.getPort(),
+                properties.getUsername(), properties.getPassword());
+          }
+          final MimeMessage mimeMessage = new MimeMessage(session,
+              new ByteArrayInputStream(message.getMessage().getBytes(StandardCharsets.UTF_8)));
+          transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+          message.setAttempts(message.getAttempts() + 1);
+          message.setStatus(MailOutboxStatus.SENT);
+          message.setSentAt(LocalDateTime.now());
+          message.setNextAttemptAt(null);
+          message.setLastError(null);
+          sentCounter.increment();
+          sent++;
+          log.debug("Inviata email {}", message);
+        } catch (MessagingException ex) {
+          failed(message, ex, now);
+        }
+      }
+    } catch (MessagingException ex) {
+      messages.forEach(message -> failed(message, ex, now));
+    } finally {
+      close(transport);
+    }
+    return new BatchResult(messages.size(), sent);
+  }
+
+  private void failed(MailOutboxMessage message, Exception ex, LocalDateTime now) {
+    message.setAttempts(message.getAttempts() + 1);
+    message.setLastError(Strings.nullToEmpty(ex.getMessage()).length() > MAX_ERROR_LENGTH
+        ? ex.getMessage().substring(0, MAX_ERROR_LENGTH) : ex.getMessage());
+    failuresCounter.increment();
+    if (message.getAttempts() >= properties.getMaxAttempts()) {
+      message.setStatus(MailOutboxStatus.FAILED);
+      message.setNextAttemptAt(null);
+      discardedCounter.increment();
+      log.error("Email {} scartata dopo {} tentativi di invio", message,
+          message.getAttempts(), ex);
+    } else {
+      message.setNextAttemptAt(now.plus(backoff(message.getAttempts())));
+      log.warn("Invio dell'email {} fallito, nuovo tentativo alle {}: {}", message,
+          message.getNextAttemptAt(), ex.getMessage());
+    }
+  }
+
+  /**
+   * L'attesa prima del prossimo tentativo, raddoppiata ad ogni tentativo fallito.
+   */
+  private Duration backoff(int attempts) {
+    final Duration backoff =
+        properties.getRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+    return backoff.compareTo(properties.getMaxRetryBackoff()) > 0
+        ? properties.getMaxRetryBackoff() : backoff;
+  }
+
+  private Session session() {
+    final Properties smtp = new Properties();
+    final String timeout = String.valueOf(properties.getTimeout().toMillis());
+    smtp.put("mail.smtp.host", properties.getHost());
+    smtp.put("mail.smtp.port", String.valueOf(properties.getPort()));
+    smtp.put("mail.smtp.auth", String.valueOf(properties.getUsername() != null));
+    smtp.put("mail.smtp.starttls.enable", String.valueOf(properties.isStartTls()));
+    smtp.put("mail.smtp.connectiontimeout", timeout);
+    smtp.put("mail.smtp.timeout", timeout);
+    smtp.put("mail.smtp.writetimeout", timeout);
+    return Session.getInstance(smtp);
+  }
+
+  private static void close(Transport transport) {
+    if (transport == null || !transport.isConnected()) {
+      return;
+    }
+    try {
+      transport.close();
+    } catch (MessagingException ex) {
+      log.warn("Errore nella chiusura della connessione SMTP: {}", ex.getMessage());
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
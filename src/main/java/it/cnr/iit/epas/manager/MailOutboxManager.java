@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.cnr.iit.epas.config.MailOutboxProperties;
+import it.cnr.iit.epas.dao.MailOutboxDao;
+import it.cnr.iit.epas.models.MailOutboxMessage;
+import it.cnr.iit.epas.models.enumerate.MailOutboxStatus;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Properties;
+import javax.inject.Inject;
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import javax.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Coda delle email in uscita.<br>
+ * Le email vengono salvate nella transazione dell'operazione che le genera, quindi sono
+ * inviate solo se l'operazione va a buon fine e senza che il chiamante attenda l'invio.
+ * L'invio vero e proprio è effettuato in background dal {@link MailOutboxDispatcher}.
+ */
+@Slf4j
+@Component
+public class MailOutboxManager {
+
+  private static final String METRIC_PREFIX = "epas.mail.outbox";
+
+  private final MailOutboxDao mailOutboxDao;
+  private final MailOutboxDispatcher dispatcher;
+  private final MailOutboxProperties properties;
+  private final Session session = Session.getInstance(new Properties());
+
+  private final Counter enqueuedCounter;
+  private final Counter deduplicatedCounter;
+
+  /**
+   * Costruttore per l'injection.
+   */
+  @Inject
+  MailOutboxManager(MailOutboxDao mailOutboxDao, MailOutboxDispatcher dispatcher,
+      MailOutboxProperties properties, MeterRegistry meterRegistry) {
+    this.mailOutboxDao = mailOutboxDao;
+    this.dispatcher = dispatcher;
+    this.properties = properties;
+    this.enqueuedCounter = Counter.builder(METRIC_PREFIX + ".enqueued")
+        .description("Email accodate per l'invio").register(meterRegistry);
+    this.deduplicatedCounter = Counter.builder(METRIC_PREFIX + ".deduplicated")
+        .description("Email non accodate perché identiche ad una già in coda")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Accoda l'email per l'invio. Se non è impostato il mittente viene utilizzato quello
+   * della configurazione. Un'email identica (stessi destinatari, oggetto e testo) ad una
+   * accodata di recente non viene accodata di nuovo, anche se accodata da una transazione
+   * concorrente.
+   *
+   * @param email l'email da inviare
+   * @return l'email accodata, vuoto se l'email era già in coda o non è valida.
+   */
+  @Transactional
+  public Optional<MailOutboxMessage> enqueue(Email email) {
+    final String recipients;
+    final String text;
+    final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    try {
+      if (email.getFromAddress() == null) {
+        email.setFrom(properties.getFrom());
+      }
+      email.setCharset(StandardCharsets.UTF_8.name());
+      email.setMailSession(session);
+      email.buildMimeMessage();
+      final MimeMessage mimeMessage = email.getMimeMessage();
+      mimeMessage.saveChanges();
+      mimeMessage.writeTo(raw);
+      recipients = Joiner.on(", ").join(mimeMessage.getAllRecipients());
+      text = text(mimeMessage.getContent());
+    } catch (EmailException | MessagingException | IOException ex) {
+      log.error("Impossibile accodare l'email con oggetto \"{}\"", email.getSubject(), ex);
+      return Optional.empty();
+    }
+
+    final String deduplicationKey = Hashing.sha256().hashString(
+        Joiner.on('\0').useForNull("").join(recipients, email.getSubject(), text),
+        StandardCharsets.UTF_8).toString();
+    final LocalDateTime now = LocalDateTime.now();
+    mailOutboxDao.lock(deduplicationKey);
+    if (mailOutboxDao.existsSince(deduplicationKey,
+        now.minus(properties.getDeduplicationWindow()))) {
+      deduplicatedCounter.increment();
+      log.info("Email a {} con oggetto \"{}\" già presente in coda, non viene accodata",
+          recipients, email.getSubject());
+      return Optional.empty();
+    }
+
+    final MailOutboxMessage message = new MailOutboxMessage();
+    message.setRecipients(recipients);
+    message.setSubject(email.getSubject());
+    message.setMessage(new String(raw.toByteArray(), StandardCharsets.UTF_8));
+    message.setDeduplicationKey(deduplicationKey);
+    message.setStatus(MailOutboxStatus.PENDING);
+    message.setCreatedAt(now);
+    message.setNextAttemptAt(now);
+    mailOutboxDao.persist(message);
+    enqueuedCounter.increment();
+    log.debug("Accodata email {}", message);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          dispatcher.wakeUp();
+        }
+      });
+    } else {
+      dispatcher.wakeUp();
+    }
+    return Optional.of(message);
+  }
+
+  /**
+   * Il testo dell'email, concatenando le parti testuali dei messaggi multipart.
+   */
+  private static String text(Object content) throws MessagingException, IOException {
+    if (content instanceof Multipart) {
+      final Multipart multipart = (Multipart) content;
+      final StringBuilder text = new StringBuilder();
+      for (int i = 0; i < multipart.getCount(); i++) {
+        BodyPart part = multipart.getBodyPart(i);
+        if (part.isMimeType("text/*") || part.isMimeType("multipart/*")) {
+          text.append(text(part.getContent()));
+        }
+      }
+      return text.toString();
+    }
+    return content == null ? "" : content.toString();
+  }
+}
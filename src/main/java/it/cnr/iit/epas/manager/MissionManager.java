@@ -70,7 +70,7 @@ public class MissionManager {
   private final AbsenceService absenceService;
   private final AbsenceManager absenceManager;
   private final PersonDayManager personDayManager;
-  private final ConsistencyManager consistencyManager;
+  private final RecomputationScheduler recomputationScheduler;
   private final NotificationManager notificationManager;
   private final AbsenceDao absenceDao;
   private final AbsenceTypeDao absenceTypeDao;
@@ -89,7 +89,7 @@ public class MissionManager {
   @Inject
   public MissionManager(PersonDao personDao, AbsenceService absenceService, 
       AbsenceManager absenceManager, PersonDayManager personDayManager,
-      ConsistencyManager consistencyManager, NotificationManager notificationManager,
+      RecomputationScheduler recomputationScheduler, NotificationManager notificationManager,
       AbsenceDao absenceDao, AbsenceTypeDao absenceTypeDao, 
       ConfigurationManager configurationManager, 
       IWrapperFactory wrapperFactory, AbsenceComponentDao absComponentDao,
@@ -99,7 +99,7 @@ public class MissionManager {
     this.absenceService = absenceService;
     this.absenceManager = absenceManager;
     this.personDayManager = personDayManager;
-    this.consistencyManager = consistencyManager;
+    this.recomputationScheduler = recomputationScheduler;
     this.notificationManager = notificationManager;
     this.absenceDao = absenceDao;
     this.absenceTypeDao = absenceTypeDao;
@@ -660,7 +660,7 @@ public class MissionManager {
         }
       }
     }
-    consistencyManager.updatePersonSituation(body.person.getId(), begin);
+    recomputationScheduler.schedulePersonSituation(body.person.getId(), begin);
   }
 
   /**
@@ -62,7 +62,6 @@ import it.cnr.iit.epas.models.informationrequests.ServiceRequest;
 import it.cnr.iit.epas.models.informationrequests.TeleworkRequest;
 import it.cnr.iit.epas.security.SecureUtils;
 import it.cnr.iit.epas.utils.DateUtility;
-import it.cnr.iit.epas.utils.Mail;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
@@ -97,6 +96,7 @@ public class NotificationManager {
   private final SecureUtils secureUtils;
   private final Messages messages;
   private final TemplateExtensions templateExtensions;
+  private final MailOutboxManager mailOutboxManager;
 
   final String dateFormatter = "dd/MM/YYYY";
 
@@ -108,7 +108,8 @@ public class NotificationManager {
       AbsenceComponentDao componentDao, GroupDao groupDao,
       ConfigurationManager configurationManager, 
       InformationRequestDao requestDao, SecureUtils secureUtils,
-      Messages messages, TemplateExtensions templateExtensions) {
+      Messages messages, TemplateExtensions templateExtensions,
+      MailOutboxManager mailOutboxManager) {
     this.secureManager = secureManager;
     this.roleDao = roleDao;
     this.absenceDao = absenceDao;
@@ -119,6 +120,7 @@ public class NotificationManager {
     this.secureUtils = secureUtils;
     this.messages = messages;
     this.templateExtensions = templateExtensions;
+    this.mailOutboxManager = mailOutboxManager;
   }
 
   private static final String WORKDAY_REPERIBILITY = "207";
@@ -630,7 +632,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per rimozione utenti dal gruppo {} perchè contratto scaduto:"
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         groupName, userDestination.getPerson().getEmail(), simpleEmail.getSubject(), mailBody);
@@ -683,7 +685,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per rimozione utenti dal turno {} perchè contratto scaduto:"
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         shiftType, userDestination.getPerson().getEmail(), simpleEmail.getSubject(), mailBody);
@@ -736,7 +738,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per rimozione utenti dalla reperibilità {} perchè contratto scaduto:"
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         description, userDestination.getPerson().getEmail(), simpleEmail.getSubject(), mailBody);
@@ -823,7 +825,7 @@ public class NotificationManager {
           } catch (EmailException e) {
             e.printStackTrace();
           }
-          Mail.send(simpleEmail);
+          mailOutboxManager.enqueue(simpleEmail);
           log.info(
               "Inviata email per richiesta di flusso richiesta: {}. "
                   + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -887,7 +889,7 @@ public class NotificationManager {
               String.format("ePas Comunicazione assenza (id=%s)", absenceRequest.getId()));
           val mailBody = createAbsenceNotificationEmail(absenceRequest, r.getUser());
           simpleEmail.setMsg(mailBody);
-          Mail.send(simpleEmail);
+          mailOutboxManager.enqueue(simpleEmail);
           log.info(
               "Inviata email per richiesta di flusso richiesta: {}. "
                   + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -908,7 +910,7 @@ public class NotificationManager {
       email.addTo(absenceRequest.getPerson().getEmail());
       val mailBody = createEmployeeAbsenceNotificationEmail(absenceRequest);
       email.setMsg(mailBody);
-      Mail.send(email);
+      mailOutboxManager.enqueue(email);
       log.info(
           "Inviata email per completamento flusso di notifica: {}. "
               + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -953,7 +955,7 @@ public class NotificationManager {
           absenceRequest.getEndTo().toLocalDate()));
       val mailBody = message.toString();
       simpleEmail.setMsg(mailBody);
-      Mail.send(simpleEmail);
+      mailOutboxManager.enqueue(simpleEmail);
       log.info(
           "Inviata email per approvazione di flusso {}. "
               + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -1302,7 +1304,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per approvazione di flusso richiesta: {}. "
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         competenceRequest, person.getEmail(), simpleEmail.getSubject(), mailBody);
@@ -1372,7 +1374,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per richiesta di flusso richiesta: {}. "
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         competenceRequest, userDestination.getPerson().getEmail(),
@@ -1658,7 +1660,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email al responsabile/gestore per informazione giorni di reperibilità/turno "
         + "concomitanti coi giorni di richiesta: {}. "
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -1702,7 +1704,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email al responsabile/gestore per informazione "
         + "chiusura flusso permesso personale");
   }
@@ -1916,7 +1918,7 @@ public class NotificationManager {
             } catch (EmailException e) {
               e.printStackTrace();
             }
-            Mail.send(simpleEmail);
+            mailOutboxManager.enqueue(simpleEmail);
             log.info(
                 "Inviata email per richiesta di flusso richiesta: {}. "
                     + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
@@ -1941,7 +1943,7 @@ public class NotificationManager {
             } catch (EmailException e) {
               e.printStackTrace();
             }
-            Mail.send(simpleEmail);
+            mailOutboxManager.enqueue(simpleEmail);
             log.info("Inviata email per richiesta di flusso richiesta: {}. "
                 + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
                 informationRequest, user.getPerson().getEmail(), 
@@ -2120,7 +2122,7 @@ public class NotificationManager {
     } catch (EmailException e) {
       e.printStackTrace();
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per approvazione di flusso richiesta: {}. "
         + "Mail: \n\tTo: {}\n\tSubject: {}\n\tbody: {}",
         informationRequest, person.getEmail(), simpleEmail.getSubject(), mailBody);
@@ -2189,7 +2191,7 @@ public class NotificationManager {
       log.error("Errore nell'invio dell'email per missione con problemi. {}", 
           mission, e);
     }
-    Mail.send(simpleEmail);
+    mailOutboxManager.enqueue(simpleEmail);
     log.info("Inviata email per problemi sulla missione n. {} del {} di {} dal {} al {}",
         mission.numero, mission.anno, mission.person.getFullname(), 
         TemplateExtensions.format(mission.dataInizio), 
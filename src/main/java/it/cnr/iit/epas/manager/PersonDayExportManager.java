@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.manager;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import it.cnr.iit.epas.dao.OfficeDao;
+import it.cnr.iit.epas.dao.PersonDayDao;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.absences.Absence;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollableResults;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Esportazione dei giorni di lavoro (con timbrature ed assenze) dei dipendenti di una sede
+ * in un periodo, in formato NDJSON o CSV.<br>
+ * I giorni di lavoro sono letti con un cursore forward-only e scritti a blocchi: per ogni
+ * blocco timbrature ed assenze sono prelevate con due sole query, dopo la scrittura il
+ * contesto di persistenza viene svuotato così che la memoria utilizzata non dipenda dalla
+ * dimensione della sede o del periodo.
+ */
+@Slf4j
+@Component
+public class PersonDayExportManager {
+
+  private static final int CHUNK_SIZE = 500;
+  private static final char CSV_SEPARATOR = ';';
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+  private static final List<String> CSV_HEADER = List.of("personId", "number", "fiscalCode",
+      "surname", "name", "date", "timeAtWork", "difference", "progressive", "ticketAvailable",
+      "holiday", "stampings", "absences");
+
+  /**
+   * I formati di esportazione disponibili.
+   */
+  public enum ExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    public final String contentType;
+    public final String extension;
+
+    ExportFormat(String contentType, String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+  }
+
+  private final PersonDayDao personDayDao;
+  private final OfficeDao officeDao;
+  private final Provider<EntityManager> emp;
+  private final ObjectMapper objectMapper;
+  private final TransactionTemplate readOnly;
+
+  @Inject
+  PersonDayExportManager(PersonDayDao personDayDao, OfficeDao officeDao,
+      Provider<EntityManager> emp, ObjectMapper objectMapper,
+      PlatformTransactionManager transactionManager) {
+    this.personDayDao = personDayDao;
+    this.officeDao = officeDao;
+    this.emp = emp;
+    this.objectMapper = objectMapper;
+    this.readOnly = new TransactionTemplate(transactionManager);
+    this.readOnly.setReadOnly(true);
+  }
+
+  /**
+   * Scrive sullo stream i giorni di lavoro dei dipendenti della sede nel periodo, ordinati
+   * per persona e data. Il metodo apre una propria transazione in sola lettura ed è quindi
+   * utilizzabile anche fuori dal thread della richiesta (es. StreamingResponseBody).
+   *
+   * @param officeId l'id della sede
+   * @param from la data di inizio
+   * @param to la data di fine
+   * @param format il formato di esportazione
+   * @param out lo stream su cui scrivere, non viene chiuso al termine
+   * @return il numero di giorni di lavoro esportati.
+   */
+  public long export(Long officeId, LocalDate from, LocalDate to, ExportFormat format,
+      OutputStream out) {
+    final Long exported = readOnly.execute(status -> {
+      final Office office = officeDao.byId(officeId)
+          .orElseThrow(() -> new EntityNotFoundException("Office not found with id = "
+              + officeId));
+      final RowWriter writer = format == ExportFormat.CSV
+          ? new CsvRowWriter(out) : new NdjsonRowWriter(out);
+      // il contesto di persistenza viene svuotato solo se appartiene a questa transazione
+      final boolean clear = status.isNewTransaction();
+      long count = 0;
+      try (ScrollableResults results =
+          personDayDao.scrollPersonDaysByOfficeInPeriod(office, from, to, CHUNK_SIZE)) {
+        final List<PersonDay> chunk = Lists.newArrayListWithCapacity(CHUNK_SIZE);
+        while (results.next()) {
+          chunk.add((PersonDay) results.get(0));
+          if (chunk.size() == CHUNK_SIZE) {
+            count += writeChunk(chunk, writer, clear);
+          }
+        }
+        count += writeChunk(chunk, writer, clear);
+      }
+      writer.finish();
+      return count;
+    });
+    log.debug("Esportati {} giorni di lavoro della sede id={} dal {} al {} in formato {}",
+        exported, officeId, from, to, format);
+    return exported;
+  }
+
+  /**
+   * Scrive il blocco di giorni di lavoro e, se richiesto, svuota il contesto di persistenza.
+   */
+  private int writeChunk(List<PersonDay> chunk, RowWriter writer, boolean clear) {
+    if (chunk.isEmpty()) {
+      return 0;
+    }
+    final ListMultimap<Long, Stamping> stampings = ArrayListMultimap.create();
+    personDayDao.getStampingsByPersonDays(chunk)
+        .forEach(s -> stampings.put(s.getPersonDay().getId(), s));
+    final ListMultimap<Long, Absence> absences = ArrayListMultimap.create();
+    personDayDao.getAbsencesByPersonDays(chunk)
+        .forEach(a -> absences.put(a.getPersonDay().getId(), a));
+    for (PersonDay personDay : chunk) {
+      writer.write(personDay, stampings.get(personDay.getId()),
+          absences.get(personDay.getId()));
+    }
+    writer.flush();
+    final int written = chunk.size();
+    chunk.clear();
+    if (clear) {
+      emp.get().clear();
+    }
+    return written;
+  }
+
+  private static String stampings(List<Stamping> stampings) {
+    return stampings.stream()
+        .map(s -> s.getDate().format(TIME_FORMAT)
+            + (s.getWay() != null ? " " + s.getWay().name().toLowerCase() : ""))
+        .collect(Collectors.joining("|"));
+  }
+
+  private static String absences(List<Absence> absences) {
+    return absences.stream()
+        .map(a -> a.getAbsenceType().getCode() + ":" + a.getJustifiedType().getName()
+            + (a.getJustifiedMinutes() != null ? ":" + a.getJustifiedMinutes() : ""))
+        .collect(Collectors.joining("|"));
+  }
+
+  /**
+   * Scrittura delle righe dell'esportazione in un certo formato.
+   */
+  private interface RowWriter {
+
+    void write(PersonDay personDay, List<Stamping> stampings, List<Absence> absences);
+
+    void flush();
+
+    void finish();
+  }
+
+  /**
+   * Una riga JSON per ogni giorno di lavoro.
+   */
+  private class NdjsonRowWriter implements RowWriter {
+
+    private final JsonGenerator generator;
+
+    NdjsonRowWriter(OutputStream out) {
+      try {
+        this.generator = objectMapper.getFactory().createGenerator(out)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void write(PersonDay personDay, List<Stamping> stampings, List<Absence> absences) {
+      final Person person = personDay.getPerson();
+      try {
+        generator.writeStartObject();
+        generator.writeNumberField("personId", person.getId());
+        generator.writeStringField("number", person.getNumber());
+        generator.writeStringField("fiscalCode", person.getFiscalCode());
+        generator.writeStringField("surname", person.getSurname());
+        generator.writeStringField("name", person.getName());
+        generator.writeStringField("date", personDay.getDate().toString());
+        generator.writeNumberField("timeAtWork", personDay.getTimeAtWork());
+        generator.writeNumberField("difference", personDay.getDifference());
+        generator.writeNumberField("progressive", personDay.getProgressive());
+        generator.writeBooleanField("ticketAvailable", personDay.isTicketAvailable());
+        generator.writeBooleanField("holiday", personDay.isHoliday());
+        generator.writeArrayFieldStart("stampings");
+        for (Stamping stamping : stampings) {
+          generator.writeStartObject();
+          generator.writeStringField("date", stamping.getDate().toString());
+          generator.writeStringField("way",
+              stamping.getWay() != null ? stamping.getWay().name() : null);
+          generator.writeStringField("stampType",
+              stamping.getStampType() != null ? stamping.getStampType().name() : null);
+          generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("absences");
+        for (Absence absence : absences) {
+          generator.writeStartObject();
+          generator.writeStringField("code", absence.getAbsenceType().getCode());
+          generator.writeStringField("justifiedType",
+              absence.getJustifiedType().getName().name());
+          if (absence.getJustifiedMinutes() != null) {
+            generator.writeNumberField("justifiedMinutes", absence.getJustifiedMinutes());
+          }
+          generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void flush() {
+      try {
+        generator.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void finish() {
+      try {
+        generator.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Una riga CSV (separata da punto e virgola) per ogni giorno di lavoro, con intestazione.
+   * Timbrature ed assenze sono riportate in un unico campo separate da |.
+   */
+  private static class CsvRowWriter implements RowWriter {
+
+    private final Writer writer;
+
+    CsvRowWriter(OutputStream out) {
+      this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      line(CSV_HEADER);
+    }
+
+    @Override
+    public void write(PersonDay personDay, List<Stamping> stampings, List<Absence> absences) {
+      final Person person = personDay.getPerson();
+      line(List.of(String.valueOf(person.getId()), nullToEmpty(person.getNumber()),
+          nullToEmpty(person.getFiscalCode()), nullToEmpty(person.getSurname()),
+          nullToEmpty(person.getName()), personDay.getDate().toString(),
+          String.valueOf(personDay.getTimeAtWork()), String.valueOf(personDay.getDifference()),
+          String.valueOf(personDay.getProgressive()),
+          String.valueOf(personDay.isTicketAvailable()), String.valueOf(personDay.isHoliday()),
+          stampings(stampings), absences(absences)));
+    }
+
+    private void line(List<String> fields) {
+      try {
+        for (int i = 0; i < fields.size(); i++) {
+          if (i > 0) {
+            writer.write(CSV_SEPARATOR);
+          }
+          writer.write(escape(fields.get(i)));
+        }
+        writer.write('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static String escape(String value) {
+      if (value.indexOf(CSV_SEPARATOR) < 0 && value.indexOf('"') < 0
+          && value.indexOf('\n') < 0) {
+        return value;
+      }
+      return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void flush() {
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void finish() {
+      flush();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package it.cnr.iit.epas.manager;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import it.cnr.iit.epas.dao.PersonDao;
@@ -26,7 +27,7 @@ import it.cnr.iit.epas.dao.wrapper.IWrapperContract;
 import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
-import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.PersonDayInTrouble;
@@ -35,7 +36,10 @@ import it.cnr.iit.epas.utils.DateInterval;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
@@ -60,6 +64,7 @@ public class PersonDayInTroubleManager {
   private final PersonDao personDao;
   private final ConfigurationManager configurationManager;
   private final Provider<EntityManager> emp;
+  private final MailOutboxManager mailOutboxManager;
 
   /**
    * Costruttore.
@@ -74,12 +79,14 @@ public class PersonDayInTroubleManager {
       PersonDao personDao,
       ConfigurationManager configurationManager,
       Provider<IWrapperFactory> factory,
-      Provider<EntityManager> emp) {
+      Provider<EntityManager> emp,
+      MailOutboxManager mailOutboxManager) {
     this.personDayInTroubleDao = personDayInTroubleDao;
     this.personDao = personDao;
     this.configurationManager = configurationManager;
     this.factory = factory;
     this.emp = emp;
+    this.mailOutboxManager = mailOutboxManager;
   }
 
   /**
@@ -131,74 +138,85 @@ public class PersonDayInTroubleManager {
   /**
    * Invia le email alle persone appartenenti alla lista, inerenti i giorni con problemi
    * nell'intervallo fromDate, toDate del tipo appartenente alla lista di troblesToSend.
+   * Le persone sono elaborate per sede (vedi
+   * {@link #sendTroubleEmails(Office, Optional, LocalDate, LocalDate, List)}).
    *
    * @param personList          le persone a cui inviare le email
    * @param fromDate            da
    * @param toDate              fino
    * @param troubleCausesToSend tipi di problemi da inviare.
    */
+  @Transactional
   public void sendTroubleEmails(List<Person> personList, LocalDate fromDate, LocalDate toDate,
       List<Troubles> troubleCausesToSend) {
 
     log.info("Invio mail troubles per i giorni dal {} al {}. I troubles considerati sono {}.",
         fromDate, toDate, troubleCausesToSend);
 
-    for (Person person : personList) {
-
-      final Optional<Contract> currentContract = factory.get().create(person).getCurrentContract();
-      if (!currentContract.isPresent()) {
-        log.error("Nessun contratto trovato attivo alla data odierna per {} - {} ", person,
-            person.getOffice());
-        continue;
-      }
-      DateInterval intervalToCheck = DateUtility.intervalIntersection(
-          factory.get().create(currentContract.get()).getContractDatabaseInterval(),
-          new DateInterval(fromDate, toDate));
-      if (intervalToCheck == null) {
-        continue;
-      }
-
-      List<PersonDayInTrouble> pdList = personDayInTroubleDao.getPersonDayInTroubleInPeriod(person,
-          Optional.ofNullable(intervalToCheck.getBegin()),
-          Optional.ofNullable(intervalToCheck.getEnd()),
-          Optional.of(troubleCausesToSend));
+    personList.stream().collect(Collectors.groupingBy(Person::getOffice,
+        Collectors.mapping(Person::getId, Collectors.<Long>toSet())))
+        .forEach((office, personIds) -> sendTroubleEmails(office,
+            Optional.of(personIds), fromDate, toDate, troubleCausesToSend));
+  }
 
-      if (pdList.isEmpty()) {
-        log.debug("{} (matricola = {})  non ha problemi da segnalare.", person, person.getNumber());
-        continue;
-      }
+  /**
+   * Invia le email ai dipendenti della sede (o solo a quelli indicati) inerenti i giorni con
+   * problemi nell'intervallo fromDate, toDate del tipo appartenente alla lista di
+   * troubleCausesToSend. I giorni da segnalare sono prelevati con un'unica query e raggruppati
+   * per persona, il campo emailSent dei giorni segnalati è aggiornato sulle entity caricate
+   * (le update sono inviate a gruppi tramite il batching JDBC).
+   *
+   * @param office              la sede
+   * @param personIds           (opzionale) gli id delle persone a cui inviare le email
+   * @param fromDate            da
+   * @param toDate              fino
+   * @param troubleCausesToSend tipi di problemi da inviare.
+   * @return il numero di email accodate per l'invio.
+   */
+  @Transactional
+  public int sendTroubleEmails(Office office, Optional<Collection<Long>> personIds,
+      LocalDate fromDate, LocalDate toDate, List<Troubles> troubleCausesToSend) {
+
+    final Map<Person, List<PersonDayInTrouble>> troublesByPerson = personDayInTroubleDao
+        .toNotify(office, personIds, fromDate, toDate, troubleCausesToSend, LocalDate.now())
+        .stream().collect(Collectors.groupingBy(pdt -> pdt.getPersonDay().getPerson(),
+            LinkedHashMap::new, Collectors.toList()));
+    if (troublesByPerson.isEmpty()) {
+      log.debug("Nessun problema da segnalare per la sede {}.", office.getName());
+      return 0;
+    }
 
+    final String reply = (String) configurationManager
+        .configValue(office, EpasParam.EMAIL_TO_CONTACT);
+    final List<PersonDayInTrouble> notified = Lists.newArrayList();
+    int sent = 0;
+    for (Map.Entry<Person, List<PersonDayInTrouble>> entry : troublesByPerson.entrySet()) {
+      final Person person = entry.getKey();
+      final List<PersonDayInTrouble> pdList = entry.getValue();
       try {
-        // Invio della e-mail ...
         log.trace("Preparo invio mail per {}", person.getFullname());
         SimpleEmail simpleEmail = new SimpleEmail();
-        String reply = (String) configurationManager
-            .configValue(person.getOffice(), EpasParam.EMAIL_TO_CONTACT);
-
-        if (!reply.isEmpty()) {
+        if (!Strings.isNullOrEmpty(reply)) {
           simpleEmail.addReplyTo(reply);
         }
         simpleEmail.addTo(person.getEmail());
         simpleEmail.setSubject("ePas Controllo timbrature");
         simpleEmail.setMsg(troubleEmailBody(person, pdList, troubleCausesToSend));
-        //FIXME: da correggere per il passaggio a spring boot
-        //Mail.send(simpleEmail);
+        mailOutboxManager.enqueue(simpleEmail);
 
         log.info("Inviata mail a {} (matricola = {})  per segnalare i problemi {}",
             person, person.getNumber(), troubleCausesToSend);
-
-        // Imposto il campo e-mails inviate ...
-        for (PersonDayInTrouble pd : pdList) {
-          pd.setEmailSent(true);
-          emp.get().merge(pd);
-          //pd.save();
-        }
-
+        notified.addAll(pdList);
+        sent++;
       } catch (Exception ex) {
         log.error("sendEmailToPerson({}, {}, {}): fallito invio email per {}",
             pdList, person, troubleCausesToSend, person.getFullname(), ex);
       }
     }
+
+    // Imposto il campo e-mails inviate ...
+    notified.forEach(pdt -> pdt.setEmailSent(true));
+    return sent;
   }
 
   /**
@@ -268,28 +286,46 @@ public class PersonDayInTroubleManager {
   @Async
   public CompletableFuture<List<PersonDayInTrouble>> cleanPersonDayInTrouble(Person person) {
     log.debug("Chiamata cleanPersonDayInTrouble per {}", person.getFullname());
-    person = personDao.byId(person.getId()).get();
-    final List<PersonDayInTrouble> pdtList =
-        personDayInTroubleDao.getPersonDayInTroubleInPeriod(
-            person, Optional.empty(), Optional.empty(), Optional.empty());
-    log.debug("Trovati {} PersonDayInTrouble per {}", pdtList.size(), person.getFullname());
-    List<IWrapperContract> wrapperContracts = 
-        person.getContracts().stream()
-          .map(contract -> factory.get().create(contract))
-          .collect(Collectors.toList());
-
-    List<PersonDayInTrouble> deleted = Lists.newArrayList();
-    for (PersonDayInTrouble pdt : pdtList) {
-      boolean toDelete = wrapperContracts.stream()
-          .noneMatch(wrContract -> DateUtility.isDateIntoInterval(pdt.getPersonDay().getDate(),
-              wrContract.getContractDatabaseInterval()));
-      if (toDelete) {
-        log.info("Eliminato PersonDayInTrouble di {} data {}", 
-            person.fullName(), pdt.getPersonDay().getDate());
-        personDayInTroubleDao.delete(pdt);
-        deleted.add(pdt);
-      }
+    final List<PersonDayInTrouble> deleted = personDayInTroubleDao.outsideContracts(person);
+    for (PersonDayInTrouble pdt : deleted) {
+      log.info("Eliminato PersonDayInTrouble di {} data {}",
+          person.fullName(), pdt.getPersonDay().getDate());
     }
+    personDayInTroubleDao.delete(deleted);
     return CompletableFuture.completedFuture(deleted);
   }
-}
\ No newline at end of file
+
+  /**
+   * Elimina i personDayInTrouble delle persone indicate che non appartengono ad alcun
+   * contratto valido ePAS, prelevati con un'unica query (vedi
+   * {@link PersonDayInTroubleDao#delete(Collection)}).
+   *
+   * @param personIds gli id delle persone
+   * @return il numero di personDayInTrouble eliminati.
+   */
+  @Transactional
+  public long cleanPeopleDayInTrouble(Collection<Long> personIds) {
+    final List<PersonDayInTrouble> deleted = personDayInTroubleDao.outsideContracts(personIds);
+    personDayInTroubleDao.delete(deleted);
+    log.debug("Eliminati {} PersonDayInTrouble fuori dai contratti di {} persone",
+        deleted.size(), personIds.size());
+    return deleted.size();
+  }
+
+  /**
+   * Elimina i personDayInTrouble delle persone della sede che non appartengono ad alcun
+   * contratto valido ePAS, prelevati con un'unica query (vedi
+   * {@link PersonDayInTroubleDao#delete(Collection)}).
+   *
+   * @param office la sede
+   * @return il numero di personDayInTrouble eliminati.
+   */
+  @Transactional
+  public long cleanOfficeDayInTrouble(Office office) {
+    final List<PersonDayInTrouble> deleted = personDayInTroubleDao.outsideContracts(office);
+    personDayInTroubleDao.delete(deleted);
+    log.info("Eliminati {} PersonDayInTrouble fuori dai contratti per la sede {}",
+        deleted.size(), office.getName());
+    return deleted.size();
+  }
+}
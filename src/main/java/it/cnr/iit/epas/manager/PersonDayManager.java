@@ -36,12 +36,15 @@ import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.LocalTimeInterval;
 import it.cnr.iit.epas.manager.services.PairStamping;
+import it.cnr.iit.epas.manager.services.StampingPairing;
+import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.PersonShiftDay;
 import it.cnr.iit.epas.models.Stamping;
 import it.cnr.iit.epas.models.Stamping.WayType;
 import it.cnr.iit.epas.models.TimeSlot;
+import it.cnr.iit.epas.models.WorkingTimeType;
 import it.cnr.iit.epas.models.WorkingTimeTypeDay;
 import it.cnr.iit.epas.models.ZoneToZones;
 import it.cnr.iit.epas.models.absences.Absence;
@@ -56,10 +59,10 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.MonthDay;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
@@ -77,6 +80,7 @@ import org.springframework.stereotype.Component;
 public class PersonDayManager {
 
   private final ConfigurationManager configurationManager;
+  private final HolidayCalendar holidayCalendar;
   private final PersonDayInTroubleManager personDayInTroubleManager;
   private final PersonDayInTroubleDao personDayInTroubleDao;
   private final PersonShiftDayDao personShiftDayDao;
@@ -90,11 +94,13 @@ public class PersonDayManager {
    * Costruttore.
    *
    * @param configurationManager      configurationManager
+   * @param holidayCalendar           holidayCalendar
    * @param personDayInTroubleManager personDayInTroubleManager
    * @param personShiftDayDao         personShiftDayDao
    */
   @Inject
   public PersonDayManager(ConfigurationManager configurationManager,
+      HolidayCalendar holidayCalendar,
       PersonDayInTroubleManager personDayInTroubleManager, 
       PersonDayInTroubleDao personDayInTroubleDao,
       PersonDayDao personDayDao,
@@ -103,6 +109,7 @@ public class PersonDayManager {
       Provider<EntityManager> emp) {
 
     this.configurationManager = configurationManager;
+    this.holidayCalendar = holidayCalendar;
     this.personDayInTroubleManager = personDayInTroubleManager;
     this.personDayInTroubleDao = personDayInTroubleDao;
     this.personShiftDayDao = personShiftDayDao;
@@ -434,10 +441,11 @@ public class PersonDayManager {
     //   3) Tempo fuori fascia -> Tempo timbrature - Tempo dentro fascia
     //   4) Tempo di festa -> Tempo timbrature giorno di festa
 
-    List<PairStamping> validPairs = getValidPairStampings(personDay.getStampings(), exitingNow);
+    final StampingPairing validPairs = 
+        StampingPairing.of(personDay.getStampings(), exitingNow);
 
-    personDay.setStampingsTime(stampingMinutes(validPairs));
-    int stampingTimeInOpening = workingMinutes(validPairs, startWork, endWork);
+    personDay.setStampingsTime(validPairs.stampingMinutes());
+    int stampingTimeInOpening = validPairs.workingMinutes(startWork, endWork);
 
     if (personDay.isHoliday()) {
       stampingTimeInOpening = 0;
@@ -499,7 +507,8 @@ public class PersonDayManager {
     List<ZoneToZones> link = personDay.getPerson().getZones();
 
     if (!link.isEmpty() && validPairs.size() > 1) {
-      justifiedTimeBetweenZones = justifiedTimeBetweenZones(validPairs, startWork, endWork);
+      justifiedTimeBetweenZones = 
+          justifiedTimeBetweenZones(validPairs.pairStampings(), startWork, endWork);
     }
     personDay.setJustifiedTimeBetweenZones(justifiedTimeBetweenZones);    
 
@@ -1066,11 +1075,7 @@ public class PersonDayManager {
    * @return coppie
    */
   public List<PairStamping> getValidPairStampings(List<Stamping> stampings) {
-
-    final List<Stamping> orderedStampings = ImmutableList
-        .copyOf(stampings.stream().sorted().collect(Collectors.toList()));
-
-    return computeValidPairStampings(orderedStampings);
+    return StampingPairing.of(stampings).pairStampings();
   }
 
   /**
@@ -1081,12 +1086,7 @@ public class PersonDayManager {
    */
   public List<PairStamping> getValidPairStampings(List<Stamping> stampings,
       Optional<Stamping> exitingNow) {
-    List<Stamping> copy = Lists.newArrayList(stampings);
-    if (exitingNow.isPresent()) {
-      copy.add(exitingNow.get());
-    }
-    Collections.sort(copy);
-    return computeValidPairStampings(copy);
+    return StampingPairing.of(stampings, exitingNow).pairStampings();
   }
 
   /**
@@ -1098,11 +1098,7 @@ public class PersonDayManager {
    * @param stampings la lista di timbrature
    */
   public void setValidPairStampings(List<Stamping> stampings) {
-
-    final List<Stamping> orderedStampings = ImmutableList
-        .copyOf(stampings.stream().sorted().collect(Collectors.toList()));
-
-    computeValidPairStampings(orderedStampings);
+    StampingPairing.of(stampings);
   }
 
 
@@ -1113,126 +1109,7 @@ public class PersonDayManager {
    * @modify setta il campo stamping.pairId con il valore dalla coppia a cui appartengono.
    */
   private List<PairStamping> computeValidPairStampings(List<Stamping> orderedStampings) {
-
-    if (orderedStampings.isEmpty()) {
-      return Lists.newArrayList();
-    }
-
-    //(1)Costruisco le coppie valide per calcolare il worktime
-    List<PairStamping> validPairs = Lists.newArrayList();
-    List<Stamping> serviceStampings = Lists.newArrayList();
-
-    Stamping stampEnter = null;
-
-    for (Stamping stamping : orderedStampings) {
-      //le stampings di servizio non entrano a far parte del calcolo del work time
-      //ma le controllo successivamente
-      //per segnalare eventuali errori di accoppiamento e appartenenza a orario di lavoro valido
-      if (stamping.getStampType() == StampTypes.MOTIVI_DI_SERVIZIO) {
-        serviceStampings.add(stamping);
-        continue;
-      }
-      //cerca l'entrata
-      if (stampEnter == null) {
-        if (stamping.isIn()) {
-          stampEnter = stamping;
-          continue;
-        }
-        if (stamping.isOut()) {
-          //una uscita prima di una entrata e' come se non esistesse
-          stamping.setValid(false);
-          continue;
-        }
-
-      }
-      //cerca l'uscita
-      if (stampEnter != null) {
-        if (stamping.isOut()) {
-
-          PairStamping pair = new PairStamping(stampEnter, stamping);
-          validPairs.add(pair);
-
-          stampEnter.setValid(true);
-          stamping.setValid(true);
-          stampEnter = null;
-          continue;
-        }
-        //trovo un secondo ingresso, butto via il primo
-        if (stamping.isIn()) {
-          stampEnter.setValid(false);
-          stampEnter = stamping;
-        }
-      }
-    }
-    //(2) scarto le stamping di servizio che non appartengono ad alcuna coppia valida
-    List<Stamping> serviceStampingsToCheck = Lists.newArrayList();
-    for (Stamping stamping : serviceStampings) {
-      boolean belongToValidPairNotOutsite = false;
-      boolean belongToValidPairOutsite = false;
-      for (PairStamping validPair : validPairs) {
-        LocalDateTime outTime = validPair.second.getDate();
-        LocalDateTime inTime = validPair.first.getDate();
-        if (stamping.getDate().isAfter(inTime) && stamping.getDate().isBefore(outTime)) {
-          if (validPair.second.getStampType() == StampTypes.LAVORO_FUORI_SEDE
-              || validPair.first.getStampType() == StampTypes.LAVORO_FUORI_SEDE) {
-            belongToValidPairOutsite = true;
-          } else {
-            belongToValidPairNotOutsite = true;
-          }
-          break;
-        }
-      }
-      if (belongToValidPairNotOutsite) {
-        serviceStampingsToCheck.add(stamping);
-      } else if (belongToValidPairOutsite) {
-        stamping.setValid(true);         //capire se è corretto...
-      } else {
-        stamping.setValid(false);
-      }
-    }
-
-    //(3)aggrego le stamping di servizio per coppie valide ed eseguo il check di sequenza valida
-    for (PairStamping validPair : validPairs) {
-      LocalDateTime outTime = validPair.second.getDate();
-      LocalDateTime inTime = validPair.first.getDate();
-      List<Stamping> serviceStampingsInSinglePair = serviceStampingsToCheck.stream()
-          .filter(stamping -> stamping.getDate().isAfter(inTime) 
-              && stamping.getDate().isBefore(outTime))
-          .collect(Collectors.toList());
-      //check
-      Stamping serviceExit = null;
-      for (Stamping stamping : serviceStampingsInSinglePair) {
-        //cerca l'uscita di servizio
-        if (serviceExit == null) {
-          if (stamping.isOut()) {
-            serviceExit = stamping;
-            continue;
-          }
-          if (stamping.isIn()) {
-            //una entrata di servizio prima di una uscita di servizio e' come se non esistesse
-            stamping.setValid(false);
-            continue;
-          }
-        }
-        //cerca l'entrata di servizio
-        if (serviceExit != null) {
-          if (stamping.isIn()) {
-            stamping.setValid(true);
-            serviceExit.setValid(true);
-            serviceExit = null;
-            continue;
-          }
-          //trovo una seconda uscita di servizio, butto via la prima
-          if (stamping.isOut()) {
-            serviceExit.setValid(false);
-            serviceExit = stamping;
-            continue;
-          }
-        }
-      }
-    }
-
-    return validPairs;
+    return StampingPairing.ofOrdered(orderedStampings).pairStampings();
   }
 
 
@@ -1307,20 +1184,49 @@ public class PersonDayManager {
   public List<PersonDay> workingDaysInMonth(Person person, 
       LocalDate beginMonth, LocalDate endMonth) {
     List<PersonDay> monthlyWorkDays = Lists.newArrayList();
+    Map<LocalDate, PersonDay> personDays = personDayDao
+        .getPersonDayInPeriod(person, beginMonth, Optional.of(endMonth)).stream()
+        .collect(Collectors.toMap(PersonDay::getDate, pd -> pd, (pd1, pd2) -> pd1));
     LocalDate currentDate = beginMonth;
     while (!currentDate.isAfter(endMonth)) {
       if (!isHoliday(person, currentDate)) {
-        Optional<PersonDay> pd = personDayDao.getPersonDay(person, currentDate);
-        if (!pd.isPresent()) {
-          pd = Optional.ofNullable(new PersonDay(person, currentDate));
+        PersonDay pd = personDays.get(currentDate);
+        if (pd == null) {
+          pd = new PersonDay(person, currentDate);
         }
-        monthlyWorkDays.add(pd.get());
+        monthlyWorkDays.add(pd);
       }
       currentDate = currentDate.plusDays(1);
     }
     return monthlyWorkDays;
   }
 
+  /**
+   * Il numero dei giorni lavorabili della persona nell'intervallo, calcolato senza accedere
+   * ai person day: ai giorni non festivi del calendario della sede sono sottratti, per ogni
+   * periodo di tipo orario, i giorni della settimana festivi per il tipo orario.
+   *
+   * @param person la persona
+   * @param begin la data iniziale
+   * @param end la data finale
+   * @return il numero dei giorni non festivi per la persona nell'intervallo estremi compresi.
+   */
+  public int numberOfWorkingDays(Person person, LocalDate begin, LocalDate end) {
+    final Office office = person.getOffice();
+    int workingDays = holidayCalendar.generalWorkingDays(office, begin, end);
+    for (Map.Entry<Range<LocalDate>, WorkingTimeType> period :
+        person.timeline().getWorkingTimeTypes(begin, end).entrySet()) {
+      for (WorkingTimeTypeDay day : period.getValue().getWorkingTimeTypeDays()) {
+        if (day.holiday) {
+          workingDays -= holidayCalendar.generalWorkingDays(office,
+              period.getKey().lowerEndpoint(), period.getKey().upperEndpoint(),
+              DayOfWeek.of(day.dayOfWeek));
+        }
+      }
+    }
+    return workingDays;
+  }
+
   /**
    * Il numero di buoni pasto usabili all'interno della lista di person day passata come parametro.
    */
@@ -1426,23 +1332,6 @@ public class PersonDayManager {
     return 0;
   }
 
-  /**
-   * Restituisce la quantita' in minuti del'orario dovuto alle timbrature valide in un giono.
-   *
-   * @param validPairs coppie valide di timbrature per il tempo a lavoro.
-   * @return minuti
-   */
-  private int stampingMinutes(List<PairStamping> validPairs) {
-
-    // TODO: considerare startWork ed endWork nei minuti a lavoro
-    int stampingMinutes = 0;
-    for (PairStamping validPair : validPairs) {
-      stampingMinutes += validPair.timeInPair;
-    }
-
-    return stampingMinutes;
-  }
-
   /**
    * Restituisce la quantita' in minuti del'orario dovuto alle timbrature valide in un giono,
    * che facciano parte della finestra temporale specificata.
@@ -1542,9 +1431,7 @@ public class PersonDayManager {
    */
   public boolean isHoliday(Person person, LocalDate date, boolean saturdayHoliday) {
     //Festività generale
-    MonthDay patron = (MonthDay) configurationManager
-        .configValue(person.getOffice(), EpasParam.DAY_OF_PATRON, date);
-    if (DateUtility.isGeneralHoliday(Optional.ofNullable(patron), date)) {
+    if (holidayCalendar.isGeneralHoliday(person.getOffice(), date)) {
       return true;
     }
 
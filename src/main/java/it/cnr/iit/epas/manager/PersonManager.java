@@ -333,18 +333,19 @@ public class PersonManager {
    */
   public List<Absence> absencesToRecover(Person person, LocalDate from, 
       LocalDate to, JustifiedTypeName justifiedTypeName) {
-    List<Absence> absencesToRecover = Lists.newArrayList();
-    List<Absence> absences = absenceDao.getAbsenceByCodeInPeriod(Optional.ofNullable(person), 
-        Optional.empty(), from, to, Optional.ofNullable(justifiedTypeName), 
-        false, false);
-    for (Absence abs : absences) {
-      int sum = abs.timeVariations.stream().mapToInt(o -> o.getTimeVariation()).sum();
-      if (sum < abs.timeToRecover) {
-        absencesToRecover.add(abs);
-      }
-    }
-        
-    return absencesToRecover;
+    return absenceDao.absencesToRecover(person, from, to, justifiedTypeName);
+  }
+
+  /**
+   * Le assenze a recupero (es.: 91CE) della persona non ancora completamente recuperate,
+   * dall'inizio dell'utilizzo di ePAS della sede fino ad oggi.
+   *
+   * @param person la persona di cui si cercano le assenze
+   * @return la lista dei dto delle assenze da recuperare.
+   */
+  public List<AbsenceToRecoverDto> absencesToRecoverUntilToday(Person person) {
+    return dtoList(absencesToRecover(person, person.getOffice().getBeginDate(), LocalDate.now(),
+        JustifiedTypeName.recover_time));
   }
   
   /**
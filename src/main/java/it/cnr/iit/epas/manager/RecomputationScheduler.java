@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.cnr.iit.epas.config.ComputationScope;
+import it.cnr.iit.epas.config.ComputationScope.ComputationContext;
+import it.cnr.iit.epas.config.RecomputationProperties;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Coda dei ricalcoli della situazione delle persone.<br>
+ * Le richieste di ricalcolo relative alla stessa persona che arrivano a breve distanza
+ * (timbrature, assenze, missioni) vengono accorpate in un unico ricalcolo a partire dalla
+ * data più vecchia richiesta. Il ricalcolo viene avviato quando non arrivano altre richieste
+ * per la persona per la durata della finestra configurata (o comunque dopo l'attesa massima)
+ * ed è eseguito da un pool di thread di dimensione limitata.<br>
+ * Le richieste effettuate all'interno di una transazione vengono accodate solo dopo il commit,
+ * in modo che il ricalcolo veda i dati modificati.
+ */
+@Slf4j
+@Component
+public class RecomputationScheduler {
+
+  private static final String METRIC_PREFIX = "epas.recomputation";
+
+  private final Provider<ConsistencyManager> consistencyManager;
+  private final RecomputationProperties properties;
+  private final ComputationScope computationScope;
+
+  private final ConcurrentMap<Long, PendingRecomputation> pending = new ConcurrentHashMap<>();
+  private final Set<Long> running = Sets.newConcurrentHashSet();
+
+  private final ScheduledExecutorService timer;
+  private volatile boolean closing = false;
+  private final ExecutorService workers;
+
+  private final Counter requestsCounter;
+  private final Counter executionsCounter;
+  private final Counter failuresCounter;
+  private final Timer executionTimer;
+
+  /**
+   * Costruttore per l'injection.
+   */
+  @Inject
+  RecomputationScheduler(Provider<ConsistencyManager> consistencyManager,
+      RecomputationProperties properties, ComputationScope computationScope,
+      MeterRegistry meterRegistry) {
+    Preconditions.checkArgument(properties.getWorkers() > 0,
+        "epas.recomputation.workers deve essere maggiore di zero");
+    this.consistencyManager = consistencyManager;
+    this.properties = properties;
+    this.computationScope = computationScope;
+    this.timer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("recomputation-timer").setDaemon(true).build());
+    this.workers = Executors.newFixedThreadPool(properties.getWorkers(),
+        new ThreadFactoryBuilder().setNameFormat("recomputation-worker-%d").build());
+
+    this.requestsCounter = Counter.builder(METRIC_PREFIX + ".requests")
+        .description("Richieste di ricalcolo ricevute").register(meterRegistry);
+    this.executionsCounter = Counter.builder(METRIC_PREFIX + ".executions")
+        .description("Ricalcoli effettivamente eseguiti").register(meterRegistry);
+    this.failuresCounter = Counter.builder(METRIC_PREFIX + ".failures")
+        .description("Ricalcoli terminati con errore").register(meterRegistry);
+    this.executionTimer = Timer.builder(METRIC_PREFIX + ".duration")
+        .description("Durata dei ricalcoli").register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + ".queue.depth", pending, ConcurrentMap::size)
+        .description("Persone con un ricalcolo in attesa").register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + ".running", running, Set::size)
+        .description("Ricalcoli in esecuzione").register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + ".coalescing.ratio", this, RecomputationScheduler::coalescingRatio)
+        .description("Richieste ricevute per ogni ricalcolo eseguito").register(meterRegistry);
+  }
+
+  /**
+   * Tipologia di ricalcolo richiesta, in ordine crescente di costo.
+   */
+  enum RecomputationKind {
+    /** Solo i riepiloghi mensili. */
+    RECAPS,
+    /** Un singolo giorno e i successivi che ne risentono. */
+    DAY,
+    /** Tutti i giorni dalla data indicata ad oggi. */
+    SITUATION;
+  }
+
+  /**
+   * Richiesta di ricalcolo in attesa per una persona, risultato dell'accorpamento
+   * di tutte le richieste ricevute nella finestra.
+   */
+  @Value
+  static class PendingRecomputation {
+    LocalDate from;
+    RecomputationKind kind;
+    long firstRequestNanos;
+    long lastRequestNanos;
+    int requests;
+    ComputationContext context;
+
+    /**
+     * Accorpa la richiesta other a questa: si riparte dalla data più vecchia e con
+     * la tipologia più ampia fra le due.
+     */
+    PendingRecomputation merge(PendingRecomputation other) {
+      LocalDate mergedFrom = from.isAfter(other.from) ? other.from : from;
+      RecomputationKind mergedKind = kind.compareTo(other.kind) >= 0 ? kind : other.kind;
+      // Un ricalcolo incrementale copre un solo giorno modificato.
+      if (mergedKind == RecomputationKind.DAY && !from.isEqual(other.from)) {
+        mergedKind = RecomputationKind.SITUATION;
+      }
+      return new PendingRecomputation(mergedFrom, mergedKind,
+          Math.min(firstRequestNanos, other.firstRequestNanos),
+          Math.max(lastRequestNanos, other.lastRequestNanos),
+          requests + other.requests, other.context);
+    }
+  }
+
+  /**
+   * Se false i ricalcoli sono eseguiti immediatamente dal chiamante.
+   */
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  /**
+   * Richiede il ricalcolo della situazione della persona a partire dalla data from.
+   *
+   * @param personId id della persona
+   * @param from data dalla quale effettuare i ricalcoli
+   */
+  public void schedulePersonSituation(Long personId, LocalDate from) {
+    schedule(personId, from, RecomputationKind.SITUATION);
+  }
+
+  /**
+   * Richiede il ricalcolo della situazione della persona a seguito di una modifica
+   * limitata al giorno indicato.
+   *
+   * @param personId id della persona
+   * @param date il giorno modificato
+   */
+  public void schedulePersonDaySituation(Long personId, LocalDate date) {
+    schedule(personId, date, RecomputationKind.DAY);
+  }
+
+  /**
+   * Richiede il ricalcolo dei soli riepiloghi mensili della persona a partire dalla data from.
+   *
+   * @param personId id della persona
+   * @param from data dalla quale effettuare i ricalcoli
+   */
+  public void schedulePersonRecaps(Long personId, LocalDate from) {
+    schedule(personId, from, RecomputationKind.RECAPS);
+  }
+
+  private void schedule(Long personId, LocalDate from, RecomputationKind kind) {
+    Preconditions.checkNotNull(personId);
+    Preconditions.checkNotNull(from);
+    requestsCounter.increment();
+
+    if (!properties.isEnabled() || closing) {
+      recomputeNow(personId, from, kind);
+      return;
+    }
+
+    final long now = System.nanoTime();
+    final PendingRecomputation request = new PendingRecomputation(
+        from, kind, now, now, 1, computationScope.capture());
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          enqueue(personId, request);
+        }
+      });
+    } else {
+      enqueue(personId, request);
+    }
+  }
+
+  /**
+   * Ricalcolo eseguito subito nel thread del chiamante, con le stesse metriche dei ricalcoli
+   * accodati. Gli errori sono propagati al chiamante.
+   */
+  private void recomputeNow(Long personId, LocalDate from, RecomputationKind kind) {
+    try {
+      executionTimer.record(() -> recompute(personId, from, kind));
+    } catch (RuntimeException ex) {
+      failuresCounter.increment();
+      throw ex;
+    } finally {
+      executionsCounter.increment();
+    }
+  }
+
+  private void enqueue(Long personId, PendingRecomputation request) {
+    if (closing) {
+      computationScope.run(request.getContext(),
+          () -> recomputeNow(personId, request.getFrom(), request.getKind()));
+      return;
+    }
+    PendingRecomputation current = pending.compute(personId,
+        (id, old) -> old == null ? request : old.merge(request));
+    if (current == request) {
+      // Prima richiesta per la persona, si avvia il conteggio della finestra.
+      try {
+        timer.schedule(() -> dispatch(personId),
+            properties.getDebounceWindow().toNanos(), TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException ex) {
+        // Arresto in corso: la richiesta resta in attesa e viene eseguita da drain().
+        log.debug("Ricalcolo personId={} accodato durante l'arresto", personId);
+      }
+    }
+    log.trace("Accodato ricalcolo personId={}, pending={}", personId, current);
+  }
+
+  /**
+   * Verifica se la finestra della persona è scaduta e in tal caso passa il ricalcolo
+   * ai worker, altrimenti riprogramma la verifica.
+   */
+  private void dispatch(Long personId) {
+    final PendingRecomputation current = pending.get(personId);
+    if (current == null) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final long windowNanos = properties.getDebounceWindow().toNanos();
+    final long delay = Math.min(current.getLastRequestNanos() + windowNanos - now,
+        current.getFirstRequestNanos() + properties.getMaxDelay().toNanos() - now);
+    if (delay > 0) {
+      timer.schedule(() -> dispatch(personId), delay, TimeUnit.NANOSECONDS);
+      return;
+    }
+    // Non si ricalcola in parallelo la stessa persona.
+    if (!running.add(personId)) {
+      timer.schedule(() -> dispatch(personId), windowNanos, TimeUnit.NANOSECONDS);
+      return;
+    }
+    if (!pending.remove(personId, current)) {
+      // Nel frattempo è arrivata un'altra richiesta, si ripete la verifica.
+      running.remove(personId);
+      timer.execute(() -> dispatch(personId));
+      return;
+    }
+    try {
+      workers.execute(() -> execute(personId, current));
+    } catch (RejectedExecutionException ex) {
+      // Arresto in corso: il ricalcolo torna in attesa e viene eseguito da drain().
+      pending.merge(personId, current, PendingRecomputation::merge);
+      running.remove(personId);
+    }
+  }
+
+  private void execute(Long personId, PendingRecomputation recomputation) {
+    try {
+      log.debug("Avvio ricalcolo accorpato personId={}, from={}, kind={}, richieste={}",
+          personId, recomputation.getFrom(), recomputation.getKind(),
+          recomputation.getRequests());
+      executionTimer.record(() -> computationScope.run(recomputation.getContext(),
+          () -> recompute(personId, recomputation.getFrom(), recomputation.getKind())));
+    } catch (RuntimeException ex) {
+      failuresCounter.increment();
+      log.error("Errore durante il ricalcolo della persona id={} dal {}",
+          personId, recomputation.getFrom(), ex);
+    } finally {
+      executionsCounter.increment();
+      running.remove(personId);
+    }
+  }
+
+  private void recompute(Long personId, LocalDate from, RecomputationKind kind) {
+    switch (kind) {
+      case RECAPS:
+        consistencyManager.get().updatePersonRecaps(personId, from);
+        break;
+      case DAY:
+        consistencyManager.get().updatePersonDaySituation(personId, from);
+        break;
+      default:
+        consistencyManager.get().updatePersonSituation(personId, from);
+        break;
+    }
+  }
+
+  private double coalescingRatio() {
+    double executions = executionsCounter.count();
+    return executions == 0 ? 0 : (requestsCounter.count() - pending.values().stream()
+        .mapToInt(PendingRecomputation::getRequests).sum()) / executions;
+  }
+
+  /**
+   * All'arresto dell'applicazione, prima della distruzione dei bean, i ricalcoli ancora in
+   * attesa della fine della finestra non vengono scartati: si attende il completamento di
+   * quelli in esecuzione e si eseguono gli altri nel thread corrente. Le richieste che
+   * arrivano durante l'arresto sono eseguite subito dal chiamante.
+   */
+  @EventListener(ContextClosedEvent.class)
+  void drain() {
+    closing = true;
+    timer.shutdownNow();
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(
+          properties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+        log.warn("Ricalcoli ancora in esecuzione dopo {}, si procede con quelli in attesa",
+            properties.getShutdownTimeout());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    if (!pending.isEmpty()) {
+      log.info("Esecuzione di {} ricalcoli in attesa prima dell'arresto", pending.size());
+    }
+    for (Long personId : pending.keySet()) {
+      final PendingRecomputation recomputation = pending.remove(personId);
+      if (recomputation != null) {
+        execute(personId, recomputation);
+      }
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    timer.shutdownNow();
+    workers.shutdownNow();
+  }
+}
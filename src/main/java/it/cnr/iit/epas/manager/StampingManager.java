@@ -19,13 +19,16 @@ package it.cnr.iit.epas.manager;
 
 import com.google.common.base.Strings;
 import com.google.common.base.Verify;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import it.cnr.iit.epas.dao.GeneralSettingDao;
 import it.cnr.iit.epas.dao.PersonDao;
 import it.cnr.iit.epas.dao.PersonDayDao;
 import it.cnr.iit.epas.dao.StampingDao;
 import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.dao.wrapper.IWrapperPersonDay;
+import it.cnr.iit.epas.manager.recaps.personstamping.MonthRecapSnapshotManager;
 import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingDayRecap;
 import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingDayRecapFactory;
 import it.cnr.iit.epas.messages.Messages;
@@ -44,10 +47,15 @@ import it.cnr.iit.epas.security.SecureUtils;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
@@ -69,6 +77,8 @@ public class StampingManager {
   private final PersonDayManager personDayManager;
   private final PersonStampingDayRecapFactory stampingDayRecapFactory;
   private final ConsistencyManager consistencyManager;
+  private final RecomputationScheduler recomputationScheduler;
+  private final MonthRecapSnapshotManager monthRecapSnapshotManager;
   private final StampingDao stampingDao;
   private final NotificationManager notificationManager;
   private final IWrapperFactory wrapperFactory;
@@ -84,13 +94,16 @@ public class StampingManager {
    * @param personDayManager il manager per lavorare sui personday
    * @param stampingDayRecapFactory il factory per lavorare sugli stampingDayRecap
    * @param consistencyManager il costruttore dell'injector.
+   * @param recomputationScheduler la coda dei ricalcoli accorpati per persona
+   * @param monthRecapSnapshotManager i riepiloghi mensili salvati per la visualizzazione
    */
   @Inject
   public StampingManager(PersonDayDao personDayDao,
       PersonDao personDao,
       PersonDayManager personDayManager,
       PersonStampingDayRecapFactory stampingDayRecapFactory,
-      ConsistencyManager consistencyManager, StampingDao stampingDao,
+      ConsistencyManager consistencyManager, RecomputationScheduler recomputationScheduler,
+      MonthRecapSnapshotManager monthRecapSnapshotManager, StampingDao stampingDao,
       NotificationManager notificationManager, IWrapperFactory wrapperFactory,
       GeneralSettingDao generalSettingDao, 
       SecureUtils secureUtils, Messages messages) {
@@ -100,6 +113,8 @@ public class StampingManager {
     this.personDayManager = personDayManager;
     this.stampingDayRecapFactory = stampingDayRecapFactory;
     this.consistencyManager = consistencyManager;
+    this.recomputationScheduler = recomputationScheduler;
+    this.monthRecapSnapshotManager = monthRecapSnapshotManager;
     this.stampingDao = stampingDao;
     this.notificationManager = notificationManager;
     this.wrapperFactory = wrapperFactory;
@@ -238,7 +253,7 @@ public class StampingManager {
       stampingDao.save(stamping);
 
       consistencyManager
-          .updatePersonSituation(stamping.getPersonDay().getPerson().getId(), 
+          .updatePersonDaySituation(stamping.getPersonDay().getPerson().getId(), 
           stamping.getPersonDay().getDate());
 
       notificationManager
@@ -337,11 +352,126 @@ public class StampingManager {
       return Optional.empty();
     }
 
+    Stamping stamping = insertStampingFromClient(personDay, stampingFromClient, way,
+        Sets.newHashSet());
+
+    log.info("Inserita timbratura {} per {} (matricola = {}) ",
+        stamping.getLabel(), person, person.getNumber());
+
+    // Ricalcolo, in sua assenza sono comunque invalidati i riepiloghi mensili salvati
+    if (recompute) {
+      recomputationScheduler.schedulePersonDaySituation(person.getId(), personDay.getDate());
+    } else {
+      monthRecapSnapshotManager.touch(person, personDay.getDate());
+    }
+
+    return Optional.of(stamping);
+  }
+
+  /**
+   * Inserimento di un insieme di timbrature ricevute dai client. Le timbrature devono essere
+   * già associate alle persone (vedi {@link #linkToPeople(List)}).
+   * I giorni e le timbrature già presenti sono prelevati con un'unica query, le timbrature
+   * sono inserite in ordine cronologico nella stessa transazione ed il ricalcolo di ogni
+   * persona è richiesto una sola volta dalla data della sua timbratura meno recente.
+   *
+   * @param stampingsFromClient le timbrature da inserire
+   * @param recompute se richiedere il ricalcolo delle persone interessate
+   * @return per ogni timbratura passata (nello stesso ordine) la timbratura inserita, oppure
+   *     vuoto se era già presente.
+   */
+  @Transactional
+  public List<Optional<Stamping>> createStampingsFromClient(
+      List<StampingFromClient> stampingsFromClient, boolean recompute) {
+
+    final List<Optional<Stamping>> results = Lists.newArrayList();
+    stampingsFromClient.forEach(sfc -> results.add(Optional.empty()));
+    if (stampingsFromClient.isEmpty()) {
+      return results;
+    }
+    stampingsFromClient.forEach(sfc -> {
+      Verify.verifyNotNull(sfc.getPerson());
+      Verify.verifyNotNull(sfc.getDateTime());
+    });
+
+    final Set<Person> people = stampingsFromClient.stream()
+        .map(StampingFromClient::getPerson).collect(Collectors.toSet());
+    final LocalDate begin = stampingsFromClient.stream()
+        .map(sfc -> sfc.getDateTime().toLocalDate()).min(LocalDate::compareTo).get();
+    final LocalDate end = stampingsFromClient.stream()
+        .map(sfc -> sfc.getDateTime().toLocalDate()).max(LocalDate::compareTo).get();
+
+    // I giorni (con le loro timbrature) di tutte le persone nel periodo interessato
+    final Map<String, PersonDay> personDays = Maps.newHashMap();
+    final Set<String> stampingKeys = Sets.newHashSet();
+    for (PersonDay personDay : personDayDao.getPersonDayInPeriod(people, begin,
+        Optional.of(end))) {
+      personDays.put(personDayKey(personDay.getPerson(), personDay.getDate()), personDay);
+      personDay.getStampings().forEach(s -> stampingKeys.add(
+          stampingKey(personDay.getPerson(), s.getDate(), s.getWay())));
+    }
+
+    final Map<Person, LocalDate> recomputeFrom = Maps.newHashMap();
+    final List<Integer> chronologicalOrder = IntStream.range(0, stampingsFromClient.size())
+        .boxed()
+        .sorted(Comparator.comparing(i -> stampingsFromClient.get(i).getDateTime()))
+        .collect(Collectors.toList());
+    for (int index : chronologicalOrder) {
+      final StampingFromClient stampingFromClient = stampingsFromClient.get(index);
+      final Person person = stampingFromClient.getPerson();
+      final LocalDate date = stampingFromClient.getDateTime().toLocalDate();
+      final WayType way = stampingFromClient.getInOut() == 0 ? WayType.in : WayType.out;
+
+      // Check stamping duplicata (anche all'interno dello stesso invio)
+      if (!stampingKeys.add(stampingKey(person, stampingFromClient.getDateTime(), way))) {
+        log.info("Timbratura delle {} già presente per {} (matricola = {}) ",
+            stampingFromClient.getDateTime(), person, person.getNumber());
+        continue;
+      }
+
+      PersonDay personDay = personDays.get(personDayKey(person, date));
+      if (personDay == null) {
+        personDay = new PersonDay(person, date);
+        personDay.setHoliday(personDayManager.isHoliday(person, date));
+        personDayDao.persist(personDay);
+        personDays.put(personDayKey(person, date), personDay);
+      }
+
+      final Stamping stamping = insertStampingFromClient(personDay, stampingFromClient, way,
+          stampingKeys);
+      log.info("Inserita timbratura {} per {} (matricola = {}) ",
+          stamping.getLabel(), person, person.getNumber());
+      results.set(index, Optional.of(stamping));
+      recomputeFrom.merge(person, date, (d1, d2) -> d1.isBefore(d2) ? d1 : d2);
+    }
+
+    // Ricalcolo, una sola volta per persona
+    if (recompute) {
+      recomputeFrom.forEach((person, from) ->
+          recomputationScheduler.schedulePersonSituation(person.getId(), from));
+    } else {
+      recomputeFrom.forEach(monthRecapSnapshotManager::touch);
+    }
+
+    return results;
+  }
+
+  /**
+   * Crea e salva la timbratura ricevuta dal client nel giorno indicato, preceduta
+   * dall'eventuale timbratura automatica di fine lavoro fuori sede. La chiave della
+   * timbratura automatica è registrata tra quelle già presenti, così che una timbratura
+   * successiva dello stesso invio non possa duplicarla.
+   */
+  private Stamping insertStampingFromClient(PersonDay personDay,
+      StampingFromClient stampingFromClient, WayType way, Set<String> stampingKeys) {
+
     //controllo se la precedente timbratura è per lavoro fuori sede e di ingresso
-    if (checkOffSite(personDay, stampingFromClient)) {
+    if (checkOffSite(personDay, stampingFromClient)
+        && stampingKeys.add(stampingKey(personDay.getPerson(),
+            stampingFromClient.getDateTime().minusMinutes(1), WayType.out))) {
       log.info("Il sistema inserisce una timbratura in automatico per {} "
           + "per fine lavoro fuori sede alle ore {}.", 
-          person.fullName(), stampingFromClient.getDateTime().minusMinutes(1));
+          personDay.getPerson().fullName(), stampingFromClient.getDateTime().minusMinutes(1));
       Stamping stamping = new Stamping(personDay, stampingFromClient.getDateTime().minusMinutes(1));
       stamping.setDate(stampingFromClient.getDateTime().minusMinutes(1));
       stamping.setMarkedByAdmin(stampingFromClient.isMarkedByAdmin());
@@ -352,7 +482,7 @@ public class StampingManager {
     }
 
     //Creazione stamping e inserimento
-    Stamping stamping = new Stamping(personDay, stampingFromClient.getDateTime());
+    final Stamping stamping = new Stamping(personDay, stampingFromClient.getDateTime());
     stamping.setDate(stampingFromClient.getDateTime());
     stamping.setMarkedByAdmin(stampingFromClient.isMarkedByAdmin());
     stamping.setWay(way);
@@ -365,15 +495,15 @@ public class StampingManager {
     stamping.setPlace(stampingFromClient.getPlace());
     stampingDao.save(stamping);
 
-    log.info("Inserita timbratura {} per {} (matricola = {}) ",
-        stamping.getLabel(), person, person.getNumber());
+    return stamping;
+  }
 
-    // Ricalcolo
-    if (recompute) {
-      consistencyManager.updatePersonSituation(person.getId(), personDay.getDate());
-    }
+  private static String personDayKey(Person person, LocalDate date) {
+    return person.getId() + "|" + date;
+  }
 
-    return Optional.of(stamping);
+  private static String stampingKey(Person person, LocalDateTime dateTime, WayType way) {
+    return person.getId() + "|" + dateTime + "|" + way;
   }
 
   /**
@@ -453,6 +583,46 @@ public class StampingManager {
         && stamping.getStampType() == StampTypes.LAVORO_FUORI_SEDE;
   }
 
+  /**
+   * Associa ad ogni timbratura la persona corrispondente al numero di badge, prelevando
+   * le persone di tutte le timbrature con un'unica query. Le timbrature per cui non è
+   * stato possibile individuare la persona restano senza persona associata.
+   *
+   * @param stampings le timbrature ricevute dal client
+   * @return false se l'utente corrente non è un lettore badge valido.
+   */
+  public boolean linkToPeople(List<StampingFromClient> stampings) {
+
+    Optional<User> user = secureUtils.getCurrentUser();
+    if (!user.isPresent()) {
+      log.error("Impossibile recuperare l'utente che ha inviato le timbrature");
+      return false;
+    }
+    if (user.get().getBadgeReader() == null) {
+      log.error("L'utente {} utilizzato per l'invio delle timbrature"
+          + " non ha una istanza badgeReader valida associata.", user.get().getUsername());
+      return false;
+    }
+    final Map<String, Person> people = personDao.getPeopleByBadgeNumbers(
+        stampings.stream().map(StampingFromClient::getNumeroBadge).filter(Objects::nonNull)
+          .collect(Collectors.toSet()),
+        user.get().getBadgeReader());
+
+    for (StampingFromClient stamping : stampings) {
+      if (stamping.getNumeroBadge() == null) {
+        continue;
+      }
+      final Person person = people.get(stamping.getNumeroBadge());
+      if (person != null) {
+        stamping.setPerson(person);
+      } else {
+        log.warn("Non e' stato possibile recuperare la persona a cui si riferisce la timbratura,"
+            + " matricolaFirma={}. Controllare il database.", stamping.getNumeroBadge());
+      }
+    }
+    return true;
+  }
+
   /**
    * Associa la persona alla timbratura ricevuta via REST.
    *
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager.configurations;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType;
+import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.IpList;
+import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.LocalTimeInterval;
+import it.cnr.iit.epas.models.Configuration;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonConfiguration;
+import it.cnr.iit.epas.models.base.IPropertiesInPeriodOwner;
+import it.cnr.iit.epas.utils.DateInterval;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Indice delle configurazioni di sedi e persone, con i valori già convertiti dal
+ * formato stringa. L'indice di un owner viene costruito alla prima richiesta e
+ * riutilizzato fino alla sua invalidazione (modifica delle configurazioni) o
+ * scadenza. I valori mutabili (intervalli di orari e liste di ip) sono restituiti
+ * come copie, così che le modifiche di un chiamante non alterino l'indice condiviso.
+ */
+@Slf4j
+@Component
+class ConfigurationIndexCache {
+
+  private static final long MAXIMUM_SIZE = 20_000;
+  private static final long EXPIRE_MINUTES = 10;
+
+  private final Cache<String, ConfigurationIndex> cache = CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_SIZE)
+      .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+      .build();
+
+  /**
+   * Incrementato ad ogni invalidazione: un indice costruito durante un'invalidazione
+   * concorrente viene rimosso subito dopo il suo inserimento in cache.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Valore di un parametro in un periodo.
+   */
+  @Value
+  static class ConfigurationValue {
+    LocalDate begin;
+    LocalDate end;
+    Object value;
+  }
+
+  /**
+   * Le configurazioni di un owner indicizzate per parametro e data di inizio.
+   */
+  static class ConfigurationIndex {
+
+    private final Map<EpasParam, NavigableMap<LocalDate, ConfigurationValue>> values =
+        new EnumMap<>(EpasParam.class);
+
+    private void put(EpasParam epasParam, DateInterval interval, String fieldValue) {
+      values.computeIfAbsent(epasParam, p -> Maps.newTreeMap())
+          .putIfAbsent(interval.getBegin(), new ConfigurationValue(interval.getBegin(),
+              interval.getEnd(),
+              EpasParamValueType.parseValue(epasParam.epasParamValueType, fieldValue)));
+    }
+
+    /**
+     * Il valore del parametro definito alla data, se presente.
+     */
+    Optional<ConfigurationValue> get(EpasParam epasParam, LocalDate date) {
+      NavigableMap<LocalDate, ConfigurationValue> periods = values.get(epasParam);
+      if (periods == null) {
+        return Optional.empty();
+      }
+      Map.Entry<LocalDate, ConfigurationValue> entry = periods.floorEntry(date);
+      if (entry == null || date.isAfter(entry.getValue().getEnd())) {
+        return Optional.empty();
+      }
+      final ConfigurationValue value = entry.getValue();
+      return Optional.of(new ConfigurationValue(value.getBegin(), value.getEnd(),
+          copyOf(value.getValue())));
+    }
+
+    private static Object copyOf(Object value) {
+      if (value instanceof LocalTimeInterval) {
+        final LocalTimeInterval interval = (LocalTimeInterval) value;
+        return new LocalTimeInterval(interval.from, interval.to);
+      }
+      if (value instanceof IpList) {
+        return new IpList(Lists.newArrayList(((IpList) value).ipList));
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Il valore del parametro per l'owner alla data, se definito.
+   * Per gli owner non ancora persistiti l'indice non viene mantenuto in cache.
+   *
+   * @param owner sede o persona
+   * @param epasParam il parametro
+   * @param date la data
+   * @return il valore già convertito se presente una configurazione alla data.
+   */
+  Optional<ConfigurationValue> lookup(IPropertiesInPeriodOwner owner, EpasParam epasParam,
+      LocalDate date) {
+    String key = key(owner);
+    if (key == null) {
+      return build(owner).get(epasParam, date);
+    }
+    ConfigurationIndex index = cache.getIfPresent(key);
+    if (index == null) {
+      final long current = generation.get();
+      index = build(owner);
+      cache.put(key, index);
+      if (generation.get() != current) {
+        cache.asMap().remove(key, index);
+      }
+    }
+    return index.get(epasParam, date);
+  }
+
+  /**
+   * Invalida l'indice dell'owner, sia subito che al termine della transazione corrente
+   * (se presente) così che eventuali letture concorrenti non lascino in cache valori
+   * precedenti al commit.
+   */
+  void invalidate(IPropertiesInPeriodOwner owner) {
+    final String key = key(owner);
+    if (key == null) {
+      return;
+    }
+    evict(key);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          evict(key);
+        }
+      });
+    }
+    log.trace("Invalidato l'indice delle configurazioni di {}", key);
+  }
+
+  /**
+   * Svuota tutti gli indici.
+   */
+  void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  private void evict(String key) {
+    generation.incrementAndGet();
+    cache.invalidate(key);
+  }
+
+  private String key(IPropertiesInPeriodOwner owner) {
+    if (owner instanceof Office && ((Office) owner).getId() != null) {
+      return "office-" + ((Office) owner).getId();
+    }
+    if (owner instanceof Person && ((Person) owner).getId() != null) {
+      return "person-" + ((Person) owner).getId();
+    }
+    return null;
+  }
+
+  private ConfigurationIndex build(IPropertiesInPeriodOwner owner) {
+    ConfigurationIndex index = new ConfigurationIndex();
+    if (owner instanceof Office) {
+      for (Configuration configuration : ((Office) owner).getConfigurations()) {
+        index.put(configuration.epasParam, configuration.periodInterval(),
+            configuration.fieldValue);
+      }
+    }
+    if (owner instanceof Person) {
+      for (PersonConfiguration configuration : ((Person) owner).getPersonConfigurations()) {
+        index.put(configuration.getEpasParam(), configuration.periodInterval(),
+            configuration.getFieldValue());
+      }
+    }
+    return index;
+  }
+}
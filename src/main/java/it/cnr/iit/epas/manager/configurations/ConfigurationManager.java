@@ -24,6 +24,7 @@ import com.querydsl.jpa.JPQLQueryFactory;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import it.cnr.iit.epas.dao.OfficeDao;
 import it.cnr.iit.epas.dao.PersonDao;
+import it.cnr.iit.epas.manager.configurations.ConfigurationIndexCache.ConfigurationValue;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.IpList;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamValueType.LocalTimeInterval;
@@ -62,6 +63,7 @@ public class ConfigurationManager {
   private final OfficeDao officeDao;
   private final ConfigurationManagerUtils utils;
   private final ConfigurationManagerAsync async;
+  private final ConfigurationIndexCache configurationIndexCache;
 
   /**
    * Default constructor per l'injection.
@@ -70,12 +72,14 @@ public class ConfigurationManager {
   ConfigurationManager(Provider<EntityManager> emp,
       PersonDao personDao,
       OfficeDao officeDao,
-      ConfigurationManagerUtils utils, ConfigurationManagerAsync async) {
+      ConfigurationManagerUtils utils, ConfigurationManagerAsync async,
+      ConfigurationIndexCache configurationIndexCache) {
     this.queryFactory = new JPAQueryFactory(emp.get());
     this.personDao = personDao;
     this.officeDao = officeDao;
     this.utils = utils;
     this.async = async;
+    this.configurationIndexCache = configurationIndexCache;
   }
 
   /**
@@ -417,6 +421,17 @@ public class ConfigurationManager {
       throw new IllegalStateException();
     }
 
+    // Primo tentativo (caso generale) tramite l'indice delle configurazioni dell'owner
+    Optional<ConfigurationValue> indexed = configurationIndexCache.lookup(owner, epasParam, date);
+    if (indexed.isPresent()) {
+      return indexed.get().getValue();
+    }
+
+    // Parametro necessario inesistente
+    if (DateUtility.isDateIntoInterval(date, owner.periodInterval())) {
+      throw new IllegalStateException();
+    }
+
     List<IPropertyInPeriod> configurations = Lists.newArrayList();
     if (owner instanceof Office) {
       configurations = Lists.newArrayList(((Office) owner).getConfigurations());
@@ -425,35 +440,6 @@ public class ConfigurationManager {
       configurations = Lists.newArrayList(((Person) owner).getPersonConfigurations());
     }
 
-    // Primo tentativo (caso generale)
-    for (IPropertyInPeriod configuration : configurations) {
-
-      EpasParam currentEpasParam = null;
-      String fieldValue = null;
-
-      if (configuration instanceof Configuration) {
-        currentEpasParam = ((Configuration) configuration).epasParam;
-        fieldValue = ((Configuration) configuration).fieldValue;
-      }
-      if (configuration instanceof PersonConfiguration) {
-        currentEpasParam = ((PersonConfiguration) configuration).getEpasParam();
-        fieldValue = ((PersonConfiguration) configuration).getFieldValue();
-      }
-
-      if (!currentEpasParam.equals(epasParam)) {
-        continue;
-      }
-      if (!DateUtility.isDateIntoInterval(date, configuration.periodInterval())) {
-        continue;
-      }
-      return parseValue(currentEpasParam, fieldValue);
-    }
-
-    // Parametro necessario inesistente
-    if (DateUtility.isDateIntoInterval(date, owner.periodInterval())) {
-      throw new IllegalStateException();
-    }
-
     // Parametro non necessario, risposta di cortesia.
     Object nearestValue = null;
     Long days = null;
@@ -18,6 +18,7 @@
 package it.cnr.iit.epas.manager.configurations;
 
 import com.google.common.base.Verify;
+import it.cnr.iit.epas.manager.HolidayCalendar;
 import it.cnr.iit.epas.manager.PeriodManager;
 import it.cnr.iit.epas.manager.configurations.EpasParam.EpasParamTimeType;
 import it.cnr.iit.epas.models.Configuration;
@@ -39,10 +40,15 @@ import org.springframework.stereotype.Component;
 class ConfigurationManagerUtils {
 
   private final PeriodManager periodManager;
+  private final ConfigurationIndexCache configurationIndexCache;
+  private final HolidayCalendar holidayCalendar;
 
   @Inject
-  ConfigurationManagerUtils(PeriodManager periodManage) {
+  ConfigurationManagerUtils(PeriodManager periodManage,
+      ConfigurationIndexCache configurationIndexCache, HolidayCalendar holidayCalendar) {
     this.periodManager = periodManage;
+    this.configurationIndexCache = configurationIndexCache;
+    this.holidayCalendar = holidayCalendar;
   }
 
   /**
@@ -93,6 +99,10 @@ class ConfigurationManagerUtils {
     Verify.verify(validateTimeType(epasParam, configurationInPeriod));
 
     periodManager.updatePeriods(configurationInPeriod, persist);
+    configurationIndexCache.invalidate(target);
+    if (target instanceof Office) {
+      holidayCalendar.invalidate((Office) target);
+    }
     return configurationInPeriod;
   }
 
@@ -157,6 +167,7 @@ class ConfigurationManagerUtils {
       }
       log.debug("Updated configurations for {}", owner);
     }
+    configurationIndexCache.invalidate(owner);
   }
 
   /**
@@ -187,6 +198,8 @@ class ConfigurationManagerUtils {
         log.trace("Creato parametro {} per {}", epasParam, owner);
       }
     }
+    configurationIndexCache.invalidate(owner);
+    holidayCalendar.invalidate(owner);
     log.debug("Updated configurations for {}", owner);
   }
 }
@@ -103,6 +103,7 @@ public class AbsenceRequestManager {
   private final PersonShiftDayDao personShiftDayDao;
   private final GeneralSettingDao generalSettingDao;
   private final SecureUtils secureUtils;
+  private final ApprovalInboxManager approvalInboxManager;
 
   /**
    * DTO per la configurazione delle AbsenceRequest.
@@ -136,7 +137,7 @@ public class AbsenceRequestManager {
       PersonDayDao personDayDao,
       GroupDao groupDao, PersonReperibilityDayDao personReperibilityDayDao, 
       PersonShiftDayDao personShiftDayDao, GeneralSettingDao generalSettingDao,
-      SecureUtils secureUtils) {
+      SecureUtils secureUtils, ApprovalInboxManager approvalInboxManager) {
     this.configurationManager = configurationManager;
     this.uroDao = uroDao;
     this.roleDao = roleDao;
@@ -154,6 +155,7 @@ public class AbsenceRequestManager {
     this.personShiftDayDao = personShiftDayDao;
     this.generalSettingDao = generalSettingDao;
     this.secureUtils = secureUtils;
+    this.approvalInboxManager = approvalInboxManager;
   }
 
   private static final String FERIE_CNR = "FERIE_CNR";
@@ -480,6 +482,7 @@ public class AbsenceRequestManager {
     log.info("Costruito evento per richiesta di assenza {}", event);
     absenceRequestDao.save(absenceRequest);
     checkAndCompleteFlow(absenceRequest);
+    approvalInboxManager.refresh(absenceRequest);
     return Optional.empty();
   }
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager.flows;
+
+import com.google.common.collect.Maps;
+import it.cnr.iit.epas.dao.ApprovalInboxDao;
+import it.cnr.iit.epas.dao.UsersRolesOfficesDao;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.Role;
+import it.cnr.iit.epas.models.User;
+import it.cnr.iit.epas.models.base.InformationRequest;
+import it.cnr.iit.epas.models.enumerate.InformationType;
+import it.cnr.iit.epas.models.flows.AbsenceRequest;
+import it.cnr.iit.epas.models.flows.ApprovalInboxItem;
+import it.cnr.iit.epas.models.flows.enumerate.AbsenceRequestType;
+import it.cnr.iit.epas.models.flows.enumerate.ApprovalRequestKind;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gestione della lista delle approvazioni in attesa delle richieste di assenza e di
+ * informazione, utilizzata per i contatori delle richieste da approvare.
+ */
+@Slf4j
+@Component
+public class ApprovalInboxManager {
+
+  private final ApprovalInboxDao approvalInboxDao;
+  private final UsersRolesOfficesDao uroDao;
+
+  @Inject
+  ApprovalInboxManager(ApprovalInboxDao approvalInboxDao, UsersRolesOfficesDao uroDao) {
+    this.approvalInboxDao = approvalInboxDao;
+    this.uroDao = uroDao;
+  }
+
+  /**
+   * Ricalcola le approvazioni in attesa della richiesta di assenza a partire dal suo stato.
+   * Le condizioni sono le stesse utilizzate da AbsenceRequestDao.toApproveResults: il
+   * responsabile di gruppo approva se è richiesta e non ancora rilasciata la sua
+   * approvazione, il responsabile di sede nei casi previsti dal flusso. I responsabili dei
+   * gruppi del dipendente sono individuati al momento della lettura.
+   *
+   * @param request la richiesta di assenza
+   */
+  @Transactional
+  public void refresh(AbsenceRequest request) {
+    approvalInboxDao.deleteByRequest(ApprovalRequestKind.ABSENCE_REQUEST, request.getId());
+    if (!request.isFlowStarted() || request.isFlowEnded()) {
+      return;
+    }
+    val type = request.getType().name();
+    val person = request.getPerson();
+
+    if (request.isManagerApprovalRequired() && !request.isManagerApproved()) {
+      add(ApprovalRequestKind.ABSENCE_REQUEST, request.getId(), type, Role.GROUP_MANAGER, person);
+    }
+    if (!request.isOfficeHeadApproved()
+        && (request.isOfficeHeadApprovalForManagerRequired()
+          || (request.isOfficeHeadApprovalRequired()
+            && (!request.isManagerApprovalRequired() || request.isManagerApproved())))) {
+      add(ApprovalRequestKind.ABSENCE_REQUEST, request.getId(), type,
+          Role.SEAT_SUPERVISOR, person);
+    }
+  }
+
+  /**
+   * Ricalcola le approvazioni in attesa della richiesta di informazione a partire dal suo
+   * stato: per ogni approvazione richiesta e non ancora rilasciata è in attesa il ruolo
+   * corrispondente nella sede del dipendente (per il responsabile di gruppo, i responsabili
+   * dei gruppi del dipendente, individuati al momento della lettura).
+   *
+   * @param request la richiesta di informazione
+   */
+  @Transactional
+  public void refresh(InformationRequest request) {
+    approvalInboxDao.deleteByRequest(
+        ApprovalRequestKind.INFORMATION_REQUEST, request.getId());
+    if (!request.isFlowStarted() || request.isFlowEnded()) {
+      return;
+    }
+    val type = request.getInformationType().name();
+    val person = request.getPerson();
+
+    if (request.isAdministrativeApprovalRequired() && request.getAdministrativeApproved() == null) {
+      add(ApprovalRequestKind.INFORMATION_REQUEST, request.getId(), type,
+          Role.PERSONNEL_ADMIN, person);
+    }
+    if (request.isManagerApprovalRequired() && request.getManagerApproved() == null) {
+      add(ApprovalRequestKind.INFORMATION_REQUEST, request.getId(), type,
+          Role.GROUP_MANAGER, person);
+    }
+    if (request.isOfficeHeadApprovalRequired() && request.getOfficeHeadApproved() == null) {
+      add(ApprovalRequestKind.INFORMATION_REQUEST, request.getId(), type,
+          Role.SEAT_SUPERVISOR, person);
+    }
+  }
+
+  /**
+   * Il numero di richieste da approvare da parte dell'utente per ogni tipo di richiesta
+   * di assenza e di informazione, calcolati con un'unica query.
+   *
+   * @param user l'utente che deve approvare le richieste
+   * @return la mappa tipo di richiesta -> numero di richieste da approvare, con tutti i tipi
+   *     di richiesta.
+   */
+  public Map<String, Long> pendingCounters(User user) {
+    final Map<String, Long> counters = Maps.newLinkedHashMap();
+    for (AbsenceRequestType type : AbsenceRequestType.values()) {
+      counters.put(type.name(), 0L);
+    }
+    for (InformationType type : InformationType.values()) {
+      counters.put(type.name(), 0L);
+    }
+    if (user.isSystemUser() || user.getPerson() == null) {
+      return counters;
+    }
+    counters.putAll(approvalInboxDao.countPendingByType(
+        uroDao.getUsersRolesOfficesByUser(user), user.getPerson()));
+    return counters;
+  }
+
+  private void add(ApprovalRequestKind kind, Long requestId, String type, String role,
+      Person person) {
+    val item = new ApprovalInboxItem(kind, requestId, type, role, person);
+    approvalInboxDao.persist(item);
+    log.trace("Approvazione in attesa {}", item);
+  }
+}
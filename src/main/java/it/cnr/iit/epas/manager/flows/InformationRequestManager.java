@@ -80,6 +80,7 @@ public class InformationRequestManager {
   private final ParentalLeaveRequestDao parentalLeaveRequestDao;
   private final TeleworkRequestDao teleworkRequestDao;
   private final SecureUtils secureUtils;
+  private final ApprovalInboxManager approvalInboxManager;
 
   
   /**
@@ -113,7 +114,7 @@ public class InformationRequestManager {
       InformationRequestEventDao informationRequestEventDao,
       IllnessRequestDao ilnessRequestDao, ParentalLeaveRequestDao parentalLeaveRequestDao,
       TeleworkRequestDao teleworkRequestDao,
-      SecureUtils secureUtils) {
+      SecureUtils secureUtils, ApprovalInboxManager approvalInboxManager) {
     this.configurationManager = configurationManager;
     this.uroDao = uroDao;
     this.roleDao = roleDao;
@@ -127,6 +128,7 @@ public class InformationRequestManager {
     this.parentalLeaveRequestDao = parentalLeaveRequestDao;
     this.teleworkRequestDao = teleworkRequestDao;
     this.secureUtils = secureUtils;
+    this.approvalInboxManager = approvalInboxManager;
   }
   
   /**
@@ -381,6 +383,7 @@ public class InformationRequestManager {
     informationRequestDao.save(request);
 
     checkAndCompleteFlow(serviceRequest, illnessRequest, teleworkRequest, parentalLeaveRequest);
+    approvalInboxManager.refresh(request);
     return Optional.empty();
   }
   
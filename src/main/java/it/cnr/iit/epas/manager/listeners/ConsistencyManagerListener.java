@@ -18,36 +18,28 @@
 package it.cnr.iit.epas.manager.listeners;
 
 import com.google.common.base.Verify;
-import it.cnr.iit.epas.dao.ContractDao;
-import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
-import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.manager.services.absences.AbsenceServiceAsync;
 import it.cnr.iit.epas.models.Contract;
-import it.cnr.iit.epas.models.absences.GroupAbsenceType;
-import it.cnr.iit.epas.models.absences.definitions.DefaultGroup;
-import java.time.LocalDate;
 import java.util.Optional;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Slf4j
 @Aspect
 @Component
 class ConsistencyManagerListener {
 
-  private final ContractDao contractDao;
-  private final AbsenceComponentDao absenceComponentDao;
-  private final AbsenceService absenceService;
+  private final AbsenceServiceAsync absenceServiceAsync;
 
 
   @Inject
-  ConsistencyManagerListener(ContractDao contractDao,
-      AbsenceComponentDao absenceComponentDao, AbsenceService absenceService) {
-    this.contractDao = contractDao;
-    this.absenceComponentDao = absenceComponentDao;
-    this.absenceService = absenceService;
+  ConsistencyManagerListener(AbsenceServiceAsync absenceServiceAsync) {
+    this.absenceServiceAsync = absenceServiceAsync;
   }
 
   @AfterReturning(
@@ -57,17 +49,40 @@ class ConsistencyManagerListener {
           + "Long,java.time.LocalDate,java.util.Optional<java.time.LocalDate>, boolean))",
           returning = "contract")
   void updatePersonSituationEngine(Optional<Contract> contract) {
+    buildCurrentVacationSituation(contract);
+  }
+
+  @AfterReturning(
+      pointcut = "execution("
+          + "public java.util.Optional<it.cnr.iit.epas.models.Contract> "
+          + "it.cnr.iit.epas.manager.ConsistencyManagerUtils.updatePersonSituationIncremental("
+          + "Long,java.time.LocalDate))",
+          returning = "contract")
+  void updatePersonSituationIncremental(Optional<Contract> contract) {
+    buildCurrentVacationSituation(contract);
+  }
+
+  /**
+   * Aggiorna in modo asincrono i riepiloghi ferie in cache del contratto attuale, al commit 
+   * della transazione corrente se presente.
+   */
+  private void buildCurrentVacationSituation(Optional<Contract> contract) {
     log.debug("ConsistencyManagerListener.updatePersonSituationEngine started, contract = {}", 
         contract.orElse(null));
     if (contract.isPresent()) {
-      Verify.verifyNotNull(contract.get().getId());
-      Contract currentContract = contractDao.byId(contract.get().getId()).get();
-      Verify.verifyNotNull(currentContract, 
-          String.format("currentcontract is null, contract.id = %s", contract.get().getId()));
-      GroupAbsenceType vacationGroup = absenceComponentDao
-          .groupAbsenceTypeByName(DefaultGroup.FERIE_CNR.name()).get();
-      absenceService.buildVacationSituation(currentContract, LocalDate.now().getYear(),
-          vacationGroup, Optional.empty(), true);
+      final Long contractId = contract.get().getId();
+      Verify.verifyNotNull(contractId);
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+              @Override
+              public void afterCommit() {
+                absenceServiceAsync.warmVacationCache(contractId);
+              }
+            });
+      } else {
+        absenceServiceAsync.warmVacationCache(contractId);
+      }
       log.debug("ConsistencyManagerListener.updatePersonSituationEngine ended, contract = {}",
           contract.get());
     } else {
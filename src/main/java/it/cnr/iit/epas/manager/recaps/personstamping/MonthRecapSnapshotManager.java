@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.manager.recaps.personstamping;
+
+import com.google.common.collect.Sets;
+import it.cnr.iit.epas.dao.MonthRecapSnapshotDao;
+import it.cnr.iit.epas.dao.PersonDao;
+import it.cnr.iit.epas.models.MonthRecapSnapshot;
+import it.cnr.iit.epas.models.Person;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Gestione dei riepiloghi mensili delle timbrature salvati per la visualizzazione.<br>
+ * Sono salvati solo i riepiloghi dei mesi conclusi. Ogni ricalcolo della situazione di una
+ * persona (o inserimento senza ricalcolo) incrementa la versione dei mesi interessati
+ * eliminandone il riepilogo: il riepilogo calcolato viene salvato solo se la versione del mese
+ * non è cambiata durante il calcolo.<br>
+ * Le richieste di visualizzazione leggono soltanto i riepiloghi: il salvataggio dei riepiloghi
+ * mancanti avviene in modo asincrono, una sola volta per persona e mese anche a fronte di
+ * richieste concorrenti.
+ */
+@Slf4j
+@Component
+public class MonthRecapSnapshotManager {
+
+  private final MonthRecapSnapshotDao snapshotDao;
+  private final PersonDao personDao;
+  private final TransactionTemplate requiresNew;
+  private final Set<String> materializing = Sets.newConcurrentHashSet();
+
+  @Inject
+  MonthRecapSnapshotManager(MonthRecapSnapshotDao snapshotDao, PersonDao personDao,
+      PlatformTransactionManager transactionManager) {
+    this.snapshotDao = snapshotDao;
+    this.personDao = personDao;
+    this.requiresNew = new TransactionTemplate(transactionManager);
+    this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  /**
+   * Se il riepilogo del mese può essere salvato: solo i mesi conclusi, i riepiloghi
+   * del mese attuale dipendono dal giorno e dall'ora della richiesta.
+   */
+  public boolean isStorable(YearMonth yearMonth) {
+    return yearMonth.isBefore(YearMonth.now());
+  }
+
+  /**
+   * Il riepilogo salvato della persona nel mese, se calcolato per la versione attuale del
+   * mese e della persona.
+   *
+   * @param person la persona
+   * @param yearMonth il mese concluso
+   * @return il riepilogo con il contenuto se presente e valido.
+   */
+  public Optional<MonthRecapSnapshot> snapshot(Person person, YearMonth yearMonth) {
+    return snapshotDao.byPersonAndMonth(person, yearMonth)
+        .filter(snapshot -> snapshot.getPayload() != null
+            && Objects.equals(snapshot.getPersonVersion(), person.getVersion()));
+  }
+
+  /**
+   * Calcola e salva il riepilogo della persona nel mese. Il riepilogo (senza contenuto) è
+   * creato prima del calcolo, così che i ricalcoli concorrenti ne incrementino la versione
+   * ed il contenuto calcolato sui dati precedenti non venga salvato.
+   * Metodo Asincrono!
+   *
+   * @param personId l'id della persona
+   * @param yearMonth il mese concluso
+   * @param payload il calcolo del riepilogo in formato JSON
+   */
+  @Async
+  public CompletableFuture<Void> materialize(Long personId, YearMonth yearMonth,
+      Function<Person, String> payload) {
+    final String key = personId + "-" + yearMonth;
+    if (!materializing.add(key)) {
+      return CompletableFuture.allOf();
+    }
+    try {
+      final MonthRecapSnapshot snapshot = create(personId, yearMonth);
+      final Boolean stored = requiresNew.execute(status -> {
+        final Person person = personDao.getPersonById(personId);
+        return snapshotDao.storePayload(snapshot.getId(), snapshot.getRecapVersion(),
+            person.getVersion(), payload.apply(person));
+      });
+      if (!Boolean.TRUE.equals(stored)) {
+        log.debug("Riepilogo {} non salvato perché modificato durante il calcolo", snapshot);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Impossibile salvare il riepilogo della persona id={} del mese {}: {}",
+          personId, yearMonth, e.getMessage());
+    } finally {
+      materializing.remove(key);
+    }
+    return CompletableFuture.allOf();
+  }
+
+  private MonthRecapSnapshot create(Long personId, YearMonth yearMonth) {
+    final Supplier<Optional<MonthRecapSnapshot>> current = () -> requiresNew.execute(status ->
+        snapshotDao.byPersonAndMonth(personDao.getPersonById(personId), yearMonth));
+    return current.get().orElseGet(() -> {
+      try {
+        requiresNew.executeWithoutResult(status -> snapshotDao.persist(
+            new MonthRecapSnapshot(personDao.getPersonById(personId), yearMonth.getYear(),
+                yearMonth.getMonthValue())));
+      } catch (DataAccessException | PersistenceException e) {
+        log.debug("Riepilogo della persona id={} del mese {} creato da un'altra istanza",
+            personId, yearMonth);
+      }
+      return current.get().orElseThrow();
+    });
+  }
+
+  /**
+   * Invalida i riepiloghi della persona dal mese della data indicata in poi. L'invalidazione
+   * è ripetuta al termine della transazione corrente (se presente), così da scartare anche
+   * i riepiloghi calcolati in concorrenza a partire dai dati precedenti al commit.
+   *
+   * @param person la persona ricalcolata
+   * @param from la data da cui è stato effettuato il ricalcolo
+   */
+  public void touch(Person person, LocalDate from) {
+    final YearMonth yearMonth = YearMonth.from(from);
+    snapshotDao.touch(person, yearMonth);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          try {
+            requiresNew.executeWithoutResult(status -> snapshotDao.touch(person, yearMonth));
+          } catch (DataAccessException | PersistenceException e) {
+            log.warn("Impossibile invalidare i riepiloghi di {} dal mese {}: {}",
+                person.getFullname(), yearMonth, e.getMessage());
+          }
+        }
+      });
+    }
+  }
+}
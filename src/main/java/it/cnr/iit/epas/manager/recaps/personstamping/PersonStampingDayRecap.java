@@ -125,6 +125,7 @@ public class PersonStampingDayRecap {
     /*Fine nuovi campi per la gestione dell'orario personalizzato*/
     
     // 1) computazioni: valid/pair timbrature e uscita in questo momento nel caso di oggi
+    personDayManager.setValidPairStampings(personDay.getStampings());
     if (personDayManager.toComputeExitingNow(personDay) 
         && wrPersonDay.getPersonDayContract().isPresent()
         && wttd.isPresent()) {
@@ -133,9 +134,6 @@ public class PersonStampingDayRecap {
       personDayManager.queSeraSera(personDay, LocalDateTime.now(),
           wrPersonDay.getPreviousForProgressive(), wttd.get(), 
           wrPersonDay.isFixedTimeAtWork(), lunchInterval, workInterval);
-    } else { 
-      // altrimenti setto le sole valid stamping
-      personDayManager.setValidPairStampings(personDay.getStampings());
     }
 
     // 2) genero le stamping template (colori e timbrature fittizie)
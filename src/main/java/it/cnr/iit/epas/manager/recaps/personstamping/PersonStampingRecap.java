@@ -17,7 +17,6 @@ package it.cnr.iit.epas.manager.recaps.personstamping;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import it.cnr.iit.epas.dao.PersonDayDao;
 import it.cnr.iit.epas.dao.wrapper.IWrapperContractMonthRecap;
 import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.manager.PersonDayManager;
@@ -31,12 +30,12 @@ import it.cnr.iit.epas.models.StampModificationTypeCode;
 import it.cnr.iit.epas.models.Stamping;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceType;
-import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
 import it.cnr.iit.epas.models.dto.AbsenceToRecoverDto;
 import it.cnr.iit.epas.models.enumerate.StampTypes;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,19 +101,19 @@ public class PersonStampingRecap {
    * timbrature.
    *
    * @param personDayManager personDayManager
-   * @param personDayDao personDayDao
    * @param personManager personManager
    * @param stampingDayRecapFactory stampingDayRecapFactory
    * @param wrapperFactory wrapperFactory
    * @param year year
    * @param month month
    * @param person person
+   * @param personDays i personDay del mese con timbrature ed assenze
    * @param considerExitingNow se considerare nel calcolo l'uscita in questo momento
    */
-  public PersonStampingRecap(PersonDayManager personDayManager, PersonDayDao personDayDao,
+  public PersonStampingRecap(PersonDayManager personDayManager,
       PersonManager personManager, PersonStampingDayRecapFactory stampingDayRecapFactory,
       IWrapperFactory wrapperFactory, int year, int month, Person person,
-      boolean considerExitingNow) {
+      List<PersonDay> personDays, boolean considerExitingNow) {
 
     // DATI DELLA PERSONA
     //FIXME: da correggere prima dell'utilizzo di spring boot
@@ -137,11 +136,6 @@ public class PersonStampingRecap {
     LocalDate begin = LocalDate.of(year, month, 1);
     LocalDate end = DateUtility.endOfMonth(begin);
 
-
-    List<PersonDay> personDays =
-        personDayDao.getPersonDayInPeriod(person, begin, Optional.ofNullable(end));
-
-
     this.numberOfInOut =
         Math.max(MIN_IN_OUT_COLUMN, personDayManager.getMaximumCoupleOfStampings(personDays));
 
@@ -172,10 +166,13 @@ public class PersonStampingRecap {
 
     LocalDate today = LocalDate.now();
 
+    // I tipi di modifica delle timbrature sono prelevati una sola volta per mese
+    final Map<StampModificationTypeCode, StampModificationType> markers =
+        new EnumMap<>(StampModificationTypeCode.class);
+
     long startDayRecaps = System.currentTimeMillis();
     for (PersonDay pd : totalPersonDays) {
-      personDayManager.setValidPairStampings(pd.getStampings());
-
+      // Le timbrature valide sono calcolate dal riepilogo del giorno
       PersonStampingDayRecap dayRecap = stampingDayRecapFactory.create(pd, this.numberOfInOut,
           considerExitingNow, Optional.ofNullable(monthContracts));
       this.daysRecap.add(dayRecap);
@@ -192,19 +189,19 @@ public class PersonStampingRecap {
           stampTypeSet.add(stamp.getStampType());
         }
         if (stamp.isMarkedByAdmin()) {
-          StampModificationType smt = stampingDayRecapFactory.stampTypeManager
-              .getStampMofificationType(StampModificationTypeCode.MARKED_BY_ADMIN);
-          stampModificationTypeSet.add(smt);
+          stampModificationTypeSet.add(markers.computeIfAbsent(
+              StampModificationTypeCode.MARKED_BY_ADMIN,
+              stampingDayRecapFactory.stampTypeManager::getStampMofificationType));
         }
         if (stamp.isMarkedByEmployee()) {
-          StampModificationType smt = stampingDayRecapFactory.stampTypeManager
-              .getStampMofificationType(StampModificationTypeCode.MARKED_BY_EMPLOYEE);
-          stampModificationTypeSet.add(smt);
+          stampModificationTypeSet.add(markers.computeIfAbsent(
+              StampModificationTypeCode.MARKED_BY_EMPLOYEE,
+              stampingDayRecapFactory.stampTypeManager::getStampMofificationType));
         }
         if (stamp.isMarkedByTelework()) {
-          StampModificationType smt = stampingDayRecapFactory.stampTypeManager
-              .getStampMofificationType(StampModificationTypeCode.MARKED_BY_TELEWORK);
-          stampModificationTypeSet.add(smt);
+          stampModificationTypeSet.add(markers.computeIfAbsent(
+              StampModificationTypeCode.MARKED_BY_TELEWORK,
+              stampingDayRecapFactory.stampTypeManager::getStampMofificationType));
         }
         if (stamp.getStampModificationType() != null) {
           if (stamp.getStampModificationType().getCode()
@@ -227,16 +224,8 @@ public class PersonStampingRecap {
     this.basedWorkingDays = personManager.basedWorkingDays(personDays, monthContracts, end);
     this.absenceCodeMap = personManager.countAbsenceCodes(totalPersonDays);
     this.absenceList = personManager.listAbsenceCodes(totalPersonDays);
-    LocalDate from = person.getOffice().getBeginDate();
-    List<Absence> list = personManager.absencesToRecover(person, from, LocalDate.now(),
-        JustifiedTypeName.recover_time);
-    this.absencesToRecoverList = personManager.dtoList(list);
-
-    if (list.isEmpty()) {
-      this.absenceToRecoverYet = false;
-    } else {
-      this.absenceToRecoverYet = true;
-    }
+    this.absencesToRecoverList = personManager.absencesToRecoverUntilToday(person);
+    this.absenceToRecoverYet = !absencesToRecoverList.isEmpty();
     log.debug("fine creazione nuovo PersonStampingRecap in {} ms. Person = {}, year = {}, "
         + "month = {}", System.currentTimeMillis() - start, person.getFullname(), year, month);
   }
@@ -22,6 +22,11 @@ import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
 import it.cnr.iit.epas.manager.PersonDayManager;
 import it.cnr.iit.epas.manager.PersonManager;
 import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.utils.DateUtility;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
 import javax.inject.Inject;
 import org.springframework.stereotype.Component;
 
@@ -60,9 +65,28 @@ public class PersonStampingRecapFactory {
   public PersonStampingRecap create(Person person, int year, int month, 
       boolean considerExitingNow) {
 
-    return new PersonStampingRecap(personDayManager, personDayDao,
+    final LocalDate begin = LocalDate.of(year, month, 1);
+    final List<PersonDay> personDays = personDayDao.getPersonDayInPeriod(person, begin,
+        Optional.of(DateUtility.endOfMonth(begin)));
+    return new PersonStampingRecap(personDayManager,
         personManager, stampingDayRecapFactory,
-        wrapperFactory, year, month, person, considerExitingNow);
+        wrapperFactory, year, month, person, personDays, considerExitingNow);
+  }
+
+  /**
+   * Costruisce il riepilogo mensile delle timbrature destinato alla sola visualizzazione.
+   * I personDay del mese sono prelevati in sola lettura, quindi le elaborazioni effettuate
+   * per la visualizzazione (es. uscita in questo momento) non sono mai salvate.
+   */
+  public PersonStampingRecap createForView(Person person, int year, int month,
+      boolean considerExitingNow) {
+
+    final LocalDate begin = LocalDate.of(year, month, 1);
+    final List<PersonDay> personDays = personDayDao.getPersonDaysForView(person, begin,
+        DateUtility.endOfMonth(begin));
+    return new PersonStampingRecap(personDayManager,
+        personManager, stampingDayRecapFactory,
+        wrapperFactory, year, month, person, personDays, considerExitingNow);
   }
 
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.manager.recaps.personvacation;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import it.cnr.iit.epas.config.ComputationScope;
+import it.cnr.iit.epas.config.ComputationScope.ComputationContext;
+import it.cnr.iit.epas.config.VacationsProperties;
+import it.cnr.iit.epas.dao.ContractDao;
+import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
+import it.cnr.iit.epas.dto.v4.OfficeVacationSituationDto;
+import it.cnr.iit.epas.dto.v4.mapper.PersonVacationMapper;
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.absences.GroupAbsenceType;
+import it.cnr.iit.epas.models.absences.definitions.DefaultGroup;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Calcolo della situazione delle ferie e dei permessi di tutti i contratti attivi di una
+ * sede in un anno.<br>
+ * Le situazioni dei contratti sono calcolate in parallelo su un pool di thread di
+ * dimensione limitata: ogni calcolo avviene in una propria transazione in sola lettura
+ * (con il proprio contesto di persistenza) e nel proprio {@link ComputationScope}.
+ * I riepiloghi già presenti nella cache delle ferie vengono riutilizzati, quelli calcolati
+ * vengono aggiunti alla cache.
+ */
+@Slf4j
+@Component
+public class OfficeVacationSituationManager {
+
+  private final ContractDao contractDao;
+  private final AbsenceComponentDao absenceComponentDao;
+  private final AbsenceService absenceService;
+  private final PersonVacationMapper personVacationMapper;
+  private final ComputationScope computationScope;
+  private final TransactionTemplate readOnly;
+  private final ExecutorService workers;
+
+  @Inject
+  OfficeVacationSituationManager(ContractDao contractDao,
+      AbsenceComponentDao absenceComponentDao, AbsenceService absenceService,
+      PersonVacationMapper personVacationMapper, ComputationScope computationScope,
+      PlatformTransactionManager transactionManager, VacationsProperties properties) {
+    Preconditions.checkArgument(properties.getParallelism() > 0,
+        "epas.vacations.parallelism deve essere maggiore di zero");
+    this.contractDao = contractDao;
+    this.absenceComponentDao = absenceComponentDao;
+    this.absenceService = absenceService;
+    this.personVacationMapper = personVacationMapper;
+    this.computationScope = computationScope;
+    this.readOnly = new TransactionTemplate(transactionManager);
+    this.readOnly.setReadOnly(true);
+    this.workers = Executors.newFixedThreadPool(properties.getParallelism(),
+        new ThreadFactoryBuilder().setNameFormat("office-vacations-%d").build());
+  }
+
+  /**
+   * Gli id dei contratti dei dipendenti della sede attivi nell'anno, in ordine di persona.
+   *
+   * @param office la sede
+   * @param year l'anno
+   * @return la lista degli id dei contratti.
+   */
+  public List<Long> activeContractIds(Office office, int year) {
+    return contractDao.getActiveContractsInPeriod(LocalDate.of(year, 1, 1),
+        Optional.of(LocalDate.of(year, 12, 31)), Optional.of(office)).stream()
+        .sorted(Comparator.comparing((Contract c) -> c.getPerson().getSurname(),
+            Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Contract::getId))
+        .map(Contract::getId).collect(Collectors.toList());
+  }
+
+  /**
+   * Calcola in parallelo le situazioni ferie dei contratti passati, consegnandole al
+   * consumer (nel thread del chiamante) man mano che sono disponibili, quindi non
+   * nell'ordine dei contratti. In caso di errore i calcoli ancora in attesa sono annullati.
+   *
+   * @param contractIds gli id dei contratti
+   * @param year l'anno
+   * @param context il contesto (utente) con cui effettuare i calcoli
+   * @param consumer il destinatario delle situazioni calcolate
+   */
+  public void situations(List<Long> contractIds, int year, ComputationContext context,
+      Consumer<OfficeVacationSituationDto> consumer) {
+    final long start = System.currentTimeMillis();
+    final CompletionService<OfficeVacationSituationDto> completionService =
+        new ExecutorCompletionService<>(workers);
+    final List<Future<OfficeVacationSituationDto>> futures = contractIds.stream()
+        .map(contractId -> completionService.submit(() -> computationScope.call(context,
+            () -> readOnly.execute(status -> situation(contractId, year)))))
+        .collect(Collectors.toList());
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        consumer.accept(completionService.take().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Calcolo delle situazioni ferie interrotto", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+    log.debug("Calcolate {} situazioni ferie dell'anno {} in {} ms",
+        contractIds.size(), year, System.currentTimeMillis() - start);
+  }
+
+  private OfficeVacationSituationDto situation(Long contractId, int year) {
+    final Contract contract = contractDao.byId(contractId).orElseThrow(() ->
+        new EntityNotFoundException("Contract not found with id = " + contractId));
+    final GroupAbsenceType vacationGroup = absenceComponentDao
+        .groupAbsenceTypeByName(DefaultGroup.FERIE_CNR.name()).get();
+    return personVacationMapper.convertToOffice(absenceService.buildVacationSituation(
+        contract, year, vacationGroup, Optional.empty(), true));
+  }
+
+  @PreDestroy
+  void shutdown() {
+    workers.shutdownNow();
+  }
+}
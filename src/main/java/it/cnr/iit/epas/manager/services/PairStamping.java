@@ -52,20 +52,27 @@ public class PairStamping {
    */
   public PairStamping(Stamping first, Stamping second) {
 
-    this.first = first;
-    this.second = second;
-
-    timeInPair = 0;
-    timeInPair = timeInPair - DateUtility.toMinute(first.getDate());
-    timeInPair = timeInPair + DateUtility.toMinute(second.getDate());
+    this(first, second, 
+        DateUtility.toMinute(second.getDate()) - DateUtility.toMinute(first.getDate()));
     
     //La coppia valida la imposto nel caso di coppia definitiva (non contenente l'uscita fittizia
     // e se si tratta di una coppia in-out, il caso out-in è usato nel calcolo del buono pasto.
     if (!second.isExitingNow() && first.isIn() && second.isOut()) {
-      int pairId = SEQUENCE_ID++;
+      int pairId = nextPairId();
       first.setPairId(pairId);
       second.setPairId(pairId);
     }
+  }
+
+  /**
+   * Costruisce la coppia con il tempo già calcolato, senza assegnare il pairId alle 
+   * timbrature (già assegnato da {@link StampingPairing}).
+   */
+  PairStamping(Stamping first, Stamping second, int timeInPair) {
+
+    this.first = first;
+    this.second = second;
+    this.timeInPair = timeInPair;
 
     // TODO: decidere se entrambe o almeno una.
     if ((first.getStampType() != null && first.getStampType().equals(StampTypes.PAUSA_PRANZO))
@@ -75,6 +82,13 @@ public class PairStamping {
     }
   }
   
+  /**
+   * Il prossimo id della sequenza delle coppie.
+   */
+  static int nextPairId() {
+    return SEQUENCE_ID++;
+  }
+
   public String toString() {
     return String.format("[%s,%s]", DateTimeFormatter.ofPattern("HH:mm:ss").format(first.getDate()),
         DateTimeFormatter.ofPattern("HH:mm:ss").format(second.getDate()));
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager.services;
+
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.enumerate.StampTypes;
+import it.cnr.iit.epas.utils.DateUtility;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Accoppiamento delle timbrature di un giorno ai fini del calcolo del tempo a lavoro.
+ * Le timbrature ordinate sono mantenute in un array e le coppie valide come indici
+ * (ingresso, uscita) con i relativi minuti; le coppie, i flag valid/pairId delle timbrature 
+ * ed i minuti a lavoro sono calcolati con due visite lineari delle timbrature, senza liste
+ * intermedie. Gli oggetti {@link PairStamping} vengono costruiti solo se richiesti.
+ */
+public final class StampingPairing {
+
+  private static final Stamping[] EMPTY = new Stamping[0];
+
+  private final Stamping[] stampings;
+  /**
+   * Per ogni coppia valida k: pairs[2k] indice dell'ingresso, pairs[2k+1] indice dell'uscita.
+   */
+  private final int[] pairs;
+  private final int[] pairMinutes;
+  private int pairCount = 0;
+
+  private StampingPairing(Stamping[] orderedStampings) {
+    this.stampings = orderedStampings;
+    this.pairs = new int[orderedStampings.length];
+    this.pairMinutes = new int[orderedStampings.length / 2];
+    computePairs();
+    checkServiceStampings();
+  }
+
+  /**
+   * Accoppia le timbrature, ordinandole se necessario.
+   *
+   * @modify setta i campi valid e pairId delle timbrature.
+   * @param stampings le timbrature del giorno
+   * @return l'accoppiamento
+   */
+  public static StampingPairing of(List<Stamping> stampings) {
+    return new StampingPairing(sorted(stampings.toArray(EMPTY)));
+  }
+
+  /**
+   * Accoppia le timbrature aggiungendo l'eventuale uscita fittizia, ordinandole se necessario.
+   *
+   * @modify setta i campi valid e pairId delle timbrature.
+   * @param stampings le timbrature del giorno
+   * @param exitingNow timbratura fittizia uscendo in questo momento
+   * @return l'accoppiamento
+   */
+  public static StampingPairing of(List<Stamping> stampings, Optional<Stamping> exitingNow) {
+    if (!exitingNow.isPresent()) {
+      return of(stampings);
+    }
+    Stamping[] array = stampings.toArray(new Stamping[stampings.size() + 1]);
+    array[stampings.size()] = exitingNow.get();
+    return new StampingPairing(sorted(array));
+  }
+
+  /**
+   * Accoppia le timbrature nell'ordine in cui sono fornite.
+   *
+   * @modify setta i campi valid e pairId delle timbrature.
+   * @param orderedStampings le timbrature ordinate
+   * @return l'accoppiamento
+   */
+  public static StampingPairing ofOrdered(List<Stamping> orderedStampings) {
+    return new StampingPairing(orderedStampings.toArray(EMPTY));
+  }
+
+  /**
+   * L'ordinamento (stabile) viene eseguito solo se le timbrature non sono già ordinate.
+   */
+  private static Stamping[] sorted(Stamping[] array) {
+    for (int i = 1; i < array.length; i++) {
+      if (array[i - 1].compareTo(array[i]) > 0) {
+        Arrays.sort(array);
+        break;
+      }
+    }
+    return array;
+  }
+
+  /**
+   * Il numero di coppie valide.
+   */
+  public int size() {
+    return pairCount;
+  }
+
+  /**
+   * I minuti complessivi delle coppie valide.
+   */
+  public int stampingMinutes() {
+    int minutes = 0;
+    for (int k = 0; k < pairCount; k++) {
+      minutes += pairMinutes[k];
+    }
+    return minutes;
+  }
+
+  /**
+   * I minuti delle coppie valide all'interno della finestra temporale start-end. Il tempo 
+   * esterno alla finestra viene scartato, salvo per le timbrature di lavoro fuori sede.
+   *
+   * @param start inizio finestra
+   * @param end fine finestra
+   * @return minuti
+   */
+  public int workingMinutes(LocalTime start, LocalTime end) {
+    final int startMinute = DateUtility.toMinute(start);
+    final int endMinute = DateUtility.toMinute(end);
+    int minutes = 0;
+    for (int k = 0; k < pairCount; k++) {
+      final Stamping first = stampings[pairs[2 * k]];
+      final Stamping second = stampings[pairs[2 * k + 1]];
+      final LocalTime consideredStart = first.getDate().toLocalTime();
+      final LocalTime consideredEnd = second.getDate().toLocalTime();
+      if (consideredEnd.isBefore(start) || consideredStart.isAfter(end)) {
+        continue;
+      }
+      final int startInWindow = consideredStart.isBefore(start) && !first.isOffSiteWork()
+          ? startMinute : DateUtility.toMinute(consideredStart);
+      final int endInWindow = consideredEnd.isAfter(end) && !second.isOffSiteWork()
+          ? endMinute : DateUtility.toMinute(consideredEnd);
+      minutes += endInWindow - startInWindow;
+    }
+    return minutes;
+  }
+
+  /**
+   * Le coppie valide.
+   */
+  public List<PairStamping> pairStampings() {
+    List<PairStamping> validPairs = new ArrayList<>(pairCount);
+    for (int k = 0; k < pairCount; k++) {
+      validPairs.add(new PairStamping(stampings[pairs[2 * k]], stampings[pairs[2 * k + 1]],
+          pairMinutes[k]));
+    }
+    return validPairs;
+  }
+
+  /**
+   * (1) Costruisce le coppie valide per calcolare il worktime. Le timbrature di servizio
+   * non entrano a far parte del calcolo del work time ma sono controllate successivamente.
+   */
+  private void computePairs() {
+    int enter = -1;
+    for (int i = 0; i < stampings.length; i++) {
+      final Stamping stamping = stampings[i];
+      if (stamping.getStampType() == StampTypes.MOTIVI_DI_SERVIZIO) {
+        continue;
+      }
+      //cerca l'entrata
+      if (enter < 0) {
+        if (stamping.isIn()) {
+          enter = i;
+        } else if (stamping.isOut()) {
+          //una uscita prima di una entrata e' come se non esistesse
+          stamping.setValid(false);
+        }
+        continue;
+      }
+      //cerca l'uscita
+      if (stamping.isOut()) {
+        final Stamping stampEnter = stampings[enter];
+        pairs[2 * pairCount] = enter;
+        pairs[2 * pairCount + 1] = i;
+        pairMinutes[pairCount] = DateUtility.toMinute(stamping.getDate())
+            - DateUtility.toMinute(stampEnter.getDate());
+        pairCount++;
+        if (!stamping.isExitingNow()) {
+          final int pairId = PairStamping.nextPairId();
+          stampEnter.setPairId(pairId);
+          stamping.setPairId(pairId);
+        }
+        stampEnter.setValid(true);
+        stamping.setValid(true);
+        enter = -1;
+      } else if (stamping.isIn()) {
+        //trovo un secondo ingresso, butto via il primo
+        stampings[enter].setValid(false);
+        enter = i;
+      }
+    }
+  }
+
+  /**
+   * (2) Scarta le timbrature di servizio che non appartengono ad alcuna coppia valida e
+   * (3) verifica la sequenza delle timbrature di servizio all'interno di ogni coppia.
+   * Le coppie sono ordinate e disgiunte, quindi la coppia di appartenenza di ogni timbratura
+   * di servizio si individua avanzando un unico indice.
+   */
+  private void checkServiceStampings() {
+    int pair = 0;
+    int checkedPair = -1;
+    Stamping serviceExit = null;
+    for (final Stamping stamping : stampings) {
+      if (stamping.getStampType() != StampTypes.MOTIVI_DI_SERVIZIO) {
+        continue;
+      }
+      final LocalDateTime date = stamping.getDate();
+      while (pair < pairCount && !date.isBefore(stampings[pairs[2 * pair + 1]].getDate())) {
+        pair++;
+      }
+      if (pair == pairCount || !date.isAfter(stampings[pairs[2 * pair]].getDate())) {
+        stamping.setValid(false);
+        continue;
+      }
+      final Stamping first = stampings[pairs[2 * pair]];
+      final Stamping second = stampings[pairs[2 * pair + 1]];
+      if (second.getStampType() == StampTypes.LAVORO_FUORI_SEDE
+          || first.getStampType() == StampTypes.LAVORO_FUORI_SEDE) {
+        stamping.setValid(true);         //capire se è corretto...
+        continue;
+      }
+      if (checkedPair != pair) {
+        checkedPair = pair;
+        serviceExit = null;
+      }
+      //cerca l'uscita di servizio
+      if (serviceExit == null) {
+        if (stamping.isOut()) {
+          serviceExit = stamping;
+        } else if (stamping.isIn()) {
+          //una entrata di servizio prima di una uscita di servizio e' come se non esistesse
+          stamping.setValid(false);
+        }
+        continue;
+      }
+      //cerca l'entrata di servizio
+      if (stamping.isIn()) {
+        stamping.setValid(true);
+        serviceExit.setValid(true);
+        serviceExit = null;
+      } else if (stamping.isOut()) {
+        //trovo una seconda uscita di servizio, butto via la prima
+        serviceExit.setValid(false);
+        serviceExit = stamping;
+      }
+    }
+  }
+}
@@ -42,7 +42,6 @@ import it.cnr.iit.epas.models.absences.TakableAbsenceBehaviour.TakeAmountAdjustm
 import it.cnr.iit.epas.utils.DateInterval;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
-import java.time.MonthDay;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -266,10 +265,7 @@ public class AbsenceEngineUtility {
           if (cwtt.getWorkingTimeType().getWorkingTimeTypeDays()
               .get(date.getDayOfWeek().getValue() - 1).holiday) {
             if (absence.absenceType.isConsideredWeekEnd()) {
-              LocalDate dateToChange = date;
-              while (!DateUtility.isGeneralHoliday(Optional.<MonthDay>empty(), dateToChange)) {
-                dateToChange = dateToChange.plusDays(1);
-              }
+              LocalDate dateToChange = DateUtility.nextGeneralHoliday(date);
               return cwtt.getWorkingTimeType().getWorkingTimeTypeDays()
                   .get(dateToChange.getDayOfWeek().getValue() - 1).getWorkingTime();
             } else {
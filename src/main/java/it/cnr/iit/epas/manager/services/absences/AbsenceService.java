@@ -23,11 +23,9 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import it.cnr.iit.epas.dao.AbsenceTypeDao;
 import it.cnr.iit.epas.dao.CategoryTabDao;
-import it.cnr.iit.epas.dao.ContractDao;
 import it.cnr.iit.epas.dao.GeneralSettingDao;
 import it.cnr.iit.epas.dao.GroupAbsenceTypeDao;
 import it.cnr.iit.epas.dao.JustifiedTypeDao;
-import it.cnr.iit.epas.dao.PersonChildrenDao;
 import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
 import it.cnr.iit.epas.manager.AbsenceManager;
 import it.cnr.iit.epas.manager.SecureManager;
@@ -37,6 +35,7 @@ import it.cnr.iit.epas.manager.response.AbsenceInsertReport;
 import it.cnr.iit.epas.manager.response.AbsencesResponse;
 import it.cnr.iit.epas.manager.services.absences.errors.AbsenceError;
 import it.cnr.iit.epas.manager.services.absences.errors.CriticalError;
+import it.cnr.iit.epas.manager.services.absences.model.AbsenceContext;
 import it.cnr.iit.epas.manager.services.absences.model.AbsencePeriod;
 import it.cnr.iit.epas.manager.services.absences.model.DayInPeriod;
 import it.cnr.iit.epas.manager.services.absences.model.DayInPeriod.TemplateRow;
@@ -50,7 +49,6 @@ import it.cnr.iit.epas.manager.services.absences.model.VacationSummaryCached;
 import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.Office;
 import it.cnr.iit.epas.models.Person;
-import it.cnr.iit.epas.models.PersonChildren;
 import it.cnr.iit.epas.models.User;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceTrouble.AbsenceProblem;
@@ -58,7 +56,6 @@ import it.cnr.iit.epas.models.absences.AbsenceType;
 import it.cnr.iit.epas.models.absences.CategoryTab;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType.GroupAbsenceTypePattern;
-import it.cnr.iit.epas.models.absences.InitializationGroup;
 import it.cnr.iit.epas.models.absences.JustifiedType;
 import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
 import it.cnr.iit.epas.models.absences.definitions.DefaultGroup;
@@ -71,8 +68,6 @@ import java.util.Optional;
 import javax.inject.Inject;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
 /**
@@ -84,11 +79,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class AbsenceService {
 
-  private static final  String VACATION_SITUATION_CACHE_KEY = "vacationSituation";
-
   private final AbsenceEngineUtility absenceEngineUtility;
   private final AbsenceComponentDao absenceComponentDao;
-  private final PersonChildrenDao personChildrenDao;
   private final ServiceFactories serviceFactories;
   private final EnumAllineator enumAllineator;
   private final ConfigurationManager confManager;
@@ -98,9 +90,8 @@ public class AbsenceService {
   private final AbsenceTypeDao absenceTypeDao;
   private final JustifiedTypeDao justifiedTypeDao;
   private final CategoryTabDao categoryTabDao;
-  private final ContractDao contractDao;
   private final GeneralSettingDao generalSettingDao;
-  private final CacheManager cacheManager;
+  private final VacationSummaryCache vacationSummaryCache;
   private final SecureUtils secureUtils;
 
   /**
@@ -109,33 +100,29 @@ public class AbsenceService {
    * @param absenceEngineUtility injected
    * @param serviceFactories injected
    * @param absenceComponentDao injected
-   * @param personChildrenDao injected
    */
   @Inject
   public AbsenceService(ConfigurationManager configurationManager,
       AbsenceEngineUtility absenceEngineUtility, ServiceFactories serviceFactories,
-      AbsenceComponentDao absenceComponentDao, PersonChildrenDao personChildrenDao,
+      AbsenceComponentDao absenceComponentDao,
       ConfigurationManager confManager, SecureManager secureManager,
       EnumAllineator enumAllineator,
       GroupAbsenceTypeDao groupAbsenceTypeDao,
       AbsenceTypeDao absenceTypeDao, 
       JustifiedTypeDao justifiedTypeDao, CategoryTabDao categoryTabDao,
-      ContractDao contractDao,
       GeneralSettingDao generalSettingDao,
-      CacheManager cacheManager, SecureUtils secureUtils) {
+      VacationSummaryCache vacationSummaryCache, SecureUtils secureUtils) {
     this.configurationManager = configurationManager;
     this.absenceEngineUtility = absenceEngineUtility;
     this.serviceFactories = serviceFactories;
     this.absenceComponentDao = absenceComponentDao;
-    this.personChildrenDao = personChildrenDao;
     this.confManager = confManager;
     this.secureManager = secureManager;
     this.enumAllineator = enumAllineator;
     this.groupAbsenceTypeDao = groupAbsenceTypeDao;
     this.absenceTypeDao = absenceTypeDao;
-    this.cacheManager = cacheManager;
+    this.vacationSummaryCache = vacationSummaryCache;
     this.justifiedTypeDao = justifiedTypeDao;
-    this.contractDao = contractDao;
     this.generalSettingDao = generalSettingDao;
     this.categoryTabDao = categoryTabDao;
     this.secureUtils = secureUtils;
@@ -293,7 +280,6 @@ public class AbsenceService {
     }
 
     List<PeriodChain> chains = Lists.newArrayList();
-    List<Absence> previousInserts = Lists.newArrayList();
     List<CriticalError> criticalErrors = Lists.newArrayList();
     LocalDate currentDate = from;
     Integer specifiedMinutes = absenceEngineUtility.getMinutes(hours, minutes);
@@ -301,10 +287,8 @@ public class AbsenceService {
     log.trace("inizio creazione catena periodi, person = {}, from = {}, to = {}", 
         person.getFullname(), from, to);
     
-    List<PersonChildren> orderedChildren = personChildrenDao.getAllPersonChildren(person);
-    List<Contract> fetchedContracts = person.getContracts(); // TODO: fetch
-    List<InitializationGroup> initializationGroups =
-        absenceComponentDao.personInitializationGroups(person);
+    // I dati della persona sono prelevati una sola volta per tutti i giorni
+    final AbsenceContext context = serviceFactories.buildAbsenceContext(person);
 
     while (true) {
 
@@ -317,9 +301,8 @@ public class AbsenceService {
         absenceToInsert.justifiedMinutes = specifiedMinutes;
       }
 
-      PeriodChain periodChain =
-          serviceFactories.buildPeriodChain(person, groupAbsenceType, currentDate, previousInserts,
-              absenceToInsert, orderedChildren, fetchedContracts, initializationGroups);
+      PeriodChain periodChain = serviceFactories.buildPeriodChain(context, groupAbsenceType,
+          currentDate, absenceToInsert);
 
       criticalErrors.addAll(periodChain.criticalErrors());
 
@@ -359,6 +342,8 @@ public class AbsenceService {
     }
 
     // Gli esiti sotto forma di template rows
+    final JustifiedType nothing =
+        absenceComponentDao.getOrBuildJustifiedType(JustifiedTypeName.nothing);
     List<TemplateRow> insertTemplateRows = Lists.newArrayList();
     for (PeriodChain periodChain : chains) {
 
@@ -385,8 +370,7 @@ public class AbsenceService {
         }
         if (addResult) {
           for (DayInPeriod dayInPeriod : absencePeriod.daysInPeriod.values()) {
-            insertTemplateRows.addAll(dayInPeriod.templateRowsForInsert(
-                absenceComponentDao.getOrBuildJustifiedType(JustifiedTypeName.nothing)));
+            insertTemplateRows.addAll(dayInPeriod.templateRowsForInsert(nothing));
           }
         }
       }
@@ -481,15 +465,11 @@ public class AbsenceService {
 
     log.debug("Lanciata procedura scan assenze person={}, from={}", person.fullName(), from);
 
-    List<Absence> absencesToScan =
-        absenceComponentDao.orderedAbsences(person, from, null, Sets.newHashSet());
-    List<PersonChildren> orderedChildren = personChildrenDao.getAllPersonChildren(person);
-    List<Contract> fetchedContracts = person.getContracts(); // TODO: fetch
-    List<InitializationGroup> initializationGroups =
-        absenceComponentDao.personInitializationGroups(person);
+    // I dati della persona sono prelevati una sola volta per tutti i gruppi analizzati
+    final AbsenceContext context = serviceFactories.buildAbsenceContext(person);
+    List<Absence> absencesToScan = context.orderedAbsences(from, null, Sets.newHashSet());
 
-    Scanner absenceScan = serviceFactories.buildScanInstance(person, from, absencesToScan,
-        orderedChildren, fetchedContracts, initializationGroups);
+    Scanner absenceScan = serviceFactories.buildScanInstance(context, from, absencesToScan);
 
     // scan dei gruppi
     log.info("Chiamata la scan delle assenze per {} a partire dalla data {}", person, from);
@@ -514,13 +494,8 @@ public class AbsenceService {
       date = LocalDate.now();
     }
 
-    List<PersonChildren> orderedChildren = personChildrenDao.getAllPersonChildren(person);
-    List<Contract> fetchedContracts = person.getContracts(); // TODO: fetch
-    List<InitializationGroup> initializationGroups =
-        absenceComponentDao.personInitializationGroups(person);
-
-    PeriodChain periodChain = serviceFactories.buildPeriodChain(person, groupAbsenceType, date,
-        Lists.newArrayList(), null, orderedChildren, fetchedContracts, initializationGroups);
+    PeriodChain periodChain = serviceFactories.buildPeriodChain(
+        serviceFactories.buildAbsenceContext(person), groupAbsenceType, date, null);
 
     return periodChain;
 
@@ -999,26 +974,17 @@ public class AbsenceService {
     }
     situation.date = date;
 
-    final String lastYearKey = vacationCacheKey(contract, year - 1, TypeSummary.VACATION);
-    final String currentYearKey = vacationCacheKey(contract, year, TypeSummary.VACATION);
-    final String permissionsKey = vacationCacheKey(contract, year, TypeSummary.PERMISSION);
-
-    Cache cache = cacheManager.getCache(VACATION_SITUATION_CACHE_KEY);
-
     // Provo a prelevare la situazione dalla cache
+    final long cacheGeneration = useCache ? vacationSummaryCache.generation(contract) : 0;
     if (useCache) {
-      if (cache.get(lastYearKey) != null && cache.get(currentYearKey) != null
-          && cache.get(permissionsKey) != null) {
-        situation.lastYearCached = (VacationSummaryCached) cache.get(lastYearKey).get();
-        situation.currentYearCached = (VacationSummaryCached) cache.get(currentYearKey).get();
-        situation.permissionsCached = (VacationSummaryCached) cache.get(permissionsKey).get();
-      }
-      if (situation.lastYearCached != null // && situation.lastYearCached.date.isEqual(date)
-          && situation.currentYearCached != null // &&
-          // situation.currentYearCached.date.isEqual(date)
-          && situation.permissionsCached != null // &&
-      // situation.permissionsCached.date.isEqual(date)
-      ) {
+      situation.lastYearCached = vacationSummaryCache
+          .get(contract, year - 1, TypeSummary.VACATION).orElse(null);
+      situation.currentYearCached = vacationSummaryCache
+          .get(contract, year, TypeSummary.VACATION).orElse(null);
+      situation.permissionsCached = vacationSummaryCache
+          .get(contract, year, TypeSummary.PERMISSION).orElse(null);
+      if (situation.lastYearCached != null && situation.currentYearCached != null
+          && situation.permissionsCached != null) {
         // Tutto correttamente cachato.
         return situation;
       } else {
@@ -1046,13 +1012,13 @@ public class AbsenceService {
           date, TypeSummary.VACATION);
       situation.permissionsCached = new VacationSummaryCached(situation.permissions, contract, year,
           date, TypeSummary.PERMISSION);
-      //XXX: prima del passaggio a spring boot la merge del contract era nel costruttore del
-      //VacationSummaryCached
-      contractDao.merge(contract);
 
-      cache.put(lastYearKey, situation.lastYearCached);
-      cache.put(currentYearKey, situation.currentYearCached);
-      cache.put(permissionsKey, situation.permissionsCached);
+      vacationSummaryCache.put(contract, year - 1, TypeSummary.VACATION, 
+          situation.lastYearCached, cacheGeneration);
+      vacationSummaryCache.put(contract, year, TypeSummary.VACATION, 
+          situation.currentYearCached, cacheGeneration);
+      vacationSummaryCache.put(contract, year, TypeSummary.PERMISSION, 
+          situation.permissionsCached, cacheGeneration);
     }
 
     return situation;
@@ -1060,15 +1026,18 @@ public class AbsenceService {
   }
 
   /**
-   * Elimina i periodi ferie in cache per quella persona a partire dalla data from.
+   * Elimina i riepiloghi ferie in cache per quella persona a partire dalla data from.
+   * Sono invalidati i contratti attivi dalla data from in poi e, per ciascuno, gli anni
+   * a partire da quello precedente la data (le ferie dell'anno precedente sono utilizzabili
+   * nell'anno successivo).
    *
    * @param person persona
    * @param from from
    */
   public void emptyVacationCache(Person person, LocalDate from) {
     for (Contract contract : person.getContracts()) {
-      if (DateUtility.isDateIntoInterval(from, contract.periodInterval())) {
-        emptyVacationCache(contract);
+      if (contract.calculatedEnd() == null || !contract.calculatedEnd().isBefore(from)) {
+        vacationSummaryCache.invalidate(contract, from.getYear() - 1);
       }
     }
   }
@@ -1079,24 +1048,7 @@ public class AbsenceService {
    * @param contract cotratto
    */
   public void emptyVacationCache(Contract contract) {
-    // per ogni anno fino a quello successivo l'attuale
-    int year = contract.getBeginDate().getYear();
-    if (contract.getSourceDateVacation() != null) {
-      year = contract.getSourceDateVacation().getYear() - 1;
-    }
-    Cache cache = cacheManager.getCache(VACATION_SITUATION_CACHE_KEY);
-    while (true) {
-      cache.put(vacationCacheKey(contract, year, TypeSummary.VACATION), null);
-      cache.put(vacationCacheKey(contract, year, TypeSummary.PERMISSION), null);
-      year++;
-      if (year > LocalDate.now().getYear() + 1) {
-        return;
-      }
-    }
-  }
-
-  private String vacationCacheKey(Contract contract, int year, TypeSummary type) {
-    return contract.getId() + "-" + year + "-" + type.name();
+    vacationSummaryCache.invalidate(contract, Integer.MIN_VALUE);
   }
 
   /**
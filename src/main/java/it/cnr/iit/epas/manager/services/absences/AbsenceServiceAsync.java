@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager.services.absences;
+
+import it.cnr.iit.epas.dao.ContractDao;
+import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
+import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.absences.GroupAbsenceType;
+import it.cnr.iit.epas.models.absences.definitions.DefaultGroup;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+/**
+ * Metodi async del servizio assenze.
+ */
+@Slf4j
+@Service
+public class AbsenceServiceAsync {
+
+  private final ContractDao contractDao;
+  private final AbsenceComponentDao absenceComponentDao;
+  private final AbsenceService absenceService;
+
+  @Inject
+  AbsenceServiceAsync(ContractDao contractDao, AbsenceComponentDao absenceComponentDao,
+      AbsenceService absenceService) {
+    this.contractDao = contractDao;
+    this.absenceComponentDao = absenceComponentDao;
+    this.absenceService = absenceService;
+  }
+
+  /**
+   * Calcola ed inserisce in cache i riepiloghi ferie e permessi dell'anno corrente e di 
+   * quello precedente del contratto.
+   * Metodo Asincrono!
+   *
+   * @param contractId id del contratto
+   */
+  @Async
+  @Transactional
+  public CompletableFuture<Void> warmVacationCache(Long contractId) {
+    final Optional<Contract> contract = contractDao.byId(contractId);
+    if (!contract.isPresent()) {
+      return CompletableFuture.allOf();
+    }
+    final GroupAbsenceType vacationGroup = absenceComponentDao
+        .groupAbsenceTypeByName(DefaultGroup.FERIE_CNR.name()).get();
+    final int year = LocalDate.now().getYear();
+    absenceService.buildVacationSituation(contract.get(), year - 1, vacationGroup,
+        Optional.empty(), true);
+    absenceService.buildVacationSituation(contract.get(), year, vacationGroup,
+        Optional.empty(), true);
+    log.debug("Riepiloghi ferie in cache aggiornati per il contratto {}", contract.get());
+    return CompletableFuture.allOf();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.manager.services.absences;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import it.cnr.iit.epas.manager.services.absences.model.VacationSituation.VacationSummary.TypeSummary;
+import it.cnr.iit.epas.manager.services.absences.model.VacationSummaryCached;
+import it.cnr.iit.epas.models.Contract;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache dei riepiloghi ferie e permessi dei contratti, con limite di dimensione, scadenza
+ * e statistiche (hit, miss ed eviction) esposte tramite Micrometer.
+ * I riepiloghi sono raggruppati per contratto: limite, scadenza e statistiche riguardano
+ * i contratti in cache e l'invalidazione esamina solo i riepiloghi del contratto indicato.
+ * I riepiloghi non mantengono riferimenti alle entity.<br>
+ * Ogni contratto ha una generazione, cambiata ad ogni invalidazione: i riepiloghi calcolati
+ * a partire da una generazione precedente non vengono inseriti in cache.
+ */
+@Slf4j
+@Component
+public class VacationSummaryCache {
+
+  private static final long MAXIMUM_CONTRACTS = 20_000;
+  private static final long EXPIRE_HOURS = 12;
+  static final String CACHE_NAME = "vacationSummaries";
+
+  private final Cache<Long, ContractSummaries> cache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAXIMUM_CONTRACTS)
+          .expireAfterWrite(EXPIRE_HOURS, TimeUnit.HOURS)
+          .recordStats()
+          .build();
+
+  /**
+   * Sorgente delle generazioni, uniche tra tutti i contratti così che la generazione di un
+   * contratto rimosso dalla cache e poi reinserito non coincida con una precedente.
+   */
+  private final AtomicLong generations = new AtomicLong();
+
+  @Inject
+  VacationSummaryCache(MeterRegistry meterRegistry) {
+    GuavaCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /**
+   * Chiave di un riepilogo in cache all'interno del contratto.
+   */
+  @Value
+  static class SummaryKey {
+    int year;
+    TypeSummary type;
+  }
+
+  /**
+   * I riepiloghi in cache di un contratto e la loro generazione.
+   */
+  private static class ContractSummaries {
+    private final ConcurrentMap<SummaryKey, VacationSummaryCached> summaries =
+        new ConcurrentHashMap<>();
+    private volatile long generation;
+
+    private ContractSummaries(long generation) {
+      this.generation = generation;
+    }
+  }
+
+  /**
+   * La generazione attuale dei riepiloghi del contratto, da prelevare prima di calcolare
+   * i riepiloghi da inserire in cache (vedi {@link #put}).
+   */
+  public long generation(Contract contract) {
+    if (contract.getId() == null) {
+      return 0;
+    }
+    return cache.asMap().computeIfAbsent(contract.getId(),
+        id -> new ContractSummaries(generations.incrementAndGet())).generation;
+  }
+
+  /**
+   * Il riepilogo in cache del contratto per l'anno ed il tipo, se presente.
+   */
+  public Optional<VacationSummaryCached> get(Contract contract, int year, TypeSummary type) {
+    if (contract.getId() == null) {
+      return Optional.empty();
+    }
+    final ContractSummaries contractSummaries = cache.getIfPresent(contract.getId());
+    return contractSummaries == null ? Optional.empty()
+        : Optional.ofNullable(contractSummaries.summaries.get(new SummaryKey(year, type)));
+  }
+
+  /**
+   * Inserisce in cache il riepilogo del contratto per l'anno ed il tipo, calcolato a partire
+   * dalla generazione indicata. Se nel frattempo i riepiloghi del contratto sono stati
+   * invalidati il riepilogo non viene inserito.
+   *
+   * @param contract il contratto
+   * @param year l'anno
+   * @param type il tipo di riepilogo
+   * @param summary il riepilogo
+   * @param generation la generazione prelevata prima del calcolo del riepilogo
+   */
+  public void put(Contract contract, int year, TypeSummary type,
+      VacationSummaryCached summary, long generation) {
+    if (contract.getId() == null || summary == null) {
+      return;
+    }
+    final ContractSummaries contractSummaries = cache.asMap().get(contract.getId());
+    if (contractSummaries == null || contractSummaries.generation != generation) {
+      return;
+    }
+    final SummaryKey key = new SummaryKey(year, type);
+    contractSummaries.summaries.put(key, summary);
+    // Invalidazione concorrente all'inserimento
+    if (contractSummaries.generation != generation) {
+      contractSummaries.summaries.remove(key, summary);
+    }
+  }
+
+  /**
+   * Rimuove i riepiloghi del contratto relativi agli anni a partire da fromYear e ne cambia
+   * la generazione, sia subito che al termine della transazione corrente (se presente) così
+   * che eventuali calcoli concorrenti non lascino in cache valori precedenti al commit.
+   *
+   * @param contract il contratto
+   * @param fromYear il primo anno da invalidare
+   */
+  public void invalidate(Contract contract, int fromYear) {
+    final Long contractId = contract.getId();
+    if (contractId == null) {
+      return;
+    }
+    invalidate(contractId, fromYear);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          invalidate(contractId, fromYear);
+        }
+      });
+    }
+    log.trace("Invalidati i riepiloghi ferie in cache del contratto id={} dall'anno {}",
+        contractId, fromYear);
+  }
+
+  private void invalidate(Long contractId, int fromYear) {
+    final ContractSummaries contractSummaries = cache.asMap().get(contractId);
+    if (contractSummaries != null) {
+      contractSummaries.generation = generations.incrementAndGet();
+      contractSummaries.summaries.keySet().removeIf(key -> key.getYear() >= fromYear);
+    }
+  }
+}
@@ -62,10 +62,10 @@ public class ErrorsBox {
     if (conflictingAsbence != null) {
       absenceError.conflictingAbsences.add(conflictingAsbence);
     }
-    if (map.equals(absenceErrorsSuperMap)) {
+    if (map == absenceErrorsSuperMap) {
       log.trace("Aggiunto errore alla mappa {} {}", absence.toString(), absenceProblem);
     }
-    if (map.equals(absenceWarningsSuperMap)) {
+    if (map == absenceWarningsSuperMap) {
       log.trace("Aggiunto warning alla mappa {} {}", absence.toString(), absenceProblem);
     }
 
@@ -323,5 +323,29 @@ public class ErrorsBox {
     return allProblems;
   }
 
+  /**
+   * Tutti i problemi (errori e warning) nelle boxes raggruppati per assenza, calcolati con
+   * un'unica visita delle boxes.
+   *
+   * @param errorsBoxes boxes
+   * @return mappa assenza -> problemi
+   */
+  public static Map<Absence, Set<AbsenceProblem>> allAbsenceProblems(
+      List<ErrorsBox> errorsBoxes) {
+    Map<Absence, Set<AbsenceProblem>> allProblems = Maps.newHashMap();
+    for (ErrorsBox errorsBox : errorsBoxes) {
+      mergeAbsenceProblems(allProblems, errorsBox.absenceErrorsSuperMap);
+      mergeAbsenceProblems(allProblems, errorsBox.absenceWarningsSuperMap);
+    }
+    return allProblems;
+  }
+
+  private static void mergeAbsenceProblems(Map<Absence, Set<AbsenceProblem>> allProblems,
+      Map<Absence, Map<AbsenceProblem, AbsenceError>> superMap) {
+    for (Map.Entry<Absence, Map<AbsenceProblem, AbsenceError>> entry : superMap.entrySet()) {
+      allProblems.computeIfAbsent(entry.getKey(), a -> Sets.newHashSet())
+          .addAll(entry.getValue().keySet());
+    }
+  }
 
 }
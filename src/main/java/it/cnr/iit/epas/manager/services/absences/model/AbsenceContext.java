@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.manager.services.absences.model;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
+import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonChildren;
+import it.cnr.iit.epas.models.absences.Absence;
+import it.cnr.iit.epas.models.absences.AbsenceType;
+import it.cnr.iit.epas.models.absences.InitializationGroup;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * I dati di una persona necessari alla costruzione delle periodChain, prelevati una sola volta
+ * per l'intera operazione (inserimento su più giorni, scan, residuo).<br>
+ * Le assenze sono prelevate per la finestra temporale più ampia richiesta fino a quel momento
+ * e le richieste successive contenute nella finestra sono servite dalla memoria. Le assenze
+ * inserite con successo dall'operazione (previousInserts) sono condivise da tutte le catene
+ * costruite con il contesto.
+ */
+@Slf4j
+@ToString(of = {"person", "loaded", "loadedFrom", "loadedTo"})
+public class AbsenceContext {
+
+  /**
+   * Ordinamento delle assenze prelevate dal dao: per data decrescente.
+   */
+  private static final Comparator<Absence> BY_DATE_DESC =
+      Comparator.comparing(Absence::getAbsenceDate, Comparator.reverseOrder());
+
+  public final Person person;
+  public final List<PersonChildren> orderedChildren;
+  public final List<Contract> fetchedContracts;
+  public final List<InitializationGroup> initializationGroups;
+  public final List<Absence> previousInserts = Lists.newArrayList();
+
+  private final AbsenceComponentDao absenceComponentDao;
+
+  //La finestra delle assenze prelevate (null se illimitata)
+  private boolean loaded = false;
+  private LocalDate loadedFrom;
+  private LocalDate loadedTo;
+  private List<Absence> absences = Lists.newArrayList();
+
+  /**
+   * Costruisce il contesto con i dati della persona già prelevati.
+   *
+   * @param person la persona
+   * @param orderedChildren i figli ordinati per data di nascita
+   * @param fetchedContracts i contratti
+   * @param initializationGroups le inizializzazioni dei gruppi
+   * @param absenceComponentDao il dao per il prelievo delle assenze
+   */
+  public AbsenceContext(Person person, List<PersonChildren> orderedChildren,
+      List<Contract> fetchedContracts, List<InitializationGroup> initializationGroups,
+      AbsenceComponentDao absenceComponentDao) {
+    this.person = person;
+    this.orderedChildren = orderedChildren;
+    this.fetchedContracts = fetchedContracts;
+    this.initializationGroups = initializationGroups;
+    this.absenceComponentDao = absenceComponentDao;
+  }
+
+  /**
+   * Le assenze persistite della persona nell'intervallo, ordinate per data decrescente come
+   * quelle di {@link AbsenceComponentDao#orderedAbsences}.
+   *
+   * @param from data inizio (null se illimitata)
+   * @param to data fine (null se illimitata)
+   * @param codeSet i codici da considerare (tutti se vuoto)
+   * @return le assenze.
+   */
+  public List<Absence> orderedAbsences(LocalDate from, LocalDate to, Set<AbsenceType> codeSet) {
+    if (!covers(from, to)) {
+      load(from, to);
+    }
+    return absences.stream()
+        .filter(absence -> from == null || !absence.getAbsenceDate().isBefore(from))
+        .filter(absence -> to == null || !absence.getAbsenceDate().isAfter(to))
+        .filter(absence -> codeSet.isEmpty() || codeSet.contains(absence.getAbsenceType()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Aggiunge alle assenze già prelevate un'assenza persistita durante l'operazione.
+   */
+  public void persisted(Absence absence) {
+    if (!loaded || absences.contains(absence) || !within(absence.getAbsenceDate())) {
+      return;
+    }
+    int index = 0;
+    while (index < absences.size()
+        && BY_DATE_DESC.compare(absences.get(index), absence) <= 0) {
+      index++;
+    }
+    absences.add(index, absence);
+  }
+
+  /**
+   * Rimuove dalle assenze già prelevate un'assenza eliminata durante l'operazione.
+   */
+  public void deleted(Absence absence) {
+    absences.remove(absence);
+  }
+
+  private boolean within(LocalDate date) {
+    return (loadedFrom == null || !date.isBefore(loadedFrom))
+        && (loadedTo == null || !date.isAfter(loadedTo));
+  }
+
+  private boolean covers(LocalDate from, LocalDate to) {
+    if (!loaded) {
+      return false;
+    }
+    final boolean coversFrom = loadedFrom == null || (from != null && !from.isBefore(loadedFrom));
+    final boolean coversTo = loadedTo == null || (to != null && !to.isAfter(loadedTo));
+    return coversFrom && coversTo;
+  }
+
+  /**
+   * Preleva le assenze della finestra che comprende sia quella già prelevata che quella
+   * richiesta.
+   */
+  private void load(LocalDate from, LocalDate to) {
+    if (loaded) {
+      from = from == null || loadedFrom == null ? null
+          : from.isBefore(loadedFrom) ? from : loadedFrom;
+      to = to == null || loadedTo == null ? null : to.isAfter(loadedTo) ? to : loadedTo;
+    }
+    log.trace("Prelievo delle assenze di {} da {} a {}", person.getFullname(), from, to);
+    absences = Lists.newArrayList(
+        absenceComponentDao.orderedAbsences(person, from, to, Sets.newHashSet()));
+    loadedFrom = from;
+    loadedTo = to;
+    loaded = true;
+  }
+}
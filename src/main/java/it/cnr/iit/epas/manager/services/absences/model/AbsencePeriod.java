@@ -25,7 +25,6 @@ import it.cnr.iit.epas.manager.PersonDayManager;
 import it.cnr.iit.epas.manager.services.absences.AbsenceEngineUtility;
 import it.cnr.iit.epas.manager.services.absences.errors.ErrorsBox;
 import it.cnr.iit.epas.models.Person;
-import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceTrouble.AbsenceProblem;
 import it.cnr.iit.epas.models.absences.AbsenceType;
@@ -221,8 +220,8 @@ public class AbsencePeriod {
         if (from.getMonthValue() == DateTimeConstants.FEBRUARY) {
           return this.fixedPeriodTakableAmount - 2 * 100;
         }
-        List<PersonDay> workingDays = personDayManager.workingDaysInMonth(person, from, to);
-        long count = (workingDays.size() * 100 / 2);
+        int workingDays = personDayManager.numberOfWorkingDays(person, from, to);
+        long count = (workingDays * 100 / 2);
         if (count % 100 != 0) {
           return count - count % 100;
         }
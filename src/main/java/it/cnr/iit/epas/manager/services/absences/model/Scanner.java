@@ -20,25 +20,25 @@ package it.cnr.iit.epas.manager.services.absences.model;
 import com.google.common.base.Verify;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import it.cnr.iit.epas.dao.AbsenceDao;
 import it.cnr.iit.epas.dao.AbsenceTroubleDao;
 import it.cnr.iit.epas.manager.PersonDayManager;
 import it.cnr.iit.epas.manager.services.absences.AbsenceEngineUtility;
 import it.cnr.iit.epas.manager.services.absences.errors.ErrorsBox;
-import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.Person;
-import it.cnr.iit.epas.models.PersonChildren;
 import it.cnr.iit.epas.models.PersonDay;
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.absences.AbsenceTrouble;
 import it.cnr.iit.epas.models.absences.AbsenceTrouble.AbsenceProblem;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType.GroupAbsenceTypePattern;
-import it.cnr.iit.epas.models.absences.InitializationGroup;
 import it.cnr.iit.epas.models.absences.JustifiedType;
 import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
 import it.cnr.iit.epas.models.absences.definitions.DefaultGroup;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -60,9 +60,7 @@ public class Scanner {
   private AbsenceTroubleDao absenceTroubleDao;
 
   public Person person;
-  public List<PersonChildren> orderedChildren;
-  public List<Contract> fetchedContracts;
-  public List<InitializationGroup> initializationGroups;
+  public AbsenceContext context;
   
   //Puntatori scan
   public LocalDate scanFrom;
@@ -77,30 +75,27 @@ public class Scanner {
   //PeriodChains
   List<PeriodChain> periodChainScanned = Lists.newArrayList();
   
+  //Assenze eliminate durante lo scan
+  Set<Absence> deletedAbsences = Sets.newHashSet();
+  
   /**
    * Constructor scanner.
    *
-   * @param person persona
+   * @param context il contesto della persona
    * @param scanFrom scanFrom
    * @param absencesToScan le assenze da scannerizzare
-   * @param orderedChildren la lista dei figli ordinati per data di nascita
-   * @param fetchedContracts i contratti
    * @param serviceFactories injection
    * @param absenceEngineUtility injection
    * @param personDayManager injection
    */
-  public Scanner(Person person, LocalDate scanFrom, List<Absence> absencesToScan,
-      List<PersonChildren> orderedChildren, List<Contract> fetchedContracts, 
-      List<InitializationGroup> initializationGroups,
+  public Scanner(AbsenceContext context, LocalDate scanFrom, List<Absence> absencesToScan,
       ServiceFactories serviceFactories, AbsenceEngineUtility absenceEngineUtility, 
       PersonDayManager personDayManager, AbsenceDao absenceDao,
       AbsenceTroubleDao absenceTroubleDao) {
-    this.person = person;
+    this.person = context.person;
+    this.context = context;
     this.scanFrom = scanFrom;
     this.absencesToScan = absencesToScan;
-    this.orderedChildren = orderedChildren;
-    this.fetchedContracts = fetchedContracts;
-    this.initializationGroups = initializationGroups;
     this.serviceFactories = serviceFactories;
     this.absenceEngineUtility = absenceEngineUtility;
     this.personDayManager = personDayManager;
@@ -119,10 +114,8 @@ public class Scanner {
         .mapAbsences(this.absencesToScan, null);
     
     // analisi dei requisiti generici
-    for (Absence absence : this.absencesToScan) {
-      this.genericErrors = serviceFactories
-          .genericConstraints(genericErrors, person, absence, absencesToScanMap);
-    }
+    this.genericErrors = serviceFactories
+        .genericConstraints(genericErrors, person, this.absencesToScan, absencesToScanMap);
     
     // analisi dei requisiti all'interno di ogni gruppo
     Iterator<Absence> iterator = this.absencesToScan.iterator();
@@ -141,9 +134,8 @@ public class Scanner {
         continue;
       }
       
-      PeriodChain periodChain = serviceFactories.buildPeriodChain(person, this.nextGroupToScan, 
-          this.currentAbsence.getAbsenceDate(), Lists.newArrayList(), null, 
-          orderedChildren, fetchedContracts, initializationGroups);
+      PeriodChain periodChain = serviceFactories.buildPeriodChain(context, this.nextGroupToScan, 
+          this.currentAbsence.getAbsenceDate(), null);
       this.periodChainScanned.add(periodChain);
       
       //caso eccezionale non esiste figlio
@@ -171,55 +163,62 @@ public class Scanner {
 
   /**
    * Persiste gli errori riscontrati. Cancella quelli risolti.
+   * I problemi di tutte le boxes vengono raggruppati per assenza con un'unica visita ed i 
+   * problemi esistenti sono prelevati insieme per tutte le assenze scansionate, così che
+   * le modifiche vengano scritte in un unico flush.
    */
   private void persistScannerTroubles() {
     
-    List<ErrorsBox> allErrorsScanned = allErrorsScanned();
+    Map<Absence, Set<AbsenceProblem>> allProblems = ErrorsBox
+        .allAbsenceProblems(allErrorsScanned());
+    
+    // le assenze eliminate da fixReplacing non hanno più problemi da gestire
+    List<Absence> scannedAbsences = Lists.newArrayList();
     for (Absence absence : this.absencesToScan) {
-      List<AbsenceTrouble> toDeleteTroubles = Lists.newArrayList();     //problemi da aggiungere
-      List<AbsenceTrouble> toAddTroubles = Lists.newArrayList();        //problemi da rimuovere
-      Set<AbsenceProblem> remainingProblems = ErrorsBox
-          .allAbsenceProblems(allErrorsScanned, absence);
+      if (!deletedAbsences.contains(absence)) {
+        scannedAbsences.add(absence);
+      }
+    }
+    Map<Absence, List<AbsenceTrouble>> existentTroubles = Maps.newHashMap();
+    for (AbsenceTrouble absenceTrouble : absenceTroubleDao.byAbsences(scannedAbsences)) {
+      existentTroubles.computeIfAbsent(absenceTrouble.getAbsence(), a -> Lists.newArrayList())
+          .add(absenceTrouble);
+    }
+    
+    List<AbsenceTrouble> toDeleteTroubles = Lists.newArrayList();     //problemi da rimuovere
+    List<AbsenceTrouble> toAddTroubles = Lists.newArrayList();        //problemi da aggiungere
+    for (Absence absence : scannedAbsences) {
+      Set<AbsenceProblem> remainingProblems = allProblems
+          .getOrDefault(absence, Collections.emptySet());
+      List<AbsenceTrouble> troubles = existentTroubles
+          .getOrDefault(absence, Collections.emptyList());
       //decidere quelli da cancellare
       //   per ogni vecchio absenceTroule verifico se non è presente in remaining
-      for (AbsenceTrouble absenceTrouble : absence.troubles) {
+      Set<AbsenceProblem> existentProblems = EnumSet.noneOf(AbsenceProblem.class);
+      for (AbsenceTrouble absenceTrouble : troubles) {
+        existentProblems.add(absenceTrouble.getTrouble());
         if (!remainingProblems.contains(absenceTrouble.getTrouble())) {
           toDeleteTroubles.add(absenceTrouble);
+          log.info("Rimuovo problem {} {}", absence.toString(), absenceTrouble.getTrouble());
         }
       }
       //decidere quelli da aggiungere
       //   per ogni remaining verifico se non è presente in vecchi absencetrouble
       for (AbsenceProblem remainingProblem : remainingProblems) {
-        boolean toAdd = true;
-        for (AbsenceTrouble absenceTrouble : absence.troubles) {
-          if (absenceTrouble.getTrouble().equals(remainingProblem)) {
-            toAdd = false;
-          }
-        }
-        if (toAdd) {
+        if (!existentProblems.contains(remainingProblem)) {
           toAddTroubles.add(AbsenceTrouble.builder().absence(absence)
               .trouble(remainingProblem).build());
+          log.info("Aggiungo problem {} {}", absence.toString(), remainingProblem);
         }
       }
-      //eseguire
-      for (AbsenceTrouble toDelete : toDeleteTroubles) {
-        if (absenceTroubleDao.isPersistent(toDelete)) { //FIXME Issue #324
-          absenceTroubleDao.refresh(toDelete);
-          log.info("Rimuovo problem {} {}", absence.toString(), toDelete.getTrouble());
-          absenceTroubleDao.delete(toDelete);
-        }
-        
-      }
-      for (AbsenceTrouble toAdd : toAddTroubles) {
-        if (absenceDao.getAbsenceById(toAdd.getAbsence().getId()) == null) {
-          // FIXME l'assenza di questo trouble è stata cancellata (probabilmente dall'algoritmo
-          // che sistema i completamenti) pertanto non risulta più da persistere. 
-          // Gestire questo caso all'origine.
-          continue;
-        }
-        log.info("Aggiungo problem {} {}", absence.toString(), toAdd.getTrouble());
-        absenceTroubleDao.merge(toAdd);
-      }
+    }
+    
+    //eseguire
+    for (AbsenceTrouble toDelete : toDeleteTroubles) {
+      absenceTroubleDao.delete(toDelete);
+    }
+    for (AbsenceTrouble toAdd : toAddTroubles) {
+      absenceTroubleDao.persist(toAdd);
     }
   }
   
@@ -305,6 +304,8 @@ public class Scanner {
         for (Absence absence : toDelete) {
           dayInPeriod.getExistentReplacings().remove(absence);
           absenceDao.delete(absence);
+          context.deleted(absence);
+          deletedAbsences.add(absence);
         }
         
         //creare il rimpiazzamento corretto
@@ -334,6 +335,7 @@ public class Scanner {
           personDayManager.getPersonDayDao().merge(personDay);
           personDayManager.getPersonDayDao().getEntityManager().flush();
           dayInPeriod.getExistentReplacings().add(replacingAbsence);
+          context.persisted(replacingAbsence);
           log.info("Aggiunto il rimpiazzamento corretto {}", replacingAbsence.toString());
         }
       }
@@ -22,6 +22,8 @@ import com.google.common.collect.Sets;
 import it.cnr.iit.epas.dao.AbsenceDao;
 import it.cnr.iit.epas.dao.AbsenceTroubleDao;
 import it.cnr.iit.epas.dao.AbsenceTypeDao;
+import it.cnr.iit.epas.dao.ContractDao;
+import it.cnr.iit.epas.dao.PersonChildrenDao;
 import it.cnr.iit.epas.dao.PersonReperibilityDayDao;
 import it.cnr.iit.epas.dao.PersonShiftDayDao;
 import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
@@ -72,6 +74,8 @@ public class ServiceFactories {
   private final AbsenceDao absenceDao;
   private final AbsenceTypeDao absenceTypeDao;
   private final AbsenceTroubleDao absenceTroubleDao;
+  private final PersonChildrenDao personChildrenDao;
+  private final ContractDao contractDao;
 
   /**
    * Constructor.
@@ -86,7 +90,8 @@ public class ServiceFactories {
       PersonReperibilityDayDao personReperibilityDayDao, 
       PersonShiftDayDao personShiftDayDao, VacationFactory vacationFactory, 
       AbsenceTypeDao absenceTypeDao, AbsenceDao absenceDao,
-      AbsenceTroubleDao absenceTroubleDao) {
+      AbsenceTroubleDao absenceTroubleDao, PersonChildrenDao personChildrenDao,
+      ContractDao contractDao) {
     this.absenceEngineUtility = absenceEngineUtility;
     this.absenceComponentDao = absenceComponentDao;
     this.personDayManager = personDayManager;
@@ -96,23 +101,35 @@ public class ServiceFactories {
     this.absenceTypeDao = absenceTypeDao;
     this.absenceDao = absenceDao;
     this.absenceTroubleDao = absenceTroubleDao;
+    this.personChildrenDao = personChildrenDao;
+    this.contractDao = contractDao;
   }
 
   /**
-   * Costruttore per richiesta di scan.
+   * Il contesto con i dati della persona da utilizzare per tutte le periodChain di una
+   * operazione. Figli, contratti (con i piani ferie) ed inizializzazioni sono prelevati
+   * subito, le assenze alla prima richiesta.
    *
    * @param person persona
+   * @return il contesto della persona.
+   */
+  public AbsenceContext buildAbsenceContext(Person person) {
+    return new AbsenceContext(person, personChildrenDao.getAllPersonChildren(person),
+        contractDao.getPersonContractsWithVacationPeriods(person),
+        absenceComponentDao.personInitializationGroups(person), absenceComponentDao);
+  }
+
+  /**
+   * Costruttore per richiesta di scan.
+   *
+   * @param context il contesto della persona
    * @param scanFrom scanFrom
    * @param absencesToScan le assenze da scannerizzare
-   * @param orderedChildren i figli ordinati per data di nascita
-   * @param fetchedContracts i contratti
    * @return scanner
    */
-  public Scanner buildScanInstance(Person person, LocalDate scanFrom, 
-      List<Absence> absencesToScan, List<PersonChildren> orderedChildren, 
-      List<Contract> fetchedContracts, List<InitializationGroup> initializationGroups) {
-    Scanner absenceEngineScan = new Scanner(person, scanFrom, 
-        absencesToScan, orderedChildren, fetchedContracts, initializationGroups,
+  public Scanner buildScanInstance(AbsenceContext context, LocalDate scanFrom, 
+      List<Absence> absencesToScan) {
+    Scanner absenceEngineScan = new Scanner(context, scanFrom, absencesToScan,
         this, absenceEngineUtility, personDayManager, absenceDao, absenceTroubleDao);
     for (Absence absence : absenceEngineScan.absencesToScan) {
       Set<GroupAbsenceType> groupsToScan = absenceEngineUtility.involvedGroup(absence.absenceType); 
@@ -127,43 +144,37 @@ public class ServiceFactories {
    * absenceToInsert se presente viene inserita nella computazione del gruppo per la valutazione
    * della soundness.
    *
-   * @param person persona
+   * Gli inserimenti di successo precedenti sono quelli del contesto.
+   *
+   * @param context il contesto della persona
    * @param groupAbsenceType gruppo
    * @param date data
-   * @param previousInserts gli inserimenti di successo precedenti (optional)
    * @param absenceToInsert la nuova assenza da inserire (optional)
-   * @param orderedChildren la lista dei figli ordinati per data di nascita
-   * @param fetchedContracts i contratti
    * @return periodChain
    */
-  public PeriodChain buildPeriodChain(
-      Person person, GroupAbsenceType groupAbsenceType, LocalDate date,
-      List<Absence> previousInserts,
-      Absence absenceToInsert,
-      List<PersonChildren> orderedChildren, List<Contract> fetchedContracts, 
-      List<InitializationGroup> initializationGroups) { 
+  public PeriodChain buildPeriodChain(AbsenceContext context,
+      GroupAbsenceType groupAbsenceType, LocalDate date, Absence absenceToInsert) { 
     
     //1 costruire i periods
-    PeriodChain periodChain = buildPeriodChainPhase1(person, groupAbsenceType, date, 
-        orderedChildren, fetchedContracts, initializationGroups, previousInserts);
+    PeriodChain periodChain = buildPeriodChainPhase1(context, groupAbsenceType, date);
 
     List<Absence> allPersistedAbsences = Lists.newArrayList();
     List<Absence> groupPersistedAbsences = Lists.newArrayList();
 
-    //DAO fetch delle assenze (una volta ottenuti i limiti temporali della catena)
+    //Assenze dal contesto (una volta ottenuti i limiti temporali della catena)
     // separato per inject nei test
     if (groupAbsenceType.getPattern() == GroupAbsenceTypePattern.simpleGrouping) {
       if (absenceToInsert == null) {
         return periodChain;
       }
-      allPersistedAbsences = absenceComponentDao.orderedAbsences(periodChain.person, 
+      allPersistedAbsences = context.orderedAbsences(
           absenceToInsert.getAbsenceDate().minusDays(7),    //costante da inserire nel vincolo
           absenceToInsert.getAbsenceDate().plusDays(7),     //del week end 
           Sets.newHashSet());
     } else {
-      allPersistedAbsences = absenceComponentDao.orderedAbsences(periodChain.person, 
+      allPersistedAbsences = context.orderedAbsences(
           periodChain.from, periodChain.to, Sets.newHashSet());
-      groupPersistedAbsences = absenceComponentDao.orderedAbsences(periodChain.person, 
+      groupPersistedAbsences = context.orderedAbsences(
           periodChain.from, periodChain.to, 
           periodChain.periodChainInvolvedCodes());
     }
@@ -175,7 +186,7 @@ public class ServiceFactories {
 
     } else {
       buildPeriodChainPhase2(periodChain, absenceToInsert, 
-          allPersistedAbsences, groupPersistedAbsences, fetchedContracts);
+          allPersistedAbsences, groupPersistedAbsences, context.fetchedContracts);
     }
 
     completePeriodChain(periodChain);
@@ -186,23 +197,19 @@ public class ServiceFactories {
   /**
    * Prima fase di costruzione (generazione dei periodi).
    *
-   * @param person person
+   * @param context il contesto della persona
    * @param groupAbsenceType group
    * @param date date
-   * @param orderedChildren orderedChildren
-   * @param initializationGroups initializationGroups
-   * @param previousInserts previousInserts
    * @return periodChain phase1
    */
-  public PeriodChain buildPeriodChainPhase1(Person person, GroupAbsenceType groupAbsenceType, 
-      LocalDate date, List<PersonChildren> orderedChildren, List<Contract> fetchedContracts,
-      List<InitializationGroup> initializationGroups, List<Absence> previousInserts) {
+  public PeriodChain buildPeriodChainPhase1(AbsenceContext context,
+      GroupAbsenceType groupAbsenceType, LocalDate date) {
     
+    final Person person = context.person;
     PeriodChain periodChain = new PeriodChain(person, groupAbsenceType, date);
 
     if (groupAbsenceType.getPattern().equals(GroupAbsenceTypePattern.vacationsCnr)) {
-      periodChain = vacationFactory
-          .buildVacationChain(person, groupAbsenceType, fetchedContracts, date);
+      periodChain = vacationFactory.buildVacationChain(context, groupAbsenceType, date);
     } else if (groupAbsenceType.getPattern().equals(GroupAbsenceTypePattern.compensatoryRestCnr)) {
       //TODO: implementare la migrazione riposi compensativi. Una volta completata 
       // riattivare lo scan del gruppo 
@@ -211,7 +218,7 @@ public class ServiceFactories {
       GroupAbsenceType currentGroup = groupAbsenceType;
       while (currentGroup != null) {
         AbsencePeriod currentPeriod = buildAbsencePeriod(person, currentGroup, date, 
-            orderedChildren, initializationGroups);
+            context.orderedChildren, context.initializationGroups);
         if (!currentPeriod.ignorePeriod) { 
           periodChain.periods.add(currentPeriod);  
         }
@@ -245,7 +252,7 @@ public class ServiceFactories {
       }
     }
     
-    periodChain.previousInserts = previousInserts;
+    periodChain.previousInserts = context.previousInserts;
     
     return periodChain;
   }
@@ -638,6 +645,54 @@ public class ServiceFactories {
   public ErrorsBox genericConstraints(ErrorsBox genericErrors, 
       Person person, Absence absence, 
       Map<LocalDate, Set<Absence>> allCodeAbsences) {
+    return genericConstraints(genericErrors, person, absence, allCodeAbsences, null, null);
+  }
+
+  /**
+   * I vincoli generici per tutte le assenze passate. I giorni di reperibilità e di turno
+   * della persona vengono prelevati una sola volta per l'intervallo coperto dalle assenze.
+   *
+   * @param genericErrors box errori
+   * @param person persona
+   * @param absences le assenze da controllare
+   * @param allCodeAbsences tutti i codici che potrebbero conflittuare.
+   * @return error box
+   */
+  public ErrorsBox genericConstraints(ErrorsBox genericErrors, 
+      Person person, List<Absence> absences, 
+      Map<LocalDate, Set<Absence>> allCodeAbsences) {
+    if (absences.isEmpty()) {
+      return genericErrors;
+    }
+    LocalDate from = absences.get(0).getAbsenceDate();
+    LocalDate to = from;
+    for (Absence absence : absences) {
+      if (absence.getAbsenceDate().isBefore(from)) {
+        from = absence.getAbsenceDate();
+      }
+      if (absence.getAbsenceDate().isAfter(to)) {
+        to = absence.getAbsenceDate();
+      }
+    }
+    final Set<LocalDate> reperibilityDays = Sets.newHashSet(
+        personReperibilityDayDao.getPersonReperibilityDates(person, from, to));
+    final Set<LocalDate> shiftDays = Sets.newHashSet(
+        personShiftDayDao.listDatesByPeriod(person, from, to));
+    for (Absence absence : absences) {
+      genericErrors = genericConstraints(genericErrors, person, absence, allCodeAbsences, 
+          reperibilityDays, shiftDays);
+    }
+    return genericErrors;
+  }
+
+  /**
+   * I vincoli generici assenza. I giorni di reperibilità e di turno, se null, vengono 
+   * verificati con una query sulla data dell'assenza.
+   */
+  private ErrorsBox genericConstraints(ErrorsBox genericErrors, 
+      Person person, Absence absence, 
+      Map<LocalDate, Set<Absence>> allCodeAbsences, 
+      Set<LocalDate> reperibilityDays, Set<LocalDate> shiftDays) {
 
     final boolean isHoliday = personDayManager.isHoliday(person, absence.getAbsenceDate());
 
@@ -649,14 +704,16 @@ public class ServiceFactories {
           person, absence.getAbsenceDate());
       //check sulla reperibilità
       if (!absence.absenceType.isReperibilityCompatible() 
-          && personReperibilityDayDao.getPersonReperibilityDay(
-              person, absence.getAbsenceDate()).isPresent()) {
+          && (reperibilityDays != null ? reperibilityDays.contains(absence.getAbsenceDate())
+              : personReperibilityDayDao.getPersonReperibilityDay(
+                  person, absence.getAbsenceDate()).isPresent())) {
         genericErrors.addAbsenceWarning(absence, AbsenceProblem.InReperibility);
         log.info("Aggiunto warning di reperibilità per {} in data {}", person, 
             absence.getAbsenceDate());
       }
       log.debug("Controllo i turni per {} nel giorno {}", person, absence.getAbsenceDate());
-      if (personShiftDayDao.getPersonShiftDay(person, absence.getAbsenceDate()).isPresent()) {
+      if (shiftDays != null ? shiftDays.contains(absence.getAbsenceDate())
+          : personShiftDayDao.getPersonShiftDay(person, absence.getAbsenceDate()).isPresent()) {
         genericErrors.addAbsenceWarning(absence, AbsenceProblem.InShift);
         log.info("Aggiunto warning di turno per {} in data {}", person, absence.getAbsenceDate());
       }
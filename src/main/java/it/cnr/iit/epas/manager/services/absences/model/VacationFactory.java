@@ -77,18 +77,18 @@ public class VacationFactory {
   /**
    * La periodChain che riduce il problema delle ferie e permessi alla prendibilità di assenze.
    *
-   * @param person persona 
+   * @param context il contesto della persona con i contratti
    * @param group gruppo
-   * @param fetchedContract i contratti
    * @param date la data di maturazione??
    * @return la periodChain.
    */
-  public PeriodChain buildVacationChain(Person person, GroupAbsenceType group, 
-      List<Contract> fetchedContract, LocalDate date) {
+  public PeriodChain buildVacationChain(AbsenceContext context, GroupAbsenceType group, 
+      LocalDate date) {
     
+    final Person person = context.person;
     Contract contract = null;
     //creare i period dai contract.vacationperiod
-    for (Contract con : fetchedContract) {
+    for (Contract con : context.fetchedContracts) {
       if (DateUtility.isDateIntoInterval(date, con.periodInterval())) {
         contract = con;
       }
@@ -118,19 +118,19 @@ public class VacationFactory {
     if (group.getName().equals(DefaultGroup.FERIE_CNR.name()) 
         || group.getName().equals(DefaultGroup.FERIE_CNR_DIPENDENTI.name())) {
       //se il gruppo è vacation i codici posso anche prenderli.
-      vacationLastYear = vacationPeriodPerYear(person, group, year - 1, contract, 
+      vacationLastYear = vacationPeriodPerYear(context, group, year - 1, contract, 
           initializationLastYear, false);
-      permission = permissionPeriodPerYear(person, group, year, contract,  
+      permission = permissionPeriodPerYear(context, group, year, contract,  
           initializationPermission);
-      vacationCurrentYear = vacationPeriodPerYear(person, group, year, contract,
+      vacationCurrentYear = vacationPeriodPerYear(context, group, year, contract,
           initializationCurrentYear, false);
     } else {
       //se il gruppo è il prorogation i codici non posso prenderli.
-      vacationLastYear = vacationPeriodPerYear(person, group, year - 1, contract,
+      vacationLastYear = vacationPeriodPerYear(context, group, year - 1, contract,
           initializationLastYear, true);
-      permission = permissionPeriodPerYear(person, group, year, contract, 
+      permission = permissionPeriodPerYear(context, group, year, contract, 
           initializationPermission);
-      vacationCurrentYear = vacationPeriodPerYear(person, group, year, contract,
+      vacationCurrentYear = vacationPeriodPerYear(context, group, year, contract,
           initializationCurrentYear, true);      
     }
 
@@ -160,9 +160,11 @@ public class VacationFactory {
     return periodChain;
   }
   
-  private List<AbsencePeriod> vacationPeriodPerYear(Person person, GroupAbsenceType group, 
-      int year, Contract contract, Integer initializationDays, boolean prorogation) {
+  private List<AbsencePeriod> vacationPeriodPerYear(AbsenceContext context,
+      GroupAbsenceType group, int year, Contract contract, Integer initializationDays,
+      boolean prorogation) {
     
+    final Person person = context.person;
     List<AbsencePeriod> periods = Lists.newArrayList();
     
     //TODO: questo deve essere un require nella modellazione, altrimenti dopo schianta.
@@ -195,7 +197,7 @@ public class VacationFactory {
     periods = fixTooLucky(periods, limits, year);
     
     //Fix dei giorni post partum
-    periods = fixPostPartum(periods, person, year);
+    periods = fixPostPartum(periods, context, year);
     
     //Split del primo anno di contratto
     periods = handleAccruedFirstYear(person, group, contract, periods);
@@ -246,8 +248,9 @@ public class VacationFactory {
     return periods.stream().distinct().collect(Collectors.toList());
   }
   
-  private List<AbsencePeriod> permissionPeriodPerYear(Person person, GroupAbsenceType group, 
-      int year, Contract contract, int initializationDays) {
+  private List<AbsencePeriod> permissionPeriodPerYear(AbsenceContext context,
+      GroupAbsenceType group, int year, Contract contract, int initializationDays) {
+    final Person person = context.person;
     List<AbsencePeriod> periods = Lists.newArrayList();
 
     Set<AbsenceType> codes = group.getTakableAbsenceBehaviour().getTakenCodes(); // === 31-32-94-37
@@ -276,7 +279,7 @@ public class VacationFactory {
     periods = fixTooLucky(periods, limits, year);
     
     //Fix dei giorni post partum
-    periods = fixPostPartum(periods, person, year);
+    periods = fixPostPartum(periods, context, year);
 
     //Split del primo anno di contratto
     periods = handleAccruedFirstYear(person, group, contract, periods);
@@ -370,7 +373,8 @@ public class VacationFactory {
     return periods;
   }
 
-  private List<AbsencePeriod> fixPostPartum(List<AbsencePeriod> periods, Person person, int year) {
+  private List<AbsencePeriod> fixPostPartum(List<AbsencePeriod> periods, AbsenceContext context,
+      int year) {
     
     if (periods.isEmpty()) { 
       return periods;
@@ -385,7 +389,7 @@ public class VacationFactory {
     // FIXME a volte il ritorno del dao è absent e schianta la get()
     GroupAbsenceType reducingGroup = absenceComponentDao
         .groupAbsenceTypeByName(DefaultGroup.RIDUCE_FERIE_CNR.name()).get();
-    periods.get(0).reducingAbsences = absenceComponentDao.orderedAbsences(person, 
+    periods.get(0).reducingAbsences = context.orderedAbsences(
         beginPostPartum, endPostPartum, 
         reducingGroup.getTakableAbsenceBehaviour().getTakableCodes());
     long postPartum = periods.get(0).reducingAbsences.size();
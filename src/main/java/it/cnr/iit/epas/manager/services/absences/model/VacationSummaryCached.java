@@ -24,7 +24,8 @@ import java.io.Serializable;
 import java.time.LocalDate;
 
 /**
- * Versione cachata del riepilogo.
+ * Versione cachata del riepilogo. Non mantiene riferimenti alle entity così da poter essere
+ * condivisa tra le richieste.
  *
  * @author Alessandro Martelli
  */
@@ -36,7 +37,7 @@ public class VacationSummaryCached implements Serializable {
   public TypeSummary type;
   public int year;
   public LocalDate date; 
-  public Contract contract;
+  public Long contractId;
   
   public long total;
   public long postPartum;
@@ -62,14 +63,12 @@ public class VacationSummaryCached implements Serializable {
       this.type = type;
       this.year = year;
       this.date = date;
-      this.contract = contract;
-      //this.contract.merge();
+      this.contractId = contract.getId();
     } else {
       this.type = vacationSummary.type;
       this.year = vacationSummary.year;
       this.date = vacationSummary.date;
-      this.contract = vacationSummary.contract;
-      //this.contract.merge();
+      this.contractId = vacationSummary.contract.getId();
       this.total = vacationSummary.total();
       this.postPartum = vacationSummary.postPartum().size();
       this.accrued = vacationSummary.accrued();
@@ -177,6 +177,43 @@ public class Contract extends PeriodModel implements IPropertiesInPeriodOwner {
     this.updatedAt = LocalDateTime.now();
   }
 
+  @Override
+  public void setBeginDate(LocalDate beginDate) {
+    super.setBeginDate(beginDate);
+    invalidatePersonTimeline();
+  }
+
+  @Override
+  public void setEndDate(LocalDate endDate) {
+    super.setEndDate(endDate);
+    invalidatePersonTimeline();
+  }
+
+  public void setEndContract(LocalDate endContract) {
+    this.endContract = endContract;
+    invalidatePersonTimeline();
+  }
+
+  /**
+   * Imposta la persona del contratto, scartando la linea temporale della precedente e
+   * della nuova persona.
+   */
+  public void setPerson(Person person) {
+    invalidatePersonTimeline();
+    this.person = person;
+    invalidatePersonTimeline();
+  }
+
+  /**
+   * Scarta la linea temporale della persona, le cui date ed i cui tipi orario dipendono
+   * dal contratto.
+   */
+  void invalidatePersonTimeline() {
+    if (person != null) {
+      person.invalidateTimeline();
+    }
+  }
+
   /**
    * Ritorna la lista dei vacationPeriods del contratto e del precedente se presente.
    *
@@ -19,6 +19,7 @@ package it.cnr.iit.epas.models;
 
 import it.cnr.iit.epas.dao.wrapper.IWrapperContract;
 import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.base.Recomputed;
 import it.cnr.iit.epas.utils.DateInterval;
 import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
@@ -47,6 +48,7 @@ import org.hibernate.envers.Audited;
     name = "contract_month_recap",
     uniqueConstraints = {@UniqueConstraint(columnNames = {"year", "month", "contract_id"})})
 @Audited
+@Recomputed
 public class ContractMonthRecap extends BaseEntity {
 
   private static final long serialVersionUID = 5381901476391668672L;
@@ -20,6 +20,7 @@ package it.cnr.iit.epas.models;
 import it.cnr.iit.epas.models.base.IPropertiesInPeriodOwner;
 import it.cnr.iit.epas.models.base.IPropertyInPeriod;
 import it.cnr.iit.epas.models.base.PropertyInPeriod;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -80,7 +81,7 @@ public class ContractWorkingTimeType extends PropertyInPeriod implements IProper
 
   @Override
   public void setValue(Object value) {
-    this.workingTimeType = (WorkingTimeType) value;
+    setWorkingTimeType((WorkingTimeType) value);
   }
 
   public IPropertiesInPeriodOwner getOwner() {
@@ -88,7 +89,40 @@ public class ContractWorkingTimeType extends PropertyInPeriod implements IProper
   }
 
   public void setOwner(IPropertiesInPeriodOwner target) {
-    this.contract = (Contract) target;
+    setContract((Contract) target);
+  }
+
+  /**
+   * Imposta il contratto del periodo, scartando la linea temporale della persona del
+   * precedente e del nuovo contratto.
+   */
+  public void setContract(Contract contract) {
+    invalidatePersonTimeline();
+    this.contract = contract;
+    invalidatePersonTimeline();
+  }
+
+  public void setWorkingTimeType(WorkingTimeType workingTimeType) {
+    this.workingTimeType = workingTimeType;
+    invalidatePersonTimeline();
+  }
+
+  @Override
+  public void setBeginDate(LocalDate beginDate) {
+    super.setBeginDate(beginDate);
+    invalidatePersonTimeline();
+  }
+
+  @Override
+  public void setEndDate(LocalDate endDate) {
+    super.setEndDate(endDate);
+    invalidatePersonTimeline();
+  }
+
+  private void invalidatePersonTimeline() {
+    if (contract != null) {
+      contract.invalidatePersonTimeline();
+    }
   }
 
   @Override
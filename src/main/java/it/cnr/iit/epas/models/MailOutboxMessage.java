@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models;
+
+import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.enumerate.MailOutboxStatus;
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Email nella coda delle email in uscita.
+ * Le email sono salvate nella stessa transazione dell'operazione che le genera ed inviate
+ * successivamente in background, il messaggio è conservato nel formato RFC 822.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString(of = {"recipients", "subject", "status", "attempts", "nextAttemptAt"},
+    callSuper = true)
+@Entity
+@Table(
+    name = "mail_outbox",
+    indexes = {
+        @Index(name = "mail_outbox_status_next_attempt_idx",
+            columnList = "status, next_attempt_at"),
+        @Index(name = "mail_outbox_deduplication_key_idx",
+            columnList = "deduplication_key, created_at"),
+        @Index(name = "mail_outbox_status_created_at_idx",
+            columnList = "status, created_at")})
+public class MailOutboxMessage extends BaseEntity {
+
+  private static final long serialVersionUID = 2914512496381527467L;
+
+  /**
+   * Indirizzi dei destinatari separati da virgola.
+   */
+  @NotNull
+  @Column(length = 4000)
+  private String recipients;
+
+  private String subject;
+
+  /**
+   * Il messaggio completo (intestazioni e contenuto) nel formato RFC 822.
+   */
+  @NotNull
+  @Column(length = 10_000_000)
+  private String message;
+
+  /**
+   * Impronta SHA-256 di destinatari, oggetto e testo utilizzata per non accodare più
+   * volte la stessa email.
+   */
+  @NotNull
+  @Column(name = "deduplication_key", length = 64)
+  private String deduplicationKey;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  private MailOutboxStatus status = MailOutboxStatus.PENDING;
+
+  private int attempts;
+
+  @NotNull
+  @Column(name = "created_at")
+  private LocalDateTime createdAt;
+
+  /**
+   * Data e ora a partire dalla quale effettuare il prossimo tentativo di invio.
+   */
+  @Column(name = "next_attempt_at")
+  private LocalDateTime nextAttemptAt;
+
+  @Column(name = "sent_at")
+  private LocalDateTime sentAt;
+
+  /**
+   * L'errore dell'ultimo tentativo di invio fallito.
+   */
+  @Column(name = "last_error", length = 4000)
+  private String lastError;
+
+}
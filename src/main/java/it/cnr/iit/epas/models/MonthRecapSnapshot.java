@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.models;
+
+import it.cnr.iit.epas.models.base.BaseEntity;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Riepilogo mensile delle timbrature di una persona già calcolato per la visualizzazione.
+ * Il campo recapVersion viene incrementato (ed il riepilogo eliminato) ogni volta che
+ * i ricalcoli o gli inserimenti senza ricalcolo della persona interessano il mese, mentre
+ * personVersion riporta la versione della persona con cui è stato calcolato il riepilogo:
+ * un riepilogo presente con la versione attuale della persona è sempre allineato ai dati
+ * del mese.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString(of = {"year", "month", "recapVersion"}, callSuper = true)
+@Entity
+@Table(
+    name = "month_recap_snapshots",
+    uniqueConstraints = {@UniqueConstraint(columnNames = {"person_id", "year", "month"})})
+public class MonthRecapSnapshot extends BaseEntity {
+
+  private static final long serialVersionUID = -2946386207340467384L;
+
+  @NotNull
+  @ManyToOne(fetch = FetchType.LAZY, optional = false)
+  @JoinColumn(name = "person_id", updatable = false)
+  private Person person;
+
+  private int year;
+
+  private int month;
+
+  /**
+   * Versione dei dati del mese, incrementata ad ogni ricalcolo che lo riguarda.
+   */
+  @Column(name = "recap_version")
+  private long recapVersion;
+
+  /**
+   * Versione della persona (anagrafica) con cui è stato calcolato il riepilogo.
+   */
+  @Column(name = "person_version")
+  private Integer personVersion;
+
+  /**
+   * Il riepilogo del mese in formato JSON, null se non ancora calcolato per la versione
+   * attuale.
+   */
+  @Column(length = 10_000_000)
+  private String payload;
+
+  /**
+   * Nuovo riepilogo (ancora da calcolare) per la persona ed il mese.
+   */
+  public MonthRecapSnapshot(Person person, int year, int month) {
+    this.person = person;
+    this.year = year;
+    this.month = month;
+  }
+}
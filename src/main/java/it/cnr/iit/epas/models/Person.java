@@ -24,6 +24,7 @@ import it.cnr.iit.epas.models.absences.InitializationGroup;
 import it.cnr.iit.epas.models.base.IPropertiesInPeriodOwner;
 import it.cnr.iit.epas.models.base.IPropertyInPeriod;
 import it.cnr.iit.epas.models.base.PeriodModel;
+import it.cnr.iit.epas.models.base.PersonTimeline;
 import it.cnr.iit.epas.models.enumerate.CertificationType;
 import it.cnr.iit.epas.models.flows.Affiliation;
 import it.cnr.iit.epas.models.flows.Group;
@@ -50,6 +51,7 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotNull;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.envers.Audited;
@@ -181,6 +183,13 @@ public class Person extends PeriodModel implements IPropertiesInPeriodOwner {
   @OneToMany(mappedBy = "person", cascade = {CascadeType.REMOVE})
   private List<PersonMonthRecap> personMonths = Lists.newArrayList();
 
+  /**
+   * riepiloghi mensili già calcolati per la visualizzazione.
+   */
+  @NotAudited
+  @OneToMany(mappedBy = "person", cascade = {CascadeType.REMOVE})
+  private List<MonthRecapSnapshot> monthRecapSnapshots = Lists.newArrayList();
+
   /**
    * relazione con la tabella Competence.
    */
@@ -220,6 +229,14 @@ public class Person extends PeriodModel implements IPropertiesInPeriodOwner {
   @Transient
   private Long perseoOfficeId = null;
 
+  /**
+   * Linea temporale dei contratti, costruita alla prima richiesta.
+   */
+  @Transient
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient PersonTimeline timeline;
+
   /**
    * Sono stati implementati i metodi Equals e HashCode sulla classe Badge in modo che Se sono
    * presenti più badge per la persona che differiscono solo per il campo badgeReader venga
@@ -415,6 +432,26 @@ public class Person extends PeriodModel implements IPropertiesInPeriodOwner {
   public boolean isGroupManager() {
     return user.hasRoles(Role.GROUP_MANAGER);
   }
+
+  /**
+   * La linea temporale di contratti e tipi orario della persona, costruita dai contratti
+   * già caricati e riutilizzata finché contratti, periodi dei tipi orario e relative date
+   * non vengono modificati (anche se le modifiche non sono ancora state inviate al db).
+   */
+  public PersonTimeline timeline() {
+    if (timeline == null || !timeline.isBuiltFrom(contracts)) {
+      timeline = PersonTimeline.of(contracts);
+    }
+    return timeline;
+  }
+
+  /**
+   * Scarta la linea temporale, ricostruita alla prossima richiesta. Invocato dai setter di
+   * contratti e periodi dei tipi orario.
+   */
+  public void invalidateTimeline() {
+    timeline = null;
+  }
   
   @Transient
   public boolean isSeatSupervisor() {
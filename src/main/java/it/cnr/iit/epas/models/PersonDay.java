@@ -19,6 +19,7 @@ package it.cnr.iit.epas.models;
 
 import it.cnr.iit.epas.models.absences.Absence;
 import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.base.Recomputed;
 import it.cnr.iit.epas.models.enumerate.MealTicketBehaviour;
 import it.cnr.iit.epas.models.enumerate.Troubles;
 import java.time.LocalDate;
@@ -67,17 +68,20 @@ public class PersonDay extends BaseEntity {
   @NotNull
   private LocalDate date;
 
+  @Recomputed
   private Integer timeAtWork = 0;
 
   /**
    * Tempo all'interno di timbrature valide.
    */
+  @Recomputed
   @Column(name = "stamping_time")
   private Integer stampingsTime = 0;
 
   /**
    * Tempo lavorato al di fuori della fascia apertura/chiusura.
    */
+  @Recomputed
   private Integer outOpening = 0;
 
   /**
@@ -88,16 +92,19 @@ public class PersonDay extends BaseEntity {
   /**
    * Tempo giustificato da assenze che non contribuiscono al tempo per buono pasto.
    */
+  @Recomputed
   private Integer justifiedTimeNoMeal = 0;
 
   /**
    * Tempo giustificato da assenze che contribuiscono al tempo per buono pasto.
    */
+  @Recomputed
   private Integer justifiedTimeMeal = 0;
 
   /**
    * Tempo giustificato per uscita/ingresso da zone diverse opportunamente definite.
    */
+  @Recomputed
   private Integer justifiedTimeBetweenZones = 0;
 
   /**
@@ -106,26 +113,32 @@ public class PersonDay extends BaseEntity {
    */
   private Integer workingTimeInMission = 0;
 
+  @Recomputed
   private Integer difference = 0;
 
+  @Recomputed
   private Integer progressive = 0;
 
   /**
    * Minuti tolti per pausa pranzo breve.
    */
+  @Recomputed
   private Integer decurtedMeal = 0;
 
+  @Recomputed
   private boolean isTicketAvailable;
 
   private boolean isTicketForcedByAdmin;
 
   private boolean isWorkingInAnotherPlace;
 
+  @Recomputed
   private boolean isHoliday;
 
   /**
    * Tempo lavorato in un giorno di festa.
    */
+  @Recomputed
   private Integer onHoliday = 0;
 
   /**
@@ -140,6 +153,7 @@ public class PersonDay extends BaseEntity {
   @OneToMany(mappedBy = "personDay", cascade = {CascadeType.PERSIST, CascadeType.REMOVE})
   private List<Absence> absences = new ArrayList<Absence>();
 
+  @Recomputed
   @NotAudited
   @OneToMany(mappedBy = "personDay", cascade = {CascadeType.PERSIST, CascadeType.REMOVE})
   private List<PersonDayInTrouble> troubles = new ArrayList<PersonDayInTrouble>();
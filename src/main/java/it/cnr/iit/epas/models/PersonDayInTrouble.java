@@ -18,6 +18,7 @@
 package it.cnr.iit.epas.models;
 
 import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.base.Recomputed;
 import it.cnr.iit.epas.models.enumerate.Troubles;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -37,6 +38,7 @@ import org.hibernate.envers.Audited;
 @Getter
 @Setter
 @Audited
+@Recomputed
 @Entity
 public class PersonDayInTrouble extends BaseEntity {
 
@@ -19,7 +19,9 @@ package it.cnr.iit.epas.models;
 
 import com.google.common.base.MoreObjects;
 import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.listeners.UsersRolesOfficesListener;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -39,6 +41,7 @@ import org.hibernate.envers.Audited;
 @Getter
 @Setter
 @Entity
+@EntityListeners(UsersRolesOfficesListener.class)
 @Table(name = "users_roles_offices")
 @Audited
 public class UsersRolesOffices extends BaseEntity {
@@ -27,7 +27,10 @@ import javax.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.envers.NotAudited;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 /**
  * Default base class per sovrascrivere la generazione delle nuove chiavi primarie.
@@ -43,7 +46,13 @@ public abstract class BaseEntity implements Serializable {
   private static final long serialVersionUID = 4849404810311166199L;
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = TableSequenceGenerator.NAME)
+  @GenericGenerator(name = TableSequenceGenerator.NAME,
+      strategy = "it.cnr.iit.epas.models.base.TableSequenceGenerator",
+      parameters = {
+          @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM,
+              value = "" + TableSequenceGenerator.INCREMENT_SIZE),
+          @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled")})
   private Long id;
 
   @NotAudited
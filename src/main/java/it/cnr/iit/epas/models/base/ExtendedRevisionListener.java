@@ -17,6 +17,7 @@
 
 package it.cnr.iit.epas.models.base;
 
+import it.cnr.iit.epas.config.DetachedRequestAttributes;
 import it.cnr.iit.epas.models.User;
 import it.cnr.iit.epas.security.SecureUtils;
 import java.util.Optional;
@@ -54,10 +55,11 @@ public class ExtendedRevisionListener implements RevisionListener {
       //Questo serve per prelevare l'utente corrente dal SecurityContext corrente,
       //che nel caso di metodi @Async è diverso da quello del thread della chiamata 
       //http originale.
-      if (getUserFromCurrentSecurityContext() == null) {
+      final Optional<User> owner = getUserFromCurrentSecurityContext();
+      if (!owner.isPresent()) {
         log.warn("unkown owner or user on revision {}", revision);
       } else {
-        revision.setOwner(getUserFromCurrentSecurityContext().get());
+        revision.setOwner(owner.get());
       }
 
 
@@ -82,6 +84,9 @@ public class ExtendedRevisionListener implements RevisionListener {
     if (attribs instanceof ServletRequestAttributes) {
       return Optional.of(((ServletRequestAttributes) attribs).getRequest().getRemoteAddr());
     }
+    if (attribs instanceof DetachedRequestAttributes) {
+      return Optional.ofNullable(((DetachedRequestAttributes) attribs).getRemoteAddress());
+    }
     return Optional.empty();
   }
 
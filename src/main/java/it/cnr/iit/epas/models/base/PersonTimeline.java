@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models.base;
+
+import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableRangeMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import it.cnr.iit.epas.models.Contract;
+import it.cnr.iit.epas.models.ContractWorkingTimeType;
+import it.cnr.iit.epas.models.WorkingTimeType;
+import it.cnr.iit.epas.models.WorkingTimeTypeDay;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Linea temporale immutabile dei contratti di una persona e dei relativi tipi orario.
+ * Viene costruita a partire dai contratti già caricati della persona e risponde senza
+ * accessi al db (in tempo logaritmico) a quale sia il contratto, il tipo orario ed il
+ * giorno del tipo orario ad una certa data.<br>
+ * Le modifiche a date, tipi orario e appartenenza di contratti e periodi dei tipi orario
+ * sono notificate alla persona dai setter delle entity (vedi {@link
+ * it.cnr.iit.epas.models.Person#invalidateTimeline()}), anche prima del flush; la linea
+ * temporale conserva inoltre il numero di contratti e di periodi da cui è stata costruita
+ * per riconoscere gli inserimenti diretti nelle collezioni.
+ */
+@Slf4j
+public final class PersonTimeline {
+
+  private final RangeMap<LocalDate, Contract> contracts;
+  private final RangeMap<LocalDate, ContractWorkingTimeType> workingTimeTypes;
+  private final int contractCount;
+  private final int workingTimeTypeCount;
+
+  private PersonTimeline(RangeMap<LocalDate, Contract> contracts,
+      RangeMap<LocalDate, ContractWorkingTimeType> workingTimeTypes,
+      Collection<Contract> personContracts) {
+    this.contracts = contracts;
+    this.workingTimeTypes = workingTimeTypes;
+    this.contractCount = personContracts.size();
+    this.workingTimeTypeCount = workingTimeTypeCount(personContracts);
+  }
+
+  /**
+   * Costruisce la linea temporale dai contratti. I periodi dei tipi orario sono limitati
+   * all'intervallo del contratto di appartenenza; i periodi incongruenti (inizio successivo
+   * alla fine) sono ignorati.
+   *
+   * @param personContracts i contratti della persona
+   * @return la linea temporale
+   */
+  public static PersonTimeline of(Collection<Contract> personContracts) {
+    final TreeRangeMap<LocalDate, Contract> contracts = TreeRangeMap.create();
+    final TreeRangeMap<LocalDate, ContractWorkingTimeType> workingTimeTypes =
+        TreeRangeMap.create();
+    personContracts.stream()
+        .sorted(Comparator.comparing(Contract::getBeginDate)).forEach(contract -> {
+          final Optional<Range<LocalDate>> contractRange =
+              range(contract.getBeginDate(), contract.calculatedEnd());
+          if (!contractRange.isPresent()) {
+            log.warn("Ignorato il contratto {} con date incongruenti", contract.getId());
+            return;
+          }
+          contracts.put(contractRange.get(), contract);
+          contract.getContractWorkingTimeType().stream()
+              .sorted(Comparator.comparing(ContractWorkingTimeType::getBeginDate))
+              .forEach(cwtt -> range(cwtt.getBeginDate(), cwtt.getEndDate())
+                  .filter(range -> range.isConnected(contractRange.get()))
+                  .map(range -> range.intersection(contractRange.get()))
+                  .filter(range -> !range.isEmpty())
+                  .ifPresent(range -> workingTimeTypes.put(range, cwtt)));
+        });
+    return new PersonTimeline(ImmutableRangeMap.copyOf(contracts),
+        ImmutableRangeMap.copyOf(workingTimeTypes), personContracts);
+  }
+
+  /**
+   * Se la linea temporale è costruita dallo stesso numero di contratti e di periodi dei
+   * tipi orario passati. Le altre modifiche sono notificate dai setter delle entity.
+   *
+   * @param personContracts i contratti attuali della persona
+   * @return true se la linea temporale è ancora valida.
+   */
+  public boolean isBuiltFrom(Collection<Contract> personContracts) {
+    return personContracts.size() == contractCount
+        && workingTimeTypeCount(personContracts) == workingTimeTypeCount;
+  }
+
+  private static int workingTimeTypeCount(Collection<Contract> personContracts) {
+    int count = 0;
+    for (Contract contract : personContracts) {
+      count += contract.getContractWorkingTimeType().size();
+    }
+    return count;
+  }
+
+  /**
+   * Il contratto attivo alla data.
+   */
+  public Optional<Contract> getContract(LocalDate date) {
+    return Optional.ofNullable(contracts.get(date));
+  }
+
+  /**
+   * Se la persona ha un contratto attivo alla data.
+   */
+  public boolean isActive(LocalDate date) {
+    return contracts.get(date) != null;
+  }
+
+  /**
+   * Il periodo del tipo orario del contratto attivo alla data.
+   */
+  public Optional<ContractWorkingTimeType> getContractWorkingTimeType(LocalDate date) {
+    return Optional.ofNullable(workingTimeTypes.get(date));
+  }
+
+  /**
+   * I periodi dei tipi orario nell'intervallo (estremi compresi), limitati all'intervallo.
+   */
+  public Map<Range<LocalDate>, WorkingTimeType> getWorkingTimeTypes(LocalDate begin,
+      LocalDate end) {
+    return Maps.transformValues(
+        workingTimeTypes.subRangeMap(Range.closed(begin, end)).asMapOfRanges(),
+        ContractWorkingTimeType::getWorkingTimeType);
+  }
+
+  /**
+   * Il tipo orario attivo alla data.
+   */
+  public Optional<WorkingTimeType> getWorkingTimeType(LocalDate date) {
+    return getContractWorkingTimeType(date).map(ContractWorkingTimeType::getWorkingTimeType);
+  }
+
+  /**
+   * Il giorno del tipo orario attivo alla data.
+   */
+  public Optional<WorkingTimeTypeDay> getWorkingTimeTypeDay(LocalDate date) {
+    final Optional<WorkingTimeType> wtt = getWorkingTimeType(date);
+    if (!wtt.isPresent()) {
+      return Optional.empty();
+    }
+    final int index = date.getDayOfWeek().getValue() - 1;
+    Verify.verify(index < wtt.get().getWorkingTimeTypeDays().size(),
+        "Definiti %s giorni nel WorkingTimeType %s, richiesto giorno non presente con indice %s",
+        wtt.get().getWorkingTimeTypeDays().size(), wtt.get(), index);
+    final WorkingTimeTypeDay wttd = wtt.get().getWorkingTimeTypeDays().get(index);
+    Verify.verify(wttd != null && wttd.getDayOfWeek() == date.getDayOfWeek().getValue());
+    return Optional.of(wttd);
+  }
+
+  private static Optional<Range<LocalDate>> range(LocalDate begin, LocalDate end) {
+    if (begin == null || end != null && end.isBefore(begin)) {
+      return Optional.empty();
+    }
+    return Optional.of(end == null ? Range.atLeast(begin) : Range.closed(begin, end));
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models.base;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Gestione della storicizzazione delle modifiche effettuate dai ricalcoli.
+ * Le modifiche effettuate all'interno di {@link #run(Supplier)} sulle entity o sui campi
+ * annotati con {@link Recomputed} non vengono storicizzate, mentre le altre modifiche
+ * (per esempio quelle effettuate dagli utenti nella stessa transazione) mantengono lo
+ * storico completo.
+ */
+public final class RecomputationAudit {
+
+  private static final ThreadLocal<Integer> DEPTH = ThreadLocal.withInitial(() -> 0);
+
+  private static final Map<Class<?>, Set<String>> RECOMPUTED_FIELDS = Maps.newConcurrentMap();
+
+  private RecomputationAudit() {
+  }
+
+  /**
+   * Esegue il ricalcolo senza storicizzare le modifiche dei soli campi ricalcolati.
+   * Le modifiche devono essere inviate al db (flush) prima del termine del ricalcolo.
+   */
+  public static <T> T run(Supplier<T> recomputation) {
+    DEPTH.set(DEPTH.get() + 1);
+    try {
+      return recomputation.get();
+    } finally {
+      if (DEPTH.get() == 1) {
+        DEPTH.remove();
+      } else {
+        DEPTH.set(DEPTH.get() - 1);
+      }
+    }
+  }
+
+  /**
+   * Se il thread corrente sta effettuando un ricalcolo.
+   */
+  public static boolean isActive() {
+    return DEPTH.get() > 0;
+  }
+
+  /**
+   * Se inserimenti, modifiche e cancellazioni dell'entity non devono essere storicizzati.
+   */
+  public static boolean isSkipped(Object entity) {
+    return isActive() && entity.getClass().isAnnotationPresent(Recomputed.class);
+  }
+
+  /**
+   * Se la modifica dell'entity non deve essere storicizzata perché riguarda solo campi
+   * ricalcolati.
+   *
+   * @param entity l'entity modificata
+   * @param propertyNames i nomi delle proprietà dell'entity
+   * @param dirtyProperties gli indici delle proprietà modificate
+   */
+  public static boolean isSkipped(Object entity, String[] propertyNames, int[] dirtyProperties) {
+    if (!isActive()) {
+      return false;
+    }
+    if (isSkipped(entity)) {
+      return true;
+    }
+    if (dirtyProperties == null || dirtyProperties.length == 0) {
+      return false;
+    }
+    final Set<String> recomputed = RECOMPUTED_FIELDS
+        .computeIfAbsent(entity.getClass(), RecomputationAudit::recomputedFields);
+    if (recomputed.isEmpty()) {
+      return false;
+    }
+    for (int index : dirtyProperties) {
+      if (!recomputed.contains(propertyNames[index])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Set<String> recomputedFields(Class<?> entityClass) {
+    final ImmutableSet.Builder<String> fields = ImmutableSet.builder();
+    for (Class<?> clazz = entityClass; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (field.isAnnotationPresent(Recomputed.class)) {
+          fields.add(field.getName());
+        }
+      }
+    }
+    return fields.build();
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models.base;
+
+import java.util.Properties;
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.relational.QualifiedName;
+import org.hibernate.boot.model.relational.QualifiedNameParser;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+
+/**
+ * Generatore delle chiavi primarie tramite una sequenza per ogni tabella, con il nome
+ * utilizzato da PostgreSQL per le colonne serial (tabella_id_seq).
+ * Utilizzato con l'ottimizzatore pooled permette di assegnare gli id senza eseguire
+ * subito le insert e quindi di inviarle al db a gruppi (hibernate.jdbc.batch_size).
+ */
+public class TableSequenceGenerator extends SequenceStyleGenerator {
+
+  public static final String NAME = "table_sequence";
+  public static final String SUFFIX = "_id_seq";
+  public static final int INCREMENT_SIZE = 50;
+
+  @Override
+  protected QualifiedName determineSequenceName(Properties params, Dialect dialect,
+      JdbcEnvironment jdbcEnv, ServiceRegistry serviceRegistry) {
+    final String table = params.getProperty(PersistentIdentifierGenerator.TABLE);
+    if (table == null) {
+      return super.determineSequenceName(params, dialect, jdbcEnv, serviceRegistry);
+    }
+    final Identifier catalog = jdbcEnv.getIdentifierHelper().toIdentifier(
+        params.getProperty(PersistentIdentifierGenerator.CATALOG,
+            params.getProperty(AvailableSettings.DEFAULT_CATALOG)));
+    final Identifier schema = jdbcEnv.getIdentifierHelper().toIdentifier(
+        params.getProperty(PersistentIdentifierGenerator.SCHEMA,
+            params.getProperty(AvailableSettings.DEFAULT_SCHEMA)));
+    return new QualifiedNameParser.NameParts(catalog, schema,
+        jdbcEnv.getIdentifierHelper().toIdentifier(table + SUFFIX));
+  }
+}
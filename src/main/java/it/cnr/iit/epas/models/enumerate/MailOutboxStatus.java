@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2022  Consiglio Nazionale delle Ricerche
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
  *
  *     This program is free software: you can redistribute it and/or modify
  *     it under the terms of the GNU Affero General Public License as
@@ -15,13 +15,13 @@
  *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
  */
 
-package it.cnr.iit.epas.utils;
+package it.cnr.iit.epas.models.enumerate;
 
-import org.apache.commons.mail.SimpleEmail;
-
-public class Mail {
-
-  public static void send(SimpleEmail simpleEmail) {
-    //FIXME: da implementare prima del passaggio a Spring boot!
-  }
-}
\ No newline at end of file
+/**
+ * Stato di una email nella coda delle email in uscita.
+ */
+public enum MailOutboxStatus {
+  PENDING,
+  SENT,
+  FAILED;
+}
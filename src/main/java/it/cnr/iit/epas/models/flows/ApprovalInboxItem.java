@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models.flows;
+
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.base.BaseEntity;
+import it.cnr.iit.epas.models.flows.enumerate.ApprovalRequestKind;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Approvazione in attesa di una richiesta di assenza o di informazione.
+ * Per ogni richiesta con il flusso avviato e non terminato è presente una riga per ogni
+ * ruolo che deve ancora esprimersi. Le righe sono ricalcolate ad ogni evento del flusso della
+ * richiesta, mentre la sede del dipendente ed i responsabili dei suoi gruppi sono risolti al
+ * momento della lettura, in modo da seguire le modifiche di sedi, gruppi e affiliazioni.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString(of = {"requestKind", "requestId", "requestType", "approverRole"}, callSuper = true)
+@Entity
+@Table(
+    name = "approval_inbox",
+    indexes = {
+        @Index(name = "approval_inbox_role_type_person_idx",
+            columnList = "approver_role, request_type, person_id"),
+        @Index(name = "approval_inbox_request_idx", columnList = "request_kind, request_id")})
+public class ApprovalInboxItem extends BaseEntity {
+
+  private static final long serialVersionUID = 5410368263214932270L;
+
+  @NotNull
+  @Enumerated(EnumType.STRING)
+  @Column(name = "request_kind")
+  private ApprovalRequestKind requestKind;
+
+  /**
+   * Identificativo della richiesta di assenza o di informazione.
+   */
+  @NotNull
+  @Column(name = "request_id")
+  private Long requestId;
+
+  /**
+   * Il tipo della richiesta (AbsenceRequestType o InformationType).
+   */
+  @NotNull
+  @Column(name = "request_type")
+  private String requestType;
+
+  /**
+   * Il ruolo che deve approvare la richiesta.
+   */
+  @NotNull
+  @Column(name = "approver_role")
+  private String approverRole;
+
+  /**
+   * Il dipendente che ha effettuato la richiesta.
+   */
+  @NotNull
+  @ManyToOne(fetch = FetchType.LAZY, optional = false)
+  @JoinColumn(name = "person_id")
+  private Person person;
+
+  /**
+   * Nuova approvazione in attesa.
+   */
+  public ApprovalInboxItem(ApprovalRequestKind requestKind, Long requestId, String requestType,
+      String approverRole, Person person) {
+    this.requestKind = requestKind;
+    this.requestId = requestId;
+    this.requestType = requestType;
+    this.approverRole = approverRole;
+    this.person = person;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.models.listeners;
+
+import it.cnr.iit.epas.models.UsersRolesOffices;
+import it.cnr.iit.epas.security.PermissionDecisionCache;
+import javax.inject.Inject;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Listener sulle modifiche ai ruoli degli utenti nelle sedi, invalida i permessi
+ * in cache dell'utente interessato sia subito che al termine della transazione.
+ */
+@Slf4j
+@Component
+public class UsersRolesOfficesListener {
+
+  private final PermissionDecisionCache decisionCache;
+
+  @Inject
+  UsersRolesOfficesListener(PermissionDecisionCache decisionCache) {
+    this.decisionCache = decisionCache;
+  }
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  void onChange(UsersRolesOffices uro) {
+    log.trace("Modificato il ruolo {}, invalidazione dei permessi in cache", uro.getId());
+    final Long userId = uro.getUser() != null ? uro.getUser().getId() : null;
+    invalidate(userId);
+    // Anche al termine della transazione, così che eventuali richieste concorrenti non
+    // lascino in cache permessi calcolati dai ruoli precedenti al commit.
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          invalidate(userId);
+        }
+      });
+    }
+  }
+
+  private void invalidate(Long userId) {
+    if (userId != null) {
+      decisionCache.invalidate(userId);
+    } else {
+      decisionCache.invalidateAll();
+    }
+  }
+}
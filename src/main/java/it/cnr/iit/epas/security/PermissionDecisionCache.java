@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.User;
+import it.cnr.iit.epas.models.UsersRolesOffices;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache degli esiti delle valutazioni delle drools sui permessi.
+ * La chiave contiene l'utente con i suoi ruoli (di sistema e nelle sedi), il path,
+ * il metodo HTTP ed il target (solo se assente, una persona o una sede) con i dati
+ * utilizzati dalle regole. Le valutazioni con target di altro tipo non sono
+ * mantenute in cache.
+ */
+@Slf4j
+@Component
+public class PermissionDecisionCache {
+
+  private static final long MAXIMUM_SIZE = 10_000;
+  private static final long EXPIRE_MINUTES = 5;
+  private static final String METRIC_PREFIX = "epas.security.decisions";
+
+  private final Cache<DecisionKey, Boolean> cache = CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_SIZE)
+      .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+      .build();
+
+  private final Counter hitCounter;
+  private final Counter missCounter;
+  private final Timer evaluationTimer;
+
+  @Inject
+  PermissionDecisionCache(MeterRegistry meterRegistry) {
+    this.hitCounter = Counter.builder(METRIC_PREFIX)
+        .tag("result", "hit")
+        .description("Controlli dei permessi risolti dalla cache").register(meterRegistry);
+    this.missCounter = Counter.builder(METRIC_PREFIX)
+        .tag("result", "miss")
+        .description("Controlli dei permessi non presenti in cache").register(meterRegistry);
+    this.evaluationTimer = Timer.builder("epas.security.rules.evaluation")
+        .description("Durata della valutazione delle drools sui permessi")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Chiave di una valutazione dei permessi.
+   */
+  @Value
+  static class DecisionKey {
+    Long userId;
+    String grants;
+    String permission;
+    String httpMethod;
+    String targetType;
+    Long targetId;
+    Long targetOfficeId;
+    Long targetUserId;
+  }
+
+  /**
+   * L'esito del controllo, prelevato dalla cache se presente, altrimenti calcolato tramite
+   * la valutazione passata.
+   *
+   * @param user l'utente corrente
+   * @param permission il path normalizzato
+   * @param httpMethod il metodo HTTP
+   * @param target l'eventuale oggetto del controllo
+   * @param evaluation la valutazione delle drools
+   * @return true se il controllo ha dato esito positivo.
+   */
+  boolean decide(User user, String permission, String httpMethod, Object target,
+      BooleanSupplier evaluation) {
+    final Optional<DecisionKey> key = key(user, permission, httpMethod, target);
+    if (key.isPresent()) {
+      Boolean cached = cache.getIfPresent(key.get());
+      if (cached != null) {
+        hitCounter.increment();
+        return cached;
+      }
+    }
+    missCounter.increment();
+    final boolean permitted = evaluationTimer.record(evaluation::getAsBoolean);
+    key.ifPresent(k -> cache.put(k, permitted));
+    return permitted;
+  }
+
+  /**
+   * Rimuove gli esiti relativi all'utente.
+   */
+  public void invalidate(Long userId) {
+    if (userId == null) {
+      return;
+    }
+    cache.asMap().keySet().removeIf(key -> userId.equals(key.getUserId()));
+    log.debug("Invalidati i permessi in cache dell'utente id={}", userId);
+  }
+
+  /**
+   * Svuota la cache dei permessi.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private Optional<DecisionKey> key(User user, String permission, String httpMethod,
+      Object target) {
+    if (user.getId() == null || permission == null) {
+      return Optional.empty();
+    }
+    final String grants = grants(user);
+    if (target == null) {
+      return Optional.of(new DecisionKey(user.getId(), grants, permission, httpMethod,
+          null, null, null, null));
+    }
+    if (target instanceof Person && ((Person) target).getId() != null) {
+      final Person person = (Person) target;
+      return Optional.of(new DecisionKey(user.getId(), grants, permission, httpMethod,
+          Person.class.getSimpleName(), person.getId(),
+          person.getOffice() != null ? person.getOffice().getId() : null,
+          person.getUser() != null ? person.getUser().getId() : null));
+    }
+    if (target instanceof Office && ((Office) target).getId() != null) {
+      return Optional.of(new DecisionKey(user.getId(), grants, permission, httpMethod,
+          Office.class.getSimpleName(), ((Office) target).getId(), null, null));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Rappresentazione dei ruoli dell'utente: ruoli di sistema, ruoli nelle sedi e presenza
+   * della qualifica della persona associata.
+   */
+  private String grants(User user) {
+    final String roles = user.getRoles().stream().map(Enum::name).sorted()
+        .collect(Collectors.joining(","));
+    final String rolesOffices = user.getUsersRolesOffices().stream()
+        .map(PermissionDecisionCache::roleInOffice).sorted()
+        .collect(Collectors.joining(","));
+    final boolean qualified = user.getPerson() != null
+        && user.getPerson().getQualification() != null;
+    return roles + "|" + rolesOffices + "|" + qualified;
+  }
+
+  private static String roleInOffice(UsersRolesOffices uro) {
+    return (uro.getRole() != null ? uro.getRole().getName() : null)
+        + "@" + (uro.getOffice() != null ? uro.getOffice().getId() : null);
+  }
+}
@@ -22,6 +22,9 @@ import it.cnr.iit.epas.dao.UserDao;
 import it.cnr.iit.epas.models.User;
 import java.util.Optional;
 import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
@@ -30,6 +33,8 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 /**
  * Supporto per prelevare l'utente corrente.
@@ -41,25 +46,57 @@ import org.springframework.stereotype.Component;
 @Component
 public class SecureUtils {
 
+  private static final String CURRENT_USER_ATTRIBUTE = SecureUtils.class.getName() + ".currentUser";
+
   private final UserDao userDao;
   private final SecurityProperties securityProperties;
+  private final Provider<EntityManager> emp;
 
   @Inject
-  SecureUtils(UserDao userDao, SecurityProperties securityProperties) {
+  SecureUtils(UserDao userDao, SecurityProperties securityProperties,
+      Provider<EntityManager> emp) {
     this.userDao = userDao;
     this.securityProperties = securityProperties;
+    this.emp = emp;
+  }
+
+  /**
+   * Utente corrente con l'autenticazione da cui è stato ricavato.
+   */
+  @RequiredArgsConstructor
+  private static class CurrentUser {
+    private final Authentication authentication;
+    private final User user;
   }
 
   /**
    * L'utente corrente prelevato tramite le informazioni presenti nel token Jwt.
+   * All'interno della stessa richiesta l'utente viene prelevato una sola volta.
    */
   public Optional<User> getCurrentUser() {
-    return getUserFromAuthentication(SecurityContextHolder.getContext().getAuthentication());
+    final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes != null) {
+      final CurrentUser current = (CurrentUser) attributes
+          .getAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+      // L'istanza è riutilizzabile solo se appartiene all'entity manager corrente.
+      if (current != null && current.authentication == authentication
+          && emp.get().contains(current.user)) {
+        return Optional.of(current.user);
+      }
+    }
+    final Optional<User> user = getUserFromAuthentication(authentication);
+    if (attributes != null && user.isPresent()) {
+      attributes.setAttribute(CURRENT_USER_ATTRIBUTE,
+          new CurrentUser(authentication, user.get()), RequestAttributes.SCOPE_REQUEST);
+    }
+    return user;
   }
 
   /**
    * Preleva le informazioni dell'utente corrente dal token JWT se presente,
    * facendo il match con l'utente presente nel db del servizio.
+   * L'utente è prelevato insieme ai suoi ruoli ed ai lettori badge associati.
    */
   public Optional<User> getUserFromAuthentication(Authentication authentication) {
     User user = null;
@@ -69,26 +106,13 @@ public class SecureUtils {
         //per esempio getOauth2().getJwtField() = "preferred_username"
         val userJwtIdentifier = 
             principal.getClaimAsString(securityProperties.getOauth2().getJwtField());
-        switch (securityProperties.getOauth2().getUserAuthIdentifier()) {
-          case eppn:
-            user = userDao.byEppn(userJwtIdentifier).orElse(null);
-            break;
-          case username:
-            user = userDao.byUsername(userJwtIdentifier);
-            break;
-          case subjectId:
-            //FIXME: da aggiungere quando aggiungiamo al modello subjectId per gli User.
-            throw new IllegalArgumentException(
-                "Unexpected value: " + securityProperties.getOauth2().getUserAuthIdentifier());
-          default:
-            throw new IllegalArgumentException(
-                "Unexpected value: " + securityProperties.getOauth2().getUserAuthIdentifier());
-        }
+        user = byJwtIdentifier(userJwtIdentifier);
         if (user != null) {
           log.info("Autenticato utente {} tramite JWT", user.getUsername());
         }
       } else if (authentication instanceof UsernamePasswordAuthenticationToken) {
-        user = userDao.byUsername(authentication.getPrincipal().toString());
+        user = userDao.fetchForAuthenticationByUsername(
+            authentication.getPrincipal().toString()).orElse(null);
         if (user != null) {
           log.info("Autenticato utente {} tramite Basic Auth", user.getUsername());
         } 
@@ -106,4 +130,20 @@ public class SecureUtils {
 
   }
 
-}
\ No newline at end of file
+  private User byJwtIdentifier(String userJwtIdentifier) {
+    switch (securityProperties.getOauth2().getUserAuthIdentifier()) {
+      case eppn:
+        return userDao.fetchForAuthenticationByEppn(userJwtIdentifier).orElse(null);
+      case username:
+        return userDao.fetchForAuthenticationByUsername(userJwtIdentifier).orElse(null);
+      case subjectId:
+        //FIXME: da aggiungere quando aggiungiamo al modello subjectId per gli User.
+        throw new IllegalArgumentException(
+            "Unexpected value: " + securityProperties.getOauth2().getUserAuthIdentifier());
+      default:
+        throw new IllegalArgumentException(
+            "Unexpected value: " + securityProperties.getOauth2().getUserAuthIdentifier());
+    }
+  }
+
+}
@@ -23,6 +23,7 @@ import it.cnr.iit.epas.models.UsersRolesOffices;
 import it.cnr.iit.epas.models.enumerate.AccountRole;
 import it.cnr.iit.epas.utils.RequestScopeData;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
@@ -54,14 +55,17 @@ public class SecurityRules {
   private final KieBase kieBase;
   private final SecureUtils secureUtils;
   private final RequestScopeData requestScope;
+  private final PermissionDecisionCache decisionCache;
 
   private static final Pattern PATH_PARAMS_PATTERN = Pattern.compile(":.*?}");
 
   @Inject
-  SecurityRules(KieBase kieBase, SecureUtils secureUtils, RequestScopeData requestScope) {
+  SecurityRules(KieBase kieBase, SecureUtils secureUtils, RequestScopeData requestScope,
+      PermissionDecisionCache decisionCache) {
     this.kieBase = kieBase;
     this.secureUtils = secureUtils;
     this.requestScope = requestScope;
+    this.decisionCache = decisionCache;
   }
 
   public void checkifPermitted() {
@@ -83,9 +87,18 @@ public class SecurityRules {
     // Ripuliamo la stringa dalle eventuali espressioni regolari derivanti dai path
     // Es. /v1/ruoloutente/{id:^\d+$} -> /v1/ruoloutente/{id}
     final String normalized = PATH_PARAMS_PATTERN.matcher(permission).replaceAll("}");
-    final PermissionCheck check = new PermissionCheck(target, normalized, method);
-    fireRules(check);
-    return check.isPermitted();
+
+    final Optional<User> user = secureUtils.getCurrentUser();
+    if (!user.isPresent()) {
+      return false;
+    }
+    // Gli esiti dipendono solo da utente, path, metodo e target: si evita di rivalutare
+    // le drools per i controlli ripetuti.
+    return decisionCache.decide(user.get(), normalized, method, target, () -> {
+      final PermissionCheck check = new PermissionCheck(target, normalized, method);
+      fireRules(user.get(), check);
+      return check.isPermitted();
+    });
   }
 
   /**
@@ -105,13 +118,8 @@ public class SecurityRules {
     return check(null);
   }
 
-  private void fireRules(PermissionCheck check) {
-
-    if (!secureUtils.getCurrentUser().isPresent()) {
-      return;
-    }
+  private void fireRules(User user, PermissionCheck check) {
 
-    final User user = secureUtils.getCurrentUser().get();
     final List<UsersRolesOffices> userRolesOffices = user.getUsersRolesOffices();
     log.debug("current UserRolesOffices = {}", userRolesOffices);
     final Set<AccountRole> userRoles = user.getRoles();
@@ -18,18 +18,24 @@
 package it.cnr.iit.epas.utils;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.MonthDay;
+import java.time.Year;
 import java.time.YearMonth;
 import java.time.format.TextStyle;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 /**
  * Classe di utilità per la gestione delle date.
@@ -42,6 +48,19 @@ public class DateUtility {
   static final int MINUTE_IN_HOUR = 60;
   static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 1);
 
+  /**
+   * Festività nazionali a data fissa.
+   */
+  private static final List<MonthDay> NATIONAL_HOLIDAYS_MONTH_DAYS = ImmutableList.of(
+      MonthDay.of(1, 1), MonthDay.of(1, 6), MonthDay.of(4, 25), MonthDay.of(5, 1),
+      MonthDay.of(6, 2), MonthDay.of(8, 15), MonthDay.of(11, 1), MonthDay.of(12, 8),
+      MonthDay.of(12, 25), MonthDay.of(12, 26));
+
+  /**
+   * Calendari delle festività nazionali per anno, calcolati alla prima richiesta.
+   */
+  private static final Map<Integer, BitSet> NATIONAL_HOLIDAYS = new ConcurrentHashMap<>();
+
   /**
    * Ritorna l'ultimo giorno del mese relativo alla data passata.
    */
@@ -99,61 +118,98 @@ public class DateUtility {
   public static boolean isGeneralHoliday(
       final Optional<MonthDay> officePatron, final LocalDate date) {
 
-    LocalDate easter = findEaster(date.getYear());
-    LocalDate easterMonday = easter.plusDays(1);
-    if (date.getDayOfMonth() == easter.getDayOfMonth()
-            && date.getMonthValue() == easter.getMonthValue()) {
-      return true;
-    }
-    if (date.getDayOfMonth() == easterMonday.getDayOfMonth()
-            && date.getMonthValue() == easterMonday.getMonthValue()) {
-      return true;
-    }
-    if ((date.getMonthValue() == 12) && (date.getDayOfMonth() == 25)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 12) && (date.getDayOfMonth() == 26)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 12) && (date.getDayOfMonth() == 8)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 6) && (date.getDayOfMonth() == 2)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 4) && (date.getDayOfMonth() == 25)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 5) && (date.getDayOfMonth() == 1)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 8) && (date.getDayOfMonth() == 15)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 1) && (date.getDayOfMonth() == 1)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 1) && (date.getDayOfMonth() == 6)) {
-      return true;
-    }
-    if ((date.getMonthValue() == 11) && (date.getDayOfMonth() == 1)) {
+    if (nationalHolidays(date.getYear()).get(date.getDayOfYear())) {
       return true;
     }
+    return officePatron.isPresent() && officePatron.get().equals(MonthDay.from(date));
+  }
 
-    if (officePatron.isPresent()) {
+  /**
+   * Le festività nazionali dell'anno, indicizzate per giorno dell'anno (il bit i-esimo
+   * corrisponde a {@code LocalDate.ofYearDay(year, i)}).
+   *
+   * @param year l'anno di riferimento
+   * @return una copia modificabile del calendario delle festività nazionali.
+   */
+  public static BitSet nationalHolidaysOfYear(int year) {
+    return (BitSet) nationalHolidays(year).clone();
+  }
 
-      return (date.getMonthValue() == officePatron.get().getMonthValue()
-              && date.getDayOfMonth() == officePatron.get().getDayOfMonth());
-    }
+  /**
+   * Il calendario (condiviso e da non modificare) delle festività nazionali dell'anno.
+   */
+  private static BitSet nationalHolidays(int year) {
+    return NATIONAL_HOLIDAYS.computeIfAbsent(year, DateUtility::buildNationalHolidays);
+  }
 
+  private static BitSet buildNationalHolidays(int year) {
+    BitSet holidays = new BitSet(Year.of(year).length() + 1);
+    LocalDate easter = findEaster(year);
+    holidays.set(easter.getDayOfYear());
+    holidays.set(easter.plusDays(1).getDayOfYear());
+    for (MonthDay monthDay : NATIONAL_HOLIDAYS_MONTH_DAYS) {
+      holidays.set(monthDay.atYear(year).getDayOfYear());
+    }
     /*
      * ricorrenza centocinquantenario dell'unità d'Italia.
      */
-    if (date.isEqual(LocalDate.of(2011, 3, 17))) {
-      return true;
+    if (year == 2011) {
+      holidays.set(LocalDate.of(2011, 3, 17).getDayOfYear());
     }
+    return holidays;
+  }
 
-    return false;
+  /**
+   * Il numero di giorni dell'intervallo [begin,end] che cadono in una festività del calendario
+   * passato. Il calendario fornisce le festività (indicizzate per giorno dell'anno) di ogni anno
+   * dell'intervallo.
+   *
+   * @param begin data iniziale
+   * @param end data finale
+   * @param holidaysOfYear calendario delle festività di un anno
+   * @return il numero di festività nell'intervallo estremi compresi.
+   */
+  public static int countHolidays(final LocalDate begin, final LocalDate end,
+      final IntFunction<BitSet> holidaysOfYear) {
+    int count = 0;
+    for (int year = begin.getYear(); year <= end.getYear(); year++) {
+      int from = year == begin.getYear() ? begin.getDayOfYear() : 1;
+      int to = year == end.getYear() ? end.getDayOfYear() : Year.of(year).length();
+      count += holidaysOfYear.apply(year).get(from, to + 1).cardinality();
+    }
+    return count;
+  }
+
+  /**
+   * Il numero dei giorni dell'intervallo begin-end escluse le festività nazionali.
+   *
+   * @param begin data iniziale
+   * @param end data finale
+   * @return il numero dei giorni fisici contenuti nell'intervallo [begin,end] estremi compresi,
+   *     escluse le general holiday
+   */
+  public static int countGeneralWorkingDays(final LocalDate begin, final LocalDate end) {
+    if (end.isBefore(begin)) {
+      return 0;
+    }
+    return (int) ChronoUnit.DAYS.between(begin, end) + 1
+        - countHolidays(begin, end, DateUtility::nationalHolidays);
+  }
+
+  /**
+   * La prima festività nazionale a partire dalla data passata (compresa).
+   *
+   * @param date data di partenza
+   * @return la data della prima festività nazionale non precedente a date.
+   */
+  public static LocalDate nextGeneralHoliday(final LocalDate date) {
+    int year = date.getYear();
+    int dayOfYear = nationalHolidays(year).nextSetBit(date.getDayOfYear());
+    while (dayOfYear < 0) {
+      year++;
+      dayOfYear = nationalHolidays(year).nextSetBit(1);
+    }
+    return LocalDate.ofYearDay(year, dayOfYear);
   }
 
   /**
@@ -169,7 +225,7 @@ public class DateUtility {
     LocalDate day = begin;
     List<LocalDate> generalWorkingDays = new ArrayList<LocalDate>();
     while (!day.isAfter(end)) {
-      if (!DateUtility.isGeneralHoliday(Optional.<MonthDay>empty(), day)) {
+      if (!nationalHolidays(day.getYear()).get(day.getDayOfYear())) {
         generalWorkingDays.add(day);
       }
       day = day.plusDays(1);
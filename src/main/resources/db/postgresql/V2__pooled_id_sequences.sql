@@ -0,0 +1,32 @@
+-- Sequenze per gli id delle tabelle (tabella_id_seq) con incremento 50, utilizzate
+-- da Hibernate con l'ottimizzatore pooled per poter inviare le insert a gruppi.
+-- Le sequenze già presenti (colonne serial) sono riutilizzate: i valori restituiti
+-- sono distanziati di 50 e quindi restano compatibili con le insert che utilizzano
+-- direttamente nextval come default della colonna.
+
+DO $$
+DECLARE
+  t RECORD;
+  seq TEXT;
+  max_id BIGINT;
+BEGIN
+  FOR t IN
+    SELECT c.table_name
+      FROM information_schema.columns c
+      JOIN information_schema.tables tb
+        ON tb.table_schema = c.table_schema AND tb.table_name = c.table_name
+     WHERE c.table_schema = current_schema()
+       AND c.column_name = 'id'
+       AND c.data_type IN ('bigint', 'integer')
+       AND tb.table_type = 'BASE TABLE'
+       AND c.table_name NOT LIKE '%\_history'
+       AND c.table_name <> 'flyway_schema_history'
+  LOOP
+    seq := t.table_name || '_id_seq';
+    EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I', seq);
+    EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 50', seq);
+    EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', t.table_name) INTO max_id;
+    -- Il primo blocco assegnato da Hibernate è (valore - 49 .. valore)
+    PERFORM setval(seq, max_id + 50, false);
+  END LOOP;
+END $$;
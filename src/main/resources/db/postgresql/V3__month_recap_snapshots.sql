@@ -0,0 +1,21 @@
+-- Riepiloghi mensili delle timbrature già calcolati per la visualizzazione.
+-- recap_version è incrementata dai ricalcoli della persona che interessano il mese,
+-- payload contiene il riepilogo in formato JSON calcolato per la versione attuale,
+-- person_version la versione della persona con cui è stato calcolato: le modifiche
+-- all'anagrafica (nome, matricola, ...) rendono non più valido il riepilogo.
+
+CREATE SEQUENCE IF NOT EXISTS month_recap_snapshots_id_seq INCREMENT BY 50;
+
+CREATE TABLE month_recap_snapshots (
+  id BIGINT PRIMARY KEY DEFAULT nextval('month_recap_snapshots_id_seq'),
+  person_id BIGINT NOT NULL REFERENCES persons (id) ON DELETE CASCADE,
+  year INTEGER NOT NULL,
+  month INTEGER NOT NULL,
+  recap_version BIGINT NOT NULL DEFAULT 0,
+  payload TEXT,
+  person_version INTEGER,
+  version INTEGER,
+  CONSTRAINT month_recap_snapshots_person_year_month_key UNIQUE (person_id, year, month)
+);
+
+ALTER SEQUENCE month_recap_snapshots_id_seq OWNED BY month_recap_snapshots.id;
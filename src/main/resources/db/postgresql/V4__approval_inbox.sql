@@ -0,0 +1,58 @@
+-- Approvazioni in attesa delle richieste di assenza e di informazione: una riga per ogni
+-- richiesta con il flusso avviato e non terminato e per ogni ruolo di approvatore che deve
+-- ancora esprimersi. Ogni riga memorizza il dipendente che ha effettuato la richiesta: sede e
+-- responsabili sono risolti al momento della lettura, in modo da seguire le modifiche di sedi,
+-- gruppi e affiliazioni.
+-- Le righe sono ricalcolate dall'applicazione ad ogni evento del flusso.
+
+CREATE SEQUENCE IF NOT EXISTS approval_inbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE approval_inbox (
+  id BIGINT PRIMARY KEY DEFAULT nextval('approval_inbox_id_seq'),
+  request_kind TEXT NOT NULL,
+  request_id BIGINT NOT NULL,
+  request_type TEXT NOT NULL,
+  approver_role TEXT NOT NULL,
+  person_id BIGINT NOT NULL REFERENCES persons (id) ON DELETE CASCADE,
+  version INTEGER
+);
+
+ALTER SEQUENCE approval_inbox_id_seq OWNED BY approval_inbox.id;
+
+CREATE INDEX approval_inbox_role_type_person_idx
+  ON approval_inbox (approver_role, request_type, person_id);
+CREATE INDEX approval_inbox_request_idx ON approval_inbox (request_kind, request_id);
+
+-- Richieste di assenza in attesa del responsabile di gruppo
+INSERT INTO approval_inbox (request_kind, request_id, request_type, approver_role,
+    person_id, version)
+  SELECT 'ABSENCE_REQUEST', ar.id, ar.type, 'groupManager', ar.person_id, 0
+    FROM absence_requests ar
+   WHERE ar.flow_started AND NOT ar.flow_ended
+     AND ar.manager_approval_required AND ar.manager_approved IS NULL;
+
+-- Richieste di assenza in attesa del responsabile di sede
+INSERT INTO approval_inbox (request_kind, request_id, request_type, approver_role,
+    person_id, version)
+  SELECT 'ABSENCE_REQUEST', ar.id, ar.type, 'seatSupervisor', ar.person_id, 0
+    FROM absence_requests ar
+   WHERE ar.flow_started AND NOT ar.flow_ended AND ar.office_head_approved IS NULL
+     AND (ar.office_head_approval_for_manager_required
+       OR (ar.office_head_approval_required
+         AND (NOT ar.manager_approval_required OR ar.manager_approved IS NOT NULL)));
+
+-- Richieste di informazione, una riga per ogni approvazione richiesta e non rilasciata
+INSERT INTO approval_inbox (request_kind, request_id, request_type, approver_role,
+    person_id, version)
+  SELECT 'INFORMATION_REQUEST', ir.id, ir.information_type, r.approver_role, ir.person_id, 0
+    FROM information_requests ir
+    JOIN (VALUES ('personnelAdmin'), ('groupManager'), ('seatSupervisor')) AS r (approver_role)
+      ON (r.approver_role = 'personnelAdmin'
+          AND ir.administrative_approval_required AND ir.administrative_approved IS NULL)
+      OR (r.approver_role = 'groupManager'
+          AND ir.manager_approval_required AND ir.manager_approved IS NULL)
+      OR (r.approver_role = 'seatSupervisor'
+          AND ir.office_head_approval_required AND ir.office_head_approved IS NULL)
+   WHERE ir.flow_started AND NOT ir.flow_ended;
+
+SELECT setval('approval_inbox_id_seq', COALESCE(MAX(id), 0) + 50, false) FROM approval_inbox;
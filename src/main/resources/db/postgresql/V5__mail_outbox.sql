@@ -0,0 +1,27 @@
+-- Coda delle email in uscita: le email sono salvate nella transazione dell'operazione
+-- che le genera ed inviate in background. message contiene il messaggio in formato RFC 822,
+-- deduplication_key l'impronta di destinatari, oggetto e testo.
+-- Le email inviate o scartate sono eliminate trascorso il periodo di conservazione.
+
+CREATE SEQUENCE IF NOT EXISTS mail_outbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE mail_outbox (
+  id BIGINT PRIMARY KEY DEFAULT nextval('mail_outbox_id_seq'),
+  recipients VARCHAR(4000) NOT NULL,
+  subject TEXT,
+  message TEXT NOT NULL,
+  deduplication_key VARCHAR(64) NOT NULL,
+  status TEXT NOT NULL,
+  attempts INTEGER NOT NULL DEFAULT 0,
+  created_at TIMESTAMP NOT NULL,
+  next_attempt_at TIMESTAMP,
+  sent_at TIMESTAMP,
+  last_error VARCHAR(4000),
+  version INTEGER
+);
+
+ALTER SEQUENCE mail_outbox_id_seq OWNED BY mail_outbox.id;
+
+CREATE INDEX mail_outbox_status_next_attempt_idx ON mail_outbox (status, next_attempt_at);
+CREATE INDEX mail_outbox_deduplication_key_idx ON mail_outbox (deduplication_key, created_at);
+CREATE INDEX mail_outbox_status_created_at_idx ON mail_outbox (status, created_at);
@@ -17,9 +17,14 @@
 
 package it.cnr.iit.epas.tests;
 
+import it.cnr.iit.epas.models.base.TableSequenceGenerator;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import javax.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.dbunit.DatabaseUnitException;
@@ -114,7 +119,44 @@ class Startup implements ApplicationRunner {
             DatabaseOperation.INSERT,
             new ClassPathResource("data/lucchesi-login-logout.xml").getURL()));
 
+    //sequenze degli id riallineate agli id inseriti dai dataset
+    session.doWork(new SequencesRestart());
+
     log.info("Terminato inserimento dati nel db di test");
   }
 
+  /**
+   * Riporta le sequenze degli id (tabella_id_seq) oltre gli id già presenti, come
+   * effettuato dalla migrazione sul db PostgreSQL.
+   */
+  public static class SequencesRestart implements Work {
+
+    @Override
+    public void execute(Connection connection) throws SQLException {
+      final List<String> sequences = new ArrayList<>();
+      try (Statement statement = connection.createStatement();
+          ResultSet rs = statement.executeQuery("SELECT SEQUENCE_NAME FROM "
+              + "INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME LIKE '%_ID_SEQ'")) {
+        while (rs.next()) {
+          sequences.add(rs.getString(1));
+        }
+      }
+      for (String sequence : sequences) {
+        final String table = sequence.substring(0, sequence.length() - "_ID_SEQ".length());
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(
+                "SELECT COALESCE(MAX(id), 0) FROM \"" + table + "\"")) {
+          rs.next();
+          final long maxId = rs.getLong(1);
+          try (Statement alter = connection.createStatement()) {
+            alter.execute("ALTER SEQUENCE \"" + sequence + "\" RESTART WITH "
+                + (maxId + TableSequenceGenerator.INCREMENT_SIZE));
+          }
+        } catch (SQLException e) {
+          log.debug("Sequenza {} non associata ad una tabella: {}", sequence, e.getMessage());
+        }
+      }
+    }
+  }
+
 }
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import com.google.common.collect.Lists;
 import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
 import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.manager.services.absences.model.AbsenceContext;
 import it.cnr.iit.epas.manager.services.absences.model.PeriodChain;
 import it.cnr.iit.epas.manager.services.absences.model.ServiceFactories;
 import it.cnr.iit.epas.models.Person;
@@ -81,12 +82,10 @@ class Absences661Test {
     Person person = h2Examples.normalEmployee(BEGIN_2016, Optional.empty());
 
     //creare la periodChain
-    PeriodChain periodChain = serviceFactories.buildPeriodChainPhase1(person, group661, 
-        LocalDate.of(2016, 11, 15), 
-        Lists.newArrayList(), 
-        person.getContracts(),
-        Lists.newArrayList(), 
-        Lists.newArrayList());
+    PeriodChain periodChain = serviceFactories.buildPeriodChainPhase1(
+        new AbsenceContext(person, Lists.newArrayList(), person.getContracts(),
+            Lists.newArrayList(), absenceComponentDao),
+        group661, LocalDate.of(2016, 11, 15));
 
     assertEquals(periodChain.from, BEGIN_2016);
     assertEquals(periodChain.to, END_2016);
@@ -132,12 +131,10 @@ class Absences661Test {
     Person person = h2Examples.normalEmployee(MID_2016, Optional.empty());
     
     //creare la periodChain
-    PeriodChain periodChain = serviceFactories.buildPeriodChainPhase1(person, group661, 
-        LocalDate.of(2016, 11, 15), 
-        Lists.newArrayList(), 
-        person.getContracts(),
-        Lists.newArrayList(), 
-        Lists.newArrayList());
+    PeriodChain periodChain = serviceFactories.buildPeriodChainPhase1(
+        new AbsenceContext(person, Lists.newArrayList(), person.getContracts(),
+            Lists.newArrayList(), absenceComponentDao),
+        group661, LocalDate.of(2016, 11, 15));
     
     //dal 2016-7-1 al 2016-12-31 sono 184 giorni su 366. 
     // Col corretto comportamento il codice 661 non si riproporziona
@@ -147,12 +144,10 @@ class Absences661Test {
     //la persona ha il part time 50%
     person = h2Examples.partTime50Employee(BEGIN_2016);
 
-    periodChain = serviceFactories.buildPeriodChainPhase1(person, group661, 
-        LocalDate.of(2016, 11, 15), 
-        Lists.newArrayList(), 
-        person.getContracts(),
-        Lists.newArrayList(), 
-        Lists.newArrayList());
+    periodChain = serviceFactories.buildPeriodChainPhase1(
+        new AbsenceContext(person, Lists.newArrayList(), person.getContracts(),
+            Lists.newArrayList(), absenceComponentDao),
+        group661, LocalDate.of(2016, 11, 15));
 
     //1080 * 50 / 100 = 540
     // In questo caso il riproporzionamento è corretto: vale solo sull'orario di lavoro
@@ -163,12 +158,10 @@ class Absences661Test {
 
     person = h2Examples.partTime50Employee(MID_2016);
 
-    periodChain = serviceFactories.buildPeriodChainPhase1(person, group661, 
-        LocalDate.of(2016, 11, 15), 
-        Lists.newArrayList(), 
-        person.getContracts(),
-        Lists.newArrayList(), 
-        Lists.newArrayList());
+    periodChain = serviceFactories.buildPeriodChainPhase1(
+        new AbsenceContext(person, Lists.newArrayList(), person.getContracts(),
+            Lists.newArrayList(), absenceComponentDao),
+        group661, LocalDate.of(2016, 11, 15));
 
     //Anche in questo caso consideriamo solo il riproporzionamento dovuto all'orario di lavoro
     assertEquals(periodChain.periods.get(0).getPeriodTakableAmount(), 540);
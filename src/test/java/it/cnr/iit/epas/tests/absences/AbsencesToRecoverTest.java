@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.tests.absences;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import it.cnr.iit.epas.manager.PersonManager;
+import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingRecap;
+import it.cnr.iit.epas.manager.recaps.personstamping.PersonStampingRecapFactory;
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.TimeVariation;
+import it.cnr.iit.epas.models.absences.Absence;
+import it.cnr.iit.epas.models.absences.JustifiedType.JustifiedTypeName;
+import it.cnr.iit.epas.models.absences.definitions.DefaultAbsenceType;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import it.cnr.iit.epas.tests.db.h2support.base.H2AbsenceSupport;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class AbsencesToRecoverTest {
+
+  public static final LocalDate BEGIN_2021 = LocalDate.of(2021, 1, 1);
+  public static final LocalDate END_2021 = LocalDate.of(2021, 12, 31);
+
+  @Inject
+  private H2Examples h2Examples;
+  @Inject
+  private H2AbsenceSupport h2AbsenceSupport;
+  @Inject
+  private AbsenceService absenceService;
+  @Inject
+  private PersonManager personManager;
+  @Inject
+  private PersonStampingRecapFactory stampingRecapFactory;
+  @Inject
+  private EntityManager entityManager;
+
+  /**
+   * Sono da recuperare solo le assenze il cui tempo non è stato completamente recuperato
+   * con le variazioni orarie.
+   */
+  @Test
+  public void onlyNotRecoveredAbsences() {
+    absenceService.enumInitializator();
+    Person person = h2Examples.normalEmployee(BEGIN_2021, Optional.empty());
+
+    Absence notRecovered = recoverAbsence(person, LocalDate.of(2021, 3, 1), 432);
+    recoverAbsence(person, LocalDate.of(2021, 3, 2), 432, 200, 232);
+    Absence partiallyRecovered = recoverAbsence(person, LocalDate.of(2021, 3, 3), 432, 100);
+
+    List<Absence> absences = personManager.absencesToRecover(person, BEGIN_2021, END_2021,
+        JustifiedTypeName.recover_time);
+    assertEquals(ImmutableList.of(notRecovered, partiallyRecovered), absences);
+  }
+
+  /**
+   * Il riepilogo mensile per la visualizzazione riporta le assenze del mese e quelle ancora
+   * da recuperare.
+   */
+  @Test
+  public void monthRecapForView() {
+    absenceService.enumInitializator();
+    Person person = h2Examples.normalEmployee(BEGIN_2021, Optional.empty());
+    Absence absence = recoverAbsence(person, LocalDate.of(2021, 3, 1), 432, 100);
+    entityManager.flush();
+    entityManager.clear();
+    person = entityManager.find(Person.class, person.getId());
+
+    PersonStampingRecap recap = stampingRecapFactory.createForView(person, 2021, 3, false);
+    assertEquals(31, recap.daysRecap.size());
+    assertEquals(1, recap.absenceList.size());
+    assertEquals(absence.getId(), recap.absenceList.get(0).getId());
+    assertTrue(recap.absenceToRecoverYet);
+    assertEquals(1, recap.absencesToRecoverList.size());
+  }
+
+  private Absence recoverAbsence(Person person, LocalDate date, int timeToRecover,
+      int... variations) {
+    Absence absence = h2AbsenceSupport.absence(DefaultAbsenceType.A_91CE, date,
+        Optional.of(JustifiedTypeName.recover_time), 0, person);
+    absence.timeToRecover = timeToRecover;
+    for (int variation : variations) {
+      TimeVariation timeVariation = new TimeVariation();
+      timeVariation.setAbsence(absence);
+      timeVariation.setDateVariation(date.plusMonths(1));
+      timeVariation.setTimeVariation(variation);
+      entityManager.persist(timeVariation);
+      absence.timeVariations.add(timeVariation);
+    }
+    return absence;
+  }
+}
@@ -23,7 +23,10 @@ import static org.junit.Assert.assertTrue;
 
 import it.cnr.iit.epas.dao.absences.AbsenceComponentDao;
 import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.manager.services.absences.VacationSummaryCache;
 import it.cnr.iit.epas.manager.services.absences.model.VacationSituation;
+import it.cnr.iit.epas.manager.services.absences.model.VacationSituation.VacationSummary.TypeSummary;
+import it.cnr.iit.epas.manager.services.absences.model.VacationSummaryCached;
 import it.cnr.iit.epas.models.Contract;
 import it.cnr.iit.epas.models.Person;
 import it.cnr.iit.epas.models.absences.GroupAbsenceType;
@@ -54,6 +57,8 @@ class VacationSituationTest {
   private AbsenceService absenceService;
   @Inject
   private AbsenceComponentDao absenceComponentDao;
+  @Inject
+  private VacationSummaryCache vacationSummaryCache;
 
   @Order(1)
   @Test
@@ -276,4 +281,24 @@ class VacationSituationTest {
     
   }
 
-}
\ No newline at end of file
+  /**
+   * Un riepilogo calcolato prima di un'invalidazione concorrente non viene inserito in cache.
+   */
+  @Test
+  void staleSummaryNotCached() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2020, 1, 1), Optional.empty());
+    Contract contract = person.getContracts().get(0);
+    VacationSummaryCached summary = new VacationSummaryCached(null, contract, 2022,
+        LocalDate.of(2022, 12, 31), TypeSummary.VACATION);
+
+    final long before = vacationSummaryCache.generation(contract);
+    vacationSummaryCache.invalidate(contract, 2022);
+    vacationSummaryCache.put(contract, 2022, TypeSummary.VACATION, summary, before);
+    assertFalse(vacationSummaryCache.get(contract, 2022, TypeSummary.VACATION).isPresent());
+
+    vacationSummaryCache.put(contract, 2022, TypeSummary.VACATION, summary,
+        vacationSummaryCache.generation(contract));
+    assertTrue(vacationSummaryCache.get(contract, 2022, TypeSummary.VACATION).isPresent());
+  }
+
+}
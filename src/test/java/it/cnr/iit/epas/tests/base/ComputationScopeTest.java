@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.cnr.iit.epas.tests.base;
+
+import static org.junit.Assert.assertEquals;
+
+import it.cnr.iit.epas.config.ComputationScope;
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.base.Revision;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import lombok.val;
+import org.hibernate.envers.AuditReaderFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Propagazione dell'utente e dell'indirizzo del chiamante ai calcoli eseguiti in altri
+ * thread, verificata tramite le revisioni scritte dall'ExtendedRevisionListener.
+ * Le transazioni sono confermate perché le revisioni vengono scritte al commit.
+ */
+@SpringBootTest
+class ComputationScopeTest {
+
+  private static final String REMOTE_ADDRESS = "10.1.2.3";
+
+  @Inject
+  TransactionTemplate transactionTemplate;
+  @Inject
+  EntityManager entityManager;
+  @Inject
+  AbsenceService absenceService;
+  @Inject
+  H2Examples h2Examples;
+  @Inject
+  ComputationScope computationScope;
+  @Inject
+  @Named("applicationTaskExecutor")
+  ThreadPoolTaskExecutor taskExecutor;
+
+  @AfterEach
+  public void clearContext() {
+    RequestContextHolder.resetRequestAttributes();
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void workerThreadsSeeCallerContext() throws Exception {
+    val ids = transactionTemplate.execute(status -> {
+      absenceService.enumInitializator();
+      val person = h2Examples.normalEmployee(LocalDate.now().minusMonths(1), Optional.empty());
+      val personDay = new PersonDay(person, LocalDate.now());
+      entityManager.persist(personDay);
+      return new Object[] {personDay.getId(), person.getUser().getUsername()};
+    });
+    final Long personDayId = (Long) ids[0];
+    final String username = (String) ids[1];
+
+    val request = new MockHttpServletRequest();
+    request.setRemoteAddr(REMOTE_ADDRESS);
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    SecurityContextHolder.getContext().setAuthentication(
+        new UsernamePasswordAuthenticationToken(username, null));
+
+    // Task @Async, decorati dal ContextCopyingDecorator
+    taskExecutor.submit(() -> updateTimeAtWork(personDayId, 100)).get();
+    assertCallerRevision(personDayId, username);
+
+    // Worker dei ricalcoli: contesto catturato dal chiamante ed eseguito in un altro thread
+    val context = computationScope.capture();
+    CompletableFuture.runAsync(() -> computationScope.run(context,
+        () -> updateTimeAtWork(personDayId, 200))).get();
+    assertCallerRevision(personDayId, username);
+  }
+
+  private void updateTimeAtWork(Long personDayId, int timeAtWork) {
+    transactionTemplate.execute(status -> {
+      entityManager.find(PersonDay.class, personDayId).setTimeAtWork(timeAtWork);
+      return null;
+    });
+  }
+
+  private void assertCallerRevision(Long personDayId, String username) {
+    transactionTemplate.execute(status -> {
+      val revisions = AuditReaderFactory.get(entityManager)
+          .getRevisions(PersonDay.class, personDayId);
+      final Revision revision = entityManager.find(Revision.class,
+          revisions.get(revisions.size() - 1).intValue());
+      assertEquals(username, revision.getOwner().getUsername());
+      assertEquals(REMOTE_ADDRESS, revision.getIpaddress());
+      return null;
+    });
+  }
+}
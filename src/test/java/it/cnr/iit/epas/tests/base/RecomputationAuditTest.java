@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.base;
+
+import static org.junit.Assert.assertEquals;
+
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.base.RecomputationAudit;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Storicizzazione delle modifiche effettuate durante i ricalcoli.
+ * Le transazioni sono confermate perché lo storico viene scritto al commit.
+ */
+@SpringBootTest
+class RecomputationAuditTest {
+
+  @Inject
+  TransactionTemplate transactionTemplate;
+  @Inject
+  EntityManager entityManager;
+  @Inject
+  AbsenceService absenceService;
+  @Inject
+  H2Examples h2Examples;
+
+  @Test
+  public void recomputedFieldsNotAudited() {
+    final Long personDayId = transactionTemplate.execute(status -> {
+      absenceService.enumInitializator();
+      val person = h2Examples.normalEmployee(LocalDate.now().minusMonths(1), Optional.empty());
+      val personDay = new PersonDay(person, LocalDate.now());
+      entityManager.persist(personDay);
+      return personDay.getId();
+    });
+    assertEquals(1, historyRows(personDayId));
+
+    // Fuori dai ricalcoli le modifiche sono sempre storicizzate
+    transactionTemplate.execute(status -> {
+      entityManager.find(PersonDay.class, personDayId).setTimeAtWork(100);
+      return null;
+    });
+    assertEquals(2, historyRows(personDayId));
+
+    // Durante i ricalcoli la modifica dei soli campi ricalcolati non è storicizzata...
+    transactionTemplate.execute(status -> RecomputationAudit.run(() -> {
+      entityManager.find(PersonDay.class, personDayId).setTimeAtWork(200);
+      entityManager.flush();
+      return null;
+    }));
+    assertEquals(2, historyRows(personDayId));
+
+    // ... a differenza delle modifiche che riguardano anche altri campi
+    transactionTemplate.execute(status -> RecomputationAudit.run(() -> {
+      val personDay = entityManager.find(PersonDay.class, personDayId);
+      personDay.setTimeAtWork(300);
+      personDay.setTicketForcedByAdmin(true);
+      entityManager.flush();
+      return null;
+    }));
+    assertEquals(3, historyRows(personDayId));
+  }
+
+  private long historyRows(Long personDayId) {
+    return transactionTemplate.execute(status -> ((Number) entityManager
+        .createNativeQuery("SELECT COUNT(*) FROM person_days_history WHERE id = :id")
+        .setParameter("id", personDayId).getSingleResult()).longValue());
+  }
+}
@@ -18,13 +18,18 @@
 package it.cnr.iit.epas.tests.contracts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import it.cnr.iit.epas.dao.ContractDao;
 import it.cnr.iit.epas.dao.wrapper.IWrapperFactory;
+import it.cnr.iit.epas.models.ContractWorkingTimeType;
 import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import it.cnr.iit.epas.tests.db.h2support.base.H2WorkingTimeTypeSupport;
+import it.cnr.iit.epas.tests.db.h2support.base.WorkingTimeTypeDefinitions.WorkingDefinition;
 import java.time.LocalDate;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -43,6 +48,8 @@ class ContractTest {
   ContractDao contractDao;
   @Inject
   IWrapperFactory wrapperFactory;
+  @Inject
+  H2WorkingTimeTypeSupport h2WorkingTimeTypeSupport;
 
   @Test
   void testCurrentContract() {
@@ -59,4 +66,36 @@ class ContractTest {
     assertTrue(wrapperPerson.getCurrentContract().isPresent());
     assertEquals(contract, wrapperPerson.getCurrentContract().get());
   }
-}
\ No newline at end of file
+
+  @Test
+  void testTimeline() {
+    val person = example.normalEmployee(LocalDate.of(2020, 1, 1), Optional.empty());
+    val contract = person.getContracts().get(0);
+    val timeline = person.timeline();
+    assertTrue(timeline.isActive(LocalDate.of(2020, 1, 1)));
+    assertFalse(timeline.isActive(LocalDate.of(2019, 12, 31)));
+    assertEquals(contract, timeline.getContract(LocalDate.of(2023, 6, 1)).get());
+    assertEquals(contractDao.getContract(LocalDate.of(2023, 6, 1), person),
+        timeline.getContract(LocalDate.of(2023, 6, 1)).get());
+    val wttd = timeline.getWorkingTimeTypeDay(LocalDate.of(2023, 6, 4)).get();
+    assertEquals(7, wttd.getDayOfWeek());
+    assertTrue(wttd.isHoliday());
+
+    // Chiusura del contratto non ancora inviata al db: la linea temporale viene ricostruita
+    contract.setEndDate(LocalDate.of(2022, 12, 31));
+    assertFalse(person.timeline().isActive(LocalDate.of(2023, 6, 1)));
+    assertTrue(person.timeline().isActive(LocalDate.of(2022, 12, 31)));
+
+    // Nuovo periodo di tipo orario non ancora inviato al db
+    val partTime = new ContractWorkingTimeType();
+    partTime.setContract(contract);
+    partTime.setBeginDate(LocalDate.of(2022, 1, 1));
+    partTime.setEndDate(LocalDate.of(2022, 12, 31));
+    partTime.setWorkingTimeType(h2WorkingTimeTypeSupport.getWorkingTimeType(
+        WorkingDefinition.PartTime50));
+    contract.getContractWorkingTimeType().add(partTime);
+    assertEquals(partTime, person.timeline()
+        .getContractWorkingTimeType(LocalDate.of(2022, 6, 1)).get());
+    assertSame(person.timeline(), person.timeline());
+  }
+}
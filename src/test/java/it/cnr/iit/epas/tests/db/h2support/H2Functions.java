@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package it.cnr.iit.epas.tests.db.h2support;
+
+/**
+ * Funzioni di PostgreSQL utilizzate dalle query native, registrate nel database H2 dei test
+ * (vedi spring.datasource.url nelle properties dei test).
+ */
+public final class H2Functions {
+
+  private H2Functions() {
+  }
+
+  /**
+   * Equivalente di hashtext: l'hash del testo.
+   */
+  public static int hashtext(String text) {
+    return text.hashCode();
+  }
+
+  /**
+   * Equivalente di pg_advisory_xact_lock: i test non hanno transazioni concorrenti sulla
+   * stessa chiave, quindi il blocco non ha effetto.
+   */
+  public static void pgAdvisoryXactLock(int key) {
+    // nessun blocco
+  }
+}
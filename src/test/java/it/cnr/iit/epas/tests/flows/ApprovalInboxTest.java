@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.flows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import it.cnr.iit.epas.dao.AbsenceRequestDao;
+import it.cnr.iit.epas.dao.ApprovalInboxDao;
+import it.cnr.iit.epas.manager.flows.ApprovalInboxManager;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.Role;
+import it.cnr.iit.epas.models.UsersRolesOffices;
+import it.cnr.iit.epas.models.enumerate.InformationType;
+import it.cnr.iit.epas.models.flows.AbsenceRequest;
+import it.cnr.iit.epas.models.flows.Affiliation;
+import it.cnr.iit.epas.models.flows.Group;
+import it.cnr.iit.epas.models.flows.enumerate.AbsenceRequestType;
+import it.cnr.iit.epas.models.informationrequests.ServiceRequest;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@Transactional
+@SpringBootTest
+class ApprovalInboxTest {
+
+  @Inject
+  private H2Examples h2Examples;
+  @Inject
+  private AbsenceRequestDao absenceRequestDao;
+  @Inject
+  private ApprovalInboxDao approvalInboxDao;
+  @Inject
+  private ApprovalInboxManager approvalInboxManager;
+  @Inject
+  private EntityManager entityManager;
+
+  /**
+   * La richiesta compare tra quelle da approvare del responsabile della sede del dipendente
+   * fino a quando non viene approvata.
+   */
+  @Test
+  public void seatSupervisorPendingUntilApproved() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2022, 1, 1), Optional.empty());
+
+    AbsenceRequest request = new AbsenceRequest();
+    request.setType(AbsenceRequestType.VACATION_REQUEST);
+    request.setPerson(person);
+    request.setStartAt(LocalDateTime.of(2022, 7, 1, 0, 0));
+    request.setEndTo(LocalDateTime.of(2022, 7, 2, 0, 0));
+    request.setManagerApprovalRequired(false);
+    request.setOfficeHeadApprovalForManagerRequired(false);
+    request.setFlowStarted(true);
+    absenceRequestDao.save(request);
+
+    Role role = new Role();
+    role.setName(Role.SEAT_SUPERVISOR);
+    UsersRolesOffices uro = new UsersRolesOffices();
+    uro.setRole(role);
+    uro.setOffice(person.getOffice());
+    List<UsersRolesOffices> uros = ImmutableList.of(uro);
+
+    approvalInboxManager.refresh(request);
+    entityManager.flush();
+    assertEquals(Long.valueOf(1),
+        approvalInboxDao.countPendingByType(uros, null).get(request.getType().name()));
+
+    request.setOfficeHeadApproved(LocalDateTime.now());
+    approvalInboxManager.refresh(request);
+    entityManager.flush();
+    assertTrue(approvalInboxDao.countPendingByType(uros, null).isEmpty());
+  }
+
+  /**
+   * Le richieste in attesa del responsabile di gruppo sono conteggiate per i responsabili
+   * attuali dei gruppi del dipendente, senza ricalcolare le approvazioni in attesa quando
+   * cambiano il responsabile o le affiliazioni.
+   */
+  @Test
+  public void groupManagerFollowsCurrentManagerAndAffiliations() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2022, 1, 1), Optional.empty());
+    Person manager = h2Examples.createPerson(person.getOffice(), "manager" + person.getId());
+    Person newManager = h2Examples.createPerson(person.getOffice(), "newManager" + person.getId());
+    Group group = group(person, manager);
+    Affiliation affiliation = affiliation(person, group);
+
+    AbsenceRequest request = new AbsenceRequest();
+    request.setType(AbsenceRequestType.VACATION_REQUEST);
+    request.setPerson(person);
+    request.setStartAt(LocalDateTime.of(2022, 7, 1, 0, 0));
+    request.setEndTo(LocalDateTime.of(2022, 7, 2, 0, 0));
+    request.setManagerApprovalRequired(true);
+    request.setOfficeHeadApprovalRequired(false);
+    request.setOfficeHeadApprovalForManagerRequired(false);
+    request.setFlowStarted(true);
+    absenceRequestDao.save(request);
+    approvalInboxManager.refresh(request);
+    entityManager.flush();
+
+    final String type = request.getType().name();
+    List<UsersRolesOffices> uros = uros(Role.GROUP_MANAGER, person);
+    assertEquals(Long.valueOf(1), approvalInboxDao.countPendingByType(uros, manager).get(type));
+    assertTrue(approvalInboxDao.countPendingByType(uros, newManager).isEmpty());
+
+    // Cambio del responsabile del gruppo
+    ReflectionTestUtils.setField(group, "manager", newManager);
+    entityManager.flush();
+    assertTrue(approvalInboxDao.countPendingByType(uros, manager).isEmpty());
+    assertEquals(Long.valueOf(1),
+        approvalInboxDao.countPendingByType(uros, newManager).get(type));
+
+    // Il dipendente non appartiene più al gruppo
+    affiliation.setEndDate(LocalDate.now().minusDays(1));
+    entityManager.flush();
+    assertTrue(approvalInboxDao.countPendingByType(uros, newManager).isEmpty());
+  }
+
+  /**
+   * Le richieste di informazione in attesa del responsabile di gruppo sono conteggiate per
+   * tutti i responsabili di gruppo della sede, come nella lista delle richieste da approvare.
+   */
+  @Test
+  public void informationRequestForAllGroupManagersOfTheOffice() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2022, 1, 1), Optional.empty());
+    Person colleague = h2Examples.createPerson(person.getOffice(), "colleague" + person.getId());
+    Person manager = h2Examples.createPerson(person.getOffice(), "manager" + person.getId());
+    Person otherManager =
+        h2Examples.createPerson(person.getOffice(), "otherManager" + person.getId());
+    affiliation(person, group(person, manager));
+    affiliation(colleague, group(colleague, otherManager));
+
+    ServiceRequest request = new ServiceRequest();
+    request.setInformationType(InformationType.SERVICE_INFORMATION);
+    request.setPerson(person);
+    request.setStartAt(LocalDateTime.now());
+    request.setDay(LocalDate.now());
+    request.setBeginAt(LocalTime.of(9, 0));
+    request.setFinishTo(LocalTime.of(11, 0));
+    request.setReason("servizio");
+    request.setManagerApprovalRequired(true);
+    request.setOfficeHeadApprovalRequired(false);
+    request.setFlowStarted(true);
+    entityManager.persist(request);
+    approvalInboxManager.refresh(request);
+    entityManager.flush();
+
+    List<UsersRolesOffices> uros = uros(Role.GROUP_MANAGER, person);
+    assertEquals(Long.valueOf(1), approvalInboxDao.countPendingByType(uros, manager)
+        .get(InformationType.SERVICE_INFORMATION.name()));
+    assertEquals(Long.valueOf(1), approvalInboxDao.countPendingByType(uros, otherManager)
+        .get(InformationType.SERVICE_INFORMATION.name()));
+  }
+
+  private Group group(Person person, Person manager) {
+    // Group non espone i setter
+    Group group = new Group();
+    ReflectionTestUtils.setField(group, "name", "group" + manager.getId());
+    ReflectionTestUtils.setField(group, "office", person.getOffice());
+    ReflectionTestUtils.setField(group, "manager", manager);
+    entityManager.persist(group);
+    return group;
+  }
+
+  private Affiliation affiliation(Person person, Group group) {
+    Affiliation affiliation = new Affiliation();
+    affiliation.setPerson(person);
+    affiliation.setGroup(group);
+    affiliation.setBeginDate(LocalDate.of(2022, 1, 1));
+    entityManager.persist(affiliation);
+    return affiliation;
+  }
+
+  private List<UsersRolesOffices> uros(String roleName, Person person) {
+    Role role = new Role();
+    role.setName(roleName);
+    UsersRolesOffices uro = new UsersRolesOffices();
+    uro.setRole(role);
+    uro.setOffice(person.getOffice());
+    return ImmutableList.of(uro);
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.cnr.iit.epas.config.MailOutboxProperties;
+import it.cnr.iit.epas.dao.MailOutboxDao;
+import it.cnr.iit.epas.manager.MailOutboxDispatcher;
+import it.cnr.iit.epas.manager.MailOutboxManager;
+import it.cnr.iit.epas.models.MailOutboxMessage;
+import it.cnr.iit.epas.models.enumerate.MailOutboxStatus;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class MailOutboxTest {
+
+  @Inject
+  private MailOutboxManager mailOutboxManager;
+  @Inject
+  private MailOutboxDispatcher dispatcher;
+  @Inject
+  private MailOutboxProperties properties;
+  @Inject
+  private MailOutboxDao mailOutboxDao;
+  @Inject
+  private MeterRegistry meterRegistry;
+
+  /**
+   * Le email in coda sono inviate con un'unica connessione SMTP, le email identiche sono
+   * accodate una sola volta e gli invii falliti sono riprogrammati.
+   */
+  @Test
+  public void dispatchBatchesDeduplicatesAndRetries() throws Exception {
+    final int port = properties.getPort();
+    try (FakeSmtpServer server = new FakeSmtpServer()) {
+      properties.setPort(server.getPort());
+
+      assertTrue(mailOutboxManager.enqueue(email("mario.rossi@cnr.it", "Ferie")).isPresent());
+      assertFalse(mailOutboxManager.enqueue(email("mario.rossi@cnr.it", "Ferie")).isPresent());
+      assertTrue(mailOutboxManager.enqueue(email("anna.bianchi@cnr.it", "Ferie")).isPresent());
+
+      assertEquals(2, dispatcher.dispatch());
+      assertEquals(1, server.connections.get());
+      assertEquals(2, server.messages.size());
+      assertTrue(server.messages.get(0).contains("Subject: Ferie"));
+
+      server.close();
+      Optional<MailOutboxMessage> retried =
+          mailOutboxManager.enqueue(email("luca.verdi@cnr.it", "Riposo"));
+      assertEquals(0, dispatcher.dispatch());
+      MailOutboxMessage message = retried.get();
+      assertEquals(MailOutboxStatus.PENDING, message.getStatus());
+      assertEquals(1, message.getAttempts());
+      assertNotNull(message.getLastError());
+      assertTrue(message.getNextAttemptAt().isAfter(LocalDateTime.now()));
+    } finally {
+      properties.setPort(port);
+    }
+  }
+
+  /**
+   * Le email inviate o scartate sono eliminate dopo il periodo di conservazione e la
+   * dimensione della coda è letta dal database anche con l'invio disabilitato.
+   */
+  @Test
+  public void purgeAndQueueDepth() {
+    final LocalDateTime old = LocalDateTime.now().minus(properties.getRetention()).minusDays(1);
+    mailOutboxDao.persist(message(MailOutboxStatus.SENT, old));
+    mailOutboxDao.persist(message(MailOutboxStatus.FAILED, old));
+    mailOutboxDao.persist(message(MailOutboxStatus.PENDING, old));
+    mailOutboxDao.persist(message(MailOutboxStatus.SENT, LocalDateTime.now()));
+
+    assertEquals(2, dispatcher.purge());
+    assertEquals(1, mailOutboxDao.countByStatus(MailOutboxStatus.SENT));
+    assertEquals(mailOutboxDao.countByStatus(MailOutboxStatus.PENDING),
+        meterRegistry.get("epas.mail.outbox.queue.depth").gauge().value(), 0);
+  }
+
+  private MailOutboxMessage message(MailOutboxStatus status, LocalDateTime createdAt) {
+    MailOutboxMessage message = new MailOutboxMessage();
+    message.setRecipients("mario.rossi@cnr.it");
+    message.setMessage("Subject: Ferie");
+    message.setDeduplicationKey(status + "-" + createdAt);
+    message.setStatus(status);
+    message.setCreatedAt(createdAt);
+    return message;
+  }
+
+  private SimpleEmail email(String to, String subject) throws EmailException {
+    SimpleEmail email = new SimpleEmail();
+    email.addTo(to);
+    email.setSubject(subject);
+    email.setMsg("Richiesta approvata è già");
+    return email;
+  }
+
+  /**
+   * Server SMTP minimale che accetta tutti i comandi e conserva i messaggi ricevuti.
+   */
+  static class FakeSmtpServer implements Closeable {
+
+    final List<String> messages = new CopyOnWriteArrayList<>();
+    final AtomicInteger connections = new AtomicInteger();
+    private final ServerSocket serverSocket;
+
+    FakeSmtpServer() throws IOException {
+      serverSocket = new ServerSocket(0);
+      Thread thread = new Thread(this::serve, "fake-smtp");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    private void serve() {
+      while (!serverSocket.isClosed()) {
+        try (Socket socket = serverSocket.accept()) {
+          connections.incrementAndGet();
+          converse(socket);
+        } catch (IOException ex) {
+          // server chiuso
+        }
+      }
+    }
+
+    private void converse(Socket socket) throws IOException {
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+      out.print("220 localhost ESMTP\r\n");
+      out.flush();
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.toUpperCase().startsWith("DATA")) {
+          out.print("354 End data with <CR><LF>.<CR><LF>\r\n");
+          out.flush();
+          StringBuilder data = new StringBuilder();
+          while (!(line = in.readLine()).equals(".")) {
+            data.append(line).append("\n");
+          }
+          messages.add(data.toString());
+          out.print("250 OK\r\n");
+        } else if (line.toUpperCase().startsWith("QUIT")) {
+          out.print("221 Bye\r\n");
+          out.flush();
+          return;
+        } else {
+          out.print("250 OK\r\n");
+        }
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.persondays;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import it.cnr.iit.epas.dao.ContractMonthRecapDao;
+import it.cnr.iit.epas.dao.PersonDao;
+import it.cnr.iit.epas.dao.PersonDayDao;
+import it.cnr.iit.epas.dao.StampingDao;
+import it.cnr.iit.epas.manager.ConsistencyManager;
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.ContractMonthRecap;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.Stamping.WayType;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import lombok.val;
+import org.joda.time.YearMonth;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Il ricalcolo incrementale a seguito della modifica di un giorno deve produrre gli stessi
+ * progressivi e riepiloghi mensili del ricalcolo completo della persona.
+ */
+@Transactional
+@SpringBootTest
+class IncrementalSituationTest {
+
+  @Inject
+  H2Examples example;
+  @Inject
+  AbsenceService absenceService;
+  @Inject
+  ConsistencyManager consistencyManager;
+  @Inject
+  PersonDayDao personDayDao;
+  @Inject
+  StampingDao stampingDao;
+  @Inject
+  ContractMonthRecapDao contractMonthRecapDao;
+  @Inject
+  PersonDao personDao;
+  @Inject
+  EntityManager entityManager;
+  @Inject
+  CacheManager cacheManager;
+
+  /**
+   * I codici di competenza in cache potrebbero provenire dalle transazioni annullate dei test
+   * precedenti.
+   */
+  @BeforeEach
+  void clearCompetenceCodes() {
+    cacheManager.getCache("comp").clear();
+  }
+
+  /**
+   * La modifica di un giorno del mese precedente si propaga fino alla fine del mese e si
+   * interrompe al primo giorno del mese corrente, il cui progressivo riparte da zero.
+   */
+  @Test
+  void previousMonthEditStopsAtMonthChange() {
+    val today = LocalDate.now();
+    val date = workingDay(today.minusMonths(1).withDayOfMonth(15));
+    val person = employee(today.minusMonths(2).withDayOfMonth(1));
+
+    assertSameAsFullComputation(person, date);
+  }
+
+  /**
+   * La modifica di un giorno del mese corrente si propaga fino ad oggi.
+   */
+  @Test
+  void currentMonthEditPropagatesToToday() {
+    val today = LocalDate.now();
+    LocalDate date = workingDay(today.withDayOfMonth(1));
+    if (date.isAfter(today)) {
+      date = today;
+    }
+    val person = employee(today.minusMonths(2).withDayOfMonth(1));
+
+    assertSameAsFullComputation(person, date);
+  }
+
+  private Person employee(LocalDate beginDate) {
+    absenceService.enumInitializator();
+    val person = example.normalEmployee(beginDate, Optional.empty());
+    person.setBeginDate(beginDate);
+    consistencyManager.updatePersonSituation(person.getId(), beginDate);
+    return reload(person);
+  }
+
+  /**
+   * Ogni ricalcolo avviene in un nuovo contesto di persistenza, come nelle richieste reali,
+   * senza i codici di competenza in cache ormai staccati dal contesto.
+   */
+  private Person reload(Person person) {
+    entityManager.flush();
+    entityManager.clear();
+    cacheManager.getCache("comp").clear();
+    return personDao.getPersonById(person.getId());
+  }
+
+  /**
+   * Inserisce una giornata di lavoro nel giorno date, effettua il ricalcolo incrementale e
+   * confronta giorni e riepiloghi ottenuti con quelli del successivo ricalcolo completo.
+   */
+  private void assertSameAsFullComputation(Person person, LocalDate date) {
+    val personDay = personDayDao.getPersonDay(person, date).get();
+    stampingDao.persist(stamping(personDay, 8, WayType.in));
+    stampingDao.persist(stamping(personDay, 17, WayType.out));
+
+    consistencyManager.updatePersonDaySituation(person.getId(), date);
+    person = reload(person);
+    assertEquals(9 * 60,
+        personDayDao.getPersonDay(person, date).get().getStampingsTime().intValue());
+    val incrementalDays = days(person, date);
+    val incrementalRecaps = recaps(person);
+
+    consistencyManager.updatePersonSituation(person.getId(), person.getBeginDate());
+    person = reload(person);
+    assertEquals(days(person, date), incrementalDays);
+    assertEquals(recaps(person), incrementalRecaps);
+  }
+
+  private Stamping stamping(PersonDay personDay, int hour, WayType way) {
+    val stamping = new Stamping(personDay, personDay.getDate().atTime(hour, 0));
+    stamping.setWay(way);
+    return stamping;
+  }
+
+  /**
+   * Data, differenza e progressivo dei giorni dalla data from ad oggi.
+   */
+  private List<List<Object>> days(Person person, LocalDate from) {
+    List<List<Object>> days = Lists.newArrayList();
+    for (PersonDay personDay : personDayDao.getPersonDayInPeriod(person, from,
+        Optional.of(LocalDate.now()))) {
+      days.add(ImmutableList.<Object>of(personDay.getDate(), personDay.getDifference(),
+          personDay.getProgressive()));
+    }
+    return days;
+  }
+
+  /**
+   * Progressivo finale, residui ed ore lavorate dei riepiloghi dei mesi conclusi del contratto.
+   */
+  private List<List<Object>> recaps(Person person) {
+    val contract = person.getContracts().get(0);
+    List<List<Object>> recaps = Lists.newArrayList();
+    for (YearMonth month = new YearMonth(contract.getBeginDate().getYear(),
+        contract.getBeginDate().getMonthValue());
+        month.isBefore(YearMonth.now()); month = month.plusMonths(1)) {
+      ContractMonthRecap recap = contractMonthRecapDao.getContractMonthRecap(contract, month);
+      recaps.add(ImmutableList.<Object>of(month, recap.getProgressivoFinaleMese(),
+          recap.getRemainingMinutesLastYear(), recap.getRemainingMinutesCurrentYear(),
+          recap.getOreLavorate()));
+    }
+    return recaps;
+  }
+
+  private static LocalDate workingDay(LocalDate date) {
+    while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+      date = date.plusDays(1);
+    }
+    return date;
+  }
+}
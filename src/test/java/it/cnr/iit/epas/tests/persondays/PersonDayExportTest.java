@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.persondays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.cnr.iit.epas.controller.v4.utils.ApiRoutes;
+import it.cnr.iit.epas.dao.PersonDayDao;
+import it.cnr.iit.epas.dao.RoleDao;
+import it.cnr.iit.epas.dao.StampingDao;
+import it.cnr.iit.epas.dao.UsersRolesOfficesDao;
+import it.cnr.iit.epas.manager.PersonDayExportManager;
+import it.cnr.iit.epas.manager.PersonDayExportManager.ExportFormat;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.Role;
+import it.cnr.iit.epas.models.Stamping;
+import it.cnr.iit.epas.models.Stamping.WayType;
+import it.cnr.iit.epas.models.User;
+import it.cnr.iit.epas.models.UsersRolesOffices;
+import it.cnr.iit.epas.security.SecurityRules;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import it.cnr.iit.epas.utils.RequestScopeData;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Esportazione dei giorni di lavoro di una sede.
+ */
+@Transactional
+@SpringBootTest
+class PersonDayExportTest {
+
+  private static final LocalDate FROM = LocalDate.of(2021, 1, 1);
+
+  @Inject
+  H2Examples example;
+  @Inject
+  PersonDayDao personDayDao;
+  @Inject
+  StampingDao stampingDao;
+  @Inject
+  RoleDao roleDao;
+  @Inject
+  UsersRolesOfficesDao usersRolesOfficesDao;
+  @Inject
+  PersonDayExportManager exportManager;
+  @Inject
+  SecurityRules rules;
+  @Inject
+  RequestScopeData requestScope;
+  @Inject
+  ObjectMapper objectMapper;
+  @Inject
+  EntityManager entityManager;
+
+  @AfterEach
+  public void clearContext() {
+    RequestContextHolder.resetRequestAttributes();
+    SecurityContextHolder.clearContext();
+  }
+
+  /**
+   * I giorni oltre il primo blocco di 500 sono esportati con le proprie timbrature ed i campi
+   * che contengono separatore o virgolette sono racchiusi tra virgolette.
+   */
+  @Test
+  void csvAcrossChunks() {
+    val person = employee(501);
+    person.setSurname("D'Amico; \"Jr\"");
+    val to = FROM.plusDays(500);
+    stampings(person, FROM.plusDays(499));
+    stampings(person, to);
+    entityManager.flush();
+
+    val out = new ByteArrayOutputStream();
+    assertEquals(501, exportManager.export(person.getOffice().getId(), FROM, to,
+        ExportFormat.CSV, out));
+
+    val lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(502, lines.length);
+    assertTrue(lines[0].startsWith("personId;number;fiscalCode;surname;name;date;"));
+    assertTrue(lines[1].contains(";\"D'Amico; \"\"Jr\"\"\";"));
+    // ultimo giorno del primo blocco e primo giorno del secondo
+    assertTrue(lines[500].contains(";" + FROM.plusDays(499) + ";"));
+    assertTrue(lines[500].endsWith(";08:00 in|17:00 out;"));
+    assertTrue(lines[501].contains(";" + to + ";"));
+    assertTrue(lines[501].endsWith(";08:00 in|17:00 out;"));
+  }
+
+  /**
+   * Un oggetto JSON per riga.
+   */
+  @Test
+  void ndjsonOneObjectPerLine() throws Exception {
+    val person = employee(3);
+    stampings(person, FROM.plusDays(1));
+    entityManager.flush();
+
+    val out = new ByteArrayOutputStream();
+    assertEquals(3, exportManager.export(person.getOffice().getId(), FROM, FROM.plusDays(2),
+        ExportFormat.NDJSON, out));
+
+    val lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(3, lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      val json = objectMapper.readTree(lines[i]);
+      assertEquals(FROM.plusDays(i).toString(), json.get("date").asText());
+      assertEquals(i == 1 ? 2 : 0, json.get("stampings").size());
+    }
+  }
+
+  /**
+   * Solo l'amministratore del personale della sede può esportarne i giorni di lavoro.
+   */
+  @Test
+  void exportOnlyForPersonnelAdminOfTheOffice() {
+    val person = example.normalEmployee(FROM, Optional.empty());
+    val office = person.getOffice();
+    val admin = example.createPerson(office, "admin" + person.getId());
+    grant(person.getUser(), Role.EMPLOYEE, office);
+    grant(admin.getUser(), Role.PERSONNEL_ADMIN, office);
+    val otherOffice = example.buildOffice(FROM, "other" + person.getId(),
+        "other" + person.getId(), "other" + person.getId());
+    entityManager.flush();
+
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest()));
+    requestScope.getData().put(RequestScopeData.REQUEST_PATH,
+        ApiRoutes.BASE_PATH + "/persondays/export");
+    requestScope.getData().put(RequestScopeData.REQUEST_METHOD, "GET");
+
+    authenticate(person.getUser());
+    assertFalse(rules.check());
+    assertFalse(rules.check(office));
+
+    authenticate(admin.getUser());
+    assertTrue(rules.check());
+    assertTrue(rules.check(office));
+    assertFalse(rules.check(otherOffice));
+  }
+
+  private Person employee(int days) {
+    val person = example.normalEmployee(FROM, Optional.empty());
+    for (int i = 0; i < days; i++) {
+      personDayDao.persist(new PersonDay(person, FROM.plusDays(i)));
+    }
+    return person;
+  }
+
+  private void stampings(Person person, LocalDate date) {
+    val personDay = personDayDao.getPersonDay(person, date).get();
+    stampingDao.persist(stamping(personDay, 8, WayType.in));
+    stampingDao.persist(stamping(personDay, 17, WayType.out));
+  }
+
+  private Stamping stamping(PersonDay personDay, int hour, WayType way) {
+    val stamping = new Stamping(personDay, personDay.getDate().atTime(hour, 0));
+    stamping.setWay(way);
+    return stamping;
+  }
+
+  private void grant(User user, String roleName, Office office) {
+    val uro = new UsersRolesOffices();
+    uro.setUser(user);
+    uro.setRole(roleDao.getRoleByName(roleName));
+    uro.setOffice(office);
+    usersRolesOfficesDao.persist(uro);
+    user.getUsersRolesOffices().add(uro);
+    office.getUsersRolesOffices().add(uro);
+  }
+
+  private void authenticate(User user) {
+    SecurityContextHolder.getContext().setAuthentication(
+        new UsernamePasswordAuthenticationToken(user.getUsername(), null));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.tests.persondays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import it.cnr.iit.epas.dao.PersonDayDao;
+import it.cnr.iit.epas.dao.PersonDayInTroubleDao;
+import it.cnr.iit.epas.manager.PersonDayInTroubleManager;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.PersonDay;
+import it.cnr.iit.epas.models.PersonDayInTrouble;
+import it.cnr.iit.epas.models.enumerate.Troubles;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class PersonDayInTroubleTest {
+
+  @Inject
+  H2Examples example;
+  @Inject
+  PersonDayDao personDayDao;
+  @Inject
+  PersonDayInTroubleDao personDayInTroubleDao;
+  @Inject
+  PersonDayInTroubleManager personDayInTroubleManager;
+
+  private PersonDayInTrouble trouble(Person person, LocalDate date) {
+    val personDay = new PersonDay(person, date);
+    personDayDao.persist(personDay);
+    val trouble = new PersonDayInTrouble(personDay, Troubles.NO_ABS_NO_STAMP);
+    personDayInTroubleDao.persist(trouble);
+    return trouble;
+  }
+
+  @Test
+  void testNotifyAndCleanOutsideContracts() {
+    val person = example.normalEmployee(LocalDate.of(2023, 1, 1), Optional.empty());
+    val office = person.getOffice();
+    val outside = trouble(person, LocalDate.of(2022, 12, 15));
+    val inside = trouble(person, LocalDate.of(2023, 2, 1));
+    val causes = ImmutableList.of(Troubles.NO_ABS_NO_STAMP);
+
+    // Solo i giorni coperti dal contratto attivo sono da segnalare
+    List<PersonDayInTrouble> toNotify = personDayInTroubleDao.toNotify(office, Optional.empty(),
+        LocalDate.of(2022, 1, 1), LocalDate.of(2023, 12, 31), causes, LocalDate.now());
+    assertEquals(ImmutableList.of(inside), toNotify);
+
+    assertEquals(ImmutableList.of(outside), personDayInTroubleDao.outsideContracts(person));
+    val outsidePersonDay = outside.getPersonDay();
+    outsidePersonDay.getTroubles().add(outside);
+    assertEquals(1, personDayInTroubleManager.cleanOfficeDayInTrouble(office));
+    // il contesto di persistenza resta coerente con il db
+    assertTrue(outsidePersonDay.getTroubles().isEmpty());
+
+    personDayInTroubleDao.getEntityManager().flush();
+    personDayInTroubleDao.getEntityManager().clear();
+    val remaining = personDayInTroubleDao.getPersonDayInTroubleInPeriod(person,
+        Optional.of(LocalDate.of(2022, 1, 1)), Optional.of(LocalDate.of(2023, 12, 31)),
+        Optional.empty());
+    assertEquals(1, remaining.size());
+    assertEquals(inside.getId(), remaining.get(0).getId());
+  }
+}
@@ -165,6 +165,42 @@ class PersonDaysTest {
 
   }
   
+  /**
+   * Timbrature di servizio distribuite su più coppie valide ed inserite non in ordine:
+   * ogni timbratura di servizio viene controllata solo rispetto alla coppia che la contiene.
+   */
+  @Test
+  public void serviceStampingsInMultiplePairs() {
+
+    PersonDay personDay = new PersonDay(null, second);
+    Stamping in2 = stampings(personDay, 13, 0, WayType.in, null, null);
+    Stamping out2 = stampings(personDay, 17, 0, WayType.out, null, null);
+    Stamping in1 = stampings(personDay, 8, 0, WayType.in, null, null);
+    Stamping serviceOut1 = stampings(personDay, 10, 0, WayType.out, serviceST, null);
+    Stamping serviceIn1 = stampings(personDay, 11, 0, WayType.in, serviceST, null);
+    Stamping out1 = stampings(personDay, 12, 0, WayType.out, null, null);
+    Stamping serviceOutOfPairs = stampings(personDay, 12, 30, WayType.out, serviceST, null);
+    Stamping serviceIn2 = stampings(personDay, 14, 0, WayType.in, serviceST, null);
+
+    List<PairStamping> validPairs =
+        personDayManager.getValidPairStampings(personDay.getStampings());
+
+    org.assertj.core.api.Assertions.assertThat(validPairs).hasSize(2);
+    org.assertj.core.api.Assertions.assertThat(validPairs.get(0).first).isSameAs(in1);
+    org.assertj.core.api.Assertions.assertThat(validPairs.get(0).second).isSameAs(out1);
+    org.assertj.core.api.Assertions.assertThat(validPairs.get(1).first).isSameAs(in2);
+    org.assertj.core.api.Assertions.assertThat(validPairs.get(1).second).isSameAs(out2);
+    org.assertj.core.api.Assertions.assertThat(in1.getPairId()).isEqualTo(out1.getPairId());
+    org.assertj.core.api.Assertions.assertThat(in1.getPairId()).isNotEqualTo(in2.getPairId());
+    org.assertj.core.api.Assertions.assertThat(serviceOut1.isValid()).isTrue();
+    org.assertj.core.api.Assertions.assertThat(serviceIn1.isValid()).isTrue();
+    org.assertj.core.api.Assertions.assertThat(serviceOutOfPairs.isValid()).isFalse();
+    org.assertj.core.api.Assertions.assertThat(serviceIn2.isValid()).isFalse();
+    org.assertj.core.api.Assertions.assertThat(
+        personDayManager.workingMinutes(validPairs, LocalTime.of(9, 0), LocalTime.of(16, 0)))
+        .isEqualTo(360);
+  }
+
   @Test
   public void consideredGapLunchPairsOutOfSite() {
 
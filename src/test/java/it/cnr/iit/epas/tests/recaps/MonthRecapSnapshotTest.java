@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package it.cnr.iit.epas.tests.recaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import it.cnr.iit.epas.controller.v4.utils.MonthRecapPayloads;
+import it.cnr.iit.epas.dao.MonthRecapSnapshotDao;
+import it.cnr.iit.epas.dao.PersonDao;
+import it.cnr.iit.epas.dto.v4.AbsenceTypeShowTerseDto;
+import it.cnr.iit.epas.dto.v4.PersonStampingRecapDto;
+import it.cnr.iit.epas.manager.recaps.personstamping.MonthRecapSnapshotManager;
+import it.cnr.iit.epas.models.MonthRecapSnapshot;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class MonthRecapSnapshotTest {
+
+  @Inject
+  private H2Examples h2Examples;
+  @Inject
+  private MonthRecapSnapshotDao snapshotDao;
+  @Inject
+  private EntityManager entityManager;
+  @Inject
+  private PersonDao personDao;
+  @Inject
+  private MonthRecapSnapshotManager snapshotManager;
+  @Inject
+  private MonthRecapPayloads monthRecapPayloads;
+
+  /**
+   * Il riepilogo calcolato è salvato solo se la versione del mese non è cambiata ed i
+   * ricalcoli invalidano solo i riepiloghi dei mesi interessati.
+   */
+  @Test
+  public void touchInvalidatesFollowingMonths() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2021, 1, 1), Optional.empty());
+    MonthRecapSnapshot february = snapshot(person, YearMonth.of(2021, 2));
+    MonthRecapSnapshot march = snapshot(person, YearMonth.of(2021, 3));
+
+    assertTrue(snapshotDao.storePayload(february.getId(), 0, person.getVersion(), "{\"month\":2}"));
+    assertTrue(snapshotDao.storePayload(march.getId(), 0, person.getVersion(), "{\"month\":3}"));
+
+    assertEquals(1, snapshotDao.touch(person, YearMonth.of(2021, 3)));
+    assertFalse(snapshotDao.storePayload(march.getId(), 0, person.getVersion(), "{\"month\":3}"));
+
+    entityManager.clear();
+    february = snapshotDao.byPersonAndMonth(person, YearMonth.of(2021, 2)).get();
+    march = snapshotDao.byPersonAndMonth(person, YearMonth.of(2021, 3)).get();
+    assertEquals(0, february.getRecapVersion());
+    assertEquals("{\"month\":2}", february.getPayload());
+    assertEquals(1, march.getRecapVersion());
+    assertNull(march.getPayload());
+  }
+
+  /**
+   * Il riepilogo salvato non è più valido dopo una modifica all'anagrafica della persona.
+   */
+  @Test
+  public void personChangesInvalidateSnapshot() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2021, 1, 1), Optional.empty());
+    MonthRecapSnapshot february = snapshot(person, YearMonth.of(2021, 2));
+    assertTrue(snapshotDao.storePayload(february.getId(), 0, person.getVersion(), "{}"));
+    entityManager.clear();
+    person = personDao.getPersonById(person.getId());
+    assertTrue(snapshotManager.snapshot(person, YearMonth.of(2021, 2)).isPresent());
+
+    person.setNumber("999");
+    entityManager.flush();
+    assertFalse(snapshotManager.snapshot(person, YearMonth.of(2021, 2)).isPresent());
+  }
+
+  /**
+   * Il riepilogo salvato viene riletto nel suo DTO, compresi i codici di assenza del mese.
+   */
+  @Test
+  public void payloadRoundTrip() {
+    AbsenceTypeShowTerseDto absenceType = new AbsenceTypeShowTerseDto();
+    absenceType.setId(1L);
+    absenceType.setCode("31");
+    PersonStampingRecapDto recap = new PersonStampingRecapDto();
+    recap.setYear(2021);
+    recap.setMonth(2);
+    recap.getAbsenceCodeMap().put(absenceType, 2);
+
+    assertEquals(recap, monthRecapPayloads.read(monthRecapPayloads.write(recap)).get());
+  }
+
+  private MonthRecapSnapshot snapshot(Person person, YearMonth yearMonth) {
+    MonthRecapSnapshot snapshot =
+        new MonthRecapSnapshot(person, yearMonth.getYear(), yearMonth.getMonthValue());
+    snapshotDao.persist(snapshot);
+    entityManager.flush();
+    return snapshot;
+  }
+}
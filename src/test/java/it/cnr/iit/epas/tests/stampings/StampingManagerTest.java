@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.stampings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import it.cnr.iit.epas.manager.StampingManager;
+import it.cnr.iit.epas.manager.services.absences.AbsenceService;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.models.exports.StampingFromClient;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class StampingManagerTest {
+
+  @Inject
+  StampingManager stampingManager;
+  @Inject
+  AbsenceService absenceService;
+  @Inject
+  H2Examples h2Examples;
+
+  @Test
+  public void createStampingsFromClient() {
+    absenceService.enumInitializator();
+
+    val today = LocalDate.now();
+    val person = h2Examples.normalEmployee(today.minusMonths(1), Optional.empty());
+    val yesterday = today.minusDays(1).atTime(8, 0);
+
+    val exit = stamping(person, yesterday.plusHours(9), 1);
+    val entrance = stamping(person, yesterday, 0);
+    val duplicate = stamping(person, yesterday, 0);
+
+    val results = stampingManager.createStampingsFromClient(
+        Lists.newArrayList(exit, entrance, duplicate), false);
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).isPresent());
+    assertTrue(results.get(1).isPresent());
+    assertFalse(results.get(2).isPresent());
+    assertEquals(results.get(0).get().getPersonDay(), results.get(1).get().getPersonDay());
+    assertEquals(2, results.get(0).get().getPersonDay().getStampings().size());
+
+    // Un secondo invio delle stesse timbrature non produce inserimenti
+    val replay = stampingManager.createStampingsFromClient(
+        Lists.newArrayList(stamping(person, yesterday, 0)), false);
+    assertFalse(replay.get(0).isPresent());
+  }
+
+  private StampingFromClient stamping(Person person,
+      LocalDateTime dateTime, int inOut) {
+    return StampingFromClient.builder().person(person).numeroBadge(person.getNumber())
+        .dateTime(dateTime).inOut(inOut).build();
+  }
+}
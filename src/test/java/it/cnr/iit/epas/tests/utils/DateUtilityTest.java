@@ -18,6 +18,8 @@
 package it.cnr.iit.epas.tests.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.google.common.base.Preconditions;
 import it.cnr.iit.epas.utils.DateInterval;
@@ -25,6 +27,8 @@ import it.cnr.iit.epas.utils.DateUtility;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.MonthDay;
+import java.util.Optional;
 import org.joda.time.Days;
 import org.junit.jupiter.api.Test;
 
@@ -74,4 +78,31 @@ class DateUtilityTest {
     LocalTime exampleTime = LocalTime.of(9, 30, 0);
     assertEquals(DateUtility.toMinute(exampleTime), 9 * 60 + 30);
   }
-}
\ No newline at end of file
+
+  @Test
+  void generalHolidays() {
+    // Pasqua 2023: 9 aprile
+    assertTrue(DateUtility.isGeneralHoliday(Optional.empty(), LocalDate.of(2023, 4, 9)));
+    assertTrue(DateUtility.isGeneralHoliday(Optional.empty(), LocalDate.of(2023, 4, 10)));
+    assertFalse(DateUtility.isGeneralHoliday(Optional.empty(), LocalDate.of(2023, 4, 11)));
+    assertTrue(DateUtility.isGeneralHoliday(Optional.empty(), LocalDate.of(2023, 12, 26)));
+    assertFalse(DateUtility.isGeneralHoliday(Optional.empty(), LocalDate.of(2023, 6, 24)));
+    assertTrue(DateUtility.isGeneralHoliday(Optional.of(MonthDay.of(6, 24)),
+        LocalDate.of(2023, 6, 24)));
+    assertEquals(12, DateUtility.nationalHolidaysOfYear(2023).cardinality());
+
+    // gennaio 2023: 1 e 6 festivi, aprile 2023: pasqua, pasquetta e 25 aprile
+    assertEquals(29, DateUtility.countGeneralWorkingDays(
+        LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31)));
+    assertEquals(27, DateUtility.countGeneralWorkingDays(
+        LocalDate.of(2023, 4, 1), LocalDate.of(2023, 4, 30)));
+    assertEquals(DateUtility.getGeneralWorkingDays(
+        LocalDate.of(2022, 11, 15), LocalDate.of(2024, 2, 10)).size(),
+        DateUtility.countGeneralWorkingDays(LocalDate.of(2022, 11, 15), LocalDate.of(2024, 2, 10)));
+
+    assertEquals(LocalDate.of(2024, 1, 1),
+        DateUtility.nextGeneralHoliday(LocalDate.of(2023, 12, 27)));
+    assertEquals(LocalDate.of(2023, 12, 8),
+        DateUtility.nextGeneralHoliday(LocalDate.of(2023, 12, 8)));
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2023  Consiglio Nazionale delle Ricerche
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as
+ *     published by the Free Software Foundation, either version 3 of the
+ *     License, or (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package it.cnr.iit.epas.tests.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import it.cnr.iit.epas.manager.HolidayCalendar;
+import it.cnr.iit.epas.manager.PersonDayManager;
+import it.cnr.iit.epas.manager.configurations.ConfigurationManager;
+import it.cnr.iit.epas.manager.configurations.EpasParam;
+import it.cnr.iit.epas.models.Office;
+import it.cnr.iit.epas.models.Person;
+import it.cnr.iit.epas.tests.db.h2support.H2Examples;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@Transactional
+@SpringBootTest
+class HolidayCalendarTest {
+
+  @Inject
+  private H2Examples h2Examples;
+  @Inject
+  private HolidayCalendar holidayCalendar;
+  @Inject
+  private ConfigurationManager configurationManager;
+  @Inject
+  private PersonDayManager personDayManager;
+
+  /**
+   * Il giorno del patrono è festivo solo per la sede e solo nel periodo in cui è in vigore,
+   * le festività nazionali per tutte le sedi.
+   */
+  @Test
+  public void patronAndNationalHolidays() {
+    Office office = h2Examples.buildOffice(LocalDate.of(2020, 1, 1), "Milano", "223400", "MI");
+    Office other = h2Examples.buildOffice(LocalDate.of(2020, 1, 1), "Roma", "223401", "RM");
+    configurationManager.updateDayMonth(EpasParam.DAY_OF_PATRON, office, 7, 12,
+        Optional.of(LocalDate.of(2021, 1, 1)), Optional.empty(), true);
+
+    assertTrue(holidayCalendar.isGeneralHoliday(office, LocalDate.of(2021, 12, 7)));
+    assertFalse(holidayCalendar.isGeneralHoliday(office, LocalDate.of(2020, 12, 7)));
+    assertTrue(holidayCalendar.isGeneralHoliday(office, LocalDate.of(2020, 1, 1)));
+    assertFalse(holidayCalendar.isGeneralHoliday(other, LocalDate.of(2021, 12, 7)));
+    assertTrue(holidayCalendar.isGeneralHoliday(other, LocalDate.of(2021, 12, 8)));
+
+    // dicembre 2021: 7 (patrono), 8, 25 e 26
+    assertEquals(4, holidayCalendar.generalHolidays(office,
+        LocalDate.of(2021, 12, 1), LocalDate.of(2021, 12, 31)));
+    assertEquals(27, holidayCalendar.generalWorkingDays(office,
+        LocalDate.of(2021, 12, 1), LocalDate.of(2021, 12, 31)));
+    // i martedì di dicembre 2021 sono 7, 14, 21 e 28
+    assertEquals(3, holidayCalendar.generalWorkingDays(office,
+        LocalDate.of(2021, 12, 1), LocalDate.of(2021, 12, 31), DayOfWeek.TUESDAY));
+    assertEquals(4, holidayCalendar.generalWorkingDays(other,
+        LocalDate.of(2021, 12, 1), LocalDate.of(2021, 12, 31), DayOfWeek.TUESDAY));
+  }
+
+  /**
+   * La modifica del patrono invalida il calendario già calcolato della sede.
+   */
+  @Test
+  public void patronChangeInvalidatesOffice() {
+    Office office = h2Examples.buildOffice(LocalDate.of(2020, 1, 1), "Firenze", "223402", "FI");
+    assertFalse(holidayCalendar.isGeneralHoliday(office, LocalDate.of(2022, 6, 24)));
+
+    configurationManager.updateDayMonth(EpasParam.DAY_OF_PATRON, office, 24, 6,
+        Optional.of(LocalDate.of(2022, 1, 1)), Optional.empty(), true);
+    assertTrue(holidayCalendar.isGeneralHoliday(office, LocalDate.of(2022, 6, 24)));
+  }
+
+  /**
+   * I giorni lavorabili calcolati con il calendario coincidono con la verifica giorno per
+   * giorno, anche a cavallo di più anni.
+   */
+  @Test
+  public void numberOfWorkingDays() {
+    Person person = h2Examples.normalEmployee(LocalDate.of(2021, 3, 1), Optional.empty());
+    configurationManager.updateDayMonth(EpasParam.DAY_OF_PATRON, person.getOffice(), 7, 12,
+        Optional.of(LocalDate.of(2021, 1, 1)), Optional.empty(), true);
+
+    // dicembre 2021: 8 giorni di fine settimana, 7 e 8 festivi
+    assertEquals(21, personDayManager.numberOfWorkingDays(person,
+        LocalDate.of(2021, 12, 1), LocalDate.of(2021, 12, 31)));
+
+    final LocalDate begin = LocalDate.of(2021, 1, 15);
+    final LocalDate end = LocalDate.of(2023, 2, 10);
+    int expected = 0;
+    for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+      if (!personDayManager.isHoliday(person, date)) {
+        expected++;
+      }
+    }
+    assertEquals(expected, personDayManager.numberOfWorkingDays(person, begin, end));
+  }
+}